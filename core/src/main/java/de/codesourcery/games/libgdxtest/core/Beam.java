@@ -18,7 +18,8 @@ public abstract class Beam extends Bullet
 		@Override
 		public boolean visit(IDrawable hit,Beam beam) 
 		{
-            if ( hit instanceof Entity && hit != beam.shooter ) {
+            // only entities are visited
+            if ( hit != beam.shooter ) {
                 beam.aliveTicks=0;
                 ((Entity) hit).hitBy(beam);
             }			
@@ -86,7 +87,8 @@ public abstract class Beam extends Bullet
     @Override
     public boolean tick(GameWorld world,float deltaSeconds)
     {
-    	world.visitEntities( getBounds() , tickVisitor , this );
+    	// only what the beam actually crosses, not everything inside its bounding box
+    	world.visitEntities( shooter.gunTip.x , shooter.gunTip.y , target.x , target.y , tickVisitor , this );
         return aliveTicks-- > 0;
     }
     
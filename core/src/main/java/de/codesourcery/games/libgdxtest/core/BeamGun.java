@@ -29,9 +29,9 @@ public final class BeamGun extends Gun {
     }
 
     @Override
-    protected IBullet createBullet(Entity shooter, GameWorld world)
+    protected void fire(Entity shooter, GameWorld world)
     {
-        return new Beam( shooter , getRange() ) {
+        final Beam beam = new Beam( shooter , getRange() ) {
 
             @Override
             protected Vector2 perturbAim(Vector2 aimDirection)
@@ -39,5 +39,7 @@ public final class BeamGun extends Gun {
                 return BeamGun.this.applyAccuracy( aimDirection );
             }
         };
+        lastBullet = beam;
+        world.addTemporaryObject( beam );
     }
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Holds up to a max. number of objects (compared by identity) in insertion order,
+ * adding an object to a full buffer evicts the oldest one.
+ *
+ * Objects can be removed from anywhere in constant time, they leave an empty slot behind
+ * that gets skipped (at the head) or dropped when the ring has no free slot left.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class BoundedRingBuffer<T>
+{
+    private final int maxSize;
+
+    // twice the max. size, so that compacting the ring only becomes necessary after many removals
+    private Object[] ring;
+    private int head;
+    private int span; // slots in use, starting at head, including empty ones
+    private int size;
+
+    // index in ring by object
+    private final Map<T,Integer> indices = new IdentityHashMap<>();
+
+    public BoundedRingBuffer(int maxSize)
+    {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException("Max. size must be >= 1");
+        }
+        this.maxSize = maxSize;
+        this.ring = new Object[ 2 * maxSize ];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean contains(T item) {
+        return indices.containsKey( item );
+    }
+
+    /**
+     * Adds an object.
+     *
+     * @return the object that got evicted to make room or <code>null</code>
+     */
+    public T add(T item)
+    {
+        if ( item == null ) {
+            throw new IllegalArgumentException("item must not be NULL");
+        }
+        if ( indices.containsKey( item ) ) {
+            throw new IllegalArgumentException("Already added: "+item);
+        }
+        final T evicted = size == maxSize ? removeOldest() : null;
+        if ( span == ring.length ) {
+            compact();
+        }
+        final int index = ( head + span ) % ring.length;
+        ring[index] = item;
+        indices.put( item , index );
+        span++;
+        size++;
+        return evicted;
+    }
+
+    /**
+     * Removes an object.
+     *
+     * @return <code>false</code> if the object was not part of this buffer
+     */
+    public boolean remove(T item)
+    {
+        final Integer index = indices.remove( item );
+        if ( index == null ) {
+            return false;
+        }
+        ring[index] = null;
+        size--;
+        skipEmptyHead();
+        return true;
+    }
+
+    /**
+     * Removes the object that was added first.
+     *
+     * @return object or <code>null</code> if this buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T removeOldest()
+    {
+        if ( size == 0 ) {
+            return null;
+        }
+        // head always holds an object
+        final T oldest = (T) ring[head];
+        ring[head] = null;
+        indices.remove( oldest );
+        size--;
+        skipEmptyHead();
+        return oldest;
+    }
+
+    public void clear()
+    {
+        while ( size > 0 ) {
+            removeOldest();
+        }
+    }
+
+    private void skipEmptyHead()
+    {
+        while ( span > 0 && ring[head] == null )
+        {
+            head = ( head + 1 ) % ring.length;
+            span--;
+        }
+    }
+
+    /*
+     * Moves all objects to the beginning of the ring, dropping empty slots.
+     * Only happens once at least half of the slots are empty, so at most once every 'maxSize' additions.
+     */
+    @SuppressWarnings("unchecked")
+    private void compact()
+    {
+        final Object[] compacted = new Object[ ring.length ];
+        int count = 0;
+        for ( int i = 0 ; i < span ; i++ )
+        {
+            final Object item = ring[ ( head + i ) % ring.length ];
+            if ( item != null )
+            {
+                compacted[count] = item;
+                indices.put( (T) item , count );
+                count++;
+            }
+        }
+        ring = compacted;
+        head = 0;
+        span = count;
+    }
+}
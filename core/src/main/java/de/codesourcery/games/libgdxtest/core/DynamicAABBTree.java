@@ -0,0 +1,515 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+/**
+ * Spatial index that keeps {@link IDrawable}s in the leaves of a balanced bounding volume hierarchy.
+ *
+ * Unlike {@link SpatialHashGrid}, the cost of a query does not depend on the size of the objects, so
+ * it copes well with tiny projectiles and beams spanning half the screen at the same time.
+ *
+ * Leaves store bounding boxes enlarged by a margin ('fat' AABBs), objects moving less than that
+ * do not touch the tree at all. Objects that leave their fat AABB get removed and inserted again,
+ * refitting and rebalancing (by tree rotations) the nodes on their way to the root.
+ *
+ * Nodes are kept in parallel arrays, indices instead of references.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class DynamicAABBTree implements ISpatialIndex
+{
+    private static final int NULL = -1;
+
+    private final float margin;
+
+    // nodes
+    private float[] minX;
+    private float[] minY;
+    private float[] maxX;
+    private float[] maxY;
+    private int[] parent; // next free node for nodes on the free list
+    private int[] child1; // NULL for leaves
+    private int[] child2;
+    private int[] height; // leaves have height 0, free nodes -1
+    private IDrawable[] drawable;
+
+    private int root = NULL;
+    private int freeList = NULL;
+
+    private final Map<IDrawable,Integer> leaves = new IdentityHashMap<>();
+
+    private int[] stack = new int[64];
+
+    /**
+     *
+     * @param margin world units leaves' bounding boxes are enlarged by on each side
+     */
+    public DynamicAABBTree(float margin)
+    {
+        if ( margin < 0 ) {
+            throw new IllegalArgumentException("Margin must be >= 0");
+        }
+        this.margin = margin;
+        allocateNodes( 16 );
+    }
+
+    public float getMargin() {
+        return margin;
+    }
+
+    @Override
+    public int size() {
+        return leaves.size();
+    }
+
+    @Override
+    public boolean contains(IDrawable d) {
+        return leaves.containsKey( d );
+    }
+
+    /**
+     * Returns the height of the tree, 0 if empty.
+     */
+    public int getHeight() {
+        return root == NULL ? 0 : height[root] + 1;
+    }
+
+    @Override
+    public void add(IDrawable d)
+    {
+        if ( leaves.containsKey( d ) ) {
+            return;
+        }
+        final int leaf = allocateNode();
+        drawable[leaf] = d;
+        setFatBounds( leaf , d.getBounds() );
+        insertLeaf( leaf );
+        leaves.put( d , leaf );
+    }
+
+    @Override
+    public boolean remove(IDrawable d)
+    {
+        final Integer leaf = leaves.remove( d );
+        if ( leaf == null ) {
+            return false;
+        }
+        removeLeaf( leaf );
+        freeNode( leaf );
+        return true;
+    }
+
+    /**
+     * Moves an object to a new leaf if its bounding box is no longer contained in its fat bounding box.
+     */
+    @Override
+    public void update(IDrawable d)
+    {
+        final Integer index = leaves.get( d );
+        if ( index == null ) {
+            return;
+        }
+        final int leaf = index;
+        final BoundingBox bounds = d.getBounds();
+        if ( bounds.min.x >= minX[leaf] && bounds.min.y >= minY[leaf] && bounds.max.x <= maxX[leaf] && bounds.max.y <= maxY[leaf] ) {
+            return;
+        }
+        removeLeaf( leaf );
+        setFatBounds( leaf , bounds );
+        insertLeaf( leaf );
+    }
+
+    @Override
+    public <T> boolean visit(BoundingBox box,IDrawableVisitor<T> visitor,T data)
+    {
+        if ( root == NULL ) {
+            return true;
+        }
+        final float qMinX = box.min.x;
+        final float qMinY = box.min.y;
+        final float qMaxX = box.max.x;
+        final float qMaxY = box.max.y;
+
+        int top = 0;
+        stack[top++] = root;
+        while ( top > 0 )
+        {
+            final int node = stack[--top];
+            if ( maxX[node] < qMinX || maxY[node] < qMinY || minX[node] > qMaxX || minY[node] > qMaxY ) {
+                continue;
+            }
+            if ( child1[node] == NULL )
+            {
+                final IDrawable d = drawable[node];
+                if ( d.intersects( box ) && ! visitor.visit( d , data ) ) {
+                    return false;
+                }
+            } else {
+                top = push( top , child1[node] , child2[node] );
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean visitSegment(float x0,float y0,float x1,float y1,IDrawableVisitor<T> visitor,T data)
+    {
+        if ( root == NULL ) {
+            return true;
+        }
+        int top = 0;
+        stack[top++] = root;
+        while ( top > 0 )
+        {
+            final int node = stack[--top];
+            if ( ! Utils.intersectsSegment( minX[node] , minY[node] , maxX[node] , maxY[node] , x0 , y0 , x1 , y1 ) ) {
+                continue;
+            }
+            if ( child1[node] == NULL )
+            {
+                final IDrawable d = drawable[node];
+                if ( Utils.intersectsSegment( d.getBounds() , x0 , y0 , x1 , y1 ) && ! visitor.visit( d , data ) ) {
+                    return false;
+                }
+            } else {
+                top = push( top , child1[node] , child2[node] );
+            }
+        }
+        return true;
+    }
+
+    private int push(int top,int node1,int node2)
+    {
+        if ( top + 2 > stack.length ) {
+            stack = Arrays.copyOf( stack , stack.length*2 );
+        }
+        stack[top] = node1;
+        stack[top+1] = node2;
+        return top+2;
+    }
+
+    private void setFatBounds(int leaf,BoundingBox bounds)
+    {
+        minX[leaf] = bounds.min.x - margin;
+        minY[leaf] = bounds.min.y - margin;
+        maxX[leaf] = bounds.max.x + margin;
+        maxY[leaf] = bounds.max.y + margin;
+    }
+
+    // == tree maintenance ==
+
+    private void insertLeaf(int leaf)
+    {
+        if ( root == NULL )
+        {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // descend towards the sibling that enlarges the tree the least (perimeters instead of areas, this is 2D)
+        final float leafMinX = minX[leaf];
+        final float leafMinY = minY[leaf];
+        final float leafMaxX = maxX[leaf];
+        final float leafMaxY = maxY[leaf];
+        int index = root;
+        while ( child1[index] != NULL )
+        {
+            final float perimeter = perimeter( minX[index] , minY[index] , maxX[index] , maxY[index] );
+            final float combinedPerimeter = combinedPerimeter( index , leafMinX , leafMinY , leafMaxX , leafMaxY );
+
+            // cost of creating a new parent for this node and the new leaf
+            final float cost = 2 * combinedPerimeter;
+            // min. cost of pushing the leaf further down the tree
+            final float inheritanceCost = 2 * ( combinedPerimeter - perimeter );
+
+            final float cost1 = descendCost( child1[index] , leafMinX , leafMinY , leafMaxX , leafMaxY ) + inheritanceCost;
+            final float cost2 = descendCost( child2[index] , leafMinX , leafMinY , leafMaxX , leafMaxY ) + inheritanceCost;
+            if ( cost < cost1 && cost < cost2 ) {
+                break;
+            }
+            index = cost1 < cost2 ? child1[index] : child2[index];
+        }
+        final int sibling = index;
+
+        final int oldParent = parent[sibling];
+        final int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        height[newParent] = height[sibling] + 1;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+        if ( oldParent == NULL ) {
+            root = newParent;
+        } else {
+            replaceChild( oldParent , sibling , newParent );
+        }
+        refit( newParent );
+    }
+
+    private float descendCost(int child,float leafMinX,float leafMinY,float leafMaxX,float leafMaxY)
+    {
+        final float combined = combinedPerimeter( child , leafMinX , leafMinY , leafMaxX , leafMaxY );
+        if ( child1[child] == NULL ) {
+            return combined;
+        }
+        return combined - perimeter( minX[child] , minY[child] , maxX[child] , maxY[child] );
+    }
+
+    private void removeLeaf(int leaf)
+    {
+        if ( leaf == root )
+        {
+            root = NULL;
+            return;
+        }
+        final int oldParent = parent[leaf];
+        final int grandParent = parent[oldParent];
+        final int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        // the sibling takes the parent's place
+        parent[sibling] = grandParent;
+        freeNode( oldParent );
+        if ( grandParent == NULL ) {
+            root = sibling;
+        } else {
+            replaceChild( grandParent , oldParent , sibling );
+            refit( grandParent );
+        }
+    }
+
+    /*
+     * Rebalances and recalculates bounds and heights from a node up to the root.
+     */
+    private void refit(int node)
+    {
+        int index = node;
+        while ( index != NULL )
+        {
+            index = balance( index );
+            updateNode( index );
+            index = parent[index];
+        }
+    }
+
+    private void updateNode(int index)
+    {
+        final int c1 = child1[index];
+        final int c2 = child2[index];
+        height[index] = 1 + Math.max( height[c1] , height[c2] );
+        minX[index] = Math.min( minX[c1] , minX[c2] );
+        minY[index] = Math.min( minY[c1] , minY[c2] );
+        maxX[index] = Math.max( maxX[c1] , maxX[c2] );
+        maxY[index] = Math.max( maxY[c1] , maxY[c2] );
+    }
+
+    private void replaceChild(int node,int oldChild,int newChild)
+    {
+        if ( child1[node] == oldChild ) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+
+    /*
+     * Rotates the higher child up if the subtrees of a node differ in height by more than one.
+     * Returns the index of the subtree's new root.
+     */
+    private int balance(int a)
+    {
+        if ( child1[a] == NULL || height[a] < 2 ) {
+            return a;
+        }
+        final int b = child1[a];
+        final int c = child2[a];
+        final int difference = height[c] - height[b];
+        if ( difference > 1 ) {
+            rotateUp( a , c , b , false );
+            return c;
+        }
+        if ( difference < -1 ) {
+            rotateUp( a , b , c , true );
+            return b;
+        }
+        return a;
+    }
+
+    /*
+     * Makes 'up' (a child of 'a') the parent of 'a', 'a' keeps its other child 'other' and
+     * takes over the lower child of 'up'.
+     */
+    private void rotateUp(int a,int up,int other,boolean upIsFirstChild)
+    {
+        final int f = child1[up];
+        final int g = child2[up];
+
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+        if ( parent[up] == NULL ) {
+            root = up;
+        } else {
+            replaceChild( parent[up] , a , up );
+        }
+
+        final int keep = height[f] > height[g] ? f : g;
+        final int move = keep == f ? g : f;
+        child2[up] = keep;
+        if ( upIsFirstChild ) {
+            child1[a] = move;
+        } else {
+            child2[a] = move;
+        }
+        parent[move] = a;
+
+        updateNode( a );
+        updateNode( up );
+    }
+
+    private float combinedPerimeter(int node,float otherMinX,float otherMinY,float otherMaxX,float otherMaxY)
+    {
+        return perimeter( Math.min( minX[node] , otherMinX ) , Math.min( minY[node] , otherMinY ) ,
+                          Math.max( maxX[node] , otherMaxX ) , Math.max( maxY[node] , otherMaxY ) );
+    }
+
+    private static float perimeter(float minX,float minY,float maxX,float maxY) {
+        return 2 * ( ( maxX - minX ) + ( maxY - minY ) );
+    }
+
+    /**
+     * Checks parent/child links, heights, bounds and the bookkeeping of leaves and free nodes.
+     *
+     * @throws IllegalStateException if the tree is corrupt
+     */
+    void validate()
+    {
+        final int leafCount = root == NULL ? 0 : validate( root , NULL );
+        if ( leafCount != leaves.size() ) {
+            throw new IllegalStateException("Tree has "+leafCount+" leaves but "+leaves.size()+" objects");
+        }
+        for ( Map.Entry<IDrawable,Integer> entry : leaves.entrySet() )
+        {
+            final int leaf = entry.getValue();
+            if ( drawable[leaf] != entry.getKey() || child1[leaf] != NULL ) {
+                throw new IllegalStateException("Object "+entry.getKey()+" not in leaf "+leaf);
+            }
+        }
+        final int nodeCount = root == NULL ? 0 : 2 * leafCount - 1;
+        int freeCount = 0;
+        for ( int node = freeList ; node != NULL ; node = parent[node] )
+        {
+            if ( height[node] != -1 ) {
+                throw new IllegalStateException("Free node "+node+" has height "+height[node]);
+            }
+            if ( ++freeCount > minX.length ) {
+                throw new IllegalStateException("Free list has a cycle");
+            }
+        }
+        if ( nodeCount + freeCount != minX.length ) {
+            throw new IllegalStateException(nodeCount+" nodes in use and "+freeCount+" free nodes, capacity "+minX.length);
+        }
+    }
+
+    /*
+     * Returns the number of leaves below a node.
+     */
+    private int validate(int node,int expectedParent)
+    {
+        if ( parent[node] != expectedParent ) {
+            throw new IllegalStateException("Node "+node+" has parent "+parent[node]+", expected "+expectedParent);
+        }
+        final int c1 = child1[node];
+        final int c2 = child2[node];
+        if ( c1 == NULL )
+        {
+            if ( c2 != NULL || height[node] != 0 || drawable[node] == null ) {
+                throw new IllegalStateException("Invalid leaf "+node);
+            }
+            final BoundingBox bounds = drawable[node].getBounds();
+            if ( bounds.min.x < minX[node] || bounds.min.y < minY[node] || bounds.max.x > maxX[node] || bounds.max.y > maxY[node] ) {
+                throw new IllegalStateException("Leaf "+node+" does not contain its object's bounds");
+            }
+            return 1;
+        }
+        if ( c2 == NULL || drawable[node] != null ) {
+            throw new IllegalStateException("Invalid inner node "+node);
+        }
+        if ( height[node] != 1 + Math.max( height[c1] , height[c2] ) ) {
+            throw new IllegalStateException("Node "+node+" has height "+height[node]);
+        }
+        if ( minX[node] != Math.min( minX[c1] , minX[c2] ) || minY[node] != Math.min( minY[c1] , minY[c2] ) ||
+             maxX[node] != Math.max( maxX[c1] , maxX[c2] ) || maxY[node] != Math.max( maxY[c1] , maxY[c2] ) )
+        {
+            throw new IllegalStateException("Bounds of node "+node+" are not the union of its children's bounds");
+        }
+        return validate( c1 , node ) + validate( c2 , node );
+    }
+
+    // == node allocation ==
+
+    private int allocateNode()
+    {
+        if ( freeList == NULL ) {
+            allocateNodes( minX.length * 2 );
+        }
+        final int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        parent[node] = freeList;
+        height[node] = -1;
+        drawable[node] = null;
+        freeList = node;
+    }
+
+    private void allocateNodes(int capacity)
+    {
+        final int oldCapacity = minX == null ? 0 : minX.length;
+        if ( oldCapacity == 0 )
+        {
+            minX = new float[ capacity ];
+            minY = new float[ capacity ];
+            maxX = new float[ capacity ];
+            maxY = new float[ capacity ];
+            parent = new int[ capacity ];
+            child1 = new int[ capacity ];
+            child2 = new int[ capacity ];
+            height = new int[ capacity ];
+            drawable = new IDrawable[ capacity ];
+        }
+        else
+        {
+            minX = Arrays.copyOf( minX , capacity );
+            minY = Arrays.copyOf( minY , capacity );
+            maxX = Arrays.copyOf( maxX , capacity );
+            maxY = Arrays.copyOf( maxY , capacity );
+            parent = Arrays.copyOf( parent , capacity );
+            child1 = Arrays.copyOf( child1 , capacity );
+            child2 = Arrays.copyOf( child2 , capacity );
+            height = Arrays.copyOf( height , capacity );
+            drawable = Arrays.copyOf( drawable , capacity );
+        }
+        // chain new nodes onto the free list
+        for ( int i = capacity - 1 ; i >= oldCapacity ; i-- )
+        {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+    }
+}
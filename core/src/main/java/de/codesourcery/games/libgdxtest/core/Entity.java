@@ -7,7 +7,14 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.collision.BoundingBox;
 
-public final class Entity implements ITickListener,IDrawable
+import de.codesourcery.games.libgdxtest.core.EntityStore.Archetype;
+
+/**
+ * An entity, its position, velocity, shield and gun are stored in the {@link EntityStore} it is part of.
+ *
+ * Entities do not tick themselves, {@link GameWorld} moves all of them at once.
+ */
+public final class Entity implements IDrawable
 {
     private static final float PLAYER_SPEED = 20f;
     private static final float PLAYER_MAX_VELOCITY = 25f;
@@ -15,31 +22,31 @@ public final class Entity implements ITickListener,IDrawable
     public static final float OUTER_RADIUS_IN_PIXELS = 25f;
     public static final float INNER_RADIUS_IN_PIXELS = 15f;
     
+    private static final float DEFAULT_MAX_SHIELD = 25.0f;
+    
     public final BoundingBox aabb = new BoundingBox();
     
-    public final Vector2 velocity = new Vector2();
     public final Vector2 gunTip = new Vector2();
     
-    public final Vector2 position;
     public final Vector2 orientation;
     
-    public boolean isAlive = true;
-    
-    public float maxShield = 25.0f;
-    public float shield;
-    
-    public Gun gun;
-    
     private String name;
+    
+    // components, maintained by EntityStore
+    Archetype table;
+    int row;
 
     public Entity(String name,Vector2 position,Vector2 orientation) 
     {
         this.name = name;
-        this.gun = Gun.newDefaultGun();
-        this.shield = maxShield;
-        this.position = new Vector2(position);
+        this.table = new Archetype( null , EntityStore.ENTITY , 1 );
+        this.row = table.add( this );
+        table.x[row] = position.x;
+        table.y[row] = position.y;
+        table.shield[row] = table.maxShield[row] = DEFAULT_MAX_SHIELD;
+        table.gun[row] = Gun.newDefaultGun();
         this.orientation = new Vector2(orientation).nor();
-        updateBounds();
+        updateBounds( position.x , position.y );
     }
     
     @Override
@@ -48,29 +55,81 @@ public final class Entity implements ITickListener,IDrawable
         return name;
     }
     
-    public Vector2 getAcceleration()
+    public float getX() {
+        return table.x[row];
+    }
+    
+    public float getY() {
+        return table.y[row];
+    }
+    
+    /**
+     * Places an entity that is not part of a world yet.
+     * 
+     * @throws IllegalStateException if this entity is part of a world, use {@link GameWorld#moveEntity(Entity, float, float)} then
+     */
+    public void setPosition(float x,float y)
     {
-        return velocity;
+        if ( table.store != null ) {
+            throw new IllegalStateException("Entity is part of a world, use GameWorld#moveEntity(): "+this);
+        }
+        place( x , y );
+    }
+    
+    void place(float x,float y)
+    {
+        table.x[row] = x;
+        table.y[row] = y;
+        positionChanged( x , y );
+    }
+    
+    public float getVelocityX() {
+        return table.velocityX[row];
+    }
+    
+    public float getVelocityY() {
+        return table.velocityY[row];
+    }
+    
+    public boolean isAlive() {
+        return table.alive[row];
+    }
+    
+    public float getShield() {
+        return table.shield[row];
+    }
+    
+    public float getMaxShield() {
+        return table.maxShield[row];
+    }
+    
+    public Gun getGun() {
+        return table.gun[row];
     }
     
     public void shoot(GameWorld world) 
     {
-        gun.shoot( this , world );
+        getGun().shoot( this , world );
     }
     
     public void hitBy(IBullet bullet) 
     {
-        if ( shield > 0 ) {
-            shield -= 1.0f;
+        hitBy( bullet.getShooter() );
+    }
+    
+    public void hitBy(Entity shooter) 
+    {
+        if ( table.shield[row] > 0 ) {
+            table.shield[row] -= 1.0f;
         } else {
-            isAlive = false;
+            table.alive[row] = false;
         }
     }
     
     public void setAcceleration(float x,float y)
     {
-        this.velocity.x = x;
-        this.velocity.y = y;
+        table.velocityX[row] = x;
+        table.velocityY[row] = y;
     }
     
     public void setOrientation(float x,float y)
@@ -86,13 +145,13 @@ public final class Entity implements ITickListener,IDrawable
         return name;
     }
     
-    private void updateBounds() {
+    private void updateBounds(float x,float y) {
         
-        float minX = position.x - OUTER_RADIUS_IN_PIXELS;
-        float minY = position.y - OUTER_RADIUS_IN_PIXELS;
+        float minX = x - OUTER_RADIUS_IN_PIXELS;
+        float minY = y - OUTER_RADIUS_IN_PIXELS;
         
-        float maxX = position.x + OUTER_RADIUS_IN_PIXELS;
-        float maxY = position.y + OUTER_RADIUS_IN_PIXELS;
+        float maxX = x + OUTER_RADIUS_IN_PIXELS;
+        float maxY = y + OUTER_RADIUS_IN_PIXELS;
         
         this.aabb.min.set(minX,minY,0);
         this.aabb.max.set(maxX,maxY,0);
@@ -101,24 +160,27 @@ public final class Entity implements ITickListener,IDrawable
     @Override
     public void render(ShapeRenderer renderer)
     {
+        final float x = getX();
+        final float y = getY();
+        
         // render 'player'
         renderer.begin(ShapeType.Filled);
-        if ( isAlive ) 
+        if ( isAlive() ) 
         {
             // render outer shield
-            final float shieldPercentage = shield / maxShield;
+            final float shieldPercentage = getShield() / getMaxShield();
             final int shieldThickness = Math.round( shieldPercentage * (OUTER_RADIUS_IN_PIXELS-INNER_RADIUS_IN_PIXELS) );
             
             renderer.setColor(Color.YELLOW);
-            renderer.circle( position.x , position.y , INNER_RADIUS_IN_PIXELS + shieldThickness );
+            renderer.circle( x , y , INNER_RADIUS_IN_PIXELS + shieldThickness );
             
             // render core
             renderer.setColor(Color.BLUE);
 
-            renderer.circle( position.x , position.y , INNER_RADIUS_IN_PIXELS );  
+            renderer.circle( x , y , INNER_RADIUS_IN_PIXELS );  
         } else {
             renderer.setColor(Color.BLACK);
-            renderer.circle( position.x , position.y , INNER_RADIUS_IN_PIXELS );
+            renderer.circle( x , y , INNER_RADIUS_IN_PIXELS );
         }
         renderer.end();      
         
@@ -126,7 +188,7 @@ public final class Entity implements ITickListener,IDrawable
         renderer.begin(ShapeType.Line);
         renderer.setColor(Color.RED);
         
-        renderer.line( position.x , position.y , gunTip.x , gunTip.y );
+        renderer.line( x , y , gunTip.x , gunTip.y );
         renderer.end();        
     }
     
@@ -138,93 +200,85 @@ public final class Entity implements ITickListener,IDrawable
     
     public void setGun(Gun gun)
     {
-        this.gun = gun;
+        table.gun[row] = gun;
     }    
 
     public void moveUp() 
     {
-        velocity.y += PLAYER_SPEED;
+        table.velocityY[row] += PLAYER_SPEED;
         clampAcceleration();
         positionChanged();
     }
     
     public void moveDown() {
-        velocity.y -= PLAYER_SPEED;
+        table.velocityY[row] -= PLAYER_SPEED;
         clampAcceleration();
         positionChanged();
     }
     
     public void moveLeft() {
-        velocity.x -= PLAYER_SPEED;
+        table.velocityX[row] -= PLAYER_SPEED;
         clampAcceleration();
         positionChanged();
     }
     
     public void moveRight() {
-        velocity.x += PLAYER_SPEED;
+        table.velocityX[row] += PLAYER_SPEED;
         clampAcceleration( );
         positionChanged();
     }
     
     private void clampAcceleration() 
     {
-        float len = velocity.len();
-        if ( len > PLAYER_MAX_VELOCITY) {
-            velocity.scl( PLAYER_MAX_VELOCITY / len );
+        final float vx = table.velocityX[row];
+        final float vy = table.velocityY[row];
+        float len = (float) Math.sqrt( vx*vx + vy*vy );
+        if ( len > PLAYER_MAX_VELOCITY) 
+        {
+            final float scale = PLAYER_MAX_VELOCITY / len;
+            table.velocityX[row] = vx * scale;
+            table.velocityY[row] = vy * scale;
         }
     }    
     
     private void positionChanged() 
     {
-        updateBounds();
-        updateGunTipPosition();
+        positionChanged( getX() , getY() );
+    }
+    
+    /*
+     * Updates everything derived from the position, called with the current position.
+     */
+    void positionChanged(float x,float y) 
+    {
+        updateBounds( x , y );
+        updateGunTipPosition( x , y );
     }
     
     private void orientationChanged() {
-        updateGunTipPosition();
+        updateGunTipPosition( getX() , getY() );
     }   
     
-    private void updateGunTipPosition() 
+    private void updateGunTipPosition(float x,float y) 
     {
-        float orientX = position.x + orientation.x*OUTER_RADIUS_IN_PIXELS*2;
-        float orientY = position.y + orientation.y*OUTER_RADIUS_IN_PIXELS*2;
+        float orientX = x + orientation.x*OUTER_RADIUS_IN_PIXELS*2;
+        float orientY = y + orientation.y*OUTER_RADIUS_IN_PIXELS*2;
         this.gunTip.set( orientX , orientY );
     }
     
     @Override
     public boolean isVisible(Camera camera)
     {
-    	Utils.TMP_3.set(position.x, position.y , 0 );
+    	Utils.TMP_3.set( getX() , getY() , 0 );
         camera.project( Utils.TMP_3 );
         
         return Utils.TMP_3 .x >= 0 && Utils.TMP_3 .y >= 0 && 
         		Utils.TMP_3 .x < camera.viewportWidth && Utils.TMP_3 .y < camera.viewportHeight;
     }
     
-    @Override
-    public boolean tick(GameWorld world,float deltaSeconds)
-    {
-        if ( isInMotion() ) 
-        {
-           float deltaPosX = velocity.x * deltaSeconds*20;
-           float deltaPosY = velocity.y * deltaSeconds*20;
-           
-           position.x += deltaPosX;
-           position.y += deltaPosY;
-           
-           positionChanged();
-           
-           velocity.x *= 0.95f;
-           velocity.y *= 0.95f;
-        } else {
-            velocity.x = velocity.y = 0;
-        }
-        return isAlive;
-    }
-
     public final boolean isInMotion()
     {
-        return Math.abs( velocity.x ) > 0.70 || Math.abs( velocity.y ) > 0.70;
+        return Math.abs( getVelocityX() ) > 0.70 || Math.abs( getVelocityY() ) > 0.70;
     }
 
     @Override
@@ -0,0 +1,303 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.Arrays;
+
+import de.codesourcery.games.libgdxtest.core.ai.AgentController.IState;
+
+/**
+ * Component storage for {@link Entity entities}.
+ *
+ * Entities having the same set of components (their archetype) share a table that keeps
+ * each component in a dense array indexed by row. Systems iterate the tables having the
+ * components they need instead of visiting entities one by one.
+ *
+ * Removing an entity moves the last entity of its table into its row. An entity that is not part of a store
+ * keeps its components in a table of its own, so it can be read and modified at any time.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class EntityStore
+{
+    public static final int POSITION = 1;
+    public static final int VELOCITY = 1<<1;
+    public static final int SHIELD = 1<<2;
+    public static final int GUN = 1<<3;
+    public static final int AI = 1<<4;
+
+    /**
+     * Components every entity has.
+     */
+    public static final int ENTITY = POSITION|VELOCITY|SHIELD|GUN;
+
+    /**
+     * Components of entities controlled by the {@link de.codesourcery.games.libgdxtest.core.ai.AgentController}.
+     */
+    public static final int AGENT = ENTITY|AI;
+
+    // only a handful of archetypes exist, looked up by linear search
+    private Archetype[] archetypes = new Archetype[0];
+    private int size;
+
+    /**
+     * Entities sharing the same set of components.
+     */
+    public static final class Archetype
+    {
+        // NULL for the table of an entity that is not part of a store
+        final EntityStore store;
+        final int components;
+
+        int size;
+        Entity[] entities;
+        boolean[] alive;
+
+        // columns of components this archetype does not have are NULL
+        float[] x;
+        float[] y;
+        float[] velocityX;
+        float[] velocityY;
+        float[] shield;
+        float[] maxShield;
+        Gun[] gun;
+        IState[] state;
+
+        Archetype(EntityStore store,int components,int capacity)
+        {
+            this.store = store;
+            this.components = components;
+            entities = new Entity[ capacity ];
+            alive = new boolean[ capacity ];
+            if ( has( POSITION ) )
+            {
+                x = new float[ capacity ];
+                y = new float[ capacity ];
+            }
+            if ( has( VELOCITY ) )
+            {
+                velocityX = new float[ capacity ];
+                velocityY = new float[ capacity ];
+            }
+            if ( has( SHIELD ) )
+            {
+                shield = new float[ capacity ];
+                maxShield = new float[ capacity ];
+            }
+            if ( has( GUN ) ) {
+                gun = new Gun[ capacity ];
+            }
+            if ( has( AI ) ) {
+                state = new IState[ capacity ];
+            }
+        }
+
+        public int getComponents() {
+            return components;
+        }
+
+        public boolean has(int components) {
+            return ( this.components & components ) == components;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Entity getEntity(int row)
+        {
+            if ( row >= size ) {
+                throw new IndexOutOfBoundsException("Row "+row+" , size "+size);
+            }
+            return entities[row];
+        }
+
+        public boolean isAlive(int row) {
+            return alive[row];
+        }
+
+        public IState getState(int row) {
+            return state[row];
+        }
+
+        public void setState(int row,IState newState) {
+            state[row] = newState;
+        }
+
+        /*
+         * Appends a row, components are zero/NULL.
+         */
+        int add(Entity e)
+        {
+            if ( size == entities.length ) {
+                grow( size * 2 );
+            }
+            entities[size] = e;
+            alive[size] = true;
+            return size++;
+        }
+
+        /*
+         * Moves the last row into the given one.
+         */
+        void removeRow(int row)
+        {
+            final int last = --size;
+            if ( row != last )
+            {
+                copyRow( last , this , row );
+                entities[row] = entities[last];
+                entities[row].row = row;
+            }
+            entities[last] = null;
+            if ( gun != null ) {
+                gun[last] = null;
+            }
+            if ( state != null ) {
+                state[last] = null;
+            }
+        }
+
+        /*
+         * Copies the components both tables have.
+         */
+        void copyRow(int row,Archetype dst,int dstRow)
+        {
+            dst.alive[dstRow] = alive[row];
+            if ( x != null && dst.x != null )
+            {
+                dst.x[dstRow] = x[row];
+                dst.y[dstRow] = y[row];
+            }
+            if ( velocityX != null && dst.velocityX != null )
+            {
+                dst.velocityX[dstRow] = velocityX[row];
+                dst.velocityY[dstRow] = velocityY[row];
+            }
+            if ( shield != null && dst.shield != null )
+            {
+                dst.shield[dstRow] = shield[row];
+                dst.maxShield[dstRow] = maxShield[row];
+            }
+            if ( gun != null && dst.gun != null ) {
+                dst.gun[dstRow] = gun[row];
+            }
+            if ( state != null && dst.state != null ) {
+                dst.state[dstRow] = state[row];
+            }
+        }
+
+        private void grow(int capacity)
+        {
+            entities = Arrays.copyOf( entities , capacity );
+            alive = Arrays.copyOf( alive , capacity );
+            if ( x != null )
+            {
+                x = Arrays.copyOf( x , capacity );
+                y = Arrays.copyOf( y , capacity );
+            }
+            if ( velocityX != null )
+            {
+                velocityX = Arrays.copyOf( velocityX , capacity );
+                velocityY = Arrays.copyOf( velocityY , capacity );
+            }
+            if ( shield != null )
+            {
+                shield = Arrays.copyOf( shield , capacity );
+                maxShield = Arrays.copyOf( maxShield , capacity );
+            }
+            if ( gun != null ) {
+                gun = Arrays.copyOf( gun , capacity );
+            }
+            if ( state != null ) {
+                state = Arrays.copyOf( state , capacity );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entities.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getArchetypeCount() {
+        return archetypes.length;
+    }
+
+    public Archetype getArchetype(int index) {
+        return archetypes[index];
+    }
+
+    public boolean contains(Entity e) {
+        return e.table.store == this;
+    }
+
+    /**
+     * Adds an entity, moving its components into the table of the given archetype.
+     *
+     * @param e
+     * @param components archetype, needs to include {@link #ENTITY}. Components the entity did not have before start out as zero/<code>null</code>
+     */
+    public void add(Entity e,int components)
+    {
+        if ( ( components & ENTITY ) != ENTITY ) {
+            throw new IllegalArgumentException("Entities need at least components "+ENTITY+", got "+components);
+        }
+        if ( e.table.store != null ) {
+            throw new IllegalArgumentException("Already part of a store: "+e);
+        }
+        move( e , getOrCreateArchetype( components ) );
+        size++;
+    }
+
+    /**
+     * Removes an entity, it keeps its components in a table of its own.
+     *
+     * @return <code>false</code> if the entity was not part of this store
+     */
+    public boolean remove(Entity e)
+    {
+        if ( e.table.store != this ) {
+            return false;
+        }
+        move( e , new Archetype( null , e.table.components , 1 ) );
+        size--;
+        return true;
+    }
+
+    /**
+     * Sets the AI state of an entity with component {@link #AI}.
+     */
+    public void setState(Entity e,IState state)
+    {
+        if ( e.table.store != this || ! e.table.has( AI ) ) {
+            throw new IllegalArgumentException("Not an agent of this store: "+e);
+        }
+        e.table.state[e.row] = state;
+    }
+
+    private static void move(Entity e,Archetype dst)
+    {
+        final Archetype src = e.table;
+        final int srcRow = e.row;
+        final int dstRow = dst.add( e );
+        src.copyRow( srcRow , dst , dstRow );
+        src.removeRow( srcRow );
+        e.table = dst;
+        e.row = dstRow;
+    }
+
+    private Archetype getOrCreateArchetype(int components)
+    {
+        for ( Archetype a : archetypes )
+        {
+            if ( a.components == components ) {
+                return a;
+            }
+        }
+        final Archetype a = new Archetype( this , components , 16 );
+        archetypes = Arrays.copyOf( archetypes , archetypes.length + 1 );
+        archetypes[ archetypes.length - 1 ] = a;
+        return a;
+    }
+}
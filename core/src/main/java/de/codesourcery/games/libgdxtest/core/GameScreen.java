@@ -1,5 +1,7 @@
 package de.codesourcery.games.libgdxtest.core;
 
+import java.io.File;
+
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Input.Keys;
@@ -9,18 +11,45 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 
+import de.codesourcery.games.libgdxtest.core.ai.AgentController;
+import de.codesourcery.games.libgdxtest.core.ai.PathQueryService;
+import de.codesourcery.games.libgdxtest.core.world.BufferPool;
 import de.codesourcery.games.libgdxtest.core.world.ChunkManager;
 import de.codesourcery.games.libgdxtest.core.world.DefaultTileManager;
+import de.codesourcery.games.libgdxtest.core.world.FlowField;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
 import de.codesourcery.games.libgdxtest.core.world.TileFactory;
+import de.codesourcery.games.libgdxtest.core.world.TileLoader;
+import de.codesourcery.games.libgdxtest.core.world.TileTextureAtlas;
+import de.codesourcery.games.libgdxtest.core.world.WorldRegion;
 
 public class GameScreen implements Screen
 {
     private static final float SCROLL_BORDER_PROXIMITY_THRESHOLD = Entity.OUTER_RADIUS_IN_PIXELS*4; 
     
+    // 5x5 tiles still cover the whole screen at max. zoom
+    private static final int VIEW_SIZE = 5;
+    private static final float MAX_ZOOM = 8f;
+    private static final float ZOOM_STEP = 1.02f;
+    
+    // room for all visible tiles plus some spare slots, rounded up because
+    // GL10 only supports textures with power-of-two sizes
+    private static final int ATLAS_SLOTS_PER_SIDE = MathUtils.nextPowerOfTwo( VIEW_SIZE+1 );
+    
+    // visible tiles plus two rows/columns of prefetched tiles at full detail 
+    private static final long MAX_TILE_DATA_BYTES = (VIEW_SIZE*VIEW_SIZE + 2*VIEW_SIZE) * 512*512*(4+4L);
+    
+    // nav mesh around the player's starting position, 256x256 cells 
+    // of 62.5 world units each cover 16x16 tiles
+    private static final int NAV_MESH_SIZE = 256;
+    private static final int NAV_MESH_SCALE = 5;
+    private static final float WALKABLE_GROUND_LEVEL = 0.5f;
+    
     private int width;
     private int height;
     
@@ -28,6 +57,11 @@ public class GameScreen implements Screen
     private final Entity player = new Entity("Player #1", new Vector2(0,0) , new Vector2( 1,1 ) ) ;
     
     private final ChunkManager chunkManager;
+    private final TileLoader tileLoader;
+    private final DefaultTileManager tileManager;
+    private final TileTextureAtlas textureAtlas;
+    private final BufferPool bufferPool;
+    private final PathQueryService pathService;
     
     private BitmapFont font;
     
@@ -39,8 +73,15 @@ public class GameScreen implements Screen
     public GameScreen() 
     {
         Gdx.graphics.setDisplayMode( 400, 400 , true );
-        chunkManager = new ChunkManager();
-        chunkManager.setTileManager( new DefaultTileManager( new TileFactory(0xdeadbeef) ) );
+        chunkManager = new ChunkManager( VIEW_SIZE );
+        tileLoader = TileLoader.createDefaultLoader();
+        final File tileCacheDir = new File( System.getProperty("user.home") , ".libgdxtest/tilecache" );
+        bufferPool = new BufferPool();
+        final TileFactory tileFactory = new TileFactory(0xdeadbeef , tileLoader , tileCacheDir , bufferPool );
+        tileManager = new DefaultTileManager( tileFactory , MAX_TILE_DATA_BYTES );
+        textureAtlas = new TileTextureAtlas( tileFactory.getBackgroundSize() , ATLAS_SLOTS_PER_SIDE );
+        chunkManager.setTileManager( tileManager );
+        chunkManager.setTextureAtlas( textureAtlas );
         
         backgroundBatch = new SpriteBatch();
         shapeRenderer = new ShapeRenderer();
@@ -50,6 +91,17 @@ public class GameScreen implements Screen
         world = new GameWorld();
         world.setPlayer( player );
         
+        // outside of the nav mesh agents move straight towards their targets
+        final WorldRegion navRegion = TileFactory.getRegionAround( player.getX() , player.getY() , NAV_MESH_SIZE , NAV_MESH_SCALE );
+        final NavMesh navMesh = tileFactory.createNavMesh( navRegion );
+        final float cellSize = TileFactory.getSampleSpacing( NAV_MESH_SCALE );
+        pathService = PathQueryService.createDefaultService( navMesh , WALKABLE_GROUND_LEVEL );
+        
+        final AgentController agentController = world.getAgentController();
+        agentController.setNavMeshOrigin( TileFactory.getMinWorldX( navRegion ) , TileFactory.getMinWorldY( navRegion ) );
+        agentController.setPathQueryService( pathService , cellSize );
+        agentController.setFlowField( new FlowField( navMesh , WALKABLE_GROUND_LEVEL ) , cellSize );
+        
         final Entity agent1 = new Entity("Agent #1", new Vector2(50,50) , new Vector2( 1,1 ) ) ;
 //        world.addAgent( agent1 );
     }
@@ -63,7 +115,14 @@ public class GameScreen implements Screen
     }
     
     @Override
-    public void dispose() { }
+    public void dispose() 
+    { 
+        tileLoader.dispose();
+        chunkManager.dispose();
+        textureAtlas.dispose();
+        bufferPool.dispose();
+        pathService.dispose();
+    }
 
     @Override
     public void hide() { }
@@ -116,13 +175,25 @@ public class GameScreen implements Screen
         backgroundBatch.begin();
         backgroundBatch.setProjectionMatrix(new Matrix4().setToOrtho2D(0,0,Gdx.graphics.getWidth(),Gdx.graphics.getHeight()) );
         int y = height-20;
-        font.draw(backgroundBatch, "Player position: "+player.position, 10, y );
+        font.draw(backgroundBatch, "Player position: "+player.getX()+" / "+player.getY(), 10, y );
         y -= 20;
         font.draw(backgroundBatch, "Camera position: "+chunkManager.camera.position, 10, y );
         y -= 20;
         font.draw(backgroundBatch, "Current tile: "+chunkManager.cameraTileX+" / "+chunkManager.cameraTileY,10,y);
         y -= 20;
         font.draw(backgroundBatch, "FPS: "+Gdx.graphics.getFramesPerSecond(), 10, y );        	
+        y -= 20;
+        font.draw(backgroundBatch, "Prefetch: "+chunkManager.getPrefetcher(), 10, y );
+        y -= 20;
+        font.draw(backgroundBatch, "Detail level: "+chunkManager.getDetailLevel(), 10, y );
+        y -= 20;
+        font.draw(backgroundBatch, textureAtlas.toString(), 10, y );
+        y -= 20;
+        font.draw(backgroundBatch, tileManager.getDataCacheStatistics().toString(), 10, y );
+        y -= 20;
+        font.draw(backgroundBatch, bufferPool.toString(), 10, y );
+        y -= 20;
+        font.draw(backgroundBatch, pathService.toString(), 10, y );
         
         backgroundBatch.end();
         
@@ -149,6 +220,14 @@ public class GameScreen implements Screen
             player.moveDown();
         }
         
+        // zoom
+        if ( Gdx.input.isKeyPressed(Keys.Q) ) {
+            chunkManager.setZoom( Math.min( MAX_ZOOM , chunkManager.camera.zoom * ZOOM_STEP ) );
+        } 
+        else if ( Gdx.input.isKeyPressed(Keys.E) ) {
+            chunkManager.setZoom( Math.max( 1f , chunkManager.camera.zoom / ZOOM_STEP ) );
+        }
+        
         // handle shooting
         if ( Gdx.input.isButtonPressed( Input.Buttons.LEFT ) ) 
         {
@@ -164,15 +243,15 @@ public class GameScreen implements Screen
         coords.set( x , y , 0 );
         chunkManager.camera.unproject( coords );
         
-        float newOrientX = coords.x - player.position.x;
-        float newOrientY = coords.y - player.position.y;
+        float newOrientX = coords.x - player.getX();
+        float newOrientY = coords.y - player.getY();
         player.setOrientation( newOrientX , newOrientY );
     }
 
     private void maybeMoveCamera()
     {
         // transform player position to view coordinates
-        final Vector3 playerPosInScreenCoordinates = new Vector3( player.position.x , player.position.y , 0 );
+        final Vector3 playerPosInScreenCoordinates = new Vector3( player.getX() , player.getY() , 0 );
         chunkManager.camera.project( playerPosInScreenCoordinates ); // world -> screen coordinates
         
         Vector3 initialScreenCoordinates = new Vector3(playerPosInScreenCoordinates);
@@ -224,7 +303,7 @@ public class GameScreen implements Screen
             Vector3 playerPosWorldCoordinates = new Vector3(playerPosInScreenCoordinates.x , height - playerPosInScreenCoordinates.y - 1.0f , 0 ); 
             chunkManager.camera.unproject( playerPosWorldCoordinates ); // screen -> world coordinates
             
-            Vector3 cameraDelta = new Vector3( player.position.x , player.position.y , chunkManager.camera.position.z )
+            Vector3 cameraDelta = new Vector3( player.getX() , player.getY() , chunkManager.camera.position.z )
                 .sub(playerPosWorldCoordinates.x ,playerPosWorldCoordinates.y , 0);
             
             try 
@@ -233,10 +312,10 @@ public class GameScreen implements Screen
             } 
             catch(IllegalArgumentException e) 
             {
-                System.out.println("Initial player coordinates: "+player.position);
+                System.out.println("Initial player coordinates: "+player.getX()+" / "+player.getY());
                 System.out.println("Initial screen coordinates: "+initialScreenCoordinates);
                 System.out.println("Player world coordinates  : "+debugPlayerWorldCoords);
-                System.out.println("Offending delta in screen coordinates: "+posDeltaX+" / "+posDeltaY+" (player position: "+player.position+")");
+                System.out.println("Offending delta in screen coordinates: "+posDeltaX+" / "+posDeltaY+" (player position: "+player.getX()+" / "+player.getY()+")");
                 throw e;
             }
         }        
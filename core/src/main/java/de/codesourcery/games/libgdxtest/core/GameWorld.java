@@ -1,24 +1,32 @@
 package de.codesourcery.games.libgdxtest.core;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.collision.BoundingBox;
 
+import de.codesourcery.games.libgdxtest.core.EntityStore.Archetype;
 import de.codesourcery.games.libgdxtest.core.ai.AgentController;
 
 public class GameWorld 
 {
 	private static final int MAX_TEMPORARY_OBJECTS = 150;
+	private static final int MAX_PROJECTILES = 50000;
 
-	private final List<ITickListener> tickListeners = new ArrayList<>();  
-	private final List<IDrawable> drawables = new ArrayList<>();
-	private final List<IDrawable> temporaryObjects = new ArrayList<>(MAX_TEMPORARY_OBJECTS);
+	// all entities, including the player
+	private final EntityStore entities = new EntityStore();
 
-	private final List<ITickListener> temporaryObjectsAddedDuringTick = new ArrayList<>(MAX_TEMPORARY_OBJECTS);
+	// everything else, unordered, removing an object moves the last one into its slot
+	private final SlotRegistry<ITickListener> tickListeners = new SlotRegistry<>();  
+	private final SlotRegistry<IDrawable> drawables = new SlotRegistry<>();
+	private final BoundedRingBuffer<IDrawable> temporaryObjects = new BoundedRingBuffer<>(MAX_TEMPORARY_OBJECTS);
+
+	// all entities (except the player) by position
+	private final ISpatialIndex spatialIndex;
+
+	private final SlotRegistry<ITickListener> temporaryObjectsAddedDuringTick = new SlotRegistry<>(MAX_TEMPORARY_OBJECTS);
 	private final List<ITickListener> temporaryObjectsRemovedDuringTick = new ArrayList<>(MAX_TEMPORARY_OBJECTS);        
 
 	private Entity humanPlayer;
@@ -26,18 +34,35 @@ public class GameWorld
 	// flag used to signal that we're currently inside tick() and
 	// thus iterating over all ITickListeners. While inTick == true, adding/removing
 	// tick listeners gets queued until tick() returns. That way I don't have to
-	// copy the "tickListeners" ArrayList on each tick just to prevent a ConcurrentModificationException
+	// copy the "tickListeners" registry on each tick just to keep the iteration consistent
 	private boolean inTick = false;
 
-	private final AgentController agentController = new AgentController();
+	private final AgentController agentController = new AgentController( entities );
+	private final ProjectileSystem projectiles = new ProjectileSystem( MAX_PROJECTILES );
 
 	public interface IDrawableVisitor<T> {
 		public boolean visit(IDrawable d,T data);
 	}
 
+	/**
+	 * Creates a world that uses a grid with cells large enough to hold an entity as spatial index.
+	 */
 	public GameWorld()
 	{
+		this( new SpatialHashGrid( 2 * Entity.OUTER_RADIUS_IN_PIXELS ) );
+	}
+
+	public GameWorld(ISpatialIndex spatialIndex)
+	{
+		if ( spatialIndex == null ) {
+			throw new IllegalArgumentException("spatialIndex must not be NULL.");
+		}
+		if ( spatialIndex.size() != 0 ) {
+			throw new IllegalArgumentException("spatialIndex must be empty");
+		}
+		this.spatialIndex = spatialIndex;
 		addTickListener( agentController );
+		addTickListener( projectiles );
 	}
 
 	public AgentController getAgentController()
@@ -45,31 +70,60 @@ public class GameWorld
 		return agentController;
 	}
 
+	public ProjectileSystem getProjectiles()
+	{
+		return projectiles;
+	}
+
+	/**
+	 * Visits all entities (including the player) whose bounding box intersects a box.
+	 */
 	public <T> void visitEntities(BoundingBox box,IDrawableVisitor<T> visitor,T data) 
 	{
-		for ( IDrawable d : drawables ) 
-		{
-			if ( d.intersects( box ) ) 
-			{
-				if ( ! visitor.visit( d , data ) ) {
-					return;
-				}
-			}
+		if ( ! spatialIndex.visit( box , visitor , data ) ) {
+			return;
 		}
 		if ( humanPlayer.intersects( box ) ) {
 			visitor.visit( humanPlayer , data );
 		}
 	}
 
+	/**
+	 * Visits all entities (including the player) whose bounding box intersects the line segment from (x0,y0) to (x1,y1).
+	 */
+	public <T> void visitEntities(float x0,float y0,float x1,float y1,IDrawableVisitor<T> visitor,T data) 
+	{
+		if ( ! spatialIndex.visitSegment( x0 , y0 , x1 , y1 , visitor , data ) ) {
+			return;
+		}
+		if ( Utils.intersectsSegment( humanPlayer.getBounds() , x0 , y0 , x1 , y1 ) ) {
+			visitor.visit( humanPlayer , data );
+		}
+	}
+
 	public void render(ShapeRenderer renderer,Camera camera) 
 	{
-		for ( IDrawable d : drawables ) 
+		for ( int a = 0 , count = entities.getArchetypeCount() ; a < count ; a++ ) 
 		{
+			final Archetype table = entities.getArchetype( a );
+			for ( int row = 0 , len = table.size() ; row < len ; row++ ) 
+			{
+				final Entity e = table.getEntity( row );
+				if ( e != humanPlayer && e.isVisible( camera ) ) 
+				{
+					e.render( renderer );
+				}
+			}
+		}
+		for ( int i = 0 , len = drawables.size() ; i < len ; i++ ) 
+		{
+			final IDrawable d = drawables.get( i );
 			if ( d.isVisible( camera ) ) 
 			{
 				d.render( renderer );
 			}
 		}
+		projectiles.render( renderer , camera );
 		humanPlayer.render(renderer);
 	}
 
@@ -82,23 +136,23 @@ public class GameWorld
 			throw new IllegalStateException("Player already set");
 		}
 		this.humanPlayer = p;
-		addTickListener( p );
+		entities.add( p , EntityStore.ENTITY );
 	}
 
 	public void addTemporaryObject(IDrawable b) 
 	{
-		if ( temporaryObjects.size() == MAX_TEMPORARY_OBJECTS ) 
+		// evicts the oldest temporary object if there are too many
+		final IDrawable removed = temporaryObjects.add( b );
+		if ( removed != null ) 
 		{
 			System.out.println("Max. temp objects exceeded");
 			System.out.flush();
-			final IDrawable removed = temporaryObjects.remove(0);
 			if ( removed instanceof ITickListener) 
 			{
 				removeTickListener( (ITickListener) removed);
 			}
 			drawables.remove( removed );
 		}
-		temporaryObjects.add( b );
 		addDrawable( b );
 	}
 
@@ -107,8 +161,17 @@ public class GameWorld
 		return humanPlayer;
 	}
 
+	/**
+	 * Adds an object that is not an entity.
+	 * 
+	 * @see #addEntity(Entity)
+	 * @see #addAgent(Entity)
+	 */
 	public void addDrawable(IDrawable d)
 	{
+		if ( d instanceof Entity ) {
+			throw new IllegalArgumentException("Entities need to be added with addEntity() or addAgent(): "+d);
+		}
 		this.drawables.add( d );
 		if ( d instanceof ITickListener) 
 		{
@@ -121,14 +184,26 @@ public class GameWorld
 		inTick = true;
 		try 
 		{
-			for (Iterator<ITickListener> it = tickListeners.iterator(); it.hasNext();) 
+			for ( int i = 0 ; i < tickListeners.size() ; ) 
 			{
-				final ITickListener t = it.next();
+				final ITickListener t = tickListeners.get( i );
 				if ( ! t.tick( this , deltaSeconds ) ) 
 				{
-					it.remove();                
-					drawables.remove( t );
-					temporaryObjects.remove( t ); 
+					// moves the last listener into this slot, it gets ticked next
+					tickListeners.removeAt( i );
+					if ( t instanceof IDrawable && drawables.remove( (IDrawable) t ) ) 
+					{
+						temporaryObjects.remove( (IDrawable) t ); 
+					}
+					continue;
+				}
+				i++;
+			}
+			for ( int a = 0 , count = entities.getArchetypeCount() ; a < count ; a++ ) 
+			{
+				final Archetype table = entities.getArchetype( a );
+				if ( table.has( EntityStore.POSITION | EntityStore.VELOCITY ) ) {
+					move( table , deltaSeconds );
 				}
 			}
 			return true;
@@ -139,12 +214,18 @@ public class GameWorld
 			{
 				if ( ! temporaryObjectsRemovedDuringTick.isEmpty() ) 
 				{
-					tickListeners.removeAll( temporaryObjectsRemovedDuringTick );
-					temporaryObjectsAddedDuringTick.removeAll(temporaryObjectsRemovedDuringTick);
+					for ( ITickListener l : temporaryObjectsRemovedDuringTick ) 
+					{
+						tickListeners.remove( l );
+						temporaryObjectsAddedDuringTick.remove( l );
+					}
 					temporaryObjectsRemovedDuringTick.clear();
 				}
-				if ( ! temporaryObjectsAddedDuringTick.isEmpty() ) {
-					tickListeners.addAll( temporaryObjectsAddedDuringTick );
+				if ( ! temporaryObjectsAddedDuringTick.isEmpty() ) 
+				{
+					for ( int i = 0 , len = temporaryObjectsAddedDuringTick.size() ; i < len ; i++ ) {
+						tickListeners.add( temporaryObjectsAddedDuringTick.get( i ) );
+					}
 					temporaryObjectsAddedDuringTick.clear();
 				}
 			} finally {
@@ -153,10 +234,72 @@ public class GameWorld
 		}
 	}
 
+	/*
+	 * Moves all entities of an archetype and removes the dead ones.
+	 */
+	private void move(Archetype table,float deltaSeconds) 
+	{
+		// arrays do not change while iterating, removing an entity moves the last one into its row 
+		final float[] x = table.x;
+		final float[] y = table.y;
+		final float[] velocityX = table.velocityX;
+		final float[] velocityY = table.velocityY;
+		final boolean[] alive = table.alive;
+		for ( int row = 0 ; row < table.size ; ) 
+		{
+			final float vx = velocityX[row];
+			final float vy = velocityY[row];
+			if ( Math.abs( vx ) > 0.70 || Math.abs( vy ) > 0.70 ) 
+			{
+				final float newX = x[row] += vx * deltaSeconds*20;
+				final float newY = y[row] += vy * deltaSeconds*20;
+				velocityX[row] = vx * 0.95f;
+				velocityY[row] = vy * 0.95f;
+				final Entity e = table.entities[row];
+				e.positionChanged( newX , newY );
+				// moves are only picked up here
+				spatialIndex.update( e );
+			} else {
+				velocityX[row] = velocityY[row] = 0;
+			}
+			if ( ! alive[row] ) 
+			{
+				// moves the last entity into this row, it gets moved next
+				final Entity e = table.entities[row];
+				entities.remove( e );
+				spatialIndex.remove( e );
+				continue;
+			}
+			row++;
+		}
+	}
+
+	/**
+	 * Adds an entity that is not controlled by the {@link AgentController}.
+	 */
+	public void addEntity(Entity e)
+	{
+		entities.add( e , EntityStore.ENTITY );
+		spatialIndex.add( e );
+	}
+
+	/**
+	 * Moves an entity of this world (or the player) to a new position.
+	 */
+	public void moveEntity(Entity e,float x,float y)
+	{
+		if ( ! entities.contains( e ) ) {
+			throw new IllegalArgumentException("Not part of this world: "+e);
+		}
+		e.place( x , y );
+		spatialIndex.update( e );
+	}
+
 	public void addAgent(Entity agent1)
 	{
+		entities.add( agent1 , EntityStore.AGENT );
+		spatialIndex.add( agent1 );
 		agentController.addAgent( agent1 );
-		addDrawable( agent1 );
 	}
 
 	private void addTickListener(ITickListener l) 
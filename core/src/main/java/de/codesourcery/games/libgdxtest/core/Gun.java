@@ -102,7 +102,10 @@ public abstract class Gun
     
     public abstract boolean canShoot(long ts); 
     
-    protected abstract IBullet createBullet(Entity shooter,GameWorld world);
+    /**
+     * Fires a shot, rate of fire has been checked already.
+     */
+    protected abstract void fire(Entity shooter,GameWorld world);
     
     public boolean shoot(Entity shooter,GameWorld world) 
     {
@@ -112,9 +115,7 @@ public abstract class Gun
         }
         
         lastShotTimestamp = now;
-        final IBullet bullet = createBullet(  shooter , world );
-        lastBullet = bullet;
-        world.addTemporaryObject( bullet );   
+        fire( shooter , world );
         return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+/**
+ * Finds {@link IDrawable}s by position.
+ *
+ * Implementations only read bounding boxes in {@link #add(IDrawable)} and {@link #update(IDrawable)},
+ * {@link #update(IDrawable)} needs to be called whenever an object moved. 
+ * 
+ * Visitors must neither add nor remove objects nor run queries of their own.
+ * 
+ * @see SpatialHashGrid
+ * @see DynamicAABBTree
+ */
+public interface ISpatialIndex
+{
+    /**
+     * Adds an object, does nothing if it is already part of this index.
+     */
+    public void add(IDrawable d);
+
+    /**
+     * Removes an object.
+     *
+     * @return <code>false</code> if the object was not part of this index
+     */
+    public boolean remove(IDrawable d);
+
+    /**
+     * Updates an object's position after its bounding box changed.
+     *
+     * Does nothing if the object is not part of this index.
+     */
+    public void update(IDrawable d);
+
+    public boolean contains(IDrawable d);
+
+    public int size();
+
+    /**
+     * Visits all objects intersecting a bounding box, each of them once.
+     *
+     * @param box
+     * @param visitor
+     * @param data
+     * @return <code>false</code> if the visitor aborted the query
+     */
+    public <T> boolean visit(BoundingBox box,IDrawableVisitor<T> visitor,T data);
+
+    /**
+     * Visits all objects whose bounding box intersects a line segment, each of them once.
+     *
+     * Objects are not visited in any particular order, rays are queried as segments up to their max. length.
+     *
+     * @param x0
+     * @param y0
+     * @param x1
+     * @param y1
+     * @param visitor
+     * @param data
+     * @return <code>false</code> if the visitor aborted the query
+     */
+    public <T> boolean visitSegment(float x0,float y0,float x1,float y1,IDrawableVisitor<T> visitor,T data);
+}
@@ -1,5 +1,6 @@
 package de.codesourcery.games.libgdxtest.core;
 
+import com.badlogic.gdx.math.Vector2;
 
 public final class ProjectileGun extends Gun {
     
@@ -23,8 +24,9 @@ public final class ProjectileGun extends Gun {
     }
     
     @Override
-    protected IBullet createBullet(Entity shooter, GameWorld world)
+    protected void fire(Entity shooter, GameWorld world)
     {
-        return new Projectile( shooter , applyAccuracy(shooter.orientation), getMaxBulletVelocity() , getMaxRangeSquared() );
+        final Vector2 direction = applyAccuracy(shooter.orientation);
+        world.getProjectiles().add( shooter , direction.x , direction.y , getMaxBulletVelocity() , getMaxRangeSquared() );
     }
 }
\ No newline at end of file
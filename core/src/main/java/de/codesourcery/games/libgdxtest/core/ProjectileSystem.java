@@ -0,0 +1,237 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+/**
+ * All projectiles in flight, stored as parallel arrays instead of one object per projectile.
+ *
+ * Each tick first checks all projectiles for hits (querying the world's spatial index), then moves
+ * the survivors in a single loop. Projectiles are rendered in one batch.
+ *
+ * Projectiles that hit something or exceeded their range are removed by moving the last projectile into
+ * their slot, so indices of projectiles change during {@link #tick(GameWorld, float)}.
+ */
+public final class ProjectileSystem implements ITickListener
+{
+    public static final int RADIUS_IN_PIXELS = 5;
+
+    // projectiles only hit something if it intersects this box around their position
+    private static final float HIT_BOX_EXTENT = 1;
+
+    private final int maxProjectiles;
+
+    private int count;
+
+    private float[] x;
+    private float[] y;
+    private float[] velocityX;
+    private float[] velocityY;
+    private float[] originX;
+    private float[] originY;
+    private float[] maxRangeSquared;
+    private Entity[] shooter;
+    private boolean[] hit;
+
+    private final BoundingBox hitBox = new BoundingBox();
+    private final Hit currentHit = new Hit();
+
+    protected static final class Hit
+    {
+        public Entity shooter;
+        public Entity target;
+    }
+
+    private static final IDrawableVisitor<Hit> HIT_VISITOR = new IDrawableVisitor<Hit>() {
+
+        @Override
+        public boolean visit(IDrawable d,Hit hit)
+        {
+            // only entities are visited
+            if ( d != hit.shooter )
+            {
+                hit.target = (Entity) d;
+                return false;
+            }
+            return true;
+        }
+    };
+
+    /**
+     *
+     * @param maxProjectiles max. number of projectiles in flight
+     */
+    public ProjectileSystem(int maxProjectiles)
+    {
+        if ( maxProjectiles < 1 ) {
+            throw new IllegalArgumentException("Max. projectiles must be >= 1");
+        }
+        this.maxProjectiles = maxProjectiles;
+        allocate( Math.min( 256 , maxProjectiles ) );
+    }
+
+    /**
+     * Fires a projectile from the tip of the shooter's gun.
+     *
+     * @param shooter
+     * @param directionX
+     * @param directionY
+     * @param velocity speed in world units per second
+     * @param maxRangeSquared
+     * @return <code>false</code> if the max. number of projectiles is in flight already
+     */
+    public boolean add(Entity shooter,float directionX,float directionY,float velocity,float maxRangeSquared)
+    {
+        if ( count == maxProjectiles ) {
+            return false;
+        }
+        if ( count == x.length ) {
+            allocate( Math.min( maxProjectiles , x.length * 2 ) );
+        }
+        // same as normalizing and scaling a Vector2
+        final float len = (float) Math.sqrt( directionX*directionX + directionY*directionY );
+        final float dirX = len != 0 ? directionX / len : 0;
+        final float dirY = len != 0 ? directionY / len : 0;
+
+        final int i = count++;
+        this.x[i] = this.originX[i] = shooter.gunTip.x;
+        this.y[i] = this.originY[i] = shooter.gunTip.y;
+        this.velocityX[i] = dirX * velocity;
+        this.velocityY[i] = dirY * velocity;
+        this.maxRangeSquared[i] = maxRangeSquared;
+        this.shooter[i] = shooter;
+        this.hit[i] = false;
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getMaxProjectiles() {
+        return maxProjectiles;
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public Entity getShooter(int index) {
+        return shooter[index];
+    }
+
+    public void clear()
+    {
+        Arrays.fill( shooter , 0 , count , null );
+        count = 0;
+    }
+
+    @Override
+    public boolean tick(GameWorld world,float deltaSeconds)
+    {
+        // resolve hits at the current positions
+        final Hit h = currentHit;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            hitBox.min.set( x[i] - HIT_BOX_EXTENT , y[i] - HIT_BOX_EXTENT , 0 );
+            hitBox.max.set( x[i] + HIT_BOX_EXTENT , y[i] + HIT_BOX_EXTENT , 0 );
+            h.shooter = shooter[i];
+            h.target = null;
+            world.visitEntities( hitBox , HIT_VISITOR , h );
+            if ( h.target != null )
+            {
+                h.target.hitBy( shooter[i] );
+                hit[i] = true;
+            }
+        }
+        h.shooter = h.target = null;
+
+        // remove projectiles that hit something or are out of range, move the others
+        int i = 0;
+        while ( i < count )
+        {
+            final float dx = x[i] - originX[i];
+            final float dy = y[i] - originY[i];
+            if ( hit[i] || dx*dx + dy*dy > maxRangeSquared[i] )
+            {
+                remove( i );
+                continue;
+            }
+            x[i] += velocityX[i] * deltaSeconds;
+            y[i] += velocityY[i] * deltaSeconds;
+            i++;
+        }
+        return true;
+    }
+
+    public void render(ShapeRenderer renderer,Camera camera)
+    {
+        if ( count == 0 ) {
+            return;
+        }
+        final Frustum frustum = camera.frustum;
+        renderer.begin( ShapeType.Filled );
+        renderer.setColor( Color.RED );
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            Utils.TMP_3.set( x[i] , y[i] , 0 );
+            if ( frustum.pointInFrustum( Utils.TMP_3 ) ) {
+                renderer.circle( x[i] , y[i] , RADIUS_IN_PIXELS );
+            }
+        }
+        renderer.end();
+    }
+
+    private void remove(int i)
+    {
+        final int last = --count;
+        x[i] = x[last];
+        y[i] = y[last];
+        velocityX[i] = velocityX[last];
+        velocityY[i] = velocityY[last];
+        originX[i] = originX[last];
+        originY[i] = originY[last];
+        maxRangeSquared[i] = maxRangeSquared[last];
+        shooter[i] = shooter[last];
+        hit[i] = hit[last];
+        shooter[last] = null;
+    }
+
+    private void allocate(int capacity)
+    {
+        if ( x == null )
+        {
+            x = new float[ capacity ];
+            y = new float[ capacity ];
+            velocityX = new float[ capacity ];
+            velocityY = new float[ capacity ];
+            originX = new float[ capacity ];
+            originY = new float[ capacity ];
+            maxRangeSquared = new float[ capacity ];
+            shooter = new Entity[ capacity ];
+            hit = new boolean[ capacity ];
+            return;
+        }
+        x = Arrays.copyOf( x , capacity );
+        y = Arrays.copyOf( y , capacity );
+        velocityX = Arrays.copyOf( velocityX , capacity );
+        velocityY = Arrays.copyOf( velocityY , capacity );
+        originX = Arrays.copyOf( originX , capacity );
+        originY = Arrays.copyOf( originY , capacity );
+        maxRangeSquared = Arrays.copyOf( maxRangeSquared , capacity );
+        shooter = Arrays.copyOf( shooter , capacity );
+        hit = Arrays.copyOf( hit , capacity );
+    }
+}
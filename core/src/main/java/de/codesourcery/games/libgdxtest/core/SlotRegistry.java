@@ -0,0 +1,137 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Unordered set of objects (compared by identity) kept in a dense array.
+ *
+ * Objects are looked up by their slot in constant time. Removing an object moves the
+ * last one into its slot, so removal is constant time as well but changes the slot of (only) that object.
+ *
+ * Iterating by slot while removing is possible as long as the slot just visited gets visited again after removing its object:
+ * <pre>
+ * for ( int i = 0 ; i &lt; registry.size() ; ) {
+ *     if ( shouldRemove( registry.get( i ) ) ) {
+ *         registry.removeAt( i );
+ *     } else {
+ *         i++;
+ *     }
+ * }
+ * </pre>
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class SlotRegistry<T>
+{
+    private Object[] items;
+    private int size;
+
+    private final Map<T,Integer> slots = new IdentityHashMap<>();
+
+    public SlotRegistry() {
+        this( 16 );
+    }
+
+    public SlotRegistry(int initialCapacity) {
+        items = new Object[ Math.max( 1 , initialCapacity ) ];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(T item) {
+        return slots.containsKey( item );
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int slot)
+    {
+        if ( slot >= size ) {
+            throw new IndexOutOfBoundsException("Slot "+slot+" , size "+size);
+        }
+        return (T) items[slot];
+    }
+
+    /**
+     * Returns an object's slot.
+     *
+     * @return slot or -1 if the object is not part of this registry
+     */
+    public int slotOf(T item)
+    {
+        final Integer slot = slots.get( item );
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Adds an object to the end.
+     *
+     * @return <code>false</code> if the object is already part of this registry
+     */
+    public boolean add(T item)
+    {
+        if ( item == null ) {
+            throw new IllegalArgumentException("item must not be NULL");
+        }
+        if ( slots.containsKey( item ) ) {
+            return false;
+        }
+        if ( size == items.length ) {
+            items = Arrays.copyOf( items , size * 2 );
+        }
+        slots.put( item , size );
+        items[size++] = item;
+        return true;
+    }
+
+    /**
+     * Removes an object, moving the last object into its slot.
+     *
+     * @return <code>false</code> if the object was not part of this registry
+     */
+    public boolean remove(T item)
+    {
+        final Integer slot = slots.get( item );
+        if ( slot == null ) {
+            return false;
+        }
+        removeAt( slot );
+        return true;
+    }
+
+    /**
+     * Removes the object in a slot, moving the last object into it.
+     *
+     * @return the removed object
+     */
+    @SuppressWarnings("unchecked")
+    public T removeAt(int slot)
+    {
+        final T removed = get( slot );
+        slots.remove( removed );
+
+        final int last = --size;
+        if ( slot != last )
+        {
+            final T moved = (T) items[last];
+            items[slot] = moved;
+            slots.put( moved , slot );
+        }
+        items[last] = null;
+        return removed;
+    }
+
+    public void clear()
+    {
+        Arrays.fill( items , 0 , size , null );
+        size = 0;
+        slots.clear();
+    }
+}
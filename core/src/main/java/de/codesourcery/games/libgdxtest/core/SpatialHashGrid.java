@@ -0,0 +1,371 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+/**
+ * Spatial index that keeps {@link IDrawable}s in the cells of a uniform grid covered by their bounding boxes.
+ *
+ * Works best if most objects are about the size of a cell, see {@link DynamicAABBTree} for objects of very different sizes.
+ *
+ * The (unbounded) grid is mapped onto a hash table of buckets, so only cells that actually
+ * contain something use memory. Objects covering more than {@link #MAX_CELLS_PER_AXIS} cells along
+ * an axis are kept in a separate list that every query checks.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class SpatialHashGrid implements ISpatialIndex
+{
+    // large enough for beams fired by the default guns
+    private static final int MAX_CELLS_PER_AXIS = 8;
+
+    private static final int INITIAL_BUCKET_COUNT = 1024;
+
+    private final float cellSize;
+
+    private Bucket[] buckets = new Bucket[ INITIAL_BUCKET_COUNT ];
+    private int bucketMask = INITIAL_BUCKET_COUNT-1;
+
+    private final Map<IDrawable,Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> oversized = new ArrayList<>();
+
+    // entries already tested by the current query carry this stamp
+    private int queryStamp;
+
+    protected static final class Entry
+    {
+        public final IDrawable drawable;
+
+        // covered cells, inclusive
+        public int minX;
+        public int minY;
+        public int maxX;
+        public int maxY;
+
+        public boolean isOversized;
+        public int stamp;
+
+        public Entry(IDrawable drawable) {
+            this.drawable = drawable;
+        }
+    }
+
+    protected static final class Bucket
+    {
+        public Entry[] entries = new Entry[4];
+        public int size;
+
+        public void add(Entry e)
+        {
+            if ( size == entries.length )
+            {
+                final Entry[] tmp = new Entry[ size*2 ];
+                System.arraycopy( entries , 0 , tmp , 0 , size );
+                entries = tmp;
+            }
+            entries[size++] = e;
+        }
+
+        public void remove(Entry e)
+        {
+            for ( int i = 0 ; i < size ; i++ )
+            {
+                if ( entries[i] == e )
+                {
+                    entries[i] = entries[--size];
+                    entries[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param cellSize width and height of a grid cell in world units
+     */
+    public SpatialHashGrid(float cellSize)
+    {
+        if ( cellSize <= 0 ) {
+            throw new IllegalArgumentException("Cell size must be > 0");
+        }
+        this.cellSize = cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean contains(IDrawable d) {
+        return entries.containsKey( d );
+    }
+
+    @Override
+    public void add(IDrawable d)
+    {
+        if ( entries.containsKey( d ) ) {
+            return;
+        }
+        if ( entries.size() == buckets.length ) {
+            rehash( buckets.length*2 );
+        }
+        final Entry e = new Entry( d );
+        setCells( e , d.getBounds() );
+        insert( e );
+        entries.put( d , e );
+    }
+
+    @Override
+    public boolean remove(IDrawable d)
+    {
+        final Entry e = entries.remove( d );
+        if ( e == null ) {
+            return false;
+        }
+        delete( e );
+        return true;
+    }
+
+    /**
+     * Moves an object to the cells covered by its current bounding box.
+     *
+     * Does nothing if the object is not part of this index or still covers the same cells.
+     */
+    @Override
+    public void update(IDrawable d)
+    {
+        final Entry e = entries.get( d );
+        if ( e == null ) {
+            return;
+        }
+        final BoundingBox bounds = d.getBounds();
+        if ( toCell( bounds.min.x ) == e.minX && toCell( bounds.min.y ) == e.minY &&
+             toCell( bounds.max.x ) == e.maxX && toCell( bounds.max.y ) == e.maxY )
+        {
+            return;
+        }
+        delete( e );
+        setCells( e , bounds );
+        insert( e );
+    }
+
+    @Override
+    public <T> boolean visit(BoundingBox box,IDrawableVisitor<T> visitor,T data)
+    {
+        final int stamp = nextStamp();
+
+        final int minX = toCell( box.min.x );
+        final int minY = toCell( box.min.y );
+        final int maxX = toCell( box.max.x );
+        final int maxY = toCell( box.max.y );
+
+        final long cellCount = ( maxX - (long) minX + 1 ) * ( maxY - (long) minY + 1 );
+        if ( cellCount > buckets.length )
+        {
+            // cheaper to test everything
+            for ( Entry e : entries.values() )
+            {
+                if ( ! visit( e , stamp , box , visitor , data ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for ( int y = minY ; y <= maxY ; y++ )
+        {
+            for ( int x = minX ; x <= maxX ; x++ )
+            {
+                final Bucket bucket = buckets[ hash( x , y ) ];
+                if ( bucket == null ) {
+                    continue;
+                }
+                // entries of other cells in the same bucket are filtered by their bounding boxes
+                final Entry[] candidates = bucket.entries;
+                for ( int i = 0 , len = bucket.size ; i < len ; i++ )
+                {
+                    if ( ! visit( candidates[i] , stamp , box , visitor , data ) ) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        for ( int i = 0 , len = oversized.size() ; i < len ; i++ )
+        {
+            if ( ! visit( oversized.get(i) , stamp , box , visitor , data ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public <T> boolean visitSegment(float x0,float y0,float x1,float y1,IDrawableVisitor<T> visitor,T data)
+    {
+        final int stamp = nextStamp();
+
+        final int minY = toCell( Math.min( y0 , y1 ) );
+        final int maxY = toCell( Math.max( y0 , y1 ) );
+        final int columns = Math.abs( toCell( x1 ) - toCell( x0 ) ) + 1;
+        if ( maxY - (long) minY + 1 + columns > buckets.length )
+        {
+            // cheaper to test everything
+            for ( Entry e : entries.values() )
+            {
+                if ( ! visitSegment( e , stamp , x0 , y0 , x1 , y1 , visitor , data ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // visit the cells the segment passes through row by row
+        final float dy = y1 - y0;
+        for ( int y = minY ; y <= maxY ; y++ )
+        {
+            final int minX;
+            final int maxX;
+            if ( dy == 0 ) {
+                minX = toCell( Math.min( x0 , x1 ) );
+                maxX = toCell( Math.max( x0 , x1 ) );
+            }
+            else
+            {
+                // part of the segment inside this row
+                final float t0 = Math.max( 0 , Math.min( 1 , ( y * cellSize - y0 ) / dy ) );
+                final float t1 = Math.max( 0 , Math.min( 1 , ( ( y + 1 ) * cellSize - y0 ) / dy ) );
+                final float rowX0 = x0 + ( x1 - x0 ) * t0;
+                final float rowX1 = x0 + ( x1 - x0 ) * t1;
+                minX = toCell( Math.min( rowX0 , rowX1 ) );
+                maxX = toCell( Math.max( rowX0 , rowX1 ) );
+            }
+            for ( int x = minX ; x <= maxX ; x++ )
+            {
+                final Bucket bucket = buckets[ hash( x , y ) ];
+                if ( bucket == null ) {
+                    continue;
+                }
+                final Entry[] candidates = bucket.entries;
+                for ( int i = 0 , len = bucket.size ; i < len ; i++ )
+                {
+                    if ( ! visitSegment( candidates[i] , stamp , x0 , y0 , x1 , y1 , visitor , data ) ) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        for ( int i = 0 , len = oversized.size() ; i < len ; i++ )
+        {
+            if ( ! visitSegment( oversized.get(i) , stamp , x0 , y0 , x1 , y1 , visitor , data ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> boolean visitSegment(Entry e,int stamp,float x0,float y0,float x1,float y1,IDrawableVisitor<T> visitor,T data)
+    {
+        if ( e.stamp == stamp ) {
+            return true;
+        }
+        e.stamp = stamp;
+        return ! Utils.intersectsSegment( e.drawable.getBounds() , x0 , y0 , x1 , y1 ) || visitor.visit( e.drawable , data );
+    }
+
+    private static <T> boolean visit(Entry e,int stamp,BoundingBox box,IDrawableVisitor<T> visitor,T data)
+    {
+        if ( e.stamp == stamp ) {
+            return true;
+        }
+        e.stamp = stamp;
+        return ! e.drawable.intersects( box ) || visitor.visit( e.drawable , data );
+    }
+
+    private int nextStamp()
+    {
+        if ( ++queryStamp == 0 )
+        {
+            // wrapped around, make sure no entry carries a stamp that could be handed out again
+            for ( Entry e : entries.values() ) {
+                e.stamp = 0;
+            }
+            queryStamp = 1;
+        }
+        return queryStamp;
+    }
+
+    private int toCell(float coordinate) {
+        return (int) Math.floor( coordinate / cellSize );
+    }
+
+    private int hash(int x,int y) {
+        return ( x * 73856093 ^ y * 19349663 ) & bucketMask;
+    }
+
+    private void setCells(Entry e,BoundingBox bounds)
+    {
+        e.minX = toCell( bounds.min.x );
+        e.minY = toCell( bounds.min.y );
+        e.maxX = toCell( bounds.max.x );
+        e.maxY = toCell( bounds.max.y );
+        e.isOversized = e.maxX - e.minX >= MAX_CELLS_PER_AXIS || e.maxY - e.minY >= MAX_CELLS_PER_AXIS;
+    }
+
+    private void insert(Entry e)
+    {
+        if ( e.isOversized ) {
+            oversized.add( e );
+            return;
+        }
+        for ( int y = e.minY ; y <= e.maxY ; y++ )
+        {
+            for ( int x = e.minX ; x <= e.maxX ; x++ )
+            {
+                final int index = hash( x , y );
+                Bucket bucket = buckets[index];
+                if ( bucket == null ) {
+                    bucket = buckets[index] = new Bucket();
+                }
+                bucket.add( e );
+            }
+        }
+    }
+
+    private void delete(Entry e)
+    {
+        if ( e.isOversized ) {
+            oversized.remove( e );
+            return;
+        }
+        for ( int y = e.minY ; y <= e.maxY ; y++ )
+        {
+            for ( int x = e.minX ; x <= e.maxX ; x++ ) {
+                buckets[ hash( x , y ) ].remove( e );
+            }
+        }
+    }
+
+    private void rehash(int bucketCount)
+    {
+        buckets = new Bucket[ bucketCount ];
+        bucketMask = bucketCount-1;
+        oversized.clear();
+        for ( Entry e : entries.values() ) {
+            insert( e );
+        }
+    }
+}
@@ -22,10 +22,61 @@ public class Utils
         return true;        
     }
     
+    /**
+     * Returns whether the line segment from (x0,y0) to (x1,y1) intersects a bounding box (ignoring Z).
+     */
+    public static boolean intersectsSegment(BoundingBox box,float x0,float y0,float x1,float y1) 
+    {
+        return intersectsSegment( box.min.x , box.min.y , box.max.x , box.max.y , x0 , y0 , x1 , y1 );
+    }
+    
+    public static boolean intersectsSegment(float minX,float minY,float maxX,float maxY,float x0,float y0,float x1,float y1) 
+    {
+        // clip the segment's parameter range [0,1] against both slabs
+        float tMin = 0;
+        float tMax = 1;
+        
+        final float dx = x1 - x0;
+        if ( dx == 0 ) 
+        {
+            if ( x0 < minX || x0 > maxX ) {
+                return false;
+            }
+        } 
+        else 
+        {
+            float t0 = ( minX - x0 ) / dx;
+            float t1 = ( maxX - x0 ) / dx;
+            if ( t0 > t1 ) {
+                final float tmp = t0;
+                t0 = t1;
+                t1 = tmp;
+            }
+            tMin = Math.max( tMin , t0 );
+            tMax = Math.min( tMax , t1 );
+            if ( tMin > tMax ) {
+                return false;
+            }
+        }
+        
+        final float dy = y1 - y0;
+        if ( dy == 0 ) {
+            return y0 >= minY && y0 <= maxY;
+        } 
+        float t0 = ( minY - y0 ) / dy;
+        float t1 = ( maxY - y0 ) / dy;
+        if ( t0 > t1 ) {
+            final float tmp = t0;
+            t0 = t1;
+            t1 = tmp;
+        }
+        return Math.max( tMin , t0 ) <= Math.min( tMax , t1 );
+    }
+    
     public static float squaredDistance(Entity e1,Entity e2) 
     {
-        float dx = e2.position.x - e1.position.x;
-        float dy = e2.position.y - e1.position.y;
+        float dx = e2.getX() - e1.getX();
+        float dy = e2.getY() - e1.getY();
         return dx*dx+dy*dy;
     }    
     
@@ -1,42 +1,62 @@
 package de.codesourcery.games.libgdxtest.core.ai;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.badlogic.gdx.math.collision.BoundingBox;
 
 import de.codesourcery.games.libgdxtest.core.Entity;
+import de.codesourcery.games.libgdxtest.core.EntityStore;
+import de.codesourcery.games.libgdxtest.core.EntityStore.Archetype;
 import de.codesourcery.games.libgdxtest.core.GameWorld;
 import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
 import de.codesourcery.games.libgdxtest.core.IDrawable;
 import de.codesourcery.games.libgdxtest.core.ITickListener;
 import de.codesourcery.games.libgdxtest.core.Utils;
+import de.codesourcery.games.libgdxtest.core.ai.PathQueryService.PathRequest;
+import de.codesourcery.games.libgdxtest.core.world.FlowField;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
 
 public class AgentController implements ITickListener
 {
     public static final float VIEW_RANGE = 200;
     
+    // a new path is requested once the target moved this many nav mesh cells away from the end of the current path
+    private static final int REPATH_DISTANCE = 4;
+    
+    // max. number of nav mesh nodes the flow field towards the player gets updated for per tick
+    private static final int FLOW_FIELD_NODES_PER_TICK = 20000;
+    
     private final BoundingBox tmpBounds = new BoundingBox();
     
     private final IState SEARCHING = new Searching();
     
-    private final Map<Entity,StateHolder> statesByAgent = new HashMap<>();
+    // agents are the entities having component AI, their state is stored there as well
+    private final EntityStore entities;
+
+    // may be NULL, agents move straight towards their targets then
+    private PathQueryService pathService;
+    // may be NULL, directions towards the player
+    private FlowField flowField;
+    // world units covered by a cell of the path query service's nav mesh
+    private float pathCellSize;
+    // world units covered by a cell of the flow field's nav mesh
+    private float flowFieldCellSize;
+    // world coordinates of the bottom-left corner of nav mesh cell (0,0)
+    private float navMeshOriginX;
+    private float navMeshOriginY;
 
     public interface IState {
         public IState act(Entity agent,GameWorld world);
     }
     
-    protected static final class StateHolder 
+    public AgentController(EntityStore entities)
     {
-        public IState currentState;
-
-        public StateHolder(IState currentState)
-        {
-            this.currentState = currentState;
+        if ( entities == null ) {
+            throw new IllegalArgumentException("entities must not be NULL");
         }
+        this.entities = entities;
     }
-
+    
     protected static final class FindNearestResult 
     {
     	public final Entity queryingAgent;
@@ -56,7 +76,8 @@ public class AgentController implements ITickListener
 			@Override
 			public boolean visit(IDrawable d,FindNearestResult result) 
 			{
-				if ( d != result.queryingAgent && d instanceof Entity) 
+				// only entities are visited
+				if ( d != result.queryingAgent ) 
 				{
 		            final float dist = Utils.squaredDistance(result.queryingAgent,(Entity) d);
 					if ( result.closestTarget == null || dist < result.distanceSquared ) 
@@ -91,6 +112,8 @@ public class AgentController implements ITickListener
     protected final class Attacking implements IState 
     {
         private final Entity target;
+        // kept so that a path that is being followed survives switching states
+        private MoveTowards moveTowards;
         
         private Attacking(Entity target)
         {
@@ -106,20 +129,28 @@ public class AgentController implements ITickListener
         @Override
         public IState act(Entity agent,GameWorld world)
         {
-            if ( ! target.isAlive ) {
+            if ( ! target.isAlive() ) 
+            {
+                if ( moveTowards != null ) {
+                    moveTowards.cancelPath();
+                }
                 return SEARCHING;
             }
             
             float distanceSquared = Utils.squaredDistance( agent,target);
             
             // if target is too far away to reach it, move closer first
-            if ( distanceSquared > agent.gun.getMaxRangeSquared() ) {
-                return new MoveTowards( target , this );
+            if ( distanceSquared > agent.getGun().getMaxRangeSquared() ) 
+            {
+                if ( moveTowards == null ) {
+                    moveTowards = new MoveTowards( target , this );
+                }
+                return moveTowards;
             }
             
             // target is close enough, aim and shoot
-            float aimX = target.position.x - agent.position.x;
-            float aimY = target.position.y - agent.position.y;
+            float aimX = target.getX() - agent.getX();
+            float aimY = target.getY() - agent.getY();
             
             agent.setOrientation( aimX , aimY );
             agent.shoot( world );
@@ -132,6 +163,11 @@ public class AgentController implements ITickListener
         private final Entity target;
         private final IState nextState;
         
+        // path being followed, NULL if there is none
+        private PathRequest request;
+        private Path path;
+        private int nextNode;
+        
         private MoveTowards(Entity target,IState nextState)
         {
             this.target = target;
@@ -147,46 +183,233 @@ public class AgentController implements ITickListener
         @Override
         public IState act(Entity agent,GameWorld world)
         {
-            if ( target.isAlive ) 
+            if ( target.isAlive() ) 
             {
-                float dx = target.position.x - agent.position.x;
-                if ( Math.abs(dx) > 10 ) 
-                {
-                    if ( dx > 0 ) {
-                        agent.moveRight();
-                    } else {
-                        agent.moveLeft();
-                    }
+                // agents chasing the player share a single flow field
+                if ( target == world.getPlayer() && followFlowField( agent ) ) {
+                    return nextState;
+                }
+                if ( pathService != null ) {
+                    updatePath( agent );
                 }
-                float dy = target.position.y - agent.position.y;
-                if ( Math.abs(dy) > 10 ) 
+                if ( path != null && nextNode < path.path.size() ) 
                 {
-                    if ( dy > 0 ) {
-                        agent.moveUp();
-                    } else {
-                        agent.moveDown();
+                    final PathNode node = path.path.get( nextNode );
+                    if ( toCellX( agent.getX() , pathCellSize ) == node.x && toCellY( agent.getY() , pathCellSize ) == node.y ) {
+                        nextNode++;
                     }
-                }     
+                    // head for the center of the next cell
+                    moveTowards( agent , toWorldX( node.x , pathCellSize ) , toWorldY( node.y , pathCellSize ) );
+                } else {
+                    moveTowards( agent , target.getX() , target.getY() );
+                }
             }
             return nextState;
         }
+        
+        private void updatePath(Entity agent) 
+        {
+            if ( request != null && request.isDone() ) 
+            {
+                path = request.getPath();
+                nextNode = 1;
+                request = null;
+            }
+            if ( request != null ) {
+                return;
+            }
+            final int dstX = toCellX( target.getX() , pathCellSize );
+            final int dstY = toCellY( target.getY() , pathCellSize );
+            if ( path != null && ! path.path.isEmpty() ) 
+            {
+                final PathNode end = path.path.get( path.path.size() - 1 );
+                if ( Math.max( Math.abs( end.x - dstX ) , Math.abs( end.y - dstY ) ) < REPATH_DISTANCE ) {
+                    return;
+                }
+            }
+            final int startX = toCellX( agent.getX() , pathCellSize );
+            final int startY = toCellY( agent.getY() , pathCellSize );
+            final NavMesh mesh = pathService.getNavMesh();
+            if ( isOnNavMesh( mesh , startX , startY ) && isOnNavMesh( mesh , dstX , dstY ) ) {
+                request = pathService.submit( startX , startY , dstX , dstY );
+            } else {
+                path = null;
+            }
+        }
+        
+        private boolean followFlowField(Entity agent) 
+        {
+            if ( flowField == null ) {
+                return false;
+            }
+            final int x = toCellX( agent.getX() , flowFieldCellSize );
+            final int y = toCellY( agent.getY() , flowFieldCellSize );
+            if ( ! isOnNavMesh( flowField.getNavMesh() , x , y ) || ! flowField.isReachable( x , y ) ) {
+                return false;
+            }
+            // no need for a path of our own anymore
+            cancelPath();
+            final int nextX = x + flowField.getDirectionX( x , y );
+            final int nextY = y + flowField.getDirectionY( x , y );
+            if ( nextX == x && nextY == y ) {
+                // in the target's cell
+                moveTowards( agent , target.getX() , target.getY() );
+            } else {
+                moveTowards( agent , toWorldX( nextX , flowFieldCellSize ) , toWorldY( nextY , flowFieldCellSize ) );
+            }
+            return true;
+        }
+        
+        public void cancelPath() 
+        {
+            if ( request != null ) {
+                request.cancel();
+                request = null;
+            }
+            path = null;
+        }
+        
+        private void moveTowards(Entity agent,float x,float y) 
+        {
+            float dx = x - agent.getX();
+            if ( Math.abs(dx) > 10 ) 
+            {
+                if ( dx > 0 ) {
+                    agent.moveRight();
+                } else {
+                    agent.moveLeft();
+                }
+            }
+            float dy = y - agent.getY();
+            if ( Math.abs(dy) > 10 ) 
+            {
+                if ( dy > 0 ) {
+                    agent.moveUp();
+                } else {
+                    agent.moveDown();
+                }
+            }     
+        }
+    }
+    
+    /**
+     * Makes agents follow paths found by a path query service instead of 
+     * moving straight towards their targets.
+     * 
+     * Nav mesh cell <code>(x,y)</code> covers world coordinates <code>originX+x*cellSize...originX+(x+1)*cellSize</code> and
+     * <code>originY+y*cellSize...originY+(y+1)*cellSize</code>.
+     * 
+     * @param service service to use, <code>null</code> to move straight towards targets
+     * @param cellSize world units covered by a nav mesh cell, must match the flow field's cell size (if any). Ignored if the service is <code>null</code>
+     * @see #setFlowField(FlowField, float)
+     * @see #setNavMeshOrigin(float, float)
+     */
+    public void setPathQueryService(PathQueryService service,float cellSize) 
+    {
+        if ( service != null ) 
+        {
+            checkCellSize( cellSize , flowField != null , flowFieldCellSize );
+            this.pathCellSize = cellSize;
+        } else {
+            this.pathCellSize = 0;
+        }
+        this.pathService = service;
+    }
+    
+    public PathQueryService getPathQueryService() {
+        return pathService;
+    }
+    
+    /**
+     * Makes agents chasing the player follow a flow field instead of searching paths.
+     * 
+     * The field's target gets updated every tick, it needs to cover the same
+     * world area as the path query service's nav mesh (if any).
+     * 
+     * @param field field to use, <code>null</code> to search paths/move straight towards the player
+     * @param cellSize world units covered by a nav mesh cell, must match the path query service's cell size (if any). Ignored if the field is <code>null</code>
+     * @see #setPathQueryService(PathQueryService, float)
+     */
+    public void setFlowField(FlowField field,float cellSize) 
+    {
+        if ( field != null ) 
+        {
+            checkCellSize( cellSize , pathService != null , pathCellSize );
+            this.flowFieldCellSize = cellSize;
+        } else {
+            this.flowFieldCellSize = 0;
+        }
+        this.flowField = field;
     }
     
+    private static void checkCellSize(float cellSize,boolean otherInUse,float otherCellSize) 
+    {
+        if ( ! ( cellSize > 0 ) || Float.isInfinite( cellSize ) ) {
+            throw new IllegalArgumentException("Cell size must be > 0, got "+cellSize);
+        }
+        if ( otherInUse && cellSize != otherCellSize ) {
+            throw new IllegalArgumentException("Cell size "+cellSize+" does not match the cell size "+otherCellSize+" already in use");
+        }
+    }
+    
+    public FlowField getFlowField() {
+        return flowField;
+    }
+    
+    /**
+     * Sets the world coordinates of the bottom-left corner of nav mesh cell <code>(0,0)</code>,
+     * shared by the path query service and the flow field. Defaults to the world origin.
+     * 
+     * @param originX
+     * @param originY
+     */
+    public void setNavMeshOrigin(float originX,float originY) 
+    {
+        this.navMeshOriginX = originX;
+        this.navMeshOriginY = originY;
+    }
+    
+    private int toCellX(float worldX,float cellSize) {
+        return (int) Math.floor( ( worldX - navMeshOriginX ) / cellSize );
+    }
+    
+    private int toCellY(float worldY,float cellSize) {
+        return (int) Math.floor( ( worldY - navMeshOriginY ) / cellSize );
+    }
+    
+    // world X coordinate of a cell's center
+    private float toWorldX(int cellX,float cellSize) {
+        return navMeshOriginX + ( cellX + 0.5f ) * cellSize;
+    }
+    
+    private float toWorldY(int cellY,float cellSize) {
+        return navMeshOriginY + ( cellY + 0.5f ) * cellSize;
+    }
+    
+    private static boolean isOnNavMesh(NavMesh mesh,int x,int y) {
+        return x >= 0 && y >= 0 && x < mesh.width && y < mesh.width;
+    }
+    
+    /**
+     * Starts controlling an agent.
+     * 
+     * @param a agent, needs to be part of this controller's entity store and have component {@link EntityStore#AI}
+     */
     public void addAgent(Entity a) 
     {
         if (a == null) {
             throw new IllegalArgumentException("agent must not be NULL.");
         }
-        this.statesByAgent.put( a , new StateHolder(SEARCHING) );
+        entities.setState( a , SEARCHING );
     }
     
     protected void getAgentFieldOfView(Entity agent,BoundingBox bounds)
     {
-        float minX = agent.position.x - VIEW_RANGE;
-        float maxX = agent.position.x + VIEW_RANGE;
+        float minX = agent.getX() - VIEW_RANGE;
+        float maxX = agent.getX() + VIEW_RANGE;
         
-        float minY = agent.position.y - VIEW_RANGE;
-        float maxY = agent.position.y + VIEW_RANGE;        
+        float minY = agent.getY() - VIEW_RANGE;
+        float maxY = agent.getY() + VIEW_RANGE;        
         
         bounds.min.set( minX , minY , 0 );
         bounds.max.set( maxX , maxY , 0 );
@@ -195,13 +418,31 @@ public class AgentController implements ITickListener
     @Override
     public boolean tick(GameWorld world,float deltaSeconds)
     {
-        for ( Entry<Entity, StateHolder> entry : statesByAgent.entrySet() ) 
+        if ( pathService != null ) {
+            pathService.deliverResults();
+        }
+        final Entity player = world.getPlayer();
+        if ( flowField != null && player != null ) 
+        {
+            final int x = toCellX( player.getX() , flowFieldCellSize );
+            final int y = toCellY( player.getY() , flowFieldCellSize );
+            if ( isOnNavMesh( flowField.getNavMesh() , x , y ) ) {
+                flowField.setTarget( x , y );
+            }
+            flowField.update( FLOW_FIELD_NODES_PER_TICK );
+        }
+        for ( int a = 0 , count = entities.getArchetypeCount() ; a < count ; a++ ) 
         {
-        	if ( entry.getKey().isAlive ) 
-        	{
-        		final IState newState = entry.getValue().currentState.act( entry.getKey() , world );
-        		entry.getValue().currentState = newState;
-        	}
+            final Archetype agents = entities.getArchetype( a );
+            if ( agents.has( EntityStore.AI ) ) 
+            {
+                for ( int row = 0 , len = agents.size() ; row < len ; row++ ) 
+                {
+                    if ( agents.isAlive( row ) ) {
+                        agents.setState( row , agents.getState( row ).act( agents.getEntity( row ) , world ) );
+                    }
+                }
+            }
         }
         return true;
     }
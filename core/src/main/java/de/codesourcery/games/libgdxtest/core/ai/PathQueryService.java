@@ -0,0 +1,382 @@
+package de.codesourcery.games.libgdxtest.core.ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+
+/**
+ * Resolves path requests on background threads.
+ *
+ * Requests are submitted from the game loop and searched by worker threads, each owning a
+ * {@link PathFinder} (and thus its own search buffers). Results are handed back to the game loop
+ * by {@link #deliverResults()}, requests never change their state in between two calls to it.
+ *
+ * Requests with the same start and destination that are in flight at the same time share a single search.
+ *
+ * {@link #submit(int, int, int, int)}, {@link PathRequest#cancel()} and {@link #deliverResults()}
+ * must only be called from the game loop thread.
+ */
+public class PathQueryService
+{
+    public static enum State
+    {
+        PENDING,
+        DONE,
+        CANCELLED
+    }
+
+    private final NavMesh mesh;
+    private final float walkableGroundLevel;
+
+    private final BlockingQueue<Search> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<Search> completed = new ConcurrentLinkedQueue<>();
+    private final Thread[] workers;
+    private volatile boolean disposed;
+
+    // searches in flight by start/destination, only touched by the game loop
+    private final Map<Long,Search> searches = new HashMap<>();
+
+    // statistics, only touched by the game loop
+    private long submitted;
+    private long deduplicated;
+    private long cancelled;
+    private long delivered;
+
+    private int lastFrameDelivered;
+    private long lastFrameMaxLatency;
+    private long lastFrameTotalLatency;
+    private long lastFrameSearchTime;
+
+    /**
+     * A request for a path, submitted by {@link PathQueryService#submit(int, int, int, int)}.
+     */
+    public final class PathRequest
+    {
+        public final int startX;
+        public final int startY;
+        public final int dstX;
+        public final int dstY;
+
+        private final long submitTime;
+        private Search search;
+        private State state = State.PENDING;
+        private Path path;
+
+        protected PathRequest(int startX, int startY, int dstX, int dstY)
+        {
+            this.startX = startX;
+            this.startY = startY;
+            this.dstX = dstX;
+            this.dstY = dstY;
+            this.submitTime = System.nanoTime();
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public boolean isDone() {
+            return state == State.DONE;
+        }
+
+        public boolean isPending() {
+            return state == State.PENDING;
+        }
+
+        /**
+         * Returns the path.
+         *
+         * @return path or <code>null</code> if the request is not done yet or there is no path
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Cancels this request if it is still pending.
+         *
+         * The search is aborted if no other request shares it and no worker started it yet.
+         */
+        public void cancel()
+        {
+            if ( state != State.PENDING ) {
+                return;
+            }
+            state = State.CANCELLED;
+            cancelled++;
+            search.requests.remove( this );
+            if ( search.requests.isEmpty() )
+            {
+                search.cancelled = true;
+                searches.remove( search.key );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PathRequest[ "+startX+","+startY+" -> "+dstX+","+dstY+" , "+state+" ]";
+        }
+    }
+
+    protected static final class Search
+    {
+        public final long key;
+        public final int startX;
+        public final int startY;
+        public final int dstX;
+        public final int dstY;
+
+        // requests waiting for this search, only touched by the game loop
+        public final List<PathRequest> requests = new ArrayList<>(2);
+
+        public volatile boolean cancelled;
+
+        // written by a worker before the search gets queued as completed
+        public Path result;
+        public long searchTime;
+
+        public Search(long key,int startX, int startY, int dstX, int dstY)
+        {
+            this.key = key;
+            this.startX = startX;
+            this.startY = startY;
+            this.dstX = dstX;
+            this.dstY = dstY;
+        }
+    }
+
+    /**
+     *
+     * @param mesh
+     * @param walkableGroundLevel
+     * @param workerCount number of worker threads
+     */
+    public PathQueryService(NavMesh mesh,float walkableGroundLevel,int workerCount)
+    {
+        if ( workerCount < 1 ) {
+            throw new IllegalArgumentException("Worker count must be >= 1");
+        }
+        this.mesh = mesh;
+        this.walkableGroundLevel = walkableGroundLevel;
+        this.workers = new Thread[ workerCount ];
+        for ( int i = 0 ; i < workerCount ; i++ )
+        {
+            workers[i] = new Thread( new Worker( new PathFinder( mesh ) ) , "path-finder-"+(i+1) );
+            workers[i].setDaemon( true );
+            // do not compete with the rendering thread
+            workers[i].setPriority( Thread.NORM_PRIORITY - 1 );
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Creates a service with one worker per CPU, minus one for the game loop.
+     */
+    public static PathQueryService createDefaultService(NavMesh mesh,float walkableGroundLevel)
+    {
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        return new PathQueryService( mesh , walkableGroundLevel , Math.max( 1 , cpus - 1 ) );
+    }
+
+    public NavMesh getNavMesh() {
+        return mesh;
+    }
+
+    /**
+     * Submits a path request.
+     *
+     * @param startX
+     * @param startY
+     * @param dstX
+     * @param dstY
+     * @return
+     */
+    public PathRequest submit(int startX,int startY,int dstX,int dstY)
+    {
+        if ( disposed ) {
+            throw new IllegalStateException("Service has been disposed");
+        }
+        if ( startX < 0 || startX >= mesh.width || startY < 0 || startY >= mesh.width ) {
+            throw new IllegalArgumentException("Invalid start position: "+startX+" / "+startY);
+        }
+        if ( dstX < 0 || dstX >= mesh.width || dstY < 0 || dstY >= mesh.width ) {
+            throw new IllegalArgumentException("Invalid dest position: "+dstX+" / "+dstY);
+        }
+
+        submitted++;
+        final PathRequest request = new PathRequest( startX , startY , dstX , dstY );
+        final long cellCount = mesh.width*(long) mesh.width;
+        final long key = ( startX + startY*(long) mesh.width ) * cellCount + dstX + dstY*(long) mesh.width;
+
+        Search search = searches.get( key );
+        if ( search == null )
+        {
+            search = new Search( key , startX , startY , dstX , dstY );
+            searches.put( key , search );
+            queue.add( search );
+        } else {
+            deduplicated++;
+        }
+        search.requests.add( request );
+        request.search = search;
+        return request;
+    }
+
+    /**
+     * Completes all requests whose searches finished since the last call.
+     *
+     * Needs to be called once per frame.
+     */
+    public void deliverResults()
+    {
+        lastFrameDelivered = 0;
+        lastFrameMaxLatency = 0;
+        lastFrameTotalLatency = 0;
+        lastFrameSearchTime = 0;
+
+        final long now = System.nanoTime();
+        Search search;
+        while ( ( search = completed.poll() ) != null )
+        {
+            if ( search.cancelled ) {
+                continue;
+            }
+            searches.remove( search.key );
+            lastFrameSearchTime += search.searchTime;
+            for ( PathRequest request : search.requests )
+            {
+                request.state = State.DONE;
+                request.path = search.result;
+
+                final long latency = now - request.submitTime;
+                lastFrameMaxLatency = Math.max( lastFrameMaxLatency , latency );
+                lastFrameTotalLatency += latency;
+                lastFrameDelivered++;
+            }
+            delivered += search.requests.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests submitted but neither delivered nor cancelled.
+     */
+    public long getPendingCount() {
+        return submitted - delivered - cancelled;
+    }
+
+    public long getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * Returns the number of requests that did not need a search of their own.
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated;
+    }
+
+    public long getCancelledCount() {
+        return cancelled;
+    }
+
+    public long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * Returns the number of requests completed by the last call to {@link #deliverResults()}.
+     */
+    public int getLastFrameDeliveredCount() {
+        return lastFrameDelivered;
+    }
+
+    /**
+     * Returns the max. time between submitting and delivering requests
+     * completed by the last call to {@link #deliverResults()}.
+     */
+    public float getLastFrameMaxLatencyMillis() {
+        return lastFrameMaxLatency / 1000000f;
+    }
+
+    /**
+     * Returns the average time between submitting and delivering requests
+     * completed by the last call to {@link #deliverResults()}.
+     */
+    public float getLastFrameAverageLatencyMillis() {
+        return lastFrameDelivered == 0 ? 0 : lastFrameTotalLatency / (float) lastFrameDelivered / 1000000f;
+    }
+
+    /**
+     * Returns the time workers spent searching paths delivered by the last call to {@link #deliverResults()}.
+     */
+    public float getLastFrameSearchTimeMillis() {
+        return lastFrameSearchTime / 1000000f;
+    }
+
+    /**
+     * Stops all worker threads, pending requests will never complete.
+     */
+    public void dispose()
+    {
+        disposed = true;
+        for ( Thread t : workers ) {
+            t.interrupt();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Paths: "+getPendingCount()+" pending, "+delivered+" delivered, "+deduplicated+" deduplicated, "+cancelled+" cancelled"+
+                String.format(", last frame: %d delivered, latency avg %.2f ms / max %.2f ms" , lastFrameDelivered ,
+                        getLastFrameAverageLatencyMillis() , getLastFrameMaxLatencyMillis() );
+    }
+
+    protected final class Worker implements Runnable
+    {
+        private final PathFinder finder;
+
+        public Worker(PathFinder finder) {
+            this.finder = finder;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( ! disposed )
+            {
+                final Search search;
+                try {
+                    search = queue.take();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                if ( search.cancelled ) {
+                    continue;
+                }
+                final long start = System.nanoTime();
+                try {
+                    search.result = finder.findPath( search.startX , search.startY , search.dstX , search.dstY , walkableGroundLevel );
+                }
+                catch(RuntimeException e)
+                {
+                    // deliver as 'no path' so that requests do not stay pending forever
+                    System.err.println("Path search "+search.startX+","+search.startY+" -> "+search.dstX+","+search.dstY+" failed: "+e.getMessage());
+                    e.printStackTrace();
+                }
+                search.searchTime = System.nanoTime() - start;
+                completed.add( search );
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of height map arrays and (off-heap) pixel buffers used while generating tiles.
+ *
+ * Buffers are kept in size classes keyed by their exact size, so a released buffer
+ * is only handed out again for a request of the same size. The total amount of memory held
+ * by the pool is bounded, buffers released while the pool is full get dropped.
+ *
+ * Every buffer acquired from the pool should be released exactly once, after that
+ * the caller must not touch it anymore.
+ *
+ * Instances are thread-safe.
+ */
+public class BufferPool
+{
+    // enough for the height maps and pixels of 8 tiles at full detail
+    public static final long DEFAULT_MAX_BYTES = 8 * 512*512*(4+4L);
+
+    private final long maxBytes;
+
+    private final Map<Integer,ArrayDeque<float[]>> floatArrays = new HashMap<>();
+    private final Map<Integer,ArrayDeque<PixelBuffer>> pixelBuffers = new HashMap<>();
+
+    private long bytesPooled;
+
+    private long hits;
+    private long misses;
+    private long dropped;
+
+    private boolean disposed;
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     *
+     * @param maxBytes max. memory occupied by buffers kept in the pool
+     */
+    public BufferPool(long maxBytes)
+    {
+        if ( maxBytes < 0 ) {
+            throw new IllegalArgumentException("Max. bytes must be >= 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns an array with exactly the given length.
+     *
+     * Arrays taken from the pool are <b>not</b> cleared.
+     *
+     * @param length
+     * @return
+     */
+    public float[] acquireFloats(int length)
+    {
+        synchronized( this )
+        {
+            final ArrayDeque<float[]> queue = floatArrays.get( length );
+            if ( queue != null && ! queue.isEmpty() )
+            {
+                hits++;
+                bytesPooled -= length*4L;
+                return queue.removeLast();
+            }
+            misses++;
+        }
+        return new float[ length ];
+    }
+
+    public void release(float[] array)
+    {
+        if ( array == null ) {
+            return;
+        }
+        synchronized( this )
+        {
+            if ( disposed || bytesPooled + array.length*4L > maxBytes ) {
+                dropped++;
+                return;
+            }
+            ArrayDeque<float[]> queue = floatArrays.get( array.length );
+            if ( queue == null ) {
+                queue = new ArrayDeque<>();
+                floatArrays.put( array.length , queue );
+            }
+            queue.add( array );
+            bytesPooled += array.length*4L;
+        }
+    }
+
+    /**
+     * Returns a direct buffer for RGBA8888 pixels with the given width/height.
+     *
+     * Buffers taken from the pool still contain the pixels they had when
+     * they got released.
+     *
+     * @param size
+     * @return
+     */
+    public PixelBuffer acquirePixels(int size)
+    {
+        synchronized( this )
+        {
+            final ArrayDeque<PixelBuffer> queue = pixelBuffers.get( size );
+            if ( queue != null && ! queue.isEmpty() )
+            {
+                hits++;
+                bytesPooled -= getSizeInBytes( size );
+                return queue.removeLast();
+            }
+            misses++;
+        }
+        return new PixelBuffer( ByteBuffer.allocateDirect( (int) getSizeInBytes( size ) ) , size , size , this );
+    }
+
+    /**
+     * Returns a pixel buffer to the pool.
+     *
+     * @param buffer buffer, ignored if it was not taken from this pool
+     */
+    public void release(PixelBuffer buffer)
+    {
+        if ( buffer == null || buffer.pool != this ) {
+            return;
+        }
+        synchronized( this )
+        {
+            if ( disposed || bytesPooled + getSizeInBytes( buffer.width ) > maxBytes ) {
+                dropped++;
+                return;
+            }
+            ArrayDeque<PixelBuffer> queue = pixelBuffers.get( buffer.width );
+            if ( queue == null ) {
+                queue = new ArrayDeque<>();
+                pixelBuffers.put( buffer.width , queue );
+            }
+            queue.add( buffer );
+            bytesPooled += getSizeInBytes( buffer.width );
+        }
+    }
+
+    private static long getSizeInBytes(int pixelBufferSize) {
+        return pixelBufferSize*(long) pixelBufferSize*4;
+    }
+
+    public synchronized long getBytesPooled() {
+        return bytesPooled;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of released buffers that were not
+     * kept because the pool was full.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized float getHitRatio()
+    {
+        final long total = hits + misses;
+        return total == 0 ? 0 : hits / (float) total;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = misses = dropped = 0;
+    }
+
+    /**
+     * Drops all pooled buffers, buffers released afterwards are dropped as well.
+     */
+    public synchronized void dispose()
+    {
+        disposed = true;
+        pixelBuffers.clear();
+        floatArrays.clear();
+        bytesPooled = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Buffer pool: "+(bytesPooled/1024)+" of "+(maxBytes/1024)+" KB pooled, hits: "+hits+", misses: "+misses+
+                ", dropped: "+dropped+String.format(", hit ratio: %.2f" , getHitRatio() );
+    }
+}
@@ -4,10 +4,8 @@ import org.apache.commons.lang.StringUtils;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL10;
-import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
@@ -16,8 +14,21 @@ import com.badlogic.gdx.math.Vector3;
 
 public class ChunkManager 
 {
-    // the current chunk (3x3 tiles)
-    private final Tile[] currentChunk = new Tile[3*3];
+    public static final int DEFAULT_VIEW_SIZE = 3;
+    
+    // number of tiles per row/column of the current chunk
+    private final int viewSize;
+    
+    // number of tiles between the center tile and the chunk's border
+    private final int viewRadius;
+    
+    // tiles of the current chunk, stored in a toroidal ring buffer so that 
+    // moving the camera only needs to replace the tiles that left the chunk. 
+    // Tile (x,y) is always stored at index floorMod(x,viewSize) + floorMod(y,viewSize)*viewSize
+    private final Tile[] ring;
+    
+    // the current chunk (viewSize x viewSize tiles) in row-major order, starting top-left
+    private final Tile[] currentChunk;
 
     private TileManager tileManager;
 
@@ -25,7 +36,7 @@ public class ChunkManager
 
     // the tile the camera currently is in
 
-    // the camera is always located in the CENTER tile of the 3x3 chunk
+    // the camera is always located in the CENTER tile of the chunk
 
     // tiles are layed out in a cartesian coordinate system
     // with the y-axis pointing up and the x-axis pointing right
@@ -36,32 +47,125 @@ public class ChunkManager
 
     private boolean reloadWholeChunk= true;
 
+    // holds the backgrounds of all visible tiles
+    private TileTextureAtlas textureAtlas;
+    
+    // two triangles per quad
+    private static final int VERTICES_PER_QUAD = 2*3;
+    
+    // x,y,z + u,v
+    private static final int FLOATS_PER_VERTEX = 3+2;
+    
+    // background mesh, one quad per tile of the current chunk
+    private Mesh chunkMesh;
+    private final float[] chunkVertices; 
+    private boolean chunkMeshValid;
+    private int chunkMeshTileX;
+    private int chunkMeshTileY;
+    
+    // atlas slots (and their versions) the texture coordinates of each quad currently point to
+    private final TileTextureAtlas.Slot[] chunkMeshSlots;
+    private final int[] chunkMeshSlotVersions;
+    
+    // detail level tiles are currently rendered at
+    private int detailLevel = -1;
+
+    private final TilePrefetcher prefetcher = new TilePrefetcher();
+
     public ChunkManager() 
     {
+        this(DEFAULT_VIEW_SIZE);
+    }
+    
+    /**
+     * 
+     * @param viewSize number of tiles per row/column of the chunk around the camera, must be odd
+     */
+    public ChunkManager(int viewSize) 
+    {
+        if ( viewSize < 1 || (viewSize & 1) == 0 ) {
+            throw new IllegalArgumentException("View size must be odd and >= 1, was: "+viewSize);
+        }
+        this.viewSize = viewSize;
+        this.viewRadius = viewSize / 2;
+        this.ring = new Tile[ viewSize*viewSize ];
+        this.currentChunk = new Tile[ viewSize*viewSize ];
+        this.chunkVertices = new float[ currentChunk.length * VERTICES_PER_QUAD * FLOATS_PER_VERTEX ];
+        this.chunkMeshSlots = new TileTextureAtlas.Slot[ currentChunk.length ];
+        this.chunkMeshSlotVersions = new int[ currentChunk.length ];
+    }
+    
+    public int getViewSize() {
+        return viewSize;
     }
 
     public Tile[] getCurrentChunk() 
     {
         if ( reloadWholeChunk ) 
         {
-        	currentChunk[ 0 ] = tileManager.loadTile( cameraTileX - 1 , cameraTileY+1 );
-        	currentChunk[ 1 ] = tileManager.loadTile( cameraTileX     , cameraTileY+1 );
-        	currentChunk[ 2 ] = tileManager.loadTile( cameraTileX + 1 , cameraTileY+1 );
-        	
-        	currentChunk[ 3 ] = tileManager.loadTile( cameraTileX - 1 , cameraTileY   );
-        	currentChunk[ 4 ] = tileManager.loadTile( cameraTileX     , cameraTileY   );
-        	currentChunk[ 5 ] = tileManager.loadTile( cameraTileX + 1 , cameraTileY   );
-        	
-        	currentChunk[ 6 ] = tileManager.loadTile( cameraTileX - 1 , cameraTileY-1 );
-        	currentChunk[ 7 ] = tileManager.loadTile( cameraTileX     , cameraTileY-1 );
-        	currentChunk[ 8 ] = tileManager.loadTile( cameraTileX + 1 , cameraTileY-1 );
-        	
+            updateChunk();
+            
             System.out.println("Center: "+cameraTileX+" / "+cameraTileY);
             printChunk(currentChunk);
             reloadWholeChunk=false;
         }
         return currentChunk;
     }
+    
+    /**
+     * Makes the ring buffer hold exactly the tiles around the 
+     * current camera tile, unloading tiles that are no longer part of the chunk
+     * and loading the ones that are missing.
+     */
+    private void updateChunk() 
+    {
+        final int minX = cameraTileX - viewRadius;
+        final int maxY = cameraTileY + viewRadius;
+        
+        // unload first so the tile manager may reuse resources of tiles that left the chunk
+        for ( int i = 0 ; i < ring.length ; i++ ) 
+        {
+            final Tile tile = ring[i];
+            if ( tile != null && ! isInChunk( tile.x , tile.y ) ) 
+            {
+                tileManager.unloadTile( tile );
+                ring[i] = null;
+            }
+        }
+        
+        int ptr = 0;
+        for ( int y = maxY ; y > maxY - viewSize ; y-- ) 
+        {
+            for ( int x = minX ; x < minX + viewSize ; x++ ) 
+            {
+                final int index = ringIndex( x , y );
+                Tile tile = ring[ index ];
+                if ( tile == null ) 
+                {
+                    tile = loadTile( x , y );
+                    ring[ index ] = tile;
+                }
+                currentChunk[ ptr++ ] = tile;
+            }
+        }
+    }
+    
+    private boolean isInChunk(int tileX,int tileY) {
+        return Math.abs( tileX - cameraTileX ) <= viewRadius && Math.abs( tileY - cameraTileY ) <= viewRadius;
+    }
+    
+    private int ringIndex(int tileX,int tileY) 
+    {
+        int rx = tileX % viewSize;
+        if ( rx < 0 ) {
+            rx += viewSize;
+        }
+        int ry = tileY % viewSize;
+        if ( ry < 0 ) {
+            ry += viewSize;
+        }
+        return rx + ry*viewSize;
+    }
 
     protected void printChunk() 
     {
@@ -71,20 +175,14 @@ public class ChunkManager
 
     protected static void printChunk(Tile[] currentTiles) 
     {
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 0 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 1 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 2 ].toString() , 15 ) );
-        System.out.println();
-
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 3 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 4 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 5 ].toString() , 15 ) );
-        System.out.println();
-
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 6 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 7 ].toString() , 15 ) );
-        System.out.print( " | "+StringUtils.rightPad( currentTiles[ 8 ].toString() , 15 ) );
-        System.out.println();		
+        final int size = (int) Math.round( Math.sqrt( currentTiles.length ) );
+        for ( int i = 0 ; i < currentTiles.length ; i++ ) 
+        {
+            System.out.print( " | "+StringUtils.rightPad( currentTiles[ i ].toString() , 15 ) );
+            if ( ( i % size ) == size-1 ) {
+                System.out.println();
+            }
+        }
     }
 
     /**
@@ -97,7 +195,27 @@ public class ChunkManager
     {
         camera.position.add(deltaX,deltaY,0);
         camera.update(true);
-
+        
+        prefetcher.cameraMoved( deltaX , deltaY );
+        return cameraPositionChanged();
+    }
+    
+    /**
+     * Moves the camera to an arbitrary location.
+     * 
+     * @param x world coordinates
+     * @param y world coordinates
+     * @return <code>true</code> if camera moved to a new tile, otherwise false
+     */
+    public boolean moveCameraAbsolute(float x,float y) 
+    {
+        camera.position.set(x,y,camera.position.z);
+        camera.update(true);
+        return cameraPositionChanged();
+    }
+    
+    private boolean cameraPositionChanged() 
+    {
         // world (0,0) is at center of tile at (0,0), adjust coordinates by half tile size
         float trueX = camera.position.x+Tile.HALF_TILE_WIDTH;
         float trueY = (camera.position.y+Tile.HALF_TILE_HEIGHT);
@@ -108,66 +226,111 @@ public class ChunkManager
 
         if ( newCameraTileX == cameraTileX && newCameraTileY == cameraTileY ) 
         {
-            // camera still on same tile, nothing to do
+            // camera still on same tile, maybe start loading the tiles we're heading to
+            prefetcher.prefetch( tileManager , cameraTileX , cameraTileY , viewRadius );
             return false;
         }
         // camera moved to different tile, load adjacent tiles
         System.out.println("Camera: "+camera.position+" => tile: "+newCameraTileX+" / "+newCameraTileY);
         moveCameraToTile( newCameraTileX , newCameraTileY );
+        prefetcher.prefetch( tileManager , cameraTileX , cameraTileY , viewRadius );
         return true;
     }
 
     public void renderCurrentChunk(SpriteBatch renderer) 
     {
+        final TileTextureAtlas atlas = requireTextureAtlas();
+        
     	renderer.begin();
     	renderer.setProjectionMatrix( camera.combined );
     	
         final Tile[] tiles = getCurrentChunk();
-
-        final float xOffset = -0.5f*Tile.WIDTH + ( cameraTileX*Tile.WIDTH )-Tile.WIDTH;
-        final float yOffset = -0.5f*Tile.HEIGHT + ( cameraTileY*Tile.HEIGHT )+Tile.HEIGHT;
-
-        float xScreen = xOffset;
-        float yScreen = yOffset;
-        
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[0].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[1].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[2].getBackgroundTexture() );
-
-        xScreen = xOffset;
-        yScreen -= Tile.HEIGHT;
         
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[3].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[4].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[5].getBackgroundTexture() );
-        
-        xScreen = xOffset;
-        yScreen -= Tile.HEIGHT;
+        final int newDetailLevel = selectDetailLevel();
+        if ( newDetailLevel != detailLevel ) 
+        {
+            detailLevel = newDetailLevel;
+            tileManager.setDetailLevel( detailLevel );
+        }
+        for ( int i = 0 ; i < tiles.length ; i++ ) {
+            tiles[i].requestDetailLevel( detailLevel );
+        }
         
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[6].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[7].getBackgroundTexture() );
-        xScreen += Tile.WIDTH;
-        renderQuad( xScreen, yScreen , Tile.WIDTH,Tile.HEIGHT , tiles[8].getBackgroundTexture() );
+        final Mesh mesh = getChunkMesh( tiles , atlas );
         
+        Gdx.graphics.getGL10().glEnable(GL10.GL_TEXTURE_2D);
+        atlas.getTexture().bind();
+        mesh.render( GL10.GL_TRIANGLES );
         renderer.end();
     }
     
-    private void renderQuad(float xStart,float yStart,float cellWidth,float cellHeight,Texture texture) 
+    /**
+     * Picks the coarsest detail level whose backgrounds still have at least 
+     * one pixel per screen pixel at the camera's current zoom.
+     */
+    protected int selectDetailLevel() 
     {
-        Mesh quad = new Mesh(true, 2*3 , 2*3, 
-                new VertexAttribute(Usage.Position, 3, "a_position"),
-                new VertexAttribute(Usage.TextureCoordinates, 2, "a_texCoords"));
+        final int slotSize = requireTextureAtlas().getSlotSize();
+        final float pixelsPerTile = Tile.WIDTH / camera.zoom;
+        int level = 0;
+        while ( level < Tile.MAX_DETAIL_LEVEL && Tile.getBackgroundSize( slotSize , level+1 ) >= pixelsPerTile ) {
+            level++;
+        }
+        return level;
+    }
+    
+    /**
+     * Returns the mesh with one quad per tile of the current chunk, 
+     * vertex data only gets updated when the camera moved to a different tile
+     * or a tile's texture coordinates within the atlas changed.
+     */
+    private Mesh getChunkMesh(Tile[] tiles,TileTextureAtlas atlas) 
+    {
+        if ( chunkMesh == null ) 
+        {
+            chunkMesh = new Mesh(true, currentChunk.length*VERTICES_PER_QUAD , 0 , 
+                    new VertexAttribute(Usage.Position, 3, "a_position"),
+                    new VertexAttribute(Usage.TextureCoordinates, 2, "a_texCoords"));
+            chunkMeshValid = false;
+        }
         
-        final float[] vertices = new float[ 2 * 3 * 5 ];
-        final short[] indices = new short[ 2 * 3 ];
-
-        int vertexPtr = 0;
+        boolean slotsChanged = false;
+        for ( int i = 0 ; i < tiles.length ; i++ ) 
+        {
+            final TileTextureAtlas.Slot slot = atlas.getSlot( tiles[i] );
+            if ( chunkMeshSlots[i] != slot || chunkMeshSlotVersions[i] != slot.getVersion() ) {
+                chunkMeshSlots[i] = slot;
+                chunkMeshSlotVersions[i] = slot.getVersion();
+                slotsChanged = true;
+            }
+        }
         
+        if ( slotsChanged || ! chunkMeshValid || chunkMeshTileX != cameraTileX || chunkMeshTileY != cameraTileY ) 
+        {
+            // quads are stored in the same order as the tiles in currentChunk (row-major, starting top-left)
+            final float xOffset = -0.5f*Tile.WIDTH + ( cameraTileX*Tile.WIDTH )-viewRadius*Tile.WIDTH;
+            final float yOffset = -0.5f*Tile.HEIGHT + ( cameraTileY*Tile.HEIGHT )+viewRadius*Tile.HEIGHT;
+            
+            int ptr = 0;
+            for ( int row = 0 ; row < viewSize ; row++ ) 
+            {
+                for ( int col = 0 ; col < viewSize ; col++ ) 
+                {
+                    final TileTextureAtlas.Slot slot = chunkMeshSlots[ row*viewSize + col ];
+                    ptr = writeQuad( chunkVertices , ptr , xOffset + col*Tile.WIDTH , yOffset - row*Tile.HEIGHT , Tile.WIDTH , Tile.HEIGHT , slot );
+                }
+            }
+            chunkMesh.setVertices( chunkVertices );
+            
+            chunkMeshTileX = cameraTileX;
+            chunkMeshTileY = cameraTileY;
+            chunkMeshValid = true;
+        }
+        return chunkMesh;
+    }
+    
+    private static int writeQuad(float[] vertices,int vertexPtr,float xStart,float yStart,float cellWidth,float cellHeight,TileTextureAtlas.Slot slot) 
+    {
         float x0 = xStart;
         float y0 = yStart;
         
@@ -178,216 +341,128 @@ public class ChunkManager
         vertices[vertexPtr++] = x0;
         vertices[vertexPtr++] = y0;
         vertices[vertexPtr++] = 0;
-        vertices[vertexPtr++] = 0; // texture U
-        vertices[vertexPtr++] = 1; // texture V
+        vertices[vertexPtr++] = slot.getU0(); // texture U
+        vertices[vertexPtr++] = slot.getV1(); // texture V
         
         vertices[vertexPtr++] = x1;
         vertices[vertexPtr++] = y0;
         vertices[vertexPtr++] = 0;
-        vertices[vertexPtr++] = 1; // texture U
-        vertices[vertexPtr++] = 1; // texture V        
+        vertices[vertexPtr++] = slot.getU1(); // texture U
+        vertices[vertexPtr++] = slot.getV1(); // texture V        
         
         vertices[vertexPtr++] = x0;
         vertices[vertexPtr++] = y1;
         vertices[vertexPtr++] = 0;   
-        vertices[vertexPtr++] = 0; // texture U
-        vertices[vertexPtr++] = 0; // texture V           
+        vertices[vertexPtr++] = slot.getU0(); // texture U
+        vertices[vertexPtr++] = slot.getV0(); // texture V           
         
         // triangle no. #2
         vertices[vertexPtr++] = x0;
         vertices[vertexPtr++] = y1;
         vertices[vertexPtr++] = 0;
-        vertices[vertexPtr++] = 0; // texture U
-        vertices[vertexPtr++] = 0; // texture V          
+        vertices[vertexPtr++] = slot.getU0(); // texture U
+        vertices[vertexPtr++] = slot.getV0(); // texture V          
         
         vertices[vertexPtr++] = x1;
         vertices[vertexPtr++] = y0;
         vertices[vertexPtr++] = 0;    
-        vertices[vertexPtr++] = 1; // texture U
-        vertices[vertexPtr++] = 1; // texture V          
+        vertices[vertexPtr++] = slot.getU1(); // texture U
+        vertices[vertexPtr++] = slot.getV1(); // texture V          
         
         vertices[vertexPtr++] = x1;
         vertices[vertexPtr++] = y1;
         vertices[vertexPtr++] = 0;  
-        vertices[vertexPtr++] = 1; // texture U
-        vertices[vertexPtr++] = 0; // texture V          
-        
-        indices[0] = 0;
-        indices[1] = 1;
-        indices[2] = 2;
-        indices[3] = 3;
-        indices[4] = 4;
-        indices[5] = 5;    
-        
-        quad.setVertices( vertices );
-        quad.setIndices( indices );
+        vertices[vertexPtr++] = slot.getU1(); // texture U
+        vertices[vertexPtr++] = slot.getV0(); // texture V          
         
-        Gdx.graphics.getGL10().glEnable(GL10.GL_TEXTURE_2D);
-        texture.bind();
-        quad.render(GL10.GL_TRIANGLES);
-        quad.dispose();
+        return vertexPtr;
     }
     
-    protected void moveCameraToTile(int newCameraTileX,int newCameraTileY) 
+    public void setTextureAtlas(TileTextureAtlas textureAtlas) 
     {
-        final int dx = newCameraTileX - cameraTileX;
-        final int dy = newCameraTileY - cameraTileY;
-
-        if ( dx < -1 || dx > 1 || dy < -1 || dy > 1 ) 
+        if ( textureAtlas == null ) {
+            throw new IllegalArgumentException("Texture atlas must not be null");
+        }
+        if ( textureAtlas.getCapacity() < viewSize*viewSize ) {
+            throw new IllegalArgumentException("Texture atlas has "+textureAtlas.getCapacity()+" slots but the chunk needs "+(viewSize*viewSize));
+        }
+        this.textureAtlas = textureAtlas;
+    }
+    
+    public TileTextureAtlas getTextureAtlas() {
+        return textureAtlas;
+    }
+    
+    /**
+     * Returns the detail level tile backgrounds are currently rendered at.
+     * 
+     * @return detail level or -1 if nothing has been rendered yet
+     */
+    public int getDetailLevel() {
+        return detailLevel;
+    }
+    
+    // tile backgrounds are rendered from the atlas, there is nothing to draw without it
+    private TileTextureAtlas requireTextureAtlas() 
+    {
+        if ( textureAtlas == null ) {
+            throw new IllegalStateException("No texture atlas set");
+        }
+        return textureAtlas;
+    }
+    
+    public void setZoom(float zoom) 
+    {
+        camera.zoom = zoom;
+        camera.update(true);
+    }
+    
+    public void dispose() 
+    {
+        if ( chunkMesh != null ) 
         {
-            throw new IllegalArgumentException("Invalid chunk movement: dx="+dx+",dy="+dy);
+            chunkMesh.dispose();
+            chunkMesh = null;
+        }
+    }
+    
+    /**
+     * Moves the camera to a tile, the new tile may be arbitrarily 
+     * far away from the current one.
+     * 
+     * Only tiles that are not part of the current chunk get loaded.
+     * 
+     * @param newCameraTileX
+     * @param newCameraTileY
+     */
+    protected void moveCameraToTile(int newCameraTileX,int newCameraTileY) 
+    {
+        if ( reloadWholeChunk ) {
+            // nothing loaded yet
+            cameraTileX = newCameraTileX;
+            cameraTileY = newCameraTileY;
+            return;
         }
-
-        cameraTileX = newCameraTileX;
-        cameraTileY = newCameraTileY;	
         
-        switch( dx ) 
+        if ( newCameraTileX != cameraTileX || newCameraTileY != cameraTileY ) 
         {
-            case -1:
-                switch( dy ) 
-                {
-                    case -1:
-                        // left , down
-                        tileManager.unloadTiles( currentChunk[0],currentChunk[1],currentChunk[2],currentChunk[5],currentChunk[8]);
-
-                        currentChunk[1] = currentChunk[3];
-                        currentChunk[2] = currentChunk[4];
-                        currentChunk[4] = currentChunk[6];
-                        currentChunk[5] = currentChunk[7];
-
-                        currentChunk[0] = tileManager.loadTile( newCameraTileX-1, newCameraTileY+1);
-                        currentChunk[3] = tileManager.loadTile( newCameraTileX-1, newCameraTileY);
-                        currentChunk[6] = tileManager.loadTile( newCameraTileX-1, newCameraTileY-1);
-                        currentChunk[7] = tileManager.loadTile( newCameraTileX, newCameraTileY-1);
-                        currentChunk[8] = tileManager.loadTile( newCameraTileX+1, newCameraTileY-1);						
-
-                        break;						
-                    case 0:
-                        // left
-                        tileManager.unloadTiles( currentChunk[2],currentChunk[5],currentChunk[8]);
-
-                        currentChunk[2] = currentChunk[1];
-                        currentChunk[5] = currentChunk[4];
-                        currentChunk[8] = currentChunk[7];
-
-                        currentChunk[1] = currentChunk[0];
-                        currentChunk[4] = currentChunk[3];
-                        currentChunk[7] = currentChunk[6];
-
-                        currentChunk[0] = tileManager.loadTile( newCameraTileX-1, newCameraTileY+1 );
-                        currentChunk[3] = tileManager.loadTile( newCameraTileX-1, newCameraTileY );
-                        currentChunk[6] = tileManager.loadTile( newCameraTileX-1, newCameraTileY-1 );
-                        break;
-                    case 1:
-                        // left , up
-                        tileManager.unloadTiles( currentChunk[2],currentChunk[5],currentChunk[6],currentChunk[7],currentChunk[8]);
-
-                        currentChunk[8] = currentChunk[4];							
-                        currentChunk[4] = currentChunk[0];
-                        currentChunk[5] = currentChunk[1];
-                        currentChunk[7] = currentChunk[3];
-
-                        currentChunk[0] = tileManager.loadTile( newCameraTileX-1, newCameraTileY+1 );
-                        currentChunk[1] = tileManager.loadTile( newCameraTileX, newCameraTileY+1 );
-                        currentChunk[2] = tileManager.loadTile( newCameraTileX+1, newCameraTileY+1 ); 
-                        currentChunk[3] = tileManager.loadTile( newCameraTileX-1, newCameraTileY );
-                        currentChunk[6] = tileManager.loadTile( newCameraTileX-1, newCameraTileY-1 );
-                        break;						
-                }
-                break;
-            case 0:
-                switch( dy ) {
-                    case -1:
-                        // down
-                        tileManager.unloadTiles( currentChunk[0],currentChunk[1],currentChunk[2]);
-
-                        currentChunk[0] = currentChunk[3];
-                        currentChunk[1] = currentChunk[4];
-                        currentChunk[2] = currentChunk[5];
-
-                        currentChunk[3] = currentChunk[6];
-                        currentChunk[4] = currentChunk[7];
-                        currentChunk[5] = currentChunk[8];
-
-                        currentChunk[6] = tileManager.loadTile( newCameraTileX-1, newCameraTileY-1 );
-                        currentChunk[7] = tileManager.loadTile( newCameraTileX, newCameraTileY-1 );
-                        currentChunk[8] = tileManager.loadTile( newCameraTileX+1, newCameraTileY-1 );						
-                        break;
-                    case 0:
-                        // dx = 0 , dy = 0 => no changes
-                        break;
-                    case 1:
-                        // up		
-                    	tileManager.unloadTiles( currentChunk[6],currentChunk[7],currentChunk[8]);
-                    	
-                        currentChunk[6] = currentChunk[3];
-                        currentChunk[7] = currentChunk[4];
-                        currentChunk[8] = currentChunk[5];
-
-                        currentChunk[3] = currentChunk[0];
-                        currentChunk[4] = currentChunk[1];
-                        currentChunk[5] = currentChunk[2];
-
-                        currentChunk[0] = tileManager.loadTile( newCameraTileX-1, newCameraTileY+1 );
-                        currentChunk[1] = tileManager.loadTile( newCameraTileX, newCameraTileY+1 );
-                        currentChunk[2] = tileManager.loadTile( newCameraTileX+1, newCameraTileY+1 );						
-                        break;						
-                }				
-                break;
-            case 1:
-                switch( dy ) {
-                    case -1:
-                        // right , down
-                        tileManager.unloadTiles( currentChunk[0],currentChunk[1],currentChunk[2],currentChunk[3],currentChunk[6]);
-
-                        currentChunk[0] = currentChunk[4];
-                        currentChunk[1] = currentChunk[5];
-                        currentChunk[3] = currentChunk[7];
-                        currentChunk[4] = currentChunk[8];
-
-                        currentChunk[2] = tileManager.loadTile( newCameraTileX+1 , newCameraTileY+1);
-                        currentChunk[5] = tileManager.loadTile( newCameraTileX+1 , newCameraTileY);
-                        currentChunk[6] = tileManager.loadTile( newCameraTileX-1 , newCameraTileY-1);
-                        currentChunk[7] = tileManager.loadTile( newCameraTileX , newCameraTileY-1);
-                        currentChunk[8] = tileManager.loadTile( newCameraTileX+1 , newCameraTileY-1);							
-                        break;
-                    case 0:
-                        // right
-                        tileManager.unloadTiles( currentChunk[0],currentChunk[3],currentChunk[6]);
-
-                        currentChunk[0] = currentChunk[1];
-                        currentChunk[3] = currentChunk[4];
-                        currentChunk[6] = currentChunk[7];
-
-                        currentChunk[1] = currentChunk[2];
-                        currentChunk[4] = currentChunk[5];
-                        currentChunk[7] = currentChunk[8];
-
-                        currentChunk[2] = tileManager.loadTile( newCameraTileX+1, newCameraTileY-1 );
-                        currentChunk[5] = tileManager.loadTile( newCameraTileX+1, newCameraTileY );
-                        currentChunk[8] = tileManager.loadTile( newCameraTileX+1, newCameraTileY+1 );						
-                        break;
-                    case 1:
-                        // right , up
-                        tileManager.unloadTiles( currentChunk[0],currentChunk[3],currentChunk[6],currentChunk[7],currentChunk[8]);
-
-                        currentChunk[3] = currentChunk[1];
-                        currentChunk[6] = currentChunk[4];
-                        currentChunk[4] = currentChunk[2];
-                        currentChunk[7] = currentChunk[5];
-
-                        currentChunk[0] = tileManager.loadTile( newCameraTileX-1, newCameraTileY+1 );
-                        currentChunk[1] = tileManager.loadTile( newCameraTileX, newCameraTileY+1 );
-                        currentChunk[2] = tileManager.loadTile( newCameraTileX+1, newCameraTileY+1 );
-                        currentChunk[5] = tileManager.loadTile( newCameraTileX+1, newCameraTileY );
-                        currentChunk[8] = tileManager.loadTile( newCameraTileX+1, newCameraTileY-1 );						
-
-                        break;						
-                }				
-                break;
+            cameraTileX = newCameraTileX;
+            cameraTileY = newCameraTileY;
+            updateChunk();
         }
     }
 
+    private Tile loadTile(int tileX,int tileY) 
+    {
+        prefetcher.tileLoaded( tileX , tileY );
+        return tileManager.loadTile( tileX , tileY );
+    }
+    
+    public TilePrefetcher getPrefetcher()
+    {
+        return prefetcher;
+    }
+
     public void setTileManager(TileManager tileManager) {
         this.tileManager = tileManager;
     }
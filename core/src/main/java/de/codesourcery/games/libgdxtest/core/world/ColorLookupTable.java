@@ -0,0 +1,110 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Maps heights to colors using a precomputed table.
+ *
+ * Heights are quantized to a fixed-point table index, so colorizing a pixel is a multiplication,
+ * a clamp and a table lookup without any branches. Each gradient color covers the same number
+ * of table entries, which makes the result identical to indexing the gradient with
+ * <code>(int) ((height-groundLevel)/(1-groundLevel)*255)</code> for a gradient with 256 colors;
+ * heights outside of <code>groundLevel...1</code> are clamped to the first/last color.
+ *
+ * Instances are immutable and thus thread-safe.
+ */
+public final class ColorLookupTable
+{
+    // preferred number of table entries
+    public static final int DEFAULT_SIZE = 4096;
+
+    private final float groundLevel;
+    private final float heightScale;
+    private final float indexScale;
+
+    // RGBA8888 colors in native byte order (OpenGL) and 0xAARRGGBB (AWT)
+    private final int[] rgba;
+    private final int[] argb;
+
+    /**
+     *
+     * @param colorGradient colors as 0xRRGGBB, from lowest to highest height
+     * @param groundLevel heights below this level get the first color
+     */
+    public ColorLookupTable(int[] colorGradient,float groundLevel)
+    {
+        if ( colorGradient.length == 0 ) {
+            throw new IllegalArgumentException("Color gradient must not be empty");
+        }
+        this.groundLevel = groundLevel;
+        this.heightScale = 1.0f/(1.0f - groundLevel);
+
+        // table entries per gradient color
+        final int resolution = Math.max( 1 , DEFAULT_SIZE / colorGradient.length );
+        this.indexScale = ( colorGradient.length - 1 ) * resolution;
+
+        final int size = colorGradient.length * resolution;
+        rgba = new int[ size ];
+        argb = new int[ size ];
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            final int color = colorGradient[ i / resolution ] & 0xffffff;
+            rgba[i] = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? color << 8 | 0xff : Integer.reverseBytes( color << 8 | 0xff );
+            argb[i] = color | 0xff000000;
+        }
+    }
+
+    public int getSize() {
+        return rgba.length;
+    }
+
+    /**
+     * Colorizes heights into RGBA8888 pixels.
+     *
+     * @param heightMap
+     * @param count number of heights to convert, starting at index 0
+     * @param pixels buffer to write pixels into, starting at offset 0
+     */
+    public void toRGBA(float[] heightMap,int count,ByteBuffer pixels)
+    {
+        // table entries are in native byte order so the bulk copy does not need to swap bytes
+        final IntBuffer dst = pixels.duplicate().order( ByteOrder.nativeOrder() ).asIntBuffer();
+
+        // convert in chunks so the inner loop only touches arrays
+        final int[] chunk = new int[ Math.min( count , 4096 ) ];
+        for ( int offset = 0 ; offset < count ; offset += chunk.length )
+        {
+            final int len = Math.min( chunk.length , count - offset );
+            lookup( heightMap , offset , chunk , 0 , len , rgba );
+            dst.put( chunk , 0 , len );
+        }
+    }
+
+    /**
+     * Colorizes heights into ARGB colors as used by <code>BufferedImage.TYPE_INT_ARGB</code>.
+     *
+     * @param heightMap
+     * @param count number of heights to convert, starting at index 0
+     * @param pixels array to write colors into, starting at index 0
+     */
+    public void toARGB(float[] heightMap,int count,int[] pixels)
+    {
+        lookup( heightMap , 0 , pixels , 0 , count , argb );
+    }
+
+    private void lookup(float[] heightMap,int srcOffset,int[] dst,int dstOffset,int count,int[] table)
+    {
+        final float groundLevel = this.groundLevel;
+        final float heightScale = this.heightScale;
+        final float indexScale = this.indexScale;
+        final int maxIndex = table.length - 1;
+
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            final int index = (int) ( ( ( heightMap[ srcOffset + i ] - groundLevel ) * heightScale ) * indexScale );
+            dst[ dstOffset + i ] = table[ Math.min( Math.max( index , 0 ) , maxIndex ) ];
+        }
+    }
+}
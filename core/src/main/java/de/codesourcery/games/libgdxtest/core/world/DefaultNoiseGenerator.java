@@ -1,7 +1,5 @@
 package de.codesourcery.games.libgdxtest.core.world;
 
-
-
 public class DefaultNoiseGenerator 
 {
 	public final int heightMapSize;
@@ -17,7 +15,12 @@ public class DefaultNoiseGenerator
 
 	public float[] createNoise2D(float x,float y,float tileSize,int octaves,float persistance) 
 	{
-		return simplexNoise.createHeightMap( x ,y , heightMapSize , tileSize , octaves, persistance);
+		return createNoise2D( x , y , heightMapSize , tileSize , octaves , persistance );
+	}
+	
+	public float[] createNoise2D(float x,float y,int mapSize,float tileSize,int octaves,float persistance) 
+	{
+		return simplexNoise.createHeightMap( x ,y , mapSize , tileSize , octaves, persistance);
 	}
 
 	public void setSeed(long seed) 
@@ -1,25 +1,77 @@
 package de.codesourcery.games.libgdxtest.core.world;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
-
-import com.badlogic.gdx.graphics.Texture;
 
+/**
+ * Tile manager that caches tiles including their CPU-side data (height maps, pixmaps), 
+ * acting as the second cache level behind the {@link TileTextureAtlas}.
+ * 
+ * The cache is bounded by the amount of memory this data occupies, least recently used tiles get 
+ * evicted first but tiles that are currently visible are never evicted. Evicted tiles are disposed and need to 
+ * be generated (or loaded from the disk cache) again.
+ * 
+ * Uploaded backgrounds are managed by the atlas (L1), this cache (L2) keeps the data required 
+ * to upload them again after they got evicted from the atlas.
+ */
 public class DefaultTileManager extends TileManager
 {
-    private static final int CACHE_SIZE = 20;
+    // 24 tiles with a 512x512 height map plus RGBA8888 pixmap each
+    public static final long DEFAULT_MAX_DATA_BYTES = 24 * 512*512*(4+4);
+    
+    // access-ordered so iteration starts with the least recently used tile
+    private final LinkedHashMap<TileKey,Tile> cache = new LinkedHashMap<>(64 , 0.75f , true );
     
-    private final LinkedHashMap<TileKey,Tile> cache = new LinkedHashMap<TileKey,Tile>() 
+    private final CacheStatistics dataStats;
+    
+    public static final class CacheStatistics 
     {
+        public final String name;
+        public final long maxBytes;
+        
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long bytesUsed;
+        
+        protected CacheStatistics(String name,long maxBytes) 
+        {
+            this.name = name;
+            this.maxBytes = maxBytes;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        public long getEvictions() {
+            return evictions;
+        }
+        
+        public long getBytesUsed() {
+            return bytesUsed;
+        }
+        
+        public float getHitRatio() 
+        {
+            final long total = hits + misses;
+            return total == 0 ? 0 : hits / (float) total;
+        }
+        
+        public void reset() {
+            hits = misses = evictions = 0;
+        }
+        
         @Override
-        protected boolean removeEldestEntry(Map.Entry<TileKey,Tile> eldest) {
-            if ( size() > CACHE_SIZE ) {
-                dispose(eldest.getValue());
-                return true;
-            }
-            return false;
+        public String toString()
+        {
+            return name+": "+(bytesUsed/1024)+" of "+(maxBytes/1024)+" KB used, hits: "+hits+", misses: "+misses+", evictions: "+evictions;
         }
-    };
+    }
     
     protected static final class TileKey {
         
@@ -46,14 +98,28 @@ public class DefaultTileManager extends TileManager
                 final TileKey other = (TileKey) obj;
                 return x == other.x && y == other.y;
             }
-            return true;
+            return false;
         }
     }    
     
     private final TileFactory tileFactory;
     
+    // detail level new tiles get generated at
+    private int detailLevel;
+    
     public DefaultTileManager(TileFactory tileFactory) {
+        this(tileFactory , DEFAULT_MAX_DATA_BYTES );
+    }
+    
+    /**
+     * 
+     * @param tileFactory
+     * @param maxDataBytes max. memory to use for CPU-side tile data
+     */
+    public DefaultTileManager(TileFactory tileFactory,long maxDataBytes) 
+    {
         this.tileFactory = tileFactory;
+        this.dataStats = new CacheStatistics("L2 (data)" , maxDataBytes );
     }
     
     protected void dispose(Tile tile) 
@@ -71,29 +137,55 @@ public class DefaultTileManager extends TileManager
         Tile result = cache.get( key );
         if ( result == null ) 
         {
+            dataStats.misses++;
             result = createTile(tileX,tileY);
             cache.put(key,result);
+        } 
+        else 
+        {
+            dataStats.hits++;
         }
         result.activate();
+        evictIfNecessary();
         return result;
     }
-
+    
     @Override
-    public void unloadTiles(Tile tile1, Tile tile2, Tile tile3)
+    public void prefetchTile(int tileX, int tileY)
     {
-        tile1.passivate();
-        tile2.passivate();
-        tile3.passivate();
+        final TileKey key = new TileKey(tileX,tileY );
+        if ( ! cache.containsKey( key ) ) 
+        {
+            cache.put( key , createTile( tileX , tileY ) );
+            evictIfNecessary();
+        }
     }
-
-    @Override
-    public void unloadTiles(Tile tile1, Tile tile2, Tile tile3, Tile tile4, Tile tile5)
+    
+    private void evictIfNecessary() 
     {
-        tile1.passivate();
-        tile2.passivate();
-        tile3.passivate();
-        tile4.passivate();
-        tile5.passivate();
+        long bytesUsed = 0;
+        for ( Tile tile : cache.values() ) {
+            bytesUsed += tile.getDataSizeInBytes();
+        }
+        
+        for (Iterator<Tile> it = cache.values().iterator(); bytesUsed > dataStats.maxBytes && it.hasNext();) 
+        {
+            final Tile tile = it.next();
+            // never evict tiles that are currently visible
+            if ( ! tile.isActive() ) 
+            {
+                bytesUsed -= tile.getDataSizeInBytes();
+                it.remove();
+                dispose( tile );
+                dataStats.evictions++;
+            }
+        }
+        dataStats.bytesUsed = bytesUsed;
+    }
+    
+    public CacheStatistics getDataCacheStatistics()
+    {
+        return dataStats;
     }
 
     @Override
@@ -102,8 +194,14 @@ public class DefaultTileManager extends TileManager
         tile.passivate();        
     }
     
+    @Override
+    public void setDetailLevel(int detailLevel)
+    {
+        this.detailLevel = detailLevel;
+    }
+    
     private Tile createTile(int tileX, int tileY)
     {
-        return tileFactory.createTile(tileX, tileY);
+        return tileFactory.createTile(tileX, tileY, detailLevel);
     }    
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache for generated tile data.
+ *
+ * Each tile is stored in its own file (one directory per world seed, one file per tile and height map size) holding the tile's
+ * height map and the colored RGBA pixels. Files are accessed through memory-mapped buffers so that loading a
+ * cached tile is little more than mapping the file.
+ *
+ * Every file carries a header with the parameters used to generate it, files whose
+ * header does not match the current parameters are considered stale, ignored
+ * and deleted.
+ *
+ * Instances are thread-safe.
+ */
+public class DiskTileCache
+{
+    private static final int MAGIC = 0x54494c45; // 'TILE'
+
+    // increment whenever the file layout changes
+    private static final int FORMAT_VERSION = 1;
+
+    // magic, format version, parameter hash, seed, x, y, height map size, pixel data length
+    private static final int HEADER_SIZE = 4+4+8+8+4+4+4+4;
+
+    private final File directory;
+    private final long seed;
+    private final long parameterHash;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+
+    /**
+     * Tile data loaded from disk.
+     *
+     * Both the height map and the pixel data are backed by a memory-mapped file.
+     */
+    public static final class TileData
+    {
+        public final int heightMapSize;
+
+        private final ByteBuffer buffer;
+        private final int pixelDataLength;
+
+        private TileData(ByteBuffer buffer,int heightMapSize,int pixelDataLength)
+        {
+            this.buffer = buffer;
+            this.heightMapSize = heightMapSize;
+            this.pixelDataLength = pixelDataLength;
+        }
+
+        /**
+         * Returns a read-only view of the height map.
+         */
+        public FloatBuffer getHeightMap()
+        {
+            final ByteBuffer tmp = buffer.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+            tmp.position( HEADER_SIZE );
+            tmp.limit( HEADER_SIZE + heightMapSize*heightMapSize*4 );
+            return tmp.slice().order( ByteOrder.LITTLE_ENDIAN ).asFloatBuffer();
+        }
+
+        /**
+         * Copies the height map into a new array.
+         */
+        public float[] readHeightMap()
+        {
+            return readHeightMap( new float[ heightMapSize*heightMapSize ] );
+        }
+
+        /**
+         * Copies the height map into an existing array.
+         *
+         * @param result array holding at least <code>heightMapSize*heightMapSize</code> values
+         * @return the array
+         */
+        public float[] readHeightMap(float[] result)
+        {
+            getHeightMap().get( result , 0 , heightMapSize*heightMapSize );
+            return result;
+        }
+
+        /**
+         * Returns a read-only view of the RGBA8888 pixel data.
+         */
+        public ByteBuffer getPixels()
+        {
+            final ByteBuffer tmp = buffer.duplicate();
+            final int start = HEADER_SIZE + heightMapSize*heightMapSize*4;
+            tmp.position( start );
+            tmp.limit( start + pixelDataLength );
+            return tmp.slice();
+        }
+    }
+
+    /**
+     *
+     * @param baseDirectory directory to store cached tiles in, will be created if it does not exist
+     * @param seed world seed
+     * @param parameterHash hash of all parameters that influence the generated data, cached
+     * files created with a different hash are discarded
+     */
+    public DiskTileCache(File baseDirectory,long seed,long parameterHash)
+    {
+        this.directory = new File( baseDirectory , "seed_"+Long.toHexString( seed ) );
+        this.seed = seed;
+        this.parameterHash = parameterHash;
+    }
+
+    private File getFile(int tileX,int tileY,int heightMapSize) {
+        return new File( directory , "tile_"+tileX+"_"+tileY+"_"+heightMapSize+".bin" );
+    }
+
+    /**
+     * Loads a tile.
+     *
+     * @param tileX
+     * @param tileY
+     * @param heightMapSize size of the height map, tiles are cached separately for each size
+     * @return tile data or <code>null</code> if the tile is not cached or the cached data is stale
+     */
+    public TileData load(int tileX,int tileY,int heightMapSize)
+    {
+        final File file = getFile( tileX , tileY , heightMapSize );
+        if ( ! file.exists() ) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        // validate the header before mapping anything, so files that get deleted are never mapped
+        final MappedByteBuffer buffer;
+        int pixelDataLength = 0;
+        boolean stale = false;
+        try ( RandomAccessFile raf = new RandomAccessFile( file , "r" ) ; FileChannel channel = raf.getChannel() )
+        {
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            while ( header.hasRemaining() && channel.read( header ) != -1 ) {
+            }
+
+            if ( header.hasRemaining() ||
+                 header.getInt( 0 ) != MAGIC ||
+                 header.getInt( 4 ) != FORMAT_VERSION ||
+                 header.getLong( 8 ) != parameterHash ||
+                 header.getLong( 16 ) != seed ||
+                 header.getInt( 24 ) != tileX ||
+                 header.getInt( 28 ) != tileY ||
+                 header.getInt( 32 ) != heightMapSize )
+            {
+                stale = true;
+            }
+            else
+            {
+                pixelDataLength = header.getInt( 36 );
+                stale = pixelDataLength < 0 || channel.size() != HEADER_SIZE + heightMapSize*heightMapSize*4L + pixelDataLength;
+            }
+            buffer = stale ? null : channel.map( MapMode.READ_ONLY , 0 , channel.size() );
+        }
+        catch(IOException e)
+        {
+            System.err.println("Failed to read cached tile "+file+": "+e.getMessage());
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        if ( stale ) {
+            return discardStale( file );
+        }
+        buffer.order( ByteOrder.LITTLE_ENDIAN );
+        hitCount.incrementAndGet();
+        return new TileData( buffer , heightMapSize , pixelDataLength );
+    }
+
+    private TileData discardStale(File file)
+    {
+        staleCount.incrementAndGet();
+        missCount.incrementAndGet();
+        if ( ! file.delete() ) {
+            System.err.println("Failed to delete stale tile "+file);
+        }
+        return null;
+    }
+
+    /**
+     * Stores a tile.
+     *
+     * Data is written to a temporary file first that is then renamed, so
+     * concurrent readers never see partially written files. Files that already
+     * exist are never replaced because other threads may have mapped them, the
+     * data would be the same anyway.
+     *
+     * @param tileX
+     * @param tileY
+     * @param heightMap
+     * @param heightMapSize
+     * @param pixels RGBA8888 pixel data, all remaining bytes will be written
+     */
+    public void store(int tileX,int tileY,float[] heightMap,int heightMapSize,ByteBuffer pixels)
+    {
+        if ( heightMap.length != heightMapSize*heightMapSize ) {
+            throw new IllegalArgumentException("Height map has wrong size");
+        }
+
+        final ByteBuffer pixelData = pixels.duplicate();
+        final int pixelDataLength = pixelData.remaining();
+        final long fileSize = HEADER_SIZE + heightMapSize*heightMapSize*4L + pixelDataLength;
+
+        File tmpFile = null;
+        try
+        {
+            if ( ! directory.exists() && ! directory.mkdirs() && ! directory.exists() ) {
+                throw new IOException("Failed to create directory "+directory);
+            }
+            tmpFile = File.createTempFile( "tile_"+tileX+"_"+tileY , ".tmp" , directory );
+            final ByteBuffer buffer = ByteBuffer.allocate( (int) fileSize ).order( ByteOrder.LITTLE_ENDIAN );
+            buffer.putInt( MAGIC );
+            buffer.putInt( FORMAT_VERSION );
+            buffer.putLong( parameterHash );
+            buffer.putLong( seed );
+            buffer.putInt( tileX );
+            buffer.putInt( tileY );
+            buffer.putInt( heightMapSize );
+            buffer.putInt( pixelDataLength );
+            buffer.asFloatBuffer().put( heightMap );
+            buffer.position( buffer.position() + heightMap.length*4 );
+            buffer.put( pixelData );
+            buffer.flip();
+
+            // written through the channel, a live mapping would keep the temporary file from being renamed on some platforms
+            try ( RandomAccessFile raf = new RandomAccessFile( tmpFile , "rw" ) ; FileChannel channel = raf.getChannel() )
+            {
+                while ( buffer.hasRemaining() ) {
+                    channel.write( buffer );
+                }
+            }
+
+            Files.move( tmpFile.toPath() , getFile( tileX , tileY , heightMapSize ).toPath() );
+            tmpFile = null;
+        }
+        catch(FileAlreadyExistsException e)
+        {
+            // already cached, possibly by another thread
+        }
+        catch(IOException e)
+        {
+            System.err.println("Failed to cache tile "+tileX+" / "+tileY+": "+e.getMessage());
+        }
+        finally
+        {
+            if ( tmpFile != null ) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    public long getStaleCount()
+    {
+        return staleCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DiskTileCache[ "+directory+" , hits: "+hitCount.get()+", misses: "+missCount.get()+", stale: "+staleCount.get()+" ]";
+    }
+}
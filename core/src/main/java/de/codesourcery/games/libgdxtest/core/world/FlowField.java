@@ -0,0 +1,263 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.Arrays;
+
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+
+/**
+ * Directions towards a single target for every node of a {@link NavMesh}.
+ *
+ * A Dijkstra search starting at the target calculates the cost of the cheapest path to the target for every reachable node,
+ * every node points at the neighbour its cheapest path continues with. Any number of agents can then look up the direction
+ * to move in at constant cost, instead of searching a path each.
+ *
+ * When the target moves, the field is calculated again in the background: {@link #update(int)} continues the calculation
+ * for a limited number of nodes per call (usually once per frame), while lookups keep using the last complete field
+ * until the new one is finished.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public class FlowField
+{
+    // direction by index, 0...7, NO_DIRECTION for nodes that are not reachable, AT_TARGET for the target itself
+    private static final int[] DX = { -1 , 0 , 1 , -1 , 1 , -1 , 0 , 1 };
+    private static final int[] DY = { -1 , -1 , -1 , 0 , 0 , 1 , 1 , 1 };
+
+    private static final byte NO_DIRECTION = -1;
+    private static final byte AT_TARGET = 8;
+
+    private final NavMesh mesh;
+    private final int meshWidth;
+    private final float walkableGroundLevel;
+
+    // complete field
+    private float[] cost;
+    private byte[] direction;
+    private int targetX = -1;
+    private int targetY = -1;
+
+    // field being calculated
+    private float[] nextCost;
+    private byte[] nextDirection;
+    private int nextTargetX = -1;
+    private int nextTargetY = -1;
+    private boolean calculating;
+    private final IndexedMinHeap openList;
+    private final boolean[] visited;
+
+    // target requested while a calculation was still running, -1 if none
+    private int pendingTargetX = -1;
+    private int pendingTargetY = -1;
+
+    public FlowField(NavMesh mesh,float walkableGroundLevel)
+    {
+        this.mesh = mesh;
+        this.meshWidth = mesh.width;
+        this.walkableGroundLevel = walkableGroundLevel;
+
+        final int nodeCount = meshWidth*meshWidth;
+        cost = new float[ nodeCount ];
+        direction = new byte[ nodeCount ];
+        nextCost = new float[ nodeCount ];
+        nextDirection = new byte[ nodeCount ];
+        openList = new IndexedMinHeap( nodeCount );
+        visited = new boolean[ nodeCount ];
+        Arrays.fill( cost , Float.POSITIVE_INFINITY );
+        Arrays.fill( direction , NO_DIRECTION );
+    }
+
+    public NavMesh getNavMesh() {
+        return mesh;
+    }
+
+    /**
+     * Sets the target, the field gets calculated by subsequent calls to {@link #update(int)}.
+     *
+     * Does nothing if the target did not change.
+     *
+     * @param x
+     * @param y
+     */
+    public void setTarget(int x,int y)
+    {
+        if ( x < 0 || x >= meshWidth || y < 0 || y >= meshWidth ) {
+            throw new IllegalArgumentException("Invalid target position: "+x+" / "+y);
+        }
+        if ( calculating )
+        {
+            if ( x == nextTargetX && y == nextTargetY ) {
+                pendingTargetX = pendingTargetY = -1;
+            }
+            else {
+                // start over once the current calculation is done, so that a target that moves every frame does not starve it
+                pendingTargetX = x;
+                pendingTargetY = y;
+            }
+            return;
+        }
+        if ( x != targetX || y != targetY ) {
+            startCalculation( x , y );
+        }
+    }
+
+    /**
+     * Continues calculating the field.
+     *
+     * @param maxNodes max. number of nodes to finish, <code>Integer.MAX_VALUE</code> to finish the calculation
+     * @return <code>true</code> if the field is up-to-date
+     */
+    public boolean update(int maxNodes)
+    {
+        int budget = maxNodes;
+        while ( calculating && budget > 0 )
+        {
+            budget = calculate( budget );
+            if ( ! calculating && pendingTargetX != -1 )
+            {
+                final int x = pendingTargetX;
+                final int y = pendingTargetY;
+                pendingTargetX = pendingTargetY = -1;
+                if ( x != targetX || y != targetY ) {
+                    startCalculation( x , y );
+                }
+            }
+        }
+        return ! calculating;
+    }
+
+    /**
+     * Sets the target and calculates the field right away.
+     */
+    public void calculate(int targetX,int targetY)
+    {
+        setTarget( targetX , targetY );
+        update( Integer.MAX_VALUE );
+    }
+
+    public boolean isUpToDate() {
+        return ! calculating;
+    }
+
+    public int getTargetX() {
+        return targetX;
+    }
+
+    public int getTargetY() {
+        return targetY;
+    }
+
+    /**
+     * Returns whether the target can be reached from a node.
+     */
+    public boolean isReachable(int x,int y) {
+        return direction[ x + y*meshWidth ] != NO_DIRECTION;
+    }
+
+    /**
+     * Returns the cost of the cheapest path from a node to the target.
+     *
+     * @return cost or <code>Float.POSITIVE_INFINITY</code> if the target is not reachable
+     */
+    public float getCost(int x,int y) {
+        return cost[ x + y*meshWidth ];
+    }
+
+    /**
+     * Returns the X offset (-1,0,1) of the neighbour to move to next.
+     *
+     * Returns 0 for the target and nodes the target cannot be reached from.
+     */
+    public int getDirectionX(int x,int y)
+    {
+        final byte dir = direction[ x + y*meshWidth ];
+        return dir >= 0 && dir < AT_TARGET ? DX[ dir ] : 0;
+    }
+
+    /**
+     * Returns the Y offset (-1,0,1) of the neighbour to move to next.
+     *
+     * Returns 0 for the target and nodes the target cannot be reached from.
+     */
+    public int getDirectionY(int x,int y)
+    {
+        final byte dir = direction[ x + y*meshWidth ];
+        return dir >= 0 && dir < AT_TARGET ? DY[ dir ] : 0;
+    }
+
+    private void startCalculation(int x,int y)
+    {
+        Arrays.fill( nextCost , Float.POSITIVE_INFINITY );
+        Arrays.fill( nextDirection , NO_DIRECTION );
+        Arrays.fill( visited , false );
+        openList.clear();
+
+        final int target = x + y*meshWidth;
+        nextCost[target] = 0;
+        nextDirection[target] = AT_TARGET;
+        openList.insert( target , 0 );
+        nextTargetX = x;
+        nextTargetY = y;
+        calculating = true;
+    }
+
+    /*
+     * Expands up to 'budget' nodes, swaps buffers when done.
+     * Returns the remaining budget.
+     */
+    private int calculate(int budget)
+    {
+        final float[] height = mesh.height;
+        while ( budget > 0 && ! openList.isEmpty() )
+        {
+            final int current = openList.poll();
+            visited[current] = true;
+            budget--;
+
+            final int cx = current % meshWidth;
+            final int cy = current / meshWidth;
+            final float currentCost = nextCost[current];
+            final float currentHeight = height[current];
+            for ( int dir = 0 ; dir < 8 ; dir++ )
+            {
+                final int x = cx + DX[dir];
+                final int y = cy + DY[dir];
+                if ( x < 0 || y < 0 || x >= meshWidth || y >= meshWidth ) {
+                    continue;
+                }
+                final int neighbour = x + y*meshWidth;
+                // the search runs backwards from the target, the neighbour is where a path to the target would start
+                if ( visited[neighbour] || height[neighbour] > walkableGroundLevel ) {
+                    continue;
+                }
+                final float newCost = currentCost + PathFinder.getStepCost( height[neighbour] , currentHeight );
+                if ( newCost < nextCost[neighbour] )
+                {
+                    final boolean known = nextCost[neighbour] != Float.POSITIVE_INFINITY;
+                    nextCost[neighbour] = newCost;
+                    // neighbour moves in the opposite direction to get here
+                    nextDirection[neighbour] = (byte) ( 7 - dir );
+                    if ( known ) {
+                        openList.decreaseKey( neighbour , newCost );
+                    } else {
+                        openList.insert( neighbour , newCost );
+                    }
+                }
+            }
+        }
+
+        if ( openList.isEmpty() )
+        {
+            // swap buffers
+            final float[] tmpCost = cost;
+            cost = nextCost;
+            nextCost = tmpCost;
+            final byte[] tmpDirection = direction;
+            direction = nextDirection;
+            nextDirection = tmpDirection;
+            targetX = nextTargetX;
+            targetY = nextTargetY;
+            calculating = false;
+        }
+        return budget;
+    }
+}
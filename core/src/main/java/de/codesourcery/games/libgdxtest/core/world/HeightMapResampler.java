@@ -0,0 +1,266 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resamples square height maps from one size into another, keeping full float precision.
+ *
+ * Filters are separable, the source pixels and weights contributing to each output row/column are
+ * computed once when the resampler gets created. Resampling itself does not allocate, so instances
+ * should be created once per (input size, output size, filter) combination and reused.
+ *
+ * Instances are immutable and thus thread-safe, disjoint ranges of output rows may be
+ * generated concurrently.
+ */
+public final class HeightMapResampler
+{
+    // number of output rows generated by each fork/join task
+    private static final int BAND_ROWS = 16;
+
+    public static enum Filter
+    {
+        /**
+         * Averages all source pixels covered by an output pixel.
+         */
+        BOX,
+        /**
+         * Linear interpolation between the 2x2 source pixels closest to an output pixel's center.
+         */
+        BILINEAR,
+        /**
+         * Cubic (Catmull-Rom) interpolation between the 4x4 source pixels closest to an output pixel's center,
+         * results are clamped to 0...1 because the kernel overshoots.
+         */
+        BICUBIC;
+    }
+
+    public final int inputSize;
+    public final int outputSize;
+    public final Filter filter;
+
+    // number of source pixels contributing to each output pixel along one axis
+    private final int taps;
+    // source pixel indices (clamped to the edges) and weights, 'taps' entries per output row/column
+    private final int[] indices;
+    private final float[] weights;
+
+    public HeightMapResampler(int inputSize,int outputSize,Filter filter)
+    {
+        if ( inputSize < 1 || outputSize < 1 ) {
+            throw new IllegalArgumentException("Sizes must be >= 1");
+        }
+        if ( filter == null ) {
+            throw new IllegalArgumentException("Filter must not be NULL");
+        }
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.filter = filter;
+
+        final double scale = inputSize / (double) outputSize;
+        switch( filter )
+        {
+            case BOX:
+                // output pixels start on source pixel boundaries if the scale is integral
+                taps = scale == Math.floor( scale ) ? (int) scale : (int) Math.ceil( scale ) + 1;
+                break;
+            case BILINEAR:
+                taps = 2;
+                break;
+            case BICUBIC:
+                taps = 4;
+                break;
+            default:
+                throw new RuntimeException("Unhandled filter: "+filter);
+        }
+
+        indices = new int[ outputSize * taps ];
+        weights = new float[ outputSize * taps ];
+        for ( int out = 0 ; out < outputSize ; out++ )
+        {
+            final int first;
+            final double[] w = new double[ taps ];
+            if ( filter == Filter.BOX )
+            {
+                // area covered by this output pixel, in source pixels
+                final double start = out * scale;
+                final double end = start + scale;
+                first = (int) Math.floor( start );
+                for ( int i = 0 ; i < taps ; i++ ) {
+                    final double overlap = Math.min( end , first + i + 1 ) - Math.max( start , first + i );
+                    w[i] = overlap > 0 ? overlap / scale : 0;
+                }
+            }
+            else
+            {
+                // position of this output pixel's center in source pixels
+                final double center = ( out + 0.5 ) * scale - 0.5;
+                final int base = (int) Math.floor( center );
+                final double t = center - base;
+                if ( filter == Filter.BILINEAR )
+                {
+                    first = base;
+                    w[0] = 1 - t;
+                    w[1] = t;
+                }
+                else
+                {
+                    first = base - 1;
+                    w[0] = cubic( 1 + t );
+                    w[1] = cubic( t );
+                    w[2] = cubic( 1 - t );
+                    w[3] = cubic( 2 - t );
+                }
+            }
+
+            double sum = 0;
+            for ( int i = 0 ; i < taps ; i++ ) {
+                sum += w[i];
+            }
+            for ( int i = 0 ; i < taps ; i++ )
+            {
+                final int src = first + i;
+                indices[ out * taps + i ] = src < 0 ? 0 : ( src >= inputSize ? inputSize - 1 : src );
+                weights[ out * taps + i ] = (float) ( w[i] / sum );
+            }
+        }
+    }
+
+    // Catmull-Rom kernel
+    private static double cubic(double x)
+    {
+        x = Math.abs( x );
+        if ( x <= 1 ) {
+            return 1.5*x*x*x - 2.5*x*x + 1;
+        }
+        if ( x < 2 ) {
+            return -0.5*x*x*x + 2.5*x*x - 4*x + 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Resamples a height map into a new array.
+     *
+     * @param heightMap
+     * @return
+     */
+    public float[] resample(float[] heightMap)
+    {
+        final float[] result = new float[ outputSize * outputSize ];
+        resample( heightMap , result , 0 , outputSize );
+        return result;
+    }
+
+    /**
+     * Resamples a height map into an existing array.
+     *
+     * @param heightMap input, <code>inputSize*inputSize</code> values
+     * @param result output, at least <code>outputSize*outputSize</code> values
+     * @param pool pool used to generate bands of rows in parallel, may be <code>null</code>
+     */
+    public void resample(float[] heightMap,float[] result,ForkJoinPool pool)
+    {
+        if ( pool == null || outputSize <= BAND_ROWS ) {
+            resample( heightMap , result , 0 , outputSize );
+        } else {
+            checkSizes( heightMap , result );
+            pool.invoke( new ResampleTask( heightMap , result , 0 , outputSize ) );
+        }
+    }
+
+    /**
+     * Resamples a range of rows of a height map into an existing array.
+     *
+     * @param heightMap input, <code>inputSize*inputSize</code> values
+     * @param result output, at least <code>outputSize*outputSize</code> values
+     * @param firstRow first output row to generate (inclusive)
+     * @param lastRow last output row to generate (exclusive)
+     */
+    public void resample(float[] heightMap,float[] result,int firstRow,int lastRow)
+    {
+        checkSizes( heightMap , result );
+        if ( firstRow < 0 || lastRow > outputSize || firstRow > lastRow ) {
+            throw new IllegalArgumentException("Invalid row range "+firstRow+" - "+lastRow);
+        }
+
+        int dst = firstRow * outputSize;
+        for ( int y = firstRow ; y < lastRow ; y++ )
+        {
+            for ( int x = 0 ; x < outputSize ; x++ ) {
+                result[ dst++ ] = sample( heightMap , x , y );
+            }
+        }
+    }
+
+    private float sample(float[] heightMap,int x,int y)
+    {
+        final int taps = this.taps;
+        final int[] indices = this.indices;
+        final float[] weights = this.weights;
+
+        final int xTaps = x * taps;
+        final int yTaps = y * taps;
+        float sum = 0;
+        for ( int j = 0 ; j < taps ; j++ )
+        {
+            final int row = indices[ yTaps + j ] * inputSize;
+            float rowSum = 0;
+            for ( int i = 0 ; i < taps ; i++ ) {
+                rowSum += weights[ xTaps + i ] * heightMap[ row + indices[ xTaps + i ] ];
+            }
+            sum += weights[ yTaps + j ] * rowSum;
+        }
+        if ( filter == Filter.BICUBIC ) {
+            sum = sum < 0 ? 0 : ( sum > 1 ? 1 : sum );
+        }
+        return sum;
+    }
+
+    private void checkSizes(float[] heightMap,float[] result)
+    {
+        if ( heightMap.length < inputSize * inputSize ) {
+            throw new IllegalArgumentException("Input needs "+(inputSize*inputSize)+" values but has only "+heightMap.length);
+        }
+        if ( result.length < outputSize * outputSize ) {
+            throw new IllegalArgumentException("Output needs "+(outputSize*outputSize)+" values but has only "+result.length);
+        }
+    }
+
+    protected final class ResampleTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] heightMap;
+        private final float[] result;
+        private final int firstRow;
+        private final int lastRow;
+
+        public ResampleTask(float[] heightMap, float[] result, int firstRow, int lastRow)
+        {
+            this.heightMap = heightMap;
+            this.result = result;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final int rows = lastRow - firstRow;
+            if ( rows <= BAND_ROWS ) {
+                resample( heightMap , result , firstRow , lastRow );
+                return;
+            }
+            final int middle = firstRow + rows/2;
+            invokeAll( new ResampleTask( heightMap , result , firstRow , middle ) ,
+                       new ResampleTask( heightMap , result , middle , lastRow ) );
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HeightMapResampler[ "+inputSize+"x"+inputSize+" -> "+outputSize+"x"+outputSize+" , "+filter+" ]";
+    }
+}
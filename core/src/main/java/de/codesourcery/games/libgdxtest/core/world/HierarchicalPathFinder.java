@@ -0,0 +1,913 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
+
+/**
+ * Hierarchical path finding (HPA*) across the tiles of the world.
+ *
+ * Every tile contributes a {@link NavMesh} of <code>tileSize*tileSize</code> nodes. Nodes are addressed by global
+ * coordinates, node <code>(x,y)</code> of the mesh of tile <code>(tileX,tileY)</code> is node
+ * <code>(tileX*tileSize+x , tileY*tileSize+y)</code>, so mesh rows grow along with the tile Y coordinate
+ * (tiles of {@link TileFactory} need to be added with their Y coordinate negated, their height map rows grow
+ * the opposite way).
+ *
+ * Each tile's mesh is divided into square clusters. Walkable runs of nodes along the border between two clusters
+ * are entrances, each entrance gets one transition (two for wide entrances) connecting the nodes on
+ * both sides of the border, nodes that are only connected by a diagonal step get a transition of their own.
+ * Transition nodes of a cluster are connected by edges carrying the cost of the
+ * cheapest path between them inside the cluster.
+ *
+ * Tiles are added and removed while the world gets loaded and unloaded, entrances across the border between two
+ * tiles are created as soon as both tiles are present and removed together with either tile. Only the clusters
+ * along a changed border need their edges recalculated, so the cost of adding a tile does not depend on how many
+ * tiles are present.
+ *
+ * Queries connect start and destination to the transition nodes of their clusters and
+ * run A* on the (small) graph of transition nodes, yielding a {@link HierarchicalPath} of waypoints.
+ * Paths between waypoints are only calculated when needed, see {@link #refine(HierarchicalPath, int)}.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public class HierarchicalPathFinder
+{
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    // entrances at least this wide get a transition at both ends instead of one in the middle
+    private static final int WIDE_ENTRANCE = 6;
+
+    private final int tileSize;
+    private final int clusterSize;
+    private final int clustersPerTile;
+    private final float walkableGroundLevel;
+
+    // used for calculating edges, connecting start/destination and refining paths, switched between tile meshes
+    private final PathFinder finder;
+
+    private final Map<Long,NavTile> tiles = new HashMap<>();
+    private final Map<Long,Integer> nodesByCell = new HashMap<>();
+
+    // clusters whose transition nodes changed since their edges were calculated
+    private final List<Cluster> dirtyClusters = new ArrayList<>();
+
+    // abstract graph, node IDs of removed nodes are reused
+    private int[] nodeX = new int[ 64 ];
+    private int[] nodeY = new int[ 64 ];
+    private Cluster[] nodeCluster = new Cluster[ 64 ];
+    private int[][] edgeTarget = new int[ 64 ][];
+    private float[][] edgeCost = new float[ 64 ][];
+    private int[] edgeCount = new int[ 64 ];
+    private int nodeCapacity;
+    private int nodeCount;
+    private int[] freeNodes = new int[ 64 ];
+    private int freeNodeCount;
+
+    // state of the current query, only valid if a node's stamp matches the current query.
+    // start and destination are the two nodes following the last possible transition node
+    private IndexedMinHeap openList;
+    private float[] g;
+    private int[] predecessor;
+    private int[] stamp;
+    private int currentStamp;
+    private int startNode;
+    private int goalNode;
+
+    // cost from the start to transition nodes of its cluster
+    private int[] startEdgeTarget = new int[ 16 ];
+    private float[] startEdgeCost = new float[ 16 ];
+    private int startEdgeCount;
+
+    // cost from transition nodes of the destination's cluster to the destination
+    private float[] goalCost;
+    private int[] goalStamp;
+
+    private int goalX;
+    private int goalY;
+
+    /**
+     * A path as a sequence of waypoints.
+     *
+     * Consecutive waypoints are either in the same cluster or adjacent nodes on
+     * both sides of a cluster border.
+     */
+    public static final class HierarchicalPath
+    {
+        private final int[] waypointX;
+        private final int[] waypointY;
+        private final float cost;
+
+        protected HierarchicalPath(int[] waypointX,int[] waypointY,float cost)
+        {
+            this.waypointX = waypointX;
+            this.waypointY = waypointY;
+            this.cost = cost;
+        }
+
+        public int getWaypointCount() {
+            return waypointX.length;
+        }
+
+        public int getWaypointX(int index) {
+            return waypointX[index];
+        }
+
+        public int getWaypointY(int index) {
+            return waypointY[index];
+        }
+
+        /**
+         * Returns the number of segments between waypoints.
+         */
+        public int getSegmentCount() {
+            return waypointX.length - 1;
+        }
+
+        /**
+         * Returns the cost of the path as estimated by the abstract search.
+         */
+        public float getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "HierarchicalPath[ "+waypointX.length+" waypoints , cost "+cost+" ]";
+        }
+    }
+
+    protected static final class NavTile
+    {
+        public final int tileX;
+        public final int tileY;
+        public final NavMesh mesh;
+        public final Cluster[] clusters;
+
+        protected NavTile(int tileX,int tileY,NavMesh mesh,int clustersPerTile)
+        {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.mesh = mesh;
+            this.clusters = new Cluster[ clustersPerTile*clustersPerTile ];
+        }
+
+        @Override
+        public String toString() {
+            return "NavTile "+tileX+" / "+tileY;
+        }
+    }
+
+    protected static final class Cluster
+    {
+        public final NavTile tile;
+        // part of the tile's mesh covered by this cluster
+        public final int minX;
+        public final int minY;
+        public final int maxX;
+        public final int maxY;
+
+        private int[] nodes = new int[ 8 ];
+        private int nodeCount;
+        private boolean dirty;
+
+        protected Cluster(NavTile tile,int minX,int minY,int size)
+        {
+            this.tile = tile;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = minX + size;
+            this.maxY = minY + size;
+        }
+
+        protected void add(int node)
+        {
+            if ( nodeCount == nodes.length ) {
+                nodes = Arrays.copyOf( nodes , nodeCount*2 );
+            }
+            nodes[ nodeCount++ ] = node;
+        }
+
+        protected void remove(int node)
+        {
+            for ( int i = 0 ; i < nodeCount ; i++ )
+            {
+                if ( nodes[i] == node ) {
+                    nodes[i] = nodes[ --nodeCount ];
+                    return;
+                }
+            }
+        }
+    }
+
+    public HierarchicalPathFinder(int tileSize,float walkableGroundLevel)
+    {
+        this(tileSize,walkableGroundLevel,Math.min( DEFAULT_CLUSTER_SIZE , tileSize ) );
+    }
+
+    /**
+     *
+     * @param tileSize width/height of the nav mesh of every tile
+     * @param walkableGroundLevel nodes higher than this are not walkable
+     * @param clusterSize width/height of clusters in nodes, needs to divide the tile size
+     */
+    public HierarchicalPathFinder(int tileSize,float walkableGroundLevel,int clusterSize)
+    {
+        if ( clusterSize < 2 ) {
+            throw new IllegalArgumentException("Cluster size must be >= 2");
+        }
+        if ( tileSize % clusterSize != 0 ) {
+            throw new IllegalArgumentException("Cluster size "+clusterSize+" does not divide tile size "+tileSize);
+        }
+        this.tileSize = tileSize;
+        this.clusterSize = clusterSize;
+        this.clustersPerTile = tileSize / clusterSize;
+        this.walkableGroundLevel = walkableGroundLevel;
+        this.finder = new PathFinder( new NavMesh( tileSize , new float[ tileSize*tileSize ] ) );
+    }
+
+    /**
+     * Adds a tile, replacing any tile previously added at the same coordinates.
+     *
+     * The mesh must not be changed while the tile is part of this path finder.
+     *
+     * @param tileX
+     * @param tileY
+     * @param mesh mesh of <code>tileSize*tileSize</code> nodes
+     */
+    public void addTile(int tileX,int tileY,NavMesh mesh)
+    {
+        if ( mesh.width != tileSize ) {
+            throw new IllegalArgumentException("Mesh width "+mesh.width+" does not match tile size "+tileSize);
+        }
+        removeTile( tileX , tileY );
+
+        final NavTile tile = new NavTile( tileX , tileY , mesh , clustersPerTile );
+        for ( int i = 0 ; i < tile.clusters.length ; i++ ) {
+            tile.clusters[i] = new Cluster( tile , ( i % clustersPerTile ) * clusterSize , ( i / clustersPerTile ) * clusterSize , clusterSize );
+        }
+        tiles.put( key( tileX , tileY ) , tile );
+
+        // every border/corner between two clusters is handled once, by the second of the two tiles getting added
+        final int firstClusterX = tileX * clustersPerTile;
+        final int firstClusterY = tileY * clustersPerTile;
+        for ( int cy = firstClusterY ; cy < firstClusterY + clustersPerTile ; cy++ )
+        {
+            for ( int cx = firstClusterX ; cx < firstClusterX + clustersPerTile ; cx++ )
+            {
+                if ( cx + 1 < firstClusterX + clustersPerTile || getCluster( cx + 1 , cy ) != null ) {
+                    addEntrances( ( cx + 1 ) * clusterSize - 1 , cy * clusterSize , 1 , 0 , 0 , 1 );
+                }
+                if ( cy + 1 < firstClusterY + clustersPerTile || getCluster( cx , cy + 1 ) != null ) {
+                    addEntrances( cx * clusterSize , ( cy + 1 ) * clusterSize - 1 , 0 , 1 , 1 , 0 );
+                }
+                if ( cx == firstClusterX && getCluster( cx - 1 , cy ) != null ) {
+                    addEntrances( cx * clusterSize - 1 , cy * clusterSize , 1 , 0 , 0 , 1 );
+                }
+                if ( cy == firstClusterY && getCluster( cx , cy - 1 ) != null ) {
+                    addEntrances( cx * clusterSize , cy * clusterSize - 1 , 0 , 1 , 1 , 0 );
+                }
+            }
+        }
+        // corner (vx,vy) is the top-left corner of cluster (vx,vy)
+        for ( int vy = firstClusterY ; vy <= firstClusterY + clustersPerTile ; vy++ )
+        {
+            for ( int vx = firstClusterX ; vx <= firstClusterX + clustersPerTile ; vx++ )
+            {
+                final int x = vx * clusterSize;
+                final int y = vy * clusterSize;
+                addCornerTransition( tile , x - 1 , y - 1 , x , y );
+                addCornerTransition( tile , x , y - 1 , x - 1 , y );
+            }
+        }
+        updateDirtyClusters();
+    }
+
+    /**
+     * Removes a tile along with all entrances leading into it.
+     *
+     * @param tileX
+     * @param tileY
+     * @return <code>true</code> if the tile was present
+     */
+    public boolean removeTile(int tileX,int tileY)
+    {
+        final NavTile tile = tiles.remove( key( tileX , tileY ) );
+        if ( tile == null ) {
+            return false;
+        }
+        for ( Cluster cluster : tile.clusters )
+        {
+            while ( cluster.nodeCount > 0 )
+            {
+                final int node = cluster.nodes[ cluster.nodeCount - 1 ];
+                for ( int i = 0 ; i < edgeCount[node] ; i++ )
+                {
+                    final int other = edgeTarget[node][i];
+                    // other node may have been removed already
+                    final Cluster otherCluster = nodeCluster[other];
+                    if ( otherCluster != null && otherCluster.tile != tile )
+                    {
+                        // transition into a neighbouring tile
+                        removeEdges( other , node );
+                        if ( ! hasTransition( other ) ) {
+                            removeNode( other );
+                        }
+                    }
+                }
+                removeNode( node );
+            }
+        }
+        updateDirtyClusters();
+        return true;
+    }
+
+    public boolean containsTile(int tileX,int tileY) {
+        return tiles.containsKey( key( tileX , tileY ) );
+    }
+
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * Returns the number of transition nodes in the abstract graph.
+     */
+    public int getTransitionNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of edges between transition nodes.
+     */
+    public int getEdgeCount()
+    {
+        int result = 0;
+        for ( int node = 0 ; node < nodeCapacity ; node++ ) {
+            result += nodeCluster[node] != null ? edgeCount[node] : 0;
+        }
+        return result;
+    }
+
+    /**
+     * Searches a path.
+     *
+     * @param startX
+     * @param startY
+     * @param dstX
+     * @param dstY
+     * @return path or <code>null</code> if the destination is not reachable through the tiles present
+     */
+    public HierarchicalPath findPath(int startX,int startY,int dstX,int dstY)
+    {
+        final Cluster startCluster = getClusterAt( startX , startY );
+        final Cluster goalCluster = getClusterAt( dstX , dstY );
+        if ( startCluster == null || goalCluster == null || ! isWalkable( dstX , dstY ) ) {
+            return null;
+        }
+
+        // paths inside a single cluster do not need the abstract graph
+        if ( startCluster == goalCluster )
+        {
+            final Path local = findPathInCluster( startX , startY , dstX , dstY , startCluster );
+            if ( local != null ) {
+                return new HierarchicalPath( new int[] { startX , dstX } , new int[] { startY , dstY } , local.path.get( local.path.size() - 1 ).g );
+            }
+        }
+
+        beginQuery();
+        goalX = dstX;
+        goalY = dstY;
+
+        // connect start and destination to the transition nodes of their clusters,
+        // costs are symmetric so the costs from the destination are the costs to it
+        startEdgeCount = 0;
+        computeCostsInCluster( startX , startY , startCluster );
+        if ( startEdgeTarget.length < startCluster.nodeCount )
+        {
+            startEdgeTarget = new int[ startCluster.nodeCount ];
+            startEdgeCost = new float[ startCluster.nodeCount ];
+        }
+        for ( int i = 0 ; i < startCluster.nodeCount ; i++ )
+        {
+            final int node = startCluster.nodes[i];
+            final float cost = getCost( node , startCluster );
+            if ( cost != Float.POSITIVE_INFINITY ) {
+                startEdgeTarget[ startEdgeCount ] = node;
+                startEdgeCost[ startEdgeCount++ ] = cost;
+            }
+        }
+        computeCostsInCluster( dstX , dstY , goalCluster );
+        for ( int i = 0 ; i < goalCluster.nodeCount ; i++ )
+        {
+            final int node = goalCluster.nodes[i];
+            final float cost = getCost( node , goalCluster );
+            if ( cost != Float.POSITIVE_INFINITY ) {
+                goalCost[node] = cost;
+                goalStamp[node] = currentStamp;
+            }
+        }
+
+        g[startNode] = 0;
+        predecessor[startNode] = -1;
+        stamp[startNode] = currentStamp;
+        openList.insert( startNode , 0 );
+        do
+        {
+            final int current = openList.poll();
+            if ( current == goalNode ) {
+                return createPath( startX , startY );
+            }
+            stamp[current] = -currentStamp;
+            if ( current == startNode )
+            {
+                for ( int i = 0 ; i < startEdgeCount ; i++ ) {
+                    relax( current , startEdgeTarget[i] , startEdgeCost[i] );
+                }
+                continue;
+            }
+            final int[] targets = edgeTarget[current];
+            final float[] costs = edgeCost[current];
+            for ( int i = 0 , end = edgeCount[current] ; i < end ; i++ ) {
+                relax( current , targets[i] , costs[i] );
+            }
+            if ( goalStamp[current] == currentStamp ) {
+                relax( current , goalNode , goalCost[current] );
+            }
+        } while ( ! openList.isEmpty() );
+        return null;
+    }
+
+    /**
+     * Calculates the path between two consecutive waypoints.
+     *
+     * @param path
+     * @param segment segment index, the segment goes from waypoint <code>segment</code> to <code>segment+1</code>
+     * @return path including both waypoints or <code>null</code> if the tiles along the segment
+     * changed since the path was found
+     */
+    public Path refine(HierarchicalPath path,int segment)
+    {
+        final int fromX = path.waypointX[segment];
+        final int fromY = path.waypointY[segment];
+        final int toX = path.waypointX[segment+1];
+        final int toY = path.waypointY[segment+1];
+
+        final Cluster cluster = getClusterAt( fromX , fromY );
+        if ( cluster == null || ! isWalkable( toX , toY ) ) {
+            return null;
+        }
+        if ( cluster == getClusterAt( toX , toY ) ) {
+            return findPathInCluster( fromX , fromY , toX , toY , cluster );
+        }
+
+        // step across a cluster border
+        if ( Math.max( Math.abs( toX - fromX ) , Math.abs( toY - fromY ) ) != 1 ) {
+            return null;
+        }
+        final Path result = new Path();
+        final PathNode first = new PathNode( fromX , fromY );
+        final PathNode second = new PathNode( toX , toY );
+        second.predecessor = first;
+        second.g = PathFinder.getStepCost( getHeight( fromX , fromY ) , getHeight( toX , toY ) );
+        result.path.add( first );
+        result.path.add( second );
+        return result;
+    }
+
+    /**
+     * Calculates the complete path by refining all segments.
+     *
+     * @param path
+     * @return path or <code>null</code> if the tiles along the path changed since it was found
+     */
+    public Path refine(HierarchicalPath path)
+    {
+        final Path result = new Path();
+        for ( int segment = 0 ; segment < path.getSegmentCount() ; segment++ )
+        {
+            final Path part = refine( path , segment );
+            if ( part == null ) {
+                return null;
+            }
+            // first node of a segment is the last node of the previous one
+            for ( int i = segment == 0 ? 0 : 1 ; i < part.path.size() ; i++ )
+            {
+                final PathNode node = part.path.get(i);
+                node.predecessor = result.path.isEmpty() ? null : result.path.get( result.path.size() - 1 );
+                result.path.add( node );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a node is part of a tile that is present and walkable.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isWalkable(int x,int y)
+    {
+        final NavTile tile = getTileAt( x , y );
+        return tile != null && tile.mesh.get( x - tile.tileX*tileSize , y - tile.tileY*tileSize ) <= walkableGroundLevel;
+    }
+
+    private void relax(int current,int successor,float cost)
+    {
+        if ( stamp[successor] == -currentStamp ) {
+            return;
+        }
+        final float tentative_g = g[current] + cost;
+        final boolean seen = stamp[successor] == currentStamp;
+        if ( seen && tentative_g >= g[successor] ) {
+            return;
+        }
+        g[successor] = tentative_g;
+        predecessor[successor] = current;
+        final float f = tentative_g + h( successor );
+        if ( seen ) {
+            openList.decreaseKey( successor , f );
+        } else {
+            stamp[successor] = currentStamp;
+            openList.insert( successor , f );
+        }
+    }
+
+    /*
+     * Every step costs at least 1 and moves by at most one node
+     * along each axis, so the Chebyshev distance never overestimates.
+     */
+    private float h(int node)
+    {
+        if ( node == goalNode ) {
+            return 0;
+        }
+        return Math.max( Math.abs( nodeX[node] - goalX ) , Math.abs( nodeY[node] - goalY ) );
+    }
+
+    private HierarchicalPath createPath(int startX,int startY)
+    {
+        int count = 0;
+        for ( int node = goalNode ; node != -1 ; node = predecessor[node] ) {
+            count++;
+        }
+        final int[] x = new int[ count ];
+        final int[] y = new int[ count ];
+        for ( int node = goalNode , i = count - 1 ; node != -1 ; node = predecessor[node] , i-- )
+        {
+            x[i] = node == startNode ? startX : node == goalNode ? goalX : nodeX[node];
+            y[i] = node == startNode ? startY : node == goalNode ? goalY : nodeY[node];
+        }
+        return new HierarchicalPath( x , y , g[goalNode] );
+    }
+
+    private void beginQuery()
+    {
+        // start and destination follow the last possible transition node
+        startNode = nodeCapacity;
+        goalNode = nodeCapacity + 1;
+        if ( g == null || g.length < nodeCapacity + 2 )
+        {
+            final int size = nodeCapacity + 2;
+            openList = new IndexedMinHeap( size );
+            g = new float[ size ];
+            predecessor = new int[ size ];
+            stamp = new int[ size ];
+            goalCost = new float[ size ];
+            goalStamp = new int[ size ];
+        }
+        openList.clear();
+        if ( currentStamp == Integer.MAX_VALUE )
+        {
+            // stamps would wrap around, forget about all previous queries
+            Arrays.fill( stamp , 0 );
+            Arrays.fill( goalStamp , 0 );
+            currentStamp = 0;
+        }
+        currentStamp++;
+    }
+
+    private static long key(int x,int y) {
+        return ( (long) x << 32 ) | ( y & 0xffffffffL );
+    }
+
+    // division rounding towards negative infinity
+    private static int floorDiv(int value,int divisor)
+    {
+        final int result = value / divisor;
+        return ( value % divisor != 0 && ( value < 0 ) != ( divisor < 0 ) ) ? result - 1 : result;
+    }
+
+    private NavTile getTileAt(int x,int y) {
+        return tiles.get( key( floorDiv( x , tileSize ) , floorDiv( y , tileSize ) ) );
+    }
+
+    private float getHeight(int x,int y)
+    {
+        final NavTile tile = getTileAt( x , y );
+        return tile.mesh.get( x - tile.tileX*tileSize , y - tile.tileY*tileSize );
+    }
+
+    /*
+     * Returns a cluster by its global cluster coordinates.
+     */
+    private Cluster getCluster(int clusterX,int clusterY)
+    {
+        final NavTile tile = tiles.get( key( floorDiv( clusterX , clustersPerTile ) , floorDiv( clusterY , clustersPerTile ) ) );
+        if ( tile == null ) {
+            return null;
+        }
+        return tile.clusters[ ( clusterX - tile.tileX*clustersPerTile ) + ( clusterY - tile.tileY*clustersPerTile )*clustersPerTile ];
+    }
+
+    private Cluster getClusterAt(int x,int y) {
+        return getCluster( floorDiv( x , clusterSize ) , floorDiv( y , clusterSize ) );
+    }
+
+    private Path findPathInCluster(int fromX,int fromY,int toX,int toY,Cluster cluster)
+    {
+        final int offsetX = cluster.tile.tileX*tileSize;
+        final int offsetY = cluster.tile.tileY*tileSize;
+        finder.setNavMesh( cluster.tile.mesh );
+        final Path local = finder.findPath( fromX - offsetX , fromY - offsetY , toX - offsetX , toY - offsetY , walkableGroundLevel ,
+                cluster.minX , cluster.minY , cluster.maxX , cluster.maxY );
+        if ( local == null ) {
+            return null;
+        }
+        // convert to global coordinates
+        final Path result = new Path();
+        for ( PathNode node : local.path )
+        {
+            final PathNode converted = new PathNode( node.x + offsetX , node.y + offsetY , node.f , node.g );
+            converted.predecessor = result.path.isEmpty() ? null : result.path.get( result.path.size() - 1 );
+            result.path.add( converted );
+        }
+        return result;
+    }
+
+    private void computeCostsInCluster(int x,int y,Cluster cluster)
+    {
+        finder.setNavMesh( cluster.tile.mesh );
+        finder.computeCosts( x - cluster.tile.tileX*tileSize , y - cluster.tile.tileY*tileSize , walkableGroundLevel ,
+                cluster.minX , cluster.minY , cluster.maxX , cluster.maxY );
+    }
+
+    // cost to a transition node of the cluster costs were last computed for
+    private float getCost(int node,Cluster cluster) {
+        return finder.getCost( nodeX[node] - cluster.tile.tileX*tileSize , nodeY[node] - cluster.tile.tileY*tileSize );
+    }
+
+    /*
+     * Scans a cluster border for runs of nodes that are walkable on both sides.
+     *
+     * (x,y) is the first node on the near side, (dx,dy) points across the border
+     * and (stepX,stepY) along it.
+     */
+    private void addEntrances(int x,int y,int dx,int dy,int stepX,int stepY)
+    {
+        final int length = clusterSize;
+        int runStart = -1;
+        for ( int i = 0 ; i <= length ; i++ )
+        {
+            final boolean open = i < length && isOpen( x , y , dx , dy , stepX , stepY , i );
+            if ( open && runStart == -1 ) {
+                runStart = i;
+            }
+            else if ( ! open && runStart != -1 )
+            {
+                final int runEnd = i - 1;
+                if ( runEnd - runStart + 1 >= WIDE_ENTRANCE ) {
+                    addTransition( x + runStart*stepX , y + runStart*stepY , dx , dy );
+                    addTransition( x + runEnd*stepX , y + runEnd*stepY , dx , dy );
+                } else {
+                    final int middle = ( runStart + runEnd ) / 2;
+                    addTransition( x + middle*stepX , y + middle*stepY , dx , dy );
+                }
+                runStart = -1;
+            }
+        }
+
+        // nodes may also be connected by diagonal steps only, steps across
+        // a cluster corner are handled by addCornerTransition()
+        for ( int i = 0 ; i < length ; i++ )
+        {
+            final int nearX = x + i*stepX;
+            final int nearY = y + i*stepY;
+            if ( ! isWalkable( nearX , nearY ) ) {
+                continue;
+            }
+            for ( int j = i - 1 ; j <= i + 1 ; j += 2 )
+            {
+                if ( j < 0 || j >= length ) {
+                    continue;
+                }
+                final int farX = x + j*stepX + dx;
+                final int farY = y + j*stepY + dy;
+                // a straight crossing next to the diagonal one already connects both nodes
+                if ( isWalkable( farX , farY ) &&
+                     ! isOpen( x , y , dx , dy , stepX , stepY , i ) && ! isOpen( x , y , dx , dy , stepX , stepY , j ) )
+                {
+                    addTransition( nearX , nearY , farX - nearX , farY - nearY );
+                }
+            }
+        }
+    }
+
+    // whether the i-th node on the near side and the node across the border are walkable
+    private boolean isOpen(int x,int y,int dx,int dy,int stepX,int stepY,int i) {
+        return isWalkable( x + i*stepX , y + i*stepY ) && isWalkable( x + i*stepX + dx , y + i*stepY + dy );
+    }
+
+    /*
+     * Connects the corner nodes of two diagonally adjacent clusters,
+     * if at least one of them is part of the tile that just got added.
+     */
+    private void addCornerTransition(NavTile addedTile,int x0,int y0,int x1,int y1)
+    {
+        final NavTile t0 = getTileAt( x0 , y0 );
+        final NavTile t1 = getTileAt( x1 , y1 );
+        if ( t0 != null && t1 != null && ( t0 == addedTile || t1 == addedTile ) && isWalkable( x0 , y0 ) && isWalkable( x1 , y1 ) ) {
+            addTransition( x0 , y0 , x1 - x0 , y1 - y0 );
+        }
+    }
+
+    private void addTransition(int x,int y,int dx,int dy)
+    {
+        final int near = getNode( x , y );
+        final int far = getNode( x + dx , y + dy );
+        final float cost = PathFinder.getStepCost( getHeight( x , y ) , getHeight( x + dx , y + dy ) );
+        addEdge( near , far , cost );
+        addEdge( far , near , cost );
+    }
+
+    private int getNode(int x,int y)
+    {
+        final Long cell = key( x , y );
+        final Integer existing = nodesByCell.get( cell );
+        if ( existing != null ) {
+            return existing;
+        }
+
+        final int node;
+        if ( freeNodeCount > 0 ) {
+            node = freeNodes[ --freeNodeCount ];
+        }
+        else
+        {
+            if ( nodeCapacity == nodeX.length )
+            {
+                final int newSize = nodeCapacity*2;
+                nodeX = Arrays.copyOf( nodeX , newSize );
+                nodeY = Arrays.copyOf( nodeY , newSize );
+                nodeCluster = Arrays.copyOf( nodeCluster , newSize );
+                edgeTarget = Arrays.copyOf( edgeTarget , newSize );
+                edgeCost = Arrays.copyOf( edgeCost , newSize );
+                edgeCount = Arrays.copyOf( edgeCount , newSize );
+            }
+            node = nodeCapacity++;
+            edgeTarget[node] = new int[ 8 ];
+            edgeCost[node] = new float[ 8 ];
+        }
+        final Cluster cluster = getClusterAt( x , y );
+        nodeX[node] = x;
+        nodeY[node] = y;
+        nodeCluster[node] = cluster;
+        edgeCount[node] = 0;
+        nodesByCell.put( cell , node );
+        nodeCount++;
+
+        cluster.add( node );
+        markDirty( cluster );
+        return node;
+    }
+
+    private void removeNode(int node)
+    {
+        final Cluster cluster = nodeCluster[node];
+        cluster.remove( node );
+        markDirty( cluster );
+        nodesByCell.remove( key( nodeX[node] , nodeY[node] ) );
+        nodeCluster[node] = null;
+        edgeCount[node] = 0;
+        nodeCount--;
+
+        if ( freeNodeCount == freeNodes.length ) {
+            freeNodes = Arrays.copyOf( freeNodes , freeNodeCount*2 );
+        }
+        freeNodes[ freeNodeCount++ ] = node;
+    }
+
+    private void addEdge(int source,int target,float cost)
+    {
+        final int count = edgeCount[source];
+        if ( count == edgeTarget[source].length )
+        {
+            edgeTarget[source] = Arrays.copyOf( edgeTarget[source] , count*2 );
+            edgeCost[source] = Arrays.copyOf( edgeCost[source] , count*2 );
+        }
+        edgeTarget[source][count] = target;
+        edgeCost[source][count] = cost;
+        edgeCount[source] = count + 1;
+    }
+
+    // removes all edges from a node to another
+    private void removeEdges(int source,int target)
+    {
+        final int[] targets = edgeTarget[source];
+        final float[] costs = edgeCost[source];
+        for ( int i = 0 ; i < edgeCount[source] ; )
+        {
+            if ( targets[i] == target )
+            {
+                final int last = --edgeCount[source];
+                targets[i] = targets[last];
+                costs[i] = costs[last];
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // whether a node has an edge leading out of its cluster
+    private boolean hasTransition(int node)
+    {
+        for ( int i = 0 ; i < edgeCount[node] ; i++ )
+        {
+            if ( nodeCluster[ edgeTarget[node][i] ] != nodeCluster[node] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markDirty(Cluster cluster)
+    {
+        if ( ! cluster.dirty ) {
+            cluster.dirty = true;
+            dirtyClusters.add( cluster );
+        }
+    }
+
+    /*
+     * Connects transition nodes of each dirty cluster with the cost of the
+     * cheapest path between them that does not leave the cluster.
+     */
+    private void updateDirtyClusters()
+    {
+        for ( Cluster cluster : dirtyClusters )
+        {
+            cluster.dirty = false;
+            if ( tiles.get( key( cluster.tile.tileX , cluster.tile.tileY ) ) != cluster.tile ) {
+                // tile got removed
+                continue;
+            }
+            // drop old edges inside the cluster
+            for ( int i = 0 ; i < cluster.nodeCount ; i++ )
+            {
+                final int node = cluster.nodes[i];
+                final int[] targets = edgeTarget[node];
+                final float[] costs = edgeCost[node];
+                int kept = 0;
+                for ( int j = 0 ; j < edgeCount[node] ; j++ )
+                {
+                    final Cluster targetCluster = nodeCluster[ targets[j] ];
+                    if ( targetCluster != cluster && targetCluster != null ) {
+                        targets[kept] = targets[j];
+                        costs[kept++] = costs[j];
+                    }
+                }
+                edgeCount[node] = kept;
+            }
+            for ( int i = 0 ; i < cluster.nodeCount ; i++ )
+            {
+                final int node = cluster.nodes[i];
+                computeCostsInCluster( nodeX[node] , nodeY[node] , cluster );
+                for ( int j = 0 ; j < cluster.nodeCount ; j++ )
+                {
+                    final int other = cluster.nodes[j];
+                    final float cost = getCost( other , cluster );
+                    if ( other != node && cost != Float.POSITIVE_INFINITY ) {
+                        addEdge( node , other , cost );
+                    }
+                }
+            }
+        }
+        dirtyClusters.clear();
+    }
+}
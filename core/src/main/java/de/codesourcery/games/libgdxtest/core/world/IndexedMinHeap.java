@@ -0,0 +1,174 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of integer elements <code>0...capacity-1</code> with float keys.
+ *
+ * Besides the heap itself, the position of every element is tracked in an array indexed
+ * by the element, so {@link #contains(int)} takes constant time and {@link #decreaseKey(int, float)}
+ * does not need to search the heap. No objects are allocated after construction.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
+public final class IndexedMinHeap
+{
+    // elements in heap order
+    private final int[] heap;
+    // index into heap array by element, -1 if element is not in the heap
+    private final int[] position;
+    // key by element
+    private final float[] keys;
+
+    private int size;
+
+    /**
+     *
+     * @param capacity number of distinct elements, elements are <code>0...capacity-1</code>
+     */
+    public IndexedMinHeap(int capacity)
+    {
+        heap = new int[ capacity ];
+        position = new int[ capacity ];
+        keys = new float[ capacity ];
+        for ( int i = 0 ; i < capacity ; i++ ) {
+            position[i] = -1;
+        }
+    }
+
+    public int capacity() {
+        return heap.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int element) {
+        return position[element] != -1;
+    }
+
+    /**
+     * Returns the key of an element that is in the heap.
+     */
+    public float getKey(int element)
+    {
+        if ( ! contains( element ) ) {
+            throw new NoSuchElementException("Element "+element+" is not in the heap");
+        }
+        return keys[element];
+    }
+
+    public void insert(int element,float key)
+    {
+        if ( contains( element ) ) {
+            throw new IllegalStateException("Element "+element+" is already in the heap");
+        }
+        keys[element] = key;
+        heap[size] = element;
+        position[element] = size;
+        siftUp( size++ );
+    }
+
+    /**
+     * Lowers the key of an element that is in the heap.
+     *
+     * @param element
+     * @param key new key, must not be greater than the current one
+     */
+    public void decreaseKey(int element,float key)
+    {
+        if ( key > getKey( element ) ) {
+            throw new IllegalArgumentException("New key "+key+" of element "+element+" is greater than current key "+keys[element]);
+        }
+        keys[element] = key;
+        siftUp( position[element] );
+    }
+
+    /**
+     * Returns the element with the smallest key without removing it.
+     */
+    public int peek()
+    {
+        if ( size == 0 ) {
+            throw new NoSuchElementException("Heap is empty");
+        }
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the element with the smallest key.
+     */
+    public int poll()
+    {
+        final int result = peek();
+        position[result] = -1;
+        if ( --size > 0 )
+        {
+            final int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown( 0 );
+        }
+        return result;
+    }
+
+    /**
+     * Removes all elements, takes time proportional to the number of elements in the heap.
+     */
+    public void clear()
+    {
+        for ( int i = 0 ; i < size ; i++ ) {
+            position[ heap[i] ] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index)
+    {
+        final int element = heap[index];
+        final float key = keys[element];
+        while ( index > 0 )
+        {
+            final int parentIndex = ( index - 1 ) >>> 1;
+            final int parent = heap[parentIndex];
+            if ( keys[parent] <= key ) {
+                break;
+            }
+            heap[index] = parent;
+            position[parent] = index;
+            index = parentIndex;
+        }
+        heap[index] = element;
+        position[element] = index;
+    }
+
+    private void siftDown(int index)
+    {
+        final int element = heap[index];
+        final float key = keys[element];
+        final int half = size >>> 1;
+        while ( index < half )
+        {
+            int childIndex = 2*index + 1;
+            int child = heap[childIndex];
+            final int rightIndex = childIndex + 1;
+            if ( rightIndex < size && keys[ heap[rightIndex] ] < keys[child] ) {
+                childIndex = rightIndex;
+                child = heap[childIndex];
+            }
+            if ( key <= keys[child] ) {
+                break;
+            }
+            heap[index] = child;
+            position[child] = index;
+            index = childIndex;
+        }
+        heap[index] = element;
+        position[element] = index;
+    }
+}
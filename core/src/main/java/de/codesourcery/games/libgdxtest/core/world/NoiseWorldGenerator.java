@@ -0,0 +1,260 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates the world by blending fractal simplex noise with copies of itself
+ * downsampled to 1/2 and 1/4 resolution.
+ *
+ * The downsampled layers are aligned to the global sample lattice (a middle resolution value
+ * always covers the 2x2 samples starting at even lattice coordinates, a low resolution value
+ * the 4x4 samples starting at multiples of 4) and read their filter taps from neighbouring samples
+ * instead of clamping at region borders. Noise rows are evaluated in segments starting at fixed lattice
+ * positions, so every sample is computed the same way no matter which region it is part of.
+ *
+ * Regions are generated in a single pass over bands of rows: each band generates the
+ * noise rows it needs into a small per-thread buffer (reusing rows shared with the previous band),
+ * and every low/middle resolution value is computed once from that buffer and blended straight into the output.
+ *
+ * Instances are thread-safe.
+ */
+public class NoiseWorldGenerator implements WorldGenerator
+{
+    // number of output rows per band
+    private static final int BAND_ROWS = 32;
+
+    // noise rows are evaluated in segments starting at lattice X coordinates that are multiples of this
+    private static final int SEGMENT_LENGTH = 8;
+
+    // Catmull-Rom weights for sampling halfway between the two middle taps,
+    // used by both the 1/2 and the 1/4 resolution layer
+    private static final float W0 = -0.0625f;
+    private static final float W1 = 0.5625f;
+
+    private final long seed;
+    private final SimplexNoise noise;
+    private final double sampleSpacing;
+    private final int octaves;
+    private final float persistance;
+
+    // may be NULL, regions are generated on the calling thread then
+    private final ForkJoinPool pool;
+
+    // rows of high-frequency noise required by the band currently being generated
+    private final ThreadLocal<float[]> bandBuffer = new ThreadLocal<float[]>();
+    private final ThreadLocal<float[]> noiseBuffer = new ThreadLocal<float[]>();
+
+    /**
+     *
+     * @param seed
+     * @param sampleSpacing distance in noise space between samples at scale 0, must be a power of two
+     * @param octaves
+     * @param persistance
+     * @param pool pool used to generate bands in parallel, <code>null</code> to generate them on the calling thread.
+     * The result is the same in both cases.
+     */
+    public NoiseWorldGenerator(long seed,double sampleSpacing,int octaves,float persistance,ForkJoinPool pool)
+    {
+        if ( sampleSpacing <= 0 || sampleSpacing != Math.scalb( 1.0 , Math.getExponent( sampleSpacing ) ) ) {
+            throw new IllegalArgumentException("Sample spacing must be a power of two, was: "+sampleSpacing);
+        }
+        this.seed = seed;
+        this.noise = new SimplexNoise( seed );
+        this.sampleSpacing = sampleSpacing;
+        this.octaves = octaves;
+        this.persistance = persistance;
+        this.pool = pool;
+    }
+
+    @Override
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public double getSampleSpacing(int scale) {
+        // powers of two keep lattice positions exact
+        return Math.scalb( sampleSpacing , scale );
+    }
+
+    @Override
+    public void generate(WorldRegion region,float[] result)
+    {
+        if ( result.length < region.getSampleCount() ) {
+            throw new IllegalArgumentException("Result needs "+region.getSampleCount()+" values but has only "+result.length);
+        }
+
+        if ( pool == null || region.height <= BAND_ROWS ) {
+            createBands( region , result , 0 , region.height );
+        } else {
+            pool.invoke( new BandTask( region , result , 0 , region.height ) );
+        }
+    }
+
+    private void createBands(WorldRegion region,float[] result,int firstRow,int lastRow)
+    {
+        final double spacing = getSampleSpacing( region.scale );
+
+        // columns required by the leftmost/rightmost low and middle resolution values,
+        // widened to noise segment boundaries
+        final long firstColumn = alignDown( Math.min( getFirstLowTap( region.x ) , getFirstMiddleTap( region.x ) ) );
+        final long lastColumn = alignDown( Math.max( getLastLowTap( region.x + region.width - 1 ) , getLastMiddleTap( region.x + region.width - 1 ) ) ) + SEGMENT_LENGTH - 1;
+        final int columns = (int) ( lastColumn - firstColumn + 1 );
+
+        float[] tmp = noiseBuffer.get();
+        if ( tmp == null || tmp.length < columns ) {
+            tmp = new float[ columns ];
+            noiseBuffer.set( tmp );
+        }
+
+        float[] high = bandBuffer.get();
+
+        // range of input rows currently held in the buffer
+        long bufferFirstRow = 0;
+        long bufferLastRow = -1;
+        for ( int bandStart = firstRow ; bandStart < lastRow ; bandStart += BAND_ROWS )
+        {
+            final int bandEnd = Math.min( bandStart + BAND_ROWS , lastRow );
+            final long y0 = region.y + bandStart;
+            final long y1 = region.y + bandEnd - 1;
+
+            // input rows required for this band
+            final long firstInputRow = Math.min( getFirstLowTap( y0 ) , getFirstMiddleTap( y0 ) );
+            final long lastInputRow = Math.max( getLastLowTap( y1 ) , getLastMiddleTap( y1 ) );
+            final int inputRows = (int) ( lastInputRow - firstInputRow + 1 );
+
+            if ( high == null || high.length < inputRows*columns )
+            {
+                // keep rows shared with the previous band
+                final float[] newBuffer = new float[ inputRows*columns ];
+                if ( high != null && bufferLastRow >= bufferFirstRow ) {
+                    System.arraycopy( high , 0 , newBuffer , 0 , (int) (bufferLastRow - bufferFirstRow + 1)*columns );
+                }
+                high = newBuffer;
+                bandBuffer.set( high );
+            }
+
+            // rows shared with the previous band are moved to the front instead of being generated again
+            long nextRow = firstInputRow;
+            if ( firstInputRow >= bufferFirstRow && firstInputRow <= bufferLastRow )
+            {
+                System.arraycopy( high , (int) (firstInputRow - bufferFirstRow)*columns , high , 0 , (int) (bufferLastRow - firstInputRow + 1)*columns );
+                nextRow = bufferLastRow + 1;
+            }
+            for ( ; nextRow <= lastInputRow ; nextRow++ )
+            {
+                noise.fractalNoise2( firstColumn*spacing , nextRow*spacing , spacing , octaves , persistance ,
+                        high , (int) (nextRow - firstInputRow)*columns , columns , SEGMENT_LENGTH , tmp );
+            }
+            bufferFirstRow = firstInputRow;
+            bufferLastRow = lastInputRow;
+
+            blend( high , firstColumn , firstInputRow , columns , region , result , bandStart , bandEnd );
+        }
+    }
+
+    private static void blend(float[] high,long firstColumn,long firstInputRow,int columns,WorldRegion region,float[] result,int firstRow,int lastRow)
+    {
+        // lattice coordinates of the first and last output sample
+        final long x0 = region.x;
+        final long x1 = region.x + region.width - 1;
+        final long y0 = region.y + firstRow;
+        final long y1 = region.y + lastRow - 1;
+
+        // each low resolution value covers 2x2 middle resolution values that in turn cover 2x2 output samples,
+        // values at the region's border may only partially overlap it
+        for ( long ly = y0 >> 2 ; ly <= y1 >> 2 ; ly++ )
+        {
+            for ( long lx = x0 >> 2 ; lx <= x1 >> 2 ; lx++ )
+            {
+                final float lowValue = sample( high , (int) ( lx*4 - firstColumn ) , (int) ( ly*4 - firstInputRow ) , columns ) * 0.5f;
+                for ( long my = Math.max( ly*2 , y0 >> 1 ) , myEnd = Math.min( ly*2+1 , y1 >> 1 ) ; my <= myEnd ; my++ )
+                {
+                    for ( long mx = Math.max( lx*2 , x0 >> 1 ) , mxEnd = Math.min( lx*2+1 , x1 >> 1 ) ; mx <= mxEnd ; mx++ )
+                    {
+                        final float middleValue = sample( high , (int) ( mx*2 - 1 - firstColumn ) , (int) ( my*2 - 1 - firstInputRow ) , columns ) * 0.25f;
+                        for ( long iy = Math.max( my*2 , y0 ) , iyEnd = Math.min( my*2+1 , y1 ) ; iy <= iyEnd ; iy++ )
+                        {
+                            final int src = (int) ( iy - firstInputRow ) * columns;
+                            final int dst = (int) ( iy - region.y ) * region.width;
+                            for ( long ix = Math.max( mx*2 , x0 ) , ixEnd = Math.min( mx*2+1 , x1 ) ; ix <= ixEnd ; ix++ ) {
+                                result[ dst + (int) ( ix - x0 ) ] = lowValue + middleValue + high[ src + (int) ( ix - firstColumn ) ]*0.25f;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Samples 4x4 values with the bicubic weights for the center of the block,
+     * starting at the given column/row of the buffer.
+     */
+    private static float sample(float[] high,int column,int row,int columns)
+    {
+        float sum = 0;
+        for ( int j = 0 ; j < 4 ; j++ )
+        {
+            final int offset = ( row + j ) * columns + column;
+            final float value = W0*high[offset] + W1*high[offset+1] + W1*high[offset+2] + W0*high[offset+3];
+            sum += ( j == 0 || j == 3 ? W0 : W1 ) * value;
+        }
+        return Math.min( Math.max( sum , 0f ) , 1f );
+    }
+
+    // filter taps of the low (1/4) resolution value covering a lattice coordinate
+    private static long getFirstLowTap(long coordinate) {
+        return ( coordinate >> 2 ) * 4;
+    }
+
+    private static long getLastLowTap(long coordinate) {
+        return ( coordinate >> 2 ) * 4 + 3;
+    }
+
+    // filter taps of the middle (1/2) resolution value covering a lattice coordinate
+    private static long getFirstMiddleTap(long coordinate) {
+        return ( coordinate >> 1 ) * 2 - 1;
+    }
+
+    private static long getLastMiddleTap(long coordinate) {
+        return ( coordinate >> 1 ) * 2 + 2;
+    }
+
+    private static long alignDown(long column) {
+        return column & ~( SEGMENT_LENGTH - 1L );
+    }
+
+    protected final class BandTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final WorldRegion region;
+        private final float[] result;
+        private final int firstRow;
+        private final int lastRow;
+
+        public BandTask(WorldRegion region, float[] result, int firstRow, int lastRow)
+        {
+            this.region = region;
+            this.result = result;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final int rows = lastRow - firstRow;
+            if ( rows <= BAND_ROWS ) {
+                createBands( region , result , firstRow , lastRow );
+                return;
+            }
+            // split on band boundaries
+            final int middle = firstRow + Math.max( 1 , rows / 2 / BAND_ROWS ) * BAND_ROWS;
+            invokeAll( new BandTask( region , result , firstRow , middle ) ,
+                       new BandTask( region , result , middle , lastRow ) );
+        }
+    }
+}
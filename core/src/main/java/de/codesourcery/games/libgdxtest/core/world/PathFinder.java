@@ -3,22 +3,45 @@ package de.codesourcery.games.libgdxtest.core.world;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
 
+/**
+ * A* search on a {@link NavMesh}.
+ *
+ * Nodes are addressed by their index <code>x+y*width</code> into dense arrays holding g values and predecessors,
+ * the open list is an {@link IndexedMinHeap} over node indices. Arrays are allocated once and reused, nodes
+ * touched by a search are recognized by a per-search stamp instead of clearing the arrays, so
+ * searches do not allocate anything except for the returned {@link Path}.
+ *
+ * Instances are <b>not</b> thread-safe.
+ */
 public class PathFinder
 {
-    private final PriorityQueue<PathNode> openList = new PriorityQueue<>();
-    private final byte[] visited;
+    private final IndexedMinHeap openList;
+
+    // g value and predecessor index by node, only valid if the node's stamp matches the current search
+    private final float[] g;
+    private final int[] predecessor;
+    private final int[] stamp;
+    // nodes already expanded in the current search have their stamp set to -currentStamp
+    private int currentStamp;
 
     private final int meshWidth;
-    private final NavMesh mesh;
+    private NavMesh mesh;
 
     private float walkableGroundLevel;
     
     private int dstX;
     private int dstY;
+    // FALSE while computing costs to all nodes instead of searching a path
+    private boolean useHeuristic;
+
+    // nodes outside of minX...maxX-1 / minY...maxY-1 are ignored by the current search
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
 
     public static final class PathNode implements Comparable<PathNode> 
     {
@@ -87,192 +110,265 @@ public class PathFinder
     public PathFinder(NavMesh mesh) {
         this.mesh=mesh;
         this.meshWidth = mesh.width;
-        this.visited=new byte[meshWidth*meshWidth];
+        final int nodeCount = meshWidth*meshWidth;
+        this.openList = new IndexedMinHeap( nodeCount );
+        this.g = new float[ nodeCount ];
+        this.predecessor = new int[ nodeCount ];
+        this.stamp = new int[ nodeCount ];
     }
 
-    private void markAsVisited(int x,int y) 
+    /**
+     * Switches to another mesh of the same width, keeping the search buffers.
+     * 
+     * @param mesh
+     */
+    public void setNavMesh(NavMesh mesh) 
     {
-        try {
-            visited[x+y*meshWidth]=1;
-        } catch(ArrayIndexOutOfBoundsException e) {
-            throw new ArrayIndexOutOfBoundsException("x="+x+",y="+y+",index="+x+y*meshWidth);
+        if ( mesh.width != meshWidth ) {
+            throw new IllegalArgumentException("Mesh width "+mesh.width+" does not match "+meshWidth);
         }
+        this.mesh = mesh;
+    }
+    
+    public NavMesh getNavMesh() {
+        return mesh;
+    }
+    
+    private void markAsVisited(int node) 
+    {
+        stamp[node] = -currentStamp;
     }    
     
-    private boolean wasVisited(int x,int y) {
-        return visited[x+y*meshWidth] != 0;
+    private boolean wasVisited(int node) {
+        return stamp[node] == -currentStamp;
+    }
+
+    private boolean wasSeen(int node) {
+        return stamp[node] == currentStamp;
     }
 
     public Path findPath(int startX,int startY, int dstX,int dstY,float walkableGroundLevel) 
     {
-        if ( startX < 0 || startX >= meshWidth || startY < 0 || startY >= meshWidth ) {
+        return findPath( startX , startY , dstX , dstY , walkableGroundLevel , 0 , 0 , meshWidth , meshWidth );
+    }
+
+    /**
+     * Searches a path that stays within a rectangular part of the mesh.
+     * 
+     * @param startX
+     * @param startY
+     * @param dstX
+     * @param dstY
+     * @param walkableGroundLevel
+     * @param minX
+     * @param minY
+     * @param maxX X coordinate right of the rectangle (exclusive)
+     * @param maxY Y coordinate below the rectangle (exclusive)
+     * @return path or <code>null</code> if the destination cannot be reached without leaving the rectangle
+     */
+    public Path findPath(int startX,int startY, int dstX,int dstY,float walkableGroundLevel,int minX,int minY,int maxX,int maxY) 
+    {
+        setBounds( minX , minY , maxX , maxY );
+        if ( ! contains( startX , startY ) ) {
             throw new IllegalArgumentException("Invalid start position: "+startX+" / "+startY);
         }
-        if ( dstX < 0 || dstX >= meshWidth || dstY < 0 || dstY >= meshWidth ) {
+        if ( ! contains( dstX , dstY ) ) {
             throw new IllegalArgumentException("Invalid dest position: "+dstX+" / "+dstY);
         }        
         
+        this.dstX = dstX;
+        this.dstY = dstY;
+        this.useHeuristic = true;
+        
+        final int destination = dstX + dstY*meshWidth;
+        return search( startX + startY*meshWidth , destination , walkableGroundLevel ) ? createPath( destination ) : null;
+    }
+    
+    /**
+     * Calculates the cost of the cheapest path from a node to every node reachable 
+     * without leaving a rectangular part of the mesh.
+     * 
+     * Costs can be queried using {@link #getCost(int, int)} until the next search starts.
+     * 
+     * @param startX
+     * @param startY
+     * @param walkableGroundLevel
+     * @param minX
+     * @param minY
+     * @param maxX X coordinate right of the rectangle (exclusive)
+     * @param maxY Y coordinate below the rectangle (exclusive)
+     */
+    public void computeCosts(int startX,int startY,float walkableGroundLevel,int minX,int minY,int maxX,int maxY) 
+    {
+        setBounds( minX , minY , maxX , maxY );
+        if ( ! contains( startX , startY ) ) {
+            throw new IllegalArgumentException("Invalid start position: "+startX+" / "+startY);
+        }
+        this.useHeuristic = false;
+        search( startX + startY*meshWidth , -1 , walkableGroundLevel );
+    }
+    
+    /**
+     * Returns the cost of the cheapest path to a node as calculated by the last 
+     * call to {@link #computeCosts(int, int, float, int, int, int, int)}.
+     * 
+     * @param x
+     * @param y
+     * @return cost or <code>Float.POSITIVE_INFINITY</code> if the node is not reachable
+     */
+    public float getCost(int x,int y) 
+    {
+        final int node = x + y*meshWidth;
+        return wasVisited( node ) ? g[node] : Float.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Returns the cost of moving between two adjacent nodes.
+     */
+    public static float getStepCost(float fromHeight,float toHeight) {
+        return 1 + 10*Math.abs( toHeight - fromHeight );
+    }
+    
+    private void setBounds(int minX,int minY,int maxX,int maxY) 
+    {
+        if ( minX < 0 || minY < 0 || maxX > meshWidth || maxY > meshWidth || minX >= maxX || minY >= maxY ) {
+            throw new IllegalArgumentException("Invalid search area: "+minX+","+minY+" - "+maxX+","+maxY);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+    
+    private boolean contains(int x,int y) {
+        return x >= minX && x < maxX && y >= minY && y < maxY;
+    }
+
+    /*
+     * Runs the search until the destination has been reached or all 
+     * reachable nodes have been visited.
+     */
+    private boolean search(int start,int destination,float walkableGroundLevel) 
+    {
         openList.clear();
-        for ( int i = 0 ; i < meshWidth*meshWidth;i++) {
-            visited[i]=0;
+        if ( currentStamp == Integer.MAX_VALUE ) 
+        {
+            // stamps would wrap around, forget about all previous searches
+            for ( int i = 0 ; i < stamp.length ; i++ ) {
+                stamp[i] = 0;
+            }
+            currentStamp = 0;
         }
+        currentStamp++;
         
         this.walkableGroundLevel = walkableGroundLevel;
-        this.dstX = dstX;
-        this.dstY = dstY;
 
-        /*
-declare openlist as PriorityQueue with Nodes // Prioritätenwarteschlange
-declare closedlist as Set with Nodes          
-         */
         // Initialisierung der Open List, die Closed List ist noch leer (die Priorität bzw. der f Wert des Startknotens ist unerheblich)
-        // openlist.enqueue(startknoten, 0)
-        openList.add( new PathNode( startX,startY ) );
-        /*
-    // diese Schleife wird durchlaufen bis entweder
-    // - die optimale Lösung gefunden wurde oder
-    // - feststeht, dass keine Lösung existiert
-         */
+        g[start] = 0;
+        predecessor[start] = -1;
+        stamp[start] = currentStamp;
+        openList.insert( start , 0 );
         do 
         {
-            /* repeat
-        // Knoten mit dem geringsten f Wert aus der Open List entfernen
-        currentNode := openlist.removeMin()
-             */
-            PathNode current = openList.poll();
-            /*
-        // Wurde das Ziel gefunden? 
-        if currentNode == zielknoten then
-            return PathFound
-             */
-            if ( current.x == dstX && current.y == dstY ) 
-            {
-                final Path result = new Path();
-                do 
-                {
-                    result.path.add( current );
-                    current = current.predecessor;
-                } while ( current != null );
-                Collections.reverse( result.path );
-                return result;
+            // Knoten mit dem geringsten f Wert aus der Open List entfernen
+            final int current = openList.poll();
+            // Der aktuelle Knoten soll durch nachfolgende Funktionen
+            // nicht weiter untersucht werden damit keine Zyklen entstehen
+            markAsVisited( current );
+            if ( current == destination ) {
+                return true;
             }
-            /*
-        // Der aktuelle Knoten soll durch nachfolgende Funktionen
-        // nicht weiter untersucht werden damit keine Zyklen entstehen
-        closedlist.add(currentNode)
-             */
-            markAsVisited( current.x , current.y );
-            /*
-        // Wenn das Ziel noch nicht gefunden wurde: Nachfolgeknoten
-        // des aktuellen Knotens auf die Open List setzen
-             */
-            expandNode(current);
-            // until openlist.isEmpty()
-        } while ( ! openList.isEmpty() ); /*
-    // die Open List ist leer, es existiert kein Pfad zum Ziel
-    return NoPathFound
-         */
-        return null;
+            expandNode( current );
+        } while ( ! openList.isEmpty() ); 
+        // die Open List ist leer, es existiert kein Pfad zum Ziel
+        return false;
+    }
+
+    private Path createPath(int destination) 
+    {
+        final Path result = new Path();
+        for ( int node = destination ; node != -1 ; node = predecessor[node] ) 
+        {
+            final int x = node % meshWidth;
+            final int y = node / meshWidth;
+            result.path.add( new PathNode( x , y , g[node] + h( x , y ) , g[node] ) );
+        }
+        Collections.reverse( result.path );
+        for ( int i = 1 ; i < result.path.size() ; i++ ) {
+            result.path.get(i).predecessor = result.path.get(i-1);
+        }
+        return result;
     }
 
-    private void expandNode(PathNode current)
+    private void expandNode(int current)
     {
-        /* überprüft alle Nachfolgeknoten und fügt sie der Open List hinzu, wenn entweder
-//- der Nachfolgeknoten zum ersten Mal gefunden wird oder
-//- ein besserer Weg zu diesem Knoten gefunden wird
-function expandNode(currentNode)
-   foreach successor of currentNode */
-        for ( int y = current.y - 1 ; y <= current.y + 1 ; y++ ) 
+        final int currentX = current % meshWidth;
+        final int currentY = current / meshWidth;
+        final float currentHeight = mesh.height[current];
+        for ( int y = currentY - 1 ; y <= currentY + 1 ; y++ ) 
         {
-            if ( y >= 0 && y < meshWidth ) 
+            if ( y >= minY && y < maxY ) 
             {
-                for ( int x = current.x - 1 ; x <= current.x + 1 ; x++ ) 
+                for ( int x = currentX - 1 ; x <= currentX + 1 ; x++ ) 
                 {
-                    if ( x >= 0 && x < meshWidth && ! (current.x == x && current.y == y) ) 
+                    if ( x >= minX && x < maxX && ! (currentX == x && currentY == y) ) 
                     {
-                        processNode(current,x,y);
+                        processNode( current , currentHeight , x , y );
                     }
                 }
             }
         }
     }
 
-    private void processNode(PathNode current,int succX,int succY) 
+    private void processNode(int current,float currentHeight,int succX,int succY) 
     {
-        /*
+        final int successor = succX + succY*meshWidth;
+        
         // wenn der Nachfolgeknoten bereits auf der Closed List ist - tue nichts
-        if closedlist.contains(successor) then
-            continue
-         */
-        if ( wasVisited( succX, succY ) ){
+        if ( wasVisited( successor ) ){
             return;
         }
         
-        final float succHeight = mesh.get( succX ,  succY );
-        // do not try paths that are too steep
-        float heightDelta = Math.abs( succHeight - mesh.get( current.x , current.y ) );
+        final float succHeight = mesh.height[successor];
         
         // do not walk across mountains
         if ( succHeight > walkableGroundLevel ) {
-            System.out.println("Not walkable: "+succX+","+succY+" with height "+succHeight);
             return;
         }        
 
         // g Wert für den neuen Weg berechnen: g Wert des Vorgängers plus
-        // die Kosten der gerade benutzten Kante
-        // tentative_g = g(currentNode) + c(currentNode, successor)
-        float tentative_g = current.g + 1 + 10*heightDelta; // >>> traversing any edge incurs the same (constant) cost
+        // die Kosten der gerade benutzten Kante (steep edges cost more)
+        final float tentative_g = g[current] + getStepCost( currentHeight , succHeight );
 
         // wenn der Nachfolgeknoten bereits auf der Open List ist,
         // aber der neue Weg nicht besser ist als der alte - tue nichts
-        PathNode successor = null;
-        for ( PathNode node : openList ) // TODO: Replace linear search with something faster... 
-        {
-            if ( node.x == succX && node.y == succY ) 
-            {
-                successor = node;
-                // if openlist.contains(successor) and tentative_g >= g(successor) then
-                //    continue        
-                if ( tentative_g >= successor.g ) {
-                    return;
-                }                  
-                break;
-            }
+        final boolean seen = wasSeen( successor );
+        if ( seen && tentative_g >= g[successor] ) {
+            return;
         }
 
+        // Vorgängerzeiger setzen und g Wert merken
+        predecessor[successor] = current;
+        g[successor] = tentative_g;
+        
         // f Wert des Knotens in der Open List aktualisieren
         // bzw. Knoten mit f Wert in die Open List einfügen
-        // f := tentative_g + h(successor)
-        float f = tentative_g +h(succX,succY);
-
-        if ( successor != null ) 
-        {
-            // if openlist.contains(successor) then
-            //     openlist.decreaseKey(successor, f)
-
-            // Vorgängerzeiger setzen und g Wert merken
-            // successor.predecessor := currentNode            
-            successor.predecessor = current;
-            // g(successor) = tentative_g
-            successor.g = tentative_g;
-            // f Wert des Knotens in der Open List aktualisieren
-            // bzw. Knoten mit f Wert in die Open List einfügen
-            // f := tentative_g + h(successor)            
-            successor.f = f;
-            openList.remove( successor );
-            openList.add( successor );
+        final float f = tentative_g + h( succX , succY );
+        if ( seen ) {
+            openList.decreaseKey( successor , f );
         } else {
-            //     openlist.enqueue(successor, f)
-            successor = new PathNode(succX,succY , f , tentative_g );
-            successor.predecessor = current;
-            openList.add( successor );
+            stamp[successor] = currentStamp;
+            openList.insert( successor , f );
         }
     }
 
     private float h(int x,int y) 
     {
+        if ( ! useHeuristic ) {
+            return 0;
+        }
         int dx = dstX - x;
         int dy = dstY - y;
         return dx*dx+dy*dy; // squared distance
     }    
-}
\ No newline at end of file
+}
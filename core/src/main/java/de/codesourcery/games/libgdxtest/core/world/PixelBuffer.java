@@ -0,0 +1,61 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RGBA8888 pixels in a direct (off-heap) buffer that can be handed to OpenGL without copying.
+ *
+ * Pixels are stored row by row, starting at offset 0 of the buffer.
+ */
+public final class PixelBuffer
+{
+    public final int width;
+    public final int height;
+
+    private final ByteBuffer pixels;
+
+    // pool this buffer was taken from, NULL if not pooled
+    protected final BufferPool pool;
+
+    public PixelBuffer(ByteBuffer pixels,int width,int height) {
+        this(pixels,width,height,null);
+    }
+
+    protected PixelBuffer(ByteBuffer pixels,int width,int height,BufferPool pool)
+    {
+        if ( ! pixels.isDirect() ) {
+            throw new IllegalArgumentException("Pixel data needs to be stored in a direct buffer");
+        }
+        if ( pixels.capacity() < width*height*4 ) {
+            throw new IllegalArgumentException("Buffer holds "+pixels.capacity()+" bytes but "+width+"x"+height+" pixels need "+(width*height*4));
+        }
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pixel data.
+     *
+     * The returned buffer's position is 0 and its limit is set to the end of
+     * the pixel data.
+     */
+    public ByteBuffer getPixels()
+    {
+        final ByteBuffer result = pixels.duplicate();
+        result.clear();
+        result.limit( getSizeInBytes() );
+        return result;
+    }
+
+    public int getSizeInBytes() {
+        return width*height*4;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PixelBuffer[ "+width+"x"+height+" ]";
+    }
+}
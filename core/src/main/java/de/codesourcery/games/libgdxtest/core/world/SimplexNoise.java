@@ -1,5 +1,6 @@
 package de.codesourcery.games.libgdxtest.core.world;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -15,6 +16,17 @@ import java.util.Random;
 public class SimplexNoise { // Simplex noise in 2D, 3D and 4D
 	
 	private static final double SQRT_3 = Math.sqrt(3.0);
+	
+	// skewing/unskewing factors for 2D
+	private static final double F2 = 0.5 * (SQRT_3 - 1.0);
+	private static final double G2 = (3.0 - SQRT_3) / 6.0;
+	private static final float G2F = (float) G2;
+	
+	private static final double FIXED_POINT_ONE = 1L << 32;
+	
+	// x/y components of grad3, used by the batch version of noise2()
+	private static final float[] GRAD2_X = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0 };
+	private static final float[] GRAD2_Y = { 1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1 };
 
 	private int grad3[][] = { { 1, 1, 0 }, { -1, 1, 0 }, { 1, -1, 0 },
 			{ -1, -1, 0 }, { 1, 0, 1 }, { -1, 0, 1 }, { 1, 0, -1 },
@@ -36,6 +48,9 @@ public class SimplexNoise { // Simplex noise in 2D, 3D and 4D
 	// To remove the need for index wrapping, double the permutation table
 	private int perm[] = new int[512];
 	
+	// perm[i] % 12
+	private final int permMod12[] = new int[512];
+	
 	public SimplexNoise(long seed) 
 	{
 		final Random rnd = new Random(seed);
@@ -45,6 +60,7 @@ public class SimplexNoise { // Simplex noise in 2D, 3D and 4D
 			perm[i] = value;
 			// To remove the need for index wrapping, double the permutation table
 			perm[256+i] = value;
+			permMod12[i] = permMod12[256+i] = value % 12;
 		}
 	}
 	
@@ -295,44 +311,166 @@ public class SimplexNoise { // Simplex noise in 2D, 3D and 4D
 		return 32.0 * (n0 + n1 + n2 + n3);
 	}
 	
+	/**
+	 * Creates a height map with values in the range 0...1.
+	 * 
+	 * @param xOffset
+	 * @param yOffset
+	 * @param mapSize width/height of the height map
+	 * @param tileSize distance in noise space covered by the height map
+	 * @param octaveCount
+	 * @param persistance
+	 * @return
+	 */
 	public float[] createHeightMap(float xOffset,float yOffset,int mapSize,float tileSize,int octaveCount,float persistance) 
 	{
-        float amplitude = 1.0f; // noise2() yields range -1...1
-        double totalAmplitude = 0.0f;   
-        
-        for (int octave = octaveCount - 1; octave >= 0; octave--)
-        {
-            amplitude *= persistance;
-            totalAmplitude += amplitude;
-        }
-        
-        final float scalingFactor = tileSize/(float) mapSize;
-        
-		float[] result = new float[mapSize*mapSize];
-		int ptr = 0;
+		final float scalingFactor = tileSize/(float) mapSize;
+		
+		final float[] result = new float[mapSize*mapSize];
+		final float[] row = new float[mapSize];
 		for ( int y = 0 ; y < mapSize ; y++ ) 
 		{
-			for ( int x =0 ; x < mapSize ; x++ ) 
-			{
-				float nx = xOffset + x*scalingFactor;
-				float ny = yOffset + y*scalingFactor;
-				
-				double sum = 0.0f;
-				amplitude = 1.0f;
-				int frequency = 1 << octaveCount;
-				for (int octave = octaveCount - 1; octave >= 0; octave--)
-				{
-					amplitude *= persistance;
-			        double value = noise2(nx*frequency,ny*frequency); // range -1...1
-			        value = (value + 1)/2.0f;
-			        sum += value*amplitude;
-			        frequency = frequency >> 1;
-				}
-				result[ptr++]= (float) (sum / totalAmplitude);
-			}
+			final double ny = yOffset + y*scalingFactor;
+			fractalNoise2( xOffset , ny , scalingFactor , octaveCount , persistance , result , y*mapSize , mapSize , mapSize , row );
 		}
 		return result;
 	}
+	
+	/**
+	 * Calculates fractal noise with values in the range 0...1 for a row of equidistant points.
+	 * 
+	 * Points are evaluated in segments of <code>segmentLength</code> points, each segment starting at
+	 * <code>x+k*segmentLength*xStep</code>. Like {@link #noise2(double, double, double, float[], int, int)}, values
+	 * depend on the position of the segment's first point by a tiny rounding error, so
+	 * segments need to start at fixed positions if every point should always get the same value.
+	 * 
+	 * @param x X coordinate of first point
+	 * @param y
+	 * @param xStep distance between adjacent points
+	 * @param octaveCount
+	 * @param persistance
+	 * @param result
+	 * @param offset offset in result array where the first value gets stored
+	 * @param count number of points
+	 * @param segmentLength number of points per segment
+	 * @param tmp scratch array holding at least <code>count</code> elements
+	 */
+	public void fractalNoise2(double x,double y,double xStep,int octaveCount,float persistance,float[] result,int offset,int count,int segmentLength,float[] tmp) 
+	{
+		float amplitude = 1.0f; // noise2() yields range -1...1
+		double totalAmplitude = 0.0f;   
+		
+		for (int octave = octaveCount - 1; octave >= 0; octave--)
+		{
+			amplitude *= persistance;
+			totalAmplitude += amplitude;
+		}
+		final float normalize = (float) (1.0 / totalAmplitude);
+		
+		Arrays.fill( result , offset , offset+count , 0f );
+		
+		amplitude = 1.0f;
+		int frequency = 1 << octaveCount;
+		for (int octave = octaveCount - 1; octave >= 0; octave--)
+		{
+			amplitude *= persistance;
+			for ( int i = 0 ; i < count ; i += segmentLength ) {
+				noise2( ( x + i*xStep )*frequency , y*frequency , xStep*frequency , tmp , i , Math.min( segmentLength , count - i ) ); // range -1...1
+			}
+			
+			final float scale = 0.5f*amplitude;
+			for ( int i = 0 ; i < count ; i++ ) {
+				result[offset+i] += (tmp[i] + 1f)*scale;
+			}
+			frequency = frequency >> 1;
+		}
+		
+		for ( int i = offset , end = offset+count ; i < end ; i++ ) {
+			result[i] *= normalize;
+		}
+	}
+	
+	/**
+	 * Evaluates 2D noise for a row of points <code>(x+i*xStep , y)</code> with <code>i=0...count-1</code>.
+	 * 
+	 * Produces the same values as {@link #noise2(double, double)} (within float precision) but 
+	 * uses flattened lookup tables and float math.  
+	 * 
+	 * @param x
+	 * @param y
+	 * @param xStep distance between points, must be >= 0
+	 * @param result array to store the noise values (range -1...1) in
+	 * @param offset offset of first value in result array
+	 * @param count number of values to calculate
+	 */
+	public void noise2(double x,double y,double xStep,float[] result,int offset,int count) 
+	{
+		if ( xStep < 0 ) {
+			throw new IllegalArgumentException("Step must be >= 0");
+		}
+		
+		final int[] perm = this.perm;
+		final int[] permMod12 = this.permMod12;
+		
+		// Skewed coordinates and the cell origin are calculated relative to the 
+		// cell containing the first point (in double precision), so that 
+		// float precision is sufficient inside the loop even for large coordinates
+		final double skewedX = x + (x + y) * F2;
+		final double skewedY = y + (x + y) * F2;
+		final int cellX = fastfloor( skewedX );
+		final int cellY = fastfloor( skewedY );
+		
+		// skewed coordinates relative to (cellX,cellY) as 32.32 fixed-point numbers, 
+		// the integer part is the cell index. This is a lot faster than converting floats to ints
+		final long startX = (long) ( ( skewedX - cellX ) * FIXED_POINT_ONE );
+		final long startY = (long) ( ( skewedY - cellY ) * FIXED_POINT_ONE );
+		final long stepX = (long) ( xStep * ( 1.0 + F2 ) * FIXED_POINT_ONE );
+		final long stepY = (long) ( xStep * F2 * FIXED_POINT_ONE );
+		
+		// unskewed distance of the first point from (cellX,cellY) 
+		final float originX = (float) ( x - ( cellX - (cellX + cellY) * G2 ) );
+		final float originY = (float) ( y - ( cellY - (cellX + cellY) * G2 ) );
+		final float unskewedStep = (float) xStep;
+		
+		for ( int k = 0 ; k < count ; k++ ) 
+		{
+			final int i = (int) ( ( startX + k * stepX ) >>> 32 );
+			final int j = (int) ( ( startY + k * stepY ) >>> 32 );
+			final float t = (i + j) * G2F;
+			final float x0 = originX + k * unskewedStep - i + t;
+			final float y0 = originY - j + t;
+			
+			final int i1 = x0 > y0 ? 1 : 0;
+			final int j1 = 1 - i1;
+			
+			final float x1 = x0 - i1 + G2F;
+			final float y1 = y0 - j1 + G2F;
+			final float x2 = x0 - 1.0f + 2.0f * G2F;
+			final float y2 = y0 - 1.0f + 2.0f * G2F;
+			
+			final int ii = (cellX + i) & 255;
+			final int jj = (cellY + j) & 255;
+			final int gi0 = permMod12[ii + perm[jj]];
+			final int gi1 = permMod12[ii + i1 + perm[jj + j1]];
+			final int gi2 = permMod12[ii + 1 + perm[jj + 1]];
+			
+			float t0 = 0.5f - x0 * x0 - y0 * y0;
+			float t1 = 0.5f - x1 * x1 - y1 * y1;
+			float t2 = 0.5f - x2 * x2 - y2 * y2;
+			t0 = t0 < 0 ? 0 : t0;
+			t1 = t1 < 0 ? 0 : t1;
+			t2 = t2 < 0 ? 0 : t2;
+			t0 *= t0;
+			t1 *= t1;
+			t2 *= t2;
+			
+			final float n0 = t0 * t0 * ( GRAD2_X[gi0] * x0 + GRAD2_Y[gi0] * y0 );
+			final float n1 = t1 * t1 * ( GRAD2_X[gi1] * x1 + GRAD2_Y[gi1] * y1 );
+			final float n2 = t2 * t2 * ( GRAD2_X[gi2] * x2 + GRAD2_Y[gi2] * y2 );
+			
+			result[offset+k] = 70.0f * (n0 + n1 + n2);
+		}
+	}
 
 	// 4D simplex noise
 	public double noise4(double x, double y, double z, double w) {
@@ -4,11 +4,10 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -21,8 +20,8 @@ import javax.imageio.ImageIO;
 import org.apache.commons.lang.ArrayUtils;
 
 import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.Gdx2DPixmap;
 import com.badlogic.gdx.math.Vector3;
 
 public class TextureUtils
@@ -89,87 +88,121 @@ public class TextureUtils
     }
 
     public static BufferedImage heightMapToImage(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel)
+    {
+        return heightMapToImage( heightMap , heightMapSize , new ColorLookupTable( colorGradient , groundLevel ) );
+    }
+    
+    public static BufferedImage heightMapToImage(float[] heightMap, int heightMapSize,ColorLookupTable colors)
     {
         final BufferedImage img = new BufferedImage(heightMapSize,heightMapSize,BufferedImage.TYPE_INT_ARGB);
-        int ptr = 0;
-        float scale = 1.0f/(1.0f - groundLevel);
-        for ( int z1 = 0 ; z1 < heightMapSize ; z1++ ) 
-        {        
-            for ( int x1 = 0 ; x1 < heightMapSize ; x1++ ) 
-            {
-                float height = heightMap[ ptr++ ];
-                int index;
-                if ( height >= groundLevel ) {
-                    index = (int) ((height-groundLevel)*scale*255.0f);
-                } else {
-                    index =0;
-                }
-                img.setRGB( x1 , z1 , colorGradient[ index & 0xff] | (255 << 24));
-            }
-        }
+        final int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        colors.toARGB( heightMap , heightMapSize*heightMapSize , pixels );
         return img;
     }
     
-    private static Pixmap heightMapToPixMap(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel) 
+    /**
+     * Creates a pixmap from raw RGBA8888 pixel data.
+     * 
+     * @param pixels pixel data, all remaining bytes are copied
+     * @param size width/height of the pixmap
+     * @return pixmap, caller is responsible for disposing it
+     */
+    public static Pixmap pixelsToPixmap(ByteBuffer pixels,int size) 
     {
-        final int bufferSize = heightMapSize*heightMapSize* 4;
-        final ByteBuffer byteBuffer = ByteBuffer.allocate( bufferSize ).order(ByteOrder.LITTLE_ENDIAN); // 4 bytes per pixel
-        final IntBuffer intBuffer = byteBuffer.asIntBuffer();
-        float scale = 1.0f/(1.0f - groundLevel);
-        final int len = heightMapSize*heightMapSize; 
-        for ( int i = 0 ; i < len ; i++ ) 
-        {
-            // bytes per pixel = R G B A
-            float height = heightMap[ i ];
-            int index;
-            if ( height >= groundLevel ) {
-                index = (int) ((height-groundLevel)*scale*255.0f);
-            } else {
-                index =0;
-            }   
-            final int color = colorGradient[index];
-            intBuffer.put( color << 8 | 0xff );
+        if ( pixels.remaining() != size*size*4 ) {
+            throw new IllegalArgumentException("Expected "+(size*size*4)+" bytes of pixel data but got "+pixels.remaining());
         }
-        intBuffer.rewind();
-        Gdx2DPixmap tmp;
+        final Pixmap pixmap = new Pixmap( size , size , Format.RGBA8888 );
+        final ByteBuffer dst = pixmap.getPixels();
+        dst.rewind();
+        dst.put( pixels.duplicate() );
+        dst.rewind();
+        return pixmap;
+    }
+    
+    public static Texture heightMapToTexture(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel,String debugText)
+    {
+        final Pixmap pixmap = heightMapToPixmap(heightMap, heightMapSize, colorGradient, groundLevel, debugText);
         try {
-            return new Pixmap( new Gdx2DPixmap( byteBuffer.array() , 0 ,bufferSize ,  Gdx2DPixmap.GDX2D_FORMAT_RGBA8888 ) );
-        } 
-        catch (IOException e) 
-        {
-            throw new RuntimeException(e);
+            return new Texture(pixmap);
+        } finally {
+            pixmap.dispose();
         }
     }
     
-    public static Texture heightMapToTexture(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel,String debugText)
+    /**
+     * Converts a height map into a pixmap.
+     * 
+     * Does not require an OpenGL context and may thus be invoked
+     * from any thread. 
+     * 
+     * @param heightMap
+     * @param heightMapSize
+     * @param colorGradient
+     * @param groundLevel
+     * @param debugText optional text to render in the center of the pixmap, may be <code>null</code>
+     * @return pixmap, caller is responsible for disposing it
+     */
+    public static Pixmap heightMapToPixmap(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel,String debugText)
     {
-        Pixmap pixmap = heightMapToPixMap(heightMap, heightMapSize, colorGradient, groundLevel); //  new Pixmap( heightMapSize,heightMapSize,Format.RGBA8888);
+        final Pixmap pixmap = new Pixmap( heightMapSize , heightMapSize , Format.RGBA8888 );
+        heightMapToPixels(heightMap, heightMapSize, new ColorLookupTable( colorGradient , groundLevel ), debugText, pixmap.getPixels() );
+        return pixmap;
+    }
+    
+    /**
+     * Converts a height map into RGBA8888 pixels that can be uploaded to a texture as-is.
+     * 
+     * Does not require an OpenGL context and may thus be invoked
+     * from any thread. 
+     * 
+     * @param heightMap
+     * @param heightMapSize
+     * @param colorGradient
+     * @param groundLevel
+     * @param debugText optional text to render in the center of the pixmap, may be <code>null</code>
+     * @param pixels buffer of size <code>heightMapSize</code> x <code>heightMapSize</code>, all pixels get overwritten
+     * @return the buffer
+     */
+    public static PixelBuffer heightMapToPixels(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel,String debugText,PixelBuffer pixels)
+    {
+        return heightMapToPixels( heightMap , heightMapSize , new ColorLookupTable( colorGradient , groundLevel ) , debugText , pixels );
+    }
+    
+    /**
+     * Converts a height map into RGBA8888 pixels that can be uploaded to a texture as-is.
+     * 
+     * Does not require an OpenGL context and may thus be invoked
+     * from any thread. 
+     * 
+     * @param heightMap
+     * @param heightMapSize
+     * @param colors
+     * @param debugText optional text to render in the center of the pixmap, may be <code>null</code>
+     * @param pixels buffer of size <code>heightMapSize</code> x <code>heightMapSize</code>, all pixels get overwritten
+     * @return the buffer
+     */
+    public static PixelBuffer heightMapToPixels(float[] heightMap, int heightMapSize,ColorLookupTable colors,String debugText,PixelBuffer pixels)
+    {
+        if ( pixels.width != heightMapSize || pixels.height != heightMapSize ) {
+            throw new IllegalArgumentException("Expected "+heightMapSize+"x"+heightMapSize+" pixels but got "+pixels);
+        }
+        heightMapToPixels(heightMap, heightMapSize, colors, debugText, pixels.getPixels() );
+        return pixels;
+    }
+    
+    private static void heightMapToPixels(float[] heightMap, int heightMapSize,ColorLookupTable colors,String debugText,ByteBuffer pixels)
+    {
+        colors.toRGBA( heightMap , heightMapSize*heightMapSize , pixels );
         
-//        int ptr = 0;
-//        float scale = 1.0f/(1.0f - groundLevel);
-//        for ( int z1 = 0 ; z1 < heightMapSize ; z1++ ) 
-//        {        
-//            for ( int x1 = 0 ; x1 < heightMapSize ; x1++ ) 
-//            {
-//                float height = heightMap[ ptr++ ];
-//                int index;
-//                if ( height >= groundLevel ) {
-//                    index = (int) ((height-groundLevel)*scale*255.0f);
-//                } else {
-//                    index =0;
-//                }
-//                pixmap.drawPixel( x1 , z1 , colorGradient[ index & 0xff] << 8 | 255 );
-//            }
-//        }
-//        
         if ( DEBUG_RENDER_TILE_BORDERS ) 
         {
 	        for ( int x = 0 ; x < heightMapSize ; x++ ) 
 	        {
-	            pixmap.drawPixel( x , 0 , 0xff0000ff ); // RED
-	            pixmap.drawPixel( x , heightMapSize-1 , 0x00ff00ff ); // GREEN
-	            pixmap.drawPixel( 0 , x , 0x0000ffff ); // BLUE
-	            pixmap.drawPixel( heightMapSize-1 , x , 0xff00ffff );
+	            setPixel( pixels , heightMapSize , x , 0 , 0xff0000ff ); // RED
+	            setPixel( pixels , heightMapSize , x , heightMapSize-1 , 0x00ff00ff ); // GREEN
+	            setPixel( pixels , heightMapSize , 0 , x , 0x0000ffff ); // BLUE
+	            setPixel( pixels , heightMapSize , heightMapSize-1 , x , 0xff00ffff );
 	        }
         }
         
@@ -192,17 +225,25 @@ public class TextureUtils
 				for ( int y = 0 ; y < yMin ; y++ ) {
 	        		int col = image.getRGB( x,y );
 	        		if ( col != 0xff000000 ) {
-	        			pixmap.drawPixel( xCenter+x , yCenter+y , col << 8 | 0xff );
+	        			setPixel( pixels , heightMapSize , xCenter+x , yCenter+y , col << 8 | 0xff );
 	        		}
 	        	}
 	        }
         }
-        
-        final Texture result = new Texture(pixmap);
-        pixmap.dispose();
-        return result;
     }    
     
+    private static void setPixel(ByteBuffer pixels,int size,int x,int y,int rgba) 
+    {
+        if ( x >= 0 && y >= 0 && x < size && y < size ) 
+        {
+            final int offset = (x+y*size)*4;
+            pixels.put( offset , (byte) (rgba >>> 24) );
+            pixels.put( offset+1 , (byte) (rgba >>> 16) );
+            pixels.put( offset+2 , (byte) (rgba >>> 8) );
+            pixels.put( offset+3 , (byte) rgba );
+        }
+    }
+    
     public static BufferedImage createTexture(File file,int width,int height) 
     {
         final BufferedImage texture;
@@ -1,7 +1,5 @@
 package de.codesourcery.games.libgdxtest.core.world;
 
-import com.badlogic.gdx.graphics.Texture;
-
 public class Tile 
 {
 	public static final int WIDTH = 1000;
@@ -10,10 +8,19 @@ public class Tile
 	public static final int HALF_TILE_WIDTH = WIDTH/2;
 	public static final int HALF_TILE_HEIGHT  = HEIGHT/2;
 	
+	/**
+	 * Coarsest detail level, backgrounds at level 0 have the highest resolution
+	 * and each level reduces the resolution by a factor of 4 along each axis.
+	 */
+	public static final int MAX_DETAIL_LEVEL = 2;
+	
 	public final int x;
 	public final int y;
 	
-	private Texture backgroundTexture;
+	// slot holding this tile's background, if uploaded
+	private TileTextureAtlas.Slot atlasSlot;
+	
+	private boolean active;
 	
 	public Tile(int x, int y) 
 	{
@@ -21,17 +28,77 @@ public class Tile
 		this.y = y;
 	}
 	
-	protected Texture maybeCreateBackgroundTexture() {
+	/**
+	 * Returns the RGBA8888 pixels of this tile's background.
+	 * 
+	 * Always invoked on the OpenGL rendering thread.
+	 * 
+	 * @return background or <code>NULL</code> if the background 
+	 * is not available (yet), in which case this method will be invoked again
+	 * the next time the tile gets rendered.
+	 */
+	public PixelBuffer getBackgroundPixels() {
 	    return null;
 	}
 	
-	public final Texture getBackgroundTexture()
-    {
-	  if ( backgroundTexture == null ) {
-	      backgroundTexture = maybeCreateBackgroundTexture();
-	  }
-      return backgroundTexture;
-    }
+	/**
+	 * Returns the width/height of a background at a given detail level.
+	 * 
+	 * @param fullSize width/height at detail level 0
+	 * @param detailLevel
+	 * @return
+	 */
+	public static int getBackgroundSize(int fullSize,int detailLevel) {
+		return fullSize >> (2*detailLevel);
+	}
+	
+	/**
+	 * Asks this tile to provide its background at (at least) the given detail level.
+	 * 
+	 * Tiles that already have a coarser background keep returning it
+	 * from {@link #getBackgroundPixels()} until the finer one becomes available. 
+	 * The default implementation does nothing.
+	 * 
+	 * @param detailLevel
+	 */
+	public void requestDetailLevel(int detailLevel) {
+	}
+	
+	/**
+	 * Returns the detail level of the background currently
+	 * returned by {@link #getBackgroundPixels()}.
+	 */
+	public int getDetailLevel() {
+		return 0;
+	}
+	
+	public final TileTextureAtlas.Slot getAtlasSlot() {
+		return atlasSlot;
+	}
+	
+	protected final void setAtlasSlot(TileTextureAtlas.Slot slot) {
+		this.atlasSlot = slot;
+	}
+	
+	/**
+	 * Returns the amount of memory occupied by CPU-side data 
+	 * (height map, pixels) of this tile.
+	 */
+	public long getDataSizeInBytes() {
+		return 0;
+	}
+	
+	/**
+	 * Returns this tile's height map.
+	 * 
+	 * The array may get reused for other tiles once this tile got disposed or 
+	 * a more detailed height map became available, callers must not hold on to it.
+	 * 
+	 * @return height map or <code>null</code> if not available (yet)
+	 */
+	public float[] getHeightMap() {
+		return null;
+	}
 	
 	@Override
 	public String toString()
@@ -40,20 +107,37 @@ public class Tile
 	}
 	
 	public void activate() {
+		active = true;
 	}
 	
 	public void passivate() {
+		active = false;
+	}
+	
+	/**
+	 * Returns whether this tile is currently part of the visible chunk.
+	 */
+	public final boolean isActive() {
+		return active;
 	}
 	
 	public final void dispose() 
 	{
-	    if ( backgroundTexture != null ) 
+	    try {
+	        onDispose();
+	    } 
+	    finally 
 	    {
-	        try {
-	            backgroundTexture.dispose();
-	        } finally  {
-	            backgroundTexture=null;
+	        if ( atlasSlot != null ) {
+	            atlasSlot.release();
 	        }
 	    }
 	}
+	
+	/**
+	 * Invoked when this tile is disposed, subclasses may
+	 * override this method to release any additional resources.
+	 */
+	protected void onDispose() {
+	}
 }
\ No newline at end of file
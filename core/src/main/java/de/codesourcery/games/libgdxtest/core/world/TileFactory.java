@@ -1,77 +1,455 @@
 package de.codesourcery.games.libgdxtest.core.world;
 
-import com.badlogic.gdx.graphics.Texture;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import de.codesourcery.games.libgdxtest.core.world.DiskTileCache.TileData;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
 
 public class TileFactory
 {
 	private static final boolean DEBUG_LABEL_TILES = false;
 
+	// increment whenever the way tiles are generated changes, 
+	// invalidates all tiles cached on disk
+	private static final int GENERATOR_VERSION = 4;
+	
 	private static final int backgroundHeightmapSize=512;
 	private static final float groundLevel=0.0f;
 	private static final int[] colorGradient;
+	private static final ColorLookupTable colorLookupTable;
+	
+	private static final int NOISE_OCTAVES = 8;
+	private static final float NOISE_PERSISTANCE = 1.23f;
 
 	private final float tileSize = 0.5f;
 
-	private final DefaultNoiseGenerator noiseGenerator1;
+	private final WorldGenerator worldGenerator;
+	
+	// height maps and pixels of disposed tiles, reused for new tiles
+	private final BufferPool bufferPool;
+	
+	// may be NULL, tiles are generated synchronously then
+	private final TileLoader tileLoader;
+	
+	// may be NULL
+	private final DiskTileCache diskCache;
 
 	static {
 		colorGradient = TextureUtils.createLandscapeGradient();
+		colorLookupTable = new ColorLookupTable( colorGradient , groundLevel );
 	}
 
 	public TileFactory(long seed) 
 	{
-		this.noiseGenerator1 = new DefaultNoiseGenerator( backgroundHeightmapSize , seed );
+		this(seed,null);
+	}
+	
+	/**
+	 * 
+	 * @param seed
+	 * @param tileLoader loader used to generate tiles in the background, if <code>null</code> tiles will
+	 * be generated synchronously by {@link #createTile(int, int)}
+	 */
+	public TileFactory(long seed,TileLoader tileLoader) 
+	{
+		this(seed,tileLoader,null);
+	}
+	
+	/**
+	 * 
+	 * @param seed
+	 * @param tileLoader loader used to generate tiles in the background, if <code>null</code> tiles will
+	 * be generated synchronously by {@link #createTile(int, int)}
+	 * @param cacheDirectory directory to persist generated tiles in, <code>null</code> disables caching
+	 */
+	public TileFactory(long seed,TileLoader tileLoader,File cacheDirectory) 
+	{
+		this(seed,tileLoader,cacheDirectory,new BufferPool());
+	}
+	
+	/**
+	 * 
+	 * @param seed
+	 * @param tileLoader loader used to generate tiles in the background, if <code>null</code> tiles will
+	 * be generated synchronously by {@link #createTile(int, int)}
+	 * @param cacheDirectory directory to persist generated tiles in, <code>null</code> disables caching
+	 * @param bufferPool pool to take height maps and pixels of new tiles from, disposed tiles return them to the pool
+	 */
+	public TileFactory(long seed,TileLoader tileLoader,File cacheDirectory,BufferPool bufferPool) 
+	{
+		this.bufferPool = bufferPool;
+		final ForkJoinPool generationPool = tileLoader != null ? tileLoader.getGenerationPool() : null;
+		this.worldGenerator = new NoiseWorldGenerator( seed , tileSize / backgroundHeightmapSize , NOISE_OCTAVES , NOISE_PERSISTANCE , generationPool );
+		this.tileLoader = tileLoader;
+		this.diskCache = cacheDirectory != null ? new DiskTileCache( cacheDirectory , seed , getParameterHash() ) : null;
+	}
+	
+	/**
+	 * Returns a hash over all parameters that influence the generated tiles.
+	 */
+	protected final long getParameterHash() 
+	{
+		long result = 31 + GENERATOR_VERSION;
+		result = 31*result + backgroundHeightmapSize;
+		result = 31*result + Float.floatToIntBits( groundLevel );
+		result = 31*result + Float.floatToIntBits( tileSize );
+		result = 31*result + NOISE_OCTAVES;
+		result = 31*result + Float.floatToIntBits( NOISE_PERSISTANCE );
+		result = 31*result + Arrays.hashCode( colorGradient );
+		result = 31*result + ( DEBUG_LABEL_TILES ? 1 : 0 );
+		return result;
+	}
+	
+	public DiskTileCache getDiskCache() 
+	{
+		return diskCache;
+	}
+	
+	public WorldGenerator getWorldGenerator() 
+	{
+		return worldGenerator;
+	}
+	
+	/**
+	 * Returns the world region covered by a tile.
+	 * 
+	 * Every detail level has 1/4 the resolution of the previous one, so
+	 * the distance between samples grows by a factor of 4 (two scales) per level.
+	 * 
+	 * @param tileX
+	 * @param tileY
+	 * @param detailLevel
+	 * @return
+	 */
+	public static WorldRegion getRegion(int tileX,int tileY,int detailLevel) 
+	{
+		final int size = Tile.getBackgroundSize( backgroundHeightmapSize , detailLevel );
+		// tile Y coordinates grow upwards while height map rows grow downwards
+		return new WorldRegion( 2*detailLevel , tileX*(long) size , -tileY*(long) size , size , size );
+	}
+	
+	/**
+	 * Returns the distance between height map samples at a given scale, in world units.
+	 * 
+	 * @param scale
+	 * @return
+	 */
+	public static float getSampleSpacing(int scale) 
+	{
+		return Tile.WIDTH / (float) backgroundHeightmapSize * ( 1L << scale );
+	}
+	
+	/**
+	 * Returns a square region of samples centered on a world position.
+	 * 
+	 * @param worldX
+	 * @param worldY
+	 * @param size width/height in samples
+	 * @param scale
+	 * @return
+	 * @see #createNavMesh(WorldRegion)
+	 */
+	public static WorldRegion getRegionAround(float worldX,float worldY,int size,int scale) 
+	{
+		final float spacing = getSampleSpacing( scale );
+		// tile (0,0) is centered on the world origin, lattice Y coordinates grow downwards
+		final long x = (long) Math.floor( ( worldX + Tile.HALF_TILE_WIDTH ) / spacing ) - size/2;
+		final long y = (long) Math.floor( ( Tile.HALF_TILE_HEIGHT - worldY ) / spacing ) - size/2;
+		return new WorldRegion( scale , x , y , size , size );
+	}
+	
+	/**
+	 * Returns the world X coordinate of a region's left edge.
+	 */
+	public static float getMinWorldX(WorldRegion region) {
+		return region.x * getSampleSpacing( region.scale ) - Tile.HALF_TILE_WIDTH;
+	}
+	
+	/**
+	 * Returns the world Y coordinate of a region's bottom edge.
+	 */
+	public static float getMinWorldY(WorldRegion region) {
+		return Tile.HALF_TILE_HEIGHT - ( region.y + region.height ) * getSampleSpacing( region.scale );
+	}
+	
+	/**
+	 * Generates a nav mesh for a square region.
+	 * 
+	 * Unlike height map rows, nav mesh Y coordinates grow upwards like world Y coordinates, so 
+	 * nav mesh cell <code>(x,y)</code> covers world coordinates starting at 
+	 * <code>getMinWorldX(region)+x*spacing</code> / <code>getMinWorldY(region)+y*spacing</code>.
+	 * 
+	 * @param region
+	 * @return
+	 * @see #getSampleSpacing(int)
+	 */
+	public NavMesh createNavMesh(WorldRegion region) 
+	{
+		if ( region.width != region.height ) {
+			throw new IllegalArgumentException("Region needs to be square: "+region);
+		}
+		final int size = region.width;
+		final float[] heightMap = new float[ size*size ];
+		worldGenerator.generate( region , heightMap );
+		
+		final float[] flipped = new float[ size*size ];
+		for ( int row = 0 ; row < size ; row++ ) {
+			System.arraycopy( heightMap , row*size , flipped , ( size - 1 - row )*size , size );
+		}
+		return new NavMesh( size , flipped );
+	}
+	
+	public BufferPool getBufferPool() 
+	{
+		return bufferPool;
+	}
+	
+	/**
+	 * Returns the width/height of tile backgrounds in pixels.
+	 */
+	public int getBackgroundSize() 
+	{
+		return backgroundHeightmapSize;
 	}
 
+	/**
+	 * Creates a tile with full detail.
+	 * 
+	 * @param x
+	 * @param y
+	 * @return
+	 * @see #createTile(int, int, int)
+	 */
 	public Tile createTile(int x,int y) 
 	{
-		float realX = x * tileSize;
-		float realY = -y * tileSize;
-
-		final float[] noise = createNoise( realX , realY );
+		return createTile(x,y,0);
+	}
+	
+	/**
+	 * Creates a tile.
+	 * 
+	 * If this factory has a {@link TileLoader}, the returned tile
+	 * will be a placeholder whose background becomes available as soon 
+	 * as the loader finished generating the tile.
+	 *  
+	 * @param x
+	 * @param y
+	 * @param detailLevel detail level to generate the background at, see {@link Tile#requestDetailLevel(int)}
+	 * @return
+	 */
+	public Tile createTile(int x,int y,int detailLevel) 
+	{
 		//        System.out.println("createTile(): "+x+" / "+y);
-		return new Tile(x,y) 
+		final GeneratedTile tile = new GeneratedTile(this,x,y);
+		tile.requestDetailLevel( detailLevel );
+		return tile;
+	}
+	
+	protected Future<?> generate(final GeneratedTile tile,final int detailLevel) 
+	{
+		final Runnable task = new Runnable() 
 		{
-		    @Override
-		    protected Texture maybeCreateBackgroundTexture()
-		    {
-		        if ( DEBUG_LABEL_TILES ) {
-		            return TextureUtils.heightMapToTexture( noise , backgroundHeightmapSize , colorGradient , groundLevel ,"Tile "+x+" / "+y);
-		        } 
-		        return TextureUtils.heightMapToTexture( noise , backgroundHeightmapSize , colorGradient , groundLevel , null );
-		    }
+			@Override
+			public void run() 
+			{
+				if ( tile.isDisposed() ) {
+					return;
+				}
+				createBackground( tile , detailLevel );
+			}
 		};
+		
+		if ( tileLoader != null ) {
+			return tileLoader.submit( task );
+		} 
+		task.run();
+		return null;
 	}
-
-	private float[] createNoise(float x,float y) 
+	
+	private void createBackground(GeneratedTile tile,int detailLevel) 
 	{
-		final int heightMapSize = noiseGenerator1.heightMapSize;
-		float[] high = noiseGenerator1.createNoise2D( x ,y ,  tileSize , 8 , 1.23f );
+		final int size = Tile.getBackgroundSize( backgroundHeightmapSize , detailLevel );
+		if ( diskCache != null ) 
+		{
+			final TileData cached = diskCache.load( tile.x , tile.y , size );
+			if ( cached != null ) 
+			{
+				// pixels are uploaded straight from the memory-mapped file
+				final float[] heightMap = cached.readHeightMap( bufferPool.acquireFloats( size*size ) );
+				tile.backgroundAvailable( detailLevel , heightMap , new PixelBuffer( cached.getPixels() , size , size ) );
+				return;
+			}
+		}
 		
-		final int middleSize= heightMapSize / 2;
-		final float middleScale = middleSize / (float) heightMapSize;
-		float[] middle = NavMeshGenerator.resample( high , heightMapSize , middleSize );
-
-        final int lowSize= heightMapSize / 4;
-        final float lowScale = lowSize / (float) heightMapSize;
-        float[] low = NavMeshGenerator.resample( high , heightMapSize , lowSize );		
-
-		float[] result = new float[heightMapSize*heightMapSize];
-		for ( int iy = 0 ; iy < heightMapSize ; iy++) 
+		final String debugText = DEBUG_LABEL_TILES ? "Tile "+tile.x+" / "+tile.y+" (LOD "+detailLevel+")" : null;
+		
+		final float[] noise = bufferPool.acquireFloats( size*size );
+		worldGenerator.generate( getRegion( tile.x , tile.y , detailLevel ) , noise );
+		final PixelBuffer pixels = TextureUtils.heightMapToPixels( noise , size , colorLookupTable , debugText , bufferPool.acquirePixels( size ) );
+		if ( diskCache != null ) {
+			diskCache.store( tile.x , tile.y , noise , size , pixels.getPixels() );
+		}
+		tile.backgroundAvailable( detailLevel , noise , pixels );
+	}
+	
+	protected static final class GeneratedTile extends Tile 
+	{
+		private static final int NO_DETAIL = Integer.MAX_VALUE;
+		
+		private final Object LOCK = new Object();
+		
+		private final TileFactory factory;
+		
+		// generated by loader thread, kept so that the background
+		// can be uploaded again without generating the tile again
+		private float[] heightMap;
+		private PixelBuffer background;
+		private int detailLevel = NO_DETAIL;
+		
+		// replaced by a more detailed background but possibly still
+		// in use by the rendering thread, released by the rendering thread
+		private PixelBuffer retiredBackground;
+		private float[] retiredHeightMap;
+		
+		// finest detail level generation was requested for
+		private int requestedDetailLevel = NO_DETAIL;
+		
+		private boolean disposed;
+		
+		private Future<?> task;
+		
+		public GeneratedTile(TileFactory factory,int x, int y) 
+		{
+			super(x, y);
+			this.factory = factory;
+		}
+		
+		@Override
+		public void requestDetailLevel(int level) 
 		{
-			for ( int ix = 0 ; ix < heightMapSize ; ix++) 
+			final int clamped = Math.max( 0 , Math.min( level , MAX_DETAIL_LEVEL ) );
+			synchronized( LOCK ) 
 			{
-                final int lix = (int) (ix*lowScale);
-                final int liy = (int) (iy*lowScale);
-                
-				final int mix = (int) (ix*middleScale);
-				final int miy = (int) (iy*middleScale);
-
-				result[ix+iy*heightMapSize] = low[lix+liy*lowSize] * 0.5f + 
-						middle[mix+miy*middleSize] * 0.25f + 
-						high[ix+iy*heightMapSize]*0.25f;
+				if ( disposed || clamped >= requestedDetailLevel ) {
+					return;
+				}
+				requestedDetailLevel = clamped;
+			}
+			// coarser requests that are still queued keep running so that 
+			// there is something to render while the finer background is generated
+			final Future<?> newTask = factory.generate( this , clamped );
+			synchronized( LOCK ) {
+				task = newTask;
 			}
 		}
-		return result;
+		
+		@Override
+		public int getDetailLevel() 
+		{
+			synchronized( LOCK ) {
+				return detailLevel == NO_DETAIL ? -1 : detailLevel;
+			}
+		}
+		
+		protected void backgroundAvailable(int level,float[] heightMap,PixelBuffer pixels) 
+		{
+			synchronized( LOCK ) 
+			{
+				if ( ! disposed && level < detailLevel ) 
+				{
+					if ( retiredBackground != null ) 
+					{
+						// rendering thread did not pick up the previous background yet
+						factory.bufferPool.release( background );
+						factory.bufferPool.release( this.heightMap );
+					} else {
+						retiredBackground = background;
+						retiredHeightMap = this.heightMap;
+					}
+					this.heightMap = heightMap;
+					this.background = pixels;
+					this.detailLevel = level;
+					return;
+				}
+			}
+			// tile got disposed while we were busy generating it or 
+			// a more detailed background is already available
+			factory.bufferPool.release( pixels );
+			factory.bufferPool.release( heightMap );
+		}
+		protected boolean isDisposed() 
+		{
+			synchronized( LOCK ) {
+				return disposed;
+			}
+		}
+		
+		@Override
+		public float[] getHeightMap() 
+		{
+			synchronized( LOCK ) {
+				return heightMap;
+			}
+		}
+		
+		@Override
+		public long getDataSizeInBytes() 
+		{
+			synchronized( LOCK ) 
+			{
+				long result = heightMap != null ? heightMap.length*4L : 0;
+				if ( background != null ) {
+					result += background.getSizeInBytes();
+				}
+				return result;
+			}
+		}
+		
+		@Override
+		public PixelBuffer getBackgroundPixels() 
+		{
+			synchronized( LOCK ) 
+			{
+				if ( retiredBackground != null ) 
+				{
+					factory.bufferPool.release( retiredBackground );
+					factory.bufferPool.release( retiredHeightMap );
+					retiredBackground = null;
+					retiredHeightMap = null;
+				}
+				return background; // NULL while still being generated
+			}
+		}
+		
+		@Override
+		protected void onDispose() 
+		{
+			final PixelBuffer pixels;
+			final PixelBuffer retired;
+			final float[] data;
+			final float[] retiredData;
+			final Future<?> pending;
+			synchronized( LOCK ) 
+			{
+				disposed = true;
+				pixels = background;
+				retired = retiredBackground;
+				data = heightMap;
+				retiredData = retiredHeightMap;
+				pending = task;
+				background = retiredBackground = null;
+				heightMap = retiredHeightMap = null;
+			}
+			if ( pending != null ) {
+				pending.cancel( false );
+			}
+			factory.bufferPool.release( pixels );
+			factory.bufferPool.release( retired );
+			factory.bufferPool.release( data );
+			factory.bufferPool.release( retiredData );
+		}
 	}
 }
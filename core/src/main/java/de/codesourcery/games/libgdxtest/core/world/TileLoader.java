@@ -0,0 +1,141 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of background threads used to generate tile data.
+ *
+ * Tasks submitted here must never touch OpenGL, uploading
+ * textures needs to happen on the rendering thread.
+ *
+ * Besides the loader threads, there is a fork/join pool tasks may use to
+ * split up generating a single tile. Loader threads block while their work
+ * is done by the pool, so the pool's size caps the number of threads that
+ * are busy generating tiles at the same time.
+ */
+public class TileLoader
+{
+    private final ThreadPoolExecutor executor;
+    private final int threadCount;
+
+    // NULL if parallelism is 1
+    private final ForkJoinPool generationPool;
+
+    public TileLoader(int threadCount) {
+        this(threadCount,1);
+    }
+
+    /**
+     *
+     * @param threadCount number of loader threads
+     * @param generationParallelism max. number of threads used to generate a single tile,
+     * 1 generates tiles on the loader threads
+     */
+    public TileLoader(int threadCount,int generationParallelism)
+    {
+        if ( threadCount < 1 ) {
+            throw new IllegalArgumentException("Thread count must be >= 1");
+        }
+        if ( generationParallelism < 1 ) {
+            throw new IllegalArgumentException("Generation parallelism must be >= 1");
+        }
+        this.threadCount = threadCount;
+
+        final ThreadFactory threadFactory = new ThreadFactory() {
+
+            private final AtomicInteger threadId = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                final Thread t = new Thread(r,"tile-loader-"+threadId.incrementAndGet());
+                t.setDaemon( true );
+                // do not compete with the rendering thread
+                t.setPriority( Thread.NORM_PRIORITY - 1 );
+                return t;
+            }
+        };
+        this.executor = new ThreadPoolExecutor( threadCount, threadCount , 60 , TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>() , threadFactory );
+
+        if ( generationParallelism > 1 )
+        {
+            final ForkJoinWorkerThreadFactory workerFactory = new ForkJoinWorkerThreadFactory() {
+
+                private final AtomicInteger threadId = new AtomicInteger(0);
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+                {
+                    final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( pool );
+                    t.setName( "tile-generator-"+threadId.incrementAndGet() );
+                    t.setDaemon( true );
+                    t.setPriority( Thread.NORM_PRIORITY - 1 );
+                    return t;
+                }
+            };
+            this.generationPool = new ForkJoinPool( generationParallelism , workerFactory , null , false );
+        } else {
+            this.generationPool = null;
+        }
+    }
+
+    public static TileLoader createDefaultLoader()
+    {
+        // leave one core for the rendering thread
+        final int cpus = Runtime.getRuntime().availableProcessors();
+        final int threads = Math.max( 1 , cpus - 1 );
+        return new TileLoader( threads , threads );
+    }
+
+    /**
+     * Returns the pool to use for splitting up the generation of a single tile.
+     *
+     * @return pool or <code>null</code> if tiles should be generated by the loader thread only
+     */
+    public ForkJoinPool getGenerationPool()
+    {
+        return generationPool;
+    }
+
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    public Future<?> submit(final Runnable task)
+    {
+        return executor.submit( new Runnable() {
+
+            @Override
+            public void run()
+            {
+                try {
+                    task.run();
+                }
+                catch(RuntimeException | Error e)
+                {
+                    // exceptions would otherwise silently vanish inside the Future
+                    System.err.println("Tile loader task failed: "+e.getMessage());
+                    e.printStackTrace();
+                    throw e;
+                }
+            }
+        });
+    }
+
+    public void dispose()
+    {
+        executor.shutdownNow();
+        if ( generationPool != null ) {
+            generationPool.shutdownNow();
+        }
+    }
+}
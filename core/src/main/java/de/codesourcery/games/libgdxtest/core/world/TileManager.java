@@ -4,9 +4,29 @@ public abstract class TileManager
 {
 	public abstract Tile loadTile(int tileX,int tileY); 
 	
-	public abstract void unloadTiles(Tile tile1,Tile tile2,Tile tile3);
+	public abstract void unloadTile(Tile tile);
 	
-	public abstract void unloadTiles(Tile tile1,Tile tile2,Tile tile3,Tile tile4 , Tile tile5);
+	/**
+	 * Hint that a tile is likely to be loaded soon.
+	 * 
+	 * Implementations may use this to start generating the tile ahead of time, 
+	 * the default implementation does nothing.
+	 * 
+	 * @param tileX
+	 * @param tileY
+	 */
+	public void prefetchTile(int tileX,int tileY) {
+	}
 	
-	public abstract void unloadTile(Tile tile);
-}
+	/**
+	 * Hint about the detail level tiles are currently rendered at.
+	 * 
+	 * Implementations may use this to generate new tiles at a lower 
+	 * resolution right away, the default implementation does nothing.
+	 * 
+	 * @param detailLevel
+	 * @see Tile#requestDetailLevel(int)
+	 */
+	public void setDetailLevel(int detailLevel) {
+	}
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Predicts which tiles the camera is about to enter and asks
+ * the {@link TileManager} to start generating them before
+ * they become visible.
+ *
+ * Prediction is based on the (smoothed) direction of recent camera movements,
+ * the prefetch radius determines how many rows/columns beyond the visible
+ * chunk are requested.
+ */
+public class TilePrefetcher
+{
+    // weight of the most recent camera movement when updating the motion vector
+    private static final float SMOOTHING = 0.2f;
+
+    // a motion vector component needs to be at least this fraction
+    // of the vector's length to be considered a movement along that axis
+    private static final float MIN_AXIS_RATIO = 0.25f;
+
+    private static final float MIN_MOTION = 0.01f;
+
+    private int radius;
+
+    private float motionX;
+    private float motionY;
+
+    // tiles we prefetched but that did not get loaded yet
+    private final Set<Long> prefetched = new HashSet<>();
+
+    // state when prefetch() last issued requests
+    private int lastTileX;
+    private int lastTileY;
+    private int lastDirX;
+    private int lastDirY;
+    private int lastViewRadius;
+    private boolean lastValid;
+
+    private long requestCount;
+    private long hitCount;
+    private long missCount;
+    private long wasteCount;
+
+    public TilePrefetcher() {
+        this(1);
+    }
+
+    public TilePrefetcher(int radius)
+    {
+        setRadius(radius);
+    }
+
+    /**
+     * Sets the prefetch radius.
+     *
+     * @param radius number of tile rows/columns beyond the current chunk to prefetch
+     * in the direction of movement, 0 disables prefetching
+     */
+    public void setRadius(int radius)
+    {
+        if ( radius < 0 ) {
+            throw new IllegalArgumentException("Radius must be >= 0");
+        }
+        this.radius = radius;
+        this.lastValid = false;
+    }
+
+    public int getRadius()
+    {
+        return radius;
+    }
+
+    public void cameraMoved(float deltaX,float deltaY)
+    {
+        motionX = motionX*(1.0f-SMOOTHING) + deltaX*SMOOTHING;
+        motionY = motionY*(1.0f-SMOOTHING) + deltaY*SMOOTHING;
+    }
+
+    /**
+     * Issues prefetch requests for tiles the camera is moving towards.
+     *
+     * Requests are only sent when either the camera tile or the direction of
+     * movement changed since the last invocation, so it's cheap to call this method
+     * after every camera movement.
+     *
+     * @param tileManager
+     * @param cameraTileX tile the camera is currently in
+     * @param cameraTileY tile the camera is currently in
+     * @param viewRadius number of tiles between the camera tile and the border of the visible chunk
+     */
+    public void prefetch(TileManager tileManager,int cameraTileX,int cameraTileY,int viewRadius)
+    {
+        if ( radius == 0 ) {
+            return;
+        }
+
+        final float len = (float) Math.sqrt( motionX*motionX + motionY*motionY );
+        final int dirX;
+        final int dirY;
+        if ( len < MIN_MOTION ) {
+            dirX = dirY = 0;
+        } else {
+            dirX = Math.abs( motionX ) >= MIN_AXIS_RATIO*len ? (int) Math.signum( motionX ) : 0;
+            dirY = Math.abs( motionY ) >= MIN_AXIS_RATIO*len ? (int) Math.signum( motionY ) : 0;
+        }
+
+        if ( lastValid && lastTileX == cameraTileX && lastTileY == cameraTileY && lastDirX == dirX && lastDirY == dirY && lastViewRadius == viewRadius ) {
+            return;
+        }
+
+        lastValid = true;
+        lastTileX = cameraTileX;
+        lastTileY = cameraTileY;
+        lastDirX = dirX;
+        lastDirY = dirY;
+        lastViewRadius = viewRadius;
+
+        discardOutOfRange( cameraTileX , cameraTileY , viewRadius );
+
+        if ( dirX == 0 && dirY == 0 ) {
+            return;
+        }
+
+        // request all tiles of the chunks the camera would see
+        // after moving 1...radius tiles in the current direction
+        for ( int step = 1 ; step <= radius ; step++ )
+        {
+            final int centerX = cameraTileX + dirX*step;
+            final int centerY = cameraTileY + dirY*step;
+            for ( int y = centerY - viewRadius ; y <= centerY + viewRadius ; y++ )
+            {
+                for ( int x = centerX - viewRadius ; x <= centerX + viewRadius ; x++ )
+                {
+                    if ( ! isInChunk( x , y , cameraTileX , cameraTileY , viewRadius ) && prefetched.add( key( x, y ) ) )
+                    {
+                        requestCount++;
+                        tileManager.prefetchTile( x , y );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * To be invoked whenever a tile gets loaded because the camera moved.
+     *
+     * @param tileX
+     * @param tileY
+     */
+    public void tileLoaded(int tileX,int tileY)
+    {
+        if ( prefetched.remove( key( tileX , tileY ) ) ) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+    }
+
+    private void discardOutOfRange(int cameraTileX,int cameraTileY,int viewRadius)
+    {
+        for (Iterator<Long> it = prefetched.iterator(); it.hasNext();)
+        {
+            final long key = it.next();
+            if ( ! isInChunk( keyToX( key ) , keyToY( key ) , cameraTileX , cameraTileY , viewRadius+radius ) )
+            {
+                it.remove();
+                wasteCount++;
+            }
+        }
+    }
+
+    private static boolean isInChunk(int x,int y,int centerX,int centerY,int halfSize)
+    {
+        return Math.abs( x - centerX ) <= halfSize && Math.abs( y - centerY ) <= halfSize;
+    }
+
+    private static long key(int x,int y) {
+        return ((long) x << 32) | ( y & 0xffffffffL );
+    }
+
+    private static int keyToX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int keyToY(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Returns the number of prefetch requests issued.
+     */
+    public long getRequestCount()
+    {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of tile loads that had been prefetched.
+     */
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of tile loads that had not been prefetched.
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of prefetched tiles that got out of range
+     * before being loaded.
+     */
+    public long getWasteCount()
+    {
+        return wasteCount;
+    }
+
+    public float getHitRatio()
+    {
+        final long total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (float) total;
+    }
+
+    public void resetStatistics()
+    {
+        requestCount = hitCount = missCount = wasteCount = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "radius "+radius+", requests: "+requestCount+", hits: "+hitCount+", misses: "+missCount+", wasted: "+wasteCount;
+    }
+}
@@ -0,0 +1,388 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Packs tile backgrounds into a single large texture.
+ *
+ * The texture is divided into a grid of equally-sized slots, each holding the background
+ * of one tile. Slot 0 is reserved for a placeholder that gets rendered for tiles whose background
+ * is not available yet. When all slots are taken, the least recently used slot whose tile is not active
+ * gets recycled, so getting a tile onto the GPU is a sub-image update instead of a texture allocation.
+ * Backgrounds at lower detail levels only occupy the top-left part of their slot.
+ *
+ * Pixels are uploaded from the tile's direct buffer with <code>glTexSubImage2D()</code>, without
+ * an intermediate pixmap.
+ *
+ * Instances must only be used on the OpenGL rendering thread.
+ */
+public class TileTextureAtlas
+{
+    public static final int DEFAULT_SLOTS_PER_SIDE = 4;
+
+    private final int slotSize;
+    private final int textureSize;
+
+    private final Slot[] slots;
+
+    // doubly-linked list of tile slots, least recently used first
+    private Slot lruHead;
+    private Slot lruTail;
+
+    private Texture texture;
+
+    private long hits;
+    private long uploads;
+    private long evictions;
+
+    /**
+     * A region of the atlas texture.
+     */
+    public static final class Slot
+    {
+        public final int index;
+
+        protected final int pixelX;
+        protected final int pixelY;
+
+        private final TileTextureAtlas atlas;
+
+        // texture coordinates of the uploaded background
+        private float u0;
+        private float v0;
+        private float u1;
+        private float v1;
+
+        // incremented whenever texture coordinates change
+        private int version;
+
+        private Tile tile;
+        // pixels uploaded into this slot
+        private PixelBuffer pixels;
+
+        private Slot previous;
+        private Slot next;
+
+        protected Slot(TileTextureAtlas atlas,int index,int pixelX,int pixelY)
+        {
+            this.atlas = atlas;
+            this.index = index;
+            this.pixelX = pixelX;
+            this.pixelY = pixelY;
+        }
+
+        protected void setTextureCoordinates(float u0,float v0,float u1,float v1)
+        {
+            this.u0 = u0;
+            this.v0 = v0;
+            this.u1 = u1;
+            this.v1 = v1;
+            this.version++;
+        }
+
+        public float getU0() {
+            return u0;
+        }
+
+        public float getV0() {
+            return v0;
+        }
+
+        public float getU1() {
+            return u1;
+        }
+
+        public float getV1() {
+            return v1;
+        }
+
+        /**
+         * Returns a counter that gets incremented whenever
+         * the texture coordinates of this slot change.
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        public Tile getTile() {
+            return tile;
+        }
+
+        /**
+         * Makes this slot available for other tiles.
+         */
+        public void release() {
+            atlas.release( this );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Slot #"+index+" ("+tile+")";
+        }
+    }
+
+    public TileTextureAtlas(int slotSize) {
+        this(slotSize,DEFAULT_SLOTS_PER_SIDE);
+    }
+
+    /**
+     *
+     * @param slotSize width/height of tile backgrounds in pixels
+     * @param slotsPerSide number of slots per row/column, the atlas texture
+     * will be <code>slotSize*slotsPerSide</code> pixels wide and high. This needs to be a power of two,
+     * GL10 does not support other texture sizes.
+     */
+    public TileTextureAtlas(int slotSize,int slotsPerSide)
+    {
+        if ( slotSize < 1 ) {
+            throw new IllegalArgumentException("Slot size must be >= 1");
+        }
+        if ( slotsPerSide < 2 ) {
+            throw new IllegalArgumentException("Atlas needs at least 2 slots per side");
+        }
+        if ( ! MathUtils.isPowerOfTwo( slotSize * slotsPerSide ) ) {
+            throw new IllegalArgumentException("Texture size "+slotSize+"*"+slotsPerSide+" is not a power of two");
+        }
+        this.slotSize = slotSize;
+        this.textureSize = slotSize * slotsPerSide;
+        this.slots = new Slot[ slotsPerSide * slotsPerSide ];
+
+        for ( int i = 0 ; i < slots.length ; i++ )
+        {
+            final Slot slot = new Slot( this , i , (i % slotsPerSide) * slotSize , (i / slotsPerSide) * slotSize );
+            if ( i == 0 ) {
+                // placeholder, sample the center of its first pixel only
+                final float u = 0.5f / textureSize;
+                slot.setTextureCoordinates( u , u , u , u );
+            } else {
+                append( slot );
+            }
+            slots[i] = slot;
+        }
+    }
+
+    public Texture getTexture()
+    {
+        if ( texture == null )
+        {
+            texture = new Texture( textureSize , textureSize , Format.RGBA8888 );
+
+            // dark gray placeholder pixel
+            final ByteBuffer placeholder = ByteBuffer.allocateDirect( 4 );
+            placeholder.put( (byte) 0x40 ).put( (byte) 0x40 ).put( (byte) 0x40 ).put( (byte) 0xff ).flip();
+            upload( placeholder , slots[0].pixelX , slots[0].pixelY , 1 , 1 );
+        }
+        return texture;
+    }
+
+    public Slot getPlaceholder() {
+        return slots[0];
+    }
+
+    /**
+     * Returns the slot holding a tile's background, uploading
+     * the background into a free slot if necessary.
+     *
+     * @param tile
+     * @return slot, the placeholder slot if the tile's background is not available (yet) or
+     * if all slots are occupied by active tiles
+     */
+    public Slot getSlot(Tile tile)
+    {
+        final PixelBuffer pixels = tile.getBackgroundPixels();
+
+        Slot slot = tile.getAtlasSlot();
+        if ( slot != null && slot.atlas == this )
+        {
+            if ( pixels != null && pixels != slot.pixels ) {
+                // tile got a more detailed background
+                upload( slot , pixels );
+            } else {
+                hits++;
+            }
+            touch( slot );
+            return slot;
+        }
+
+        if ( pixels == null ) {
+            return slots[0]; // still being generated
+        }
+        if ( pixels.width > slotSize || pixels.height > slotSize ) {
+            throw new IllegalArgumentException("Background of "+tile+" has size "+pixels.width+"x"+pixels.height+", max. "+slotSize+"x"+slotSize);
+        }
+
+        slot = allocate();
+        if ( slot == null ) {
+            System.err.println("Texture atlas exhausted, cannot upload "+tile);
+            return slots[0];
+        }
+
+        upload( slot , pixels );
+        slot.tile = tile;
+        tile.setAtlasSlot( slot );
+        touch( slot );
+        return slot;
+    }
+
+    private void upload(Slot slot,PixelBuffer pixels)
+    {
+        getTexture();
+        upload( pixels.getPixels() , slot.pixelX , slot.pixelY , pixels.width , pixels.height );
+        uploads++;
+
+        slot.pixels = pixels;
+        slot.setTextureCoordinates( slot.pixelX / (float) textureSize , slot.pixelY / (float) textureSize ,
+                (slot.pixelX+pixels.width) / (float) textureSize , (slot.pixelY+pixels.height) / (float) textureSize );
+    }
+
+    private void upload(ByteBuffer pixels,int x,int y,int width,int height)
+    {
+        texture.bind();
+        Gdx.gl.glPixelStorei( GL10.GL_UNPACK_ALIGNMENT , 1 );
+        Gdx.gl.glTexSubImage2D( GL10.GL_TEXTURE_2D , 0 , x , y , width , height , GL10.GL_RGBA , GL10.GL_UNSIGNED_BYTE , pixels );
+    }
+
+    private Slot allocate()
+    {
+        for ( Slot slot = lruHead ; slot != null ; slot = slot.next )
+        {
+            if ( slot.tile == null ) {
+                return slot;
+            }
+            if ( ! slot.tile.isActive() )
+            {
+                evictions++;
+                slot.tile.setAtlasSlot( null );
+                slot.tile = null;
+                slot.pixels = null;
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    protected void release(Slot slot)
+    {
+        if ( slot.index == 0 ) {
+            return;
+        }
+        if ( slot.tile != null )
+        {
+            slot.tile.setAtlasSlot( null );
+            slot.tile = null;
+            slot.pixels = null;
+        }
+        // free slots get reused first
+        unlink( slot );
+        slot.next = lruHead;
+        if ( lruHead != null ) {
+            lruHead.previous = slot;
+        } else {
+            lruTail = slot;
+        }
+        lruHead = slot;
+    }
+
+    private void touch(Slot slot)
+    {
+        if ( slot != lruTail )
+        {
+            unlink( slot );
+            append( slot );
+        }
+    }
+
+    private void append(Slot slot)
+    {
+        slot.previous = lruTail;
+        slot.next = null;
+        if ( lruTail != null ) {
+            lruTail.next = slot;
+        } else {
+            lruHead = slot;
+        }
+        lruTail = slot;
+    }
+
+    private void unlink(Slot slot)
+    {
+        if ( slot.previous != null ) {
+            slot.previous.next = slot.next;
+        } else {
+            lruHead = slot.next;
+        }
+        if ( slot.next != null ) {
+            slot.next.previous = slot.previous;
+        } else {
+            lruTail = slot.previous;
+        }
+        slot.previous = slot.next = null;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * Returns the number of slots available for tiles.
+     */
+    public int getCapacity() {
+        return slots.length - 1;
+    }
+
+    public int getUsedSlotCount()
+    {
+        int result = 0;
+        for ( int i = 1 ; i < slots.length ; i++ ) {
+            if ( slots[i].tile != null ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    public long getSizeInBytes() {
+        return textureSize * (long) textureSize * 4;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getUploads() {
+        return uploads;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void resetStatistics() {
+        hits = uploads = evictions = 0;
+    }
+
+    public void dispose()
+    {
+        for ( int i = 1 ; i < slots.length ; i++ ) {
+            release( slots[i] );
+        }
+        if ( texture != null )
+        {
+            texture.dispose();
+            texture = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "L1 (atlas): "+getUsedSlotCount()+" of "+getCapacity()+" slots used ("+(getSizeInBytes()/1024)+" KB), hits: "+hits+", uploads: "+uploads+", evictions: "+evictions;
+    }
+}
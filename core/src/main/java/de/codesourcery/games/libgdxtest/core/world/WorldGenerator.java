@@ -0,0 +1,32 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+/**
+ * Generates height values for arbitrary regions of the world.
+ *
+ * Every sample depends only on the generator's parameters and the sample's lattice position and scale,
+ * never on the region it is requested as part of. Regions can thus be generated independently,
+ * in any order, on any thread, and adjacent regions always match along their borders.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface WorldGenerator
+{
+    public long getSeed();
+
+    /**
+     * Returns the distance in world space between adjacent samples at a given scale.
+     *
+     * @param scale
+     * @return
+     * @see WorldRegion#scale
+     */
+    public double getSampleSpacing(int scale);
+
+    /**
+     * Generates height values in the range 0...1.
+     *
+     * @param region
+     * @param result array to store values in, row by row, needs to hold at least <code>region.getSampleCount()</code> elements
+     */
+    public void generate(WorldRegion region,float[] result);
+}
@@ -0,0 +1,95 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+/**
+ * A rectangular block of samples on the world's sample lattice.
+ *
+ * At scale <code>s</code> samples are <code>2^s</code> times as far apart as at scale 0,
+ * so a region at scale 1 covers the same area as a region twice its width/height at scale 0.
+ * Sample <code>(i,j)</code> of a region is located at lattice position <code>(x+i,y+j)</code>.
+ *
+ * Regions are immutable and implement <code>equals()</code>/<code>hashCode()</code>, so they
+ * can be used as cache keys.
+ */
+public final class WorldRegion
+{
+    // spacing between samples must be representable as a double
+    public static final int MAX_SCALE = 30;
+
+    public final int scale;
+    public final long x;
+    public final long y;
+    public final int width;
+    public final int height;
+
+    /**
+     *
+     * @param scale log2 of the distance between samples relative to scale 0
+     * @param x lattice X coordinate of the top-left sample, in samples at the given scale
+     * @param y lattice Y coordinate of the top-left sample, in samples at the given scale
+     * @param width number of samples per row
+     * @param height number of rows
+     */
+    public WorldRegion(int scale,long x,long y,int width,int height)
+    {
+        if ( scale < 0 || scale > MAX_SCALE ) {
+            throw new IllegalArgumentException("Scale must be 0..."+MAX_SCALE+", was: "+scale);
+        }
+        if ( width < 1 || height < 1 ) {
+            throw new IllegalArgumentException("Invalid region size: "+width+"x"+height);
+        }
+        this.scale = scale;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getSampleCount() {
+        return width*height;
+    }
+
+    /**
+     * Returns a part of this region.
+     *
+     * @param xOffset offset of the first column, relative to this region
+     * @param yOffset offset of the first row, relative to this region
+     * @param width
+     * @param height
+     * @return
+     */
+    public WorldRegion subRegion(int xOffset,int yOffset,int width,int height)
+    {
+        if ( xOffset < 0 || yOffset < 0 || xOffset + width > this.width || yOffset + height > this.height ) {
+            throw new IllegalArgumentException("Sub-region "+xOffset+","+yOffset+" ("+width+"x"+height+") exceeds "+this);
+        }
+        return new WorldRegion( scale , x + xOffset , y + yOffset , width , height );
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if ( obj instanceof WorldRegion )
+        {
+            final WorldRegion other = (WorldRegion) obj;
+            return scale == other.scale && x == other.x && y == other.y && width == other.width && height == other.height;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = 31 + scale;
+        result = 31*result + (int) ( x ^ ( x >>> 32 ) );
+        result = 31*result + (int) ( y ^ ( y >>> 32 ) );
+        result = 31*result + width;
+        result = 31*result + height;
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WorldRegion[ scale "+scale+" , "+x+","+y+" ("+width+"x"+height+") ]";
+    }
+}
@@ -0,0 +1,184 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BoundedRingBufferTest extends TestCase
+{
+    public void testInvalidMaxSize()
+    {
+        try {
+            new BoundedRingBuffer<String>( 0 );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testAddNullFails()
+    {
+        try {
+            new BoundedRingBuffer<String>( 1 ).add( null );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testAddTwiceFails()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 2 );
+        buffer.add( "a" );
+        try {
+            buffer.add( "a" );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testRemoveOldestInInsertionOrder()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 5 );
+        buffer.add( "a" );
+        buffer.add( "b" );
+        buffer.add( "c" );
+        assertEquals( 3 , buffer.size() );
+        assertEquals( "a" , buffer.removeOldest() );
+        assertEquals( "b" , buffer.removeOldest() );
+        assertEquals( "c" , buffer.removeOldest() );
+        assertNull( buffer.removeOldest() );
+        assertEquals( 0 , buffer.size() );
+    }
+
+    public void testAddToFullBufferEvictsOldest()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 3 );
+        assertNull( buffer.add( "a" ) );
+        assertNull( buffer.add( "b" ) );
+        assertNull( buffer.add( "c" ) );
+        assertEquals( "a" , buffer.add( "d" ) );
+        assertEquals( "b" , buffer.add( "e" ) );
+        assertEquals( 3 , buffer.size() );
+        assertFalse( buffer.contains( "a" ) );
+        assertFalse( buffer.contains( "b" ) );
+        assertTrue( buffer.contains( "c" ) );
+        assertEquals( "c" , buffer.removeOldest() );
+        assertEquals( "d" , buffer.removeOldest() );
+        assertEquals( "e" , buffer.removeOldest() );
+    }
+
+    public void testRemovingHeadSkipsEmptySlots()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 4 );
+        buffer.add( "a" );
+        buffer.add( "b" );
+        buffer.add( "c" );
+        buffer.add( "d" );
+
+        // leaves empty slots right behind the head
+        assertTrue( buffer.remove( "b" ) );
+        assertTrue( buffer.remove( "c" ) );
+        assertFalse( buffer.remove( "c" ) );
+        assertEquals( 2 , buffer.size() );
+
+        assertTrue( buffer.remove( "a" ) );
+        assertEquals( "d" , buffer.removeOldest() );
+        assertNull( buffer.removeOldest() );
+    }
+
+    public void testEvictionSkipsRemovedObjects()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 3 );
+        buffer.add( "a" );
+        buffer.add( "b" );
+        buffer.add( "c" );
+        buffer.remove( "b" );
+        assertNull( buffer.add( "d" ) );
+        assertEquals( "a" , buffer.add( "e" ) );
+        assertEquals( "c" , buffer.add( "f" ) );
+        assertEquals( "d" , buffer.removeOldest() );
+        assertEquals( "e" , buffer.removeOldest() );
+        assertEquals( "f" , buffer.removeOldest() );
+    }
+
+    public void testCompactionAfterInterleavedRemovals()
+    {
+        // twice the max. size worth of slots, removing from the middle forces compaction
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 3 );
+        buffer.add( "a" );
+        buffer.add( "b" );
+        buffer.remove( "b" );
+        buffer.add( "c" );
+        buffer.remove( "c" );
+        buffer.add( "d" );
+        buffer.remove( "d" );
+        buffer.add( "e" );
+        buffer.remove( "e" );
+        buffer.add( "f" );
+        buffer.remove( "f" );
+        // all slots in use (counting empty ones)
+        buffer.add( "g" );
+        buffer.add( "h" );
+        assertEquals( 3 , buffer.size() );
+
+        assertEquals( "a" , buffer.add( "i" ) );
+        assertTrue( buffer.remove( "h" ) );
+        assertEquals( "g" , buffer.removeOldest() );
+        assertEquals( "i" , buffer.removeOldest() );
+        assertEquals( 0 , buffer.size() );
+    }
+
+    public void testClear()
+    {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<>( 3 );
+        buffer.add( "a" );
+        buffer.add( "b" );
+        buffer.clear();
+        assertEquals( 0 , buffer.size() );
+        assertFalse( buffer.contains( "a" ) );
+        assertNull( buffer.add( "a" ) );
+    }
+
+    public void testRandomOperationsMatchList()
+    {
+        final Random rnd = new Random( 42 );
+        final int maxSize = 7;
+        final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>( maxSize );
+        final LinkedList<Integer> expected = new LinkedList<>();
+        int next = 0;
+        for ( int i = 0 ; i < 10000 ; i++ )
+        {
+            final int op = rnd.nextInt( 10 );
+            if ( op < 5 )
+            {
+                final Integer item = Integer.valueOf( next++ );
+                final Integer evicted = buffer.add( item );
+                final Integer expectedEvicted = expected.size() == maxSize ? expected.removeFirst() : null;
+                assertEquals( expectedEvicted , evicted );
+                expected.addLast( item );
+            }
+            else if ( op < 8 )
+            {
+                if ( ! expected.isEmpty() )
+                {
+                    final Integer item = expected.remove( rnd.nextInt( expected.size() ) );
+                    assertTrue( buffer.remove( item ) );
+                }
+            } else {
+                assertEquals( expected.isEmpty() ? null : expected.removeFirst() , buffer.removeOldest() );
+            }
+            assertEquals( expected.size() , buffer.size() );
+        }
+
+        final List<Integer> actual = new ArrayList<>();
+        for ( Integer item ; ( item = buffer.removeOldest() ) != null ; ) {
+            actual.add( item );
+        }
+        assertEquals( expected , actual );
+    }
+}
@@ -0,0 +1,254 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+public class DynamicAABBTreeTest extends TestCase
+{
+    private static final float WORLD_SIZE = 1000;
+
+    protected static final class Box implements IDrawable
+    {
+        private final BoundingBox bounds = new BoundingBox();
+
+        public Box(float x,float y,float width,float height) {
+            moveTo( x , y , width , height );
+        }
+
+        public void moveTo(float x,float y,float width,float height)
+        {
+            bounds.min.set( x , y , 0 );
+            bounds.max.set( x + width , y + height , 0 );
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return bounds;
+        }
+
+        @Override
+        public boolean isVisible(Camera camera) {
+            return false;
+        }
+
+        @Override
+        public boolean intersects(BoundingBox box) {
+            return Utils.intersect( bounds , box );
+        }
+
+        @Override
+        public void render(ShapeRenderer renderer) {
+        }
+    }
+
+    protected static final class Collector implements IDrawableVisitor<Map<IDrawable,Integer>>
+    {
+        @Override
+        public boolean visit(IDrawable d,Map<IDrawable,Integer> visited)
+        {
+            final Integer count = visited.get( d );
+            visited.put( d , count == null ? 1 : count + 1 );
+            return true;
+        }
+    }
+
+    public void testEmptyTree()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 5 );
+        tree.validate();
+        assertEquals( 0 , tree.size() );
+        assertEquals( 0 , tree.getHeight() );
+        assertTrue( visit( tree , box( 0 , 0 , WORLD_SIZE , WORLD_SIZE ) ).isEmpty() );
+    }
+
+    public void testAddRemoveSingle()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 5 );
+        final Box b = new Box( 10 , 10 , 5 , 5 );
+        tree.add( b );
+        tree.add( b );
+        tree.validate();
+        assertEquals( 1 , tree.size() );
+        assertTrue( tree.contains( b ) );
+
+        assertTrue( tree.remove( b ) );
+        assertFalse( tree.remove( b ) );
+        tree.validate();
+        assertEquals( 0 , tree.size() );
+        assertFalse( tree.contains( b ) );
+    }
+
+    public void testUpdateWithinFatBounds()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 5 );
+        final Box b = new Box( 10 , 10 , 5 , 5 );
+        tree.add( b );
+        b.moveTo( 12 , 12 , 5 , 5 );
+        tree.update( b );
+        tree.validate();
+        assertEquals( 1 , visit( tree , box( 16 , 16 , 1 , 1 ) ).size() );
+        // not reported just because the fat bounds intersect
+        assertEquals( 0 , visit( tree , box( 10 , 10 , 1 , 1 ) ).size() );
+    }
+
+    public void testUpdateUnknownIsIgnored()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 5 );
+        tree.update( new Box( 0 , 0 , 1 , 1 ) );
+        tree.validate();
+        assertEquals( 0 , tree.size() );
+    }
+
+    public void testRandomOperationsMatchBruteForce()
+    {
+        final Random rnd = new Random( 42 );
+        final DynamicAABBTree tree = new DynamicAABBTree( 2 );
+        final List<Box> boxes = new ArrayList<>();
+
+        for ( int round = 0 ; round < 200 ; round++ )
+        {
+            for ( int i = 0 , count = rnd.nextInt( 20 ) ; i < count ; i++ )
+            {
+                final Box b = randomBox( rnd );
+                boxes.add( b );
+                tree.add( b );
+            }
+            for ( int i = 0 , count = rnd.nextInt( 20 ) ; i < count && ! boxes.isEmpty() ; i++ )
+            {
+                final Box b = boxes.get( rnd.nextInt( boxes.size() ) );
+                if ( rnd.nextBoolean() )
+                {
+                    // small move, mostly within the fat bounds
+                    final BoundingBox bounds = b.getBounds();
+                    b.moveTo( bounds.min.x + rnd.nextFloat() * 4 - 2 , bounds.min.y + rnd.nextFloat() * 4 - 2 , Utils.width( bounds ) , Utils.height( bounds ) );
+                } else {
+                    b.moveTo( rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * WORLD_SIZE , 1 + rnd.nextFloat() * 50 , 1 + rnd.nextFloat() * 50 );
+                }
+                tree.update( b );
+            }
+            for ( int i = 0 , count = rnd.nextInt( 15 ) ; i < count && ! boxes.isEmpty() ; i++ ) {
+                assertTrue( tree.remove( boxes.remove( rnd.nextInt( boxes.size() ) ) ) );
+            }
+
+            tree.validate();
+            assertEquals( boxes.size() , tree.size() );
+            for ( Box b : boxes ) {
+                assertTrue( tree.contains( b ) );
+            }
+
+            for ( int query = 0 ; query < 10 ; query++ )
+            {
+                final BoundingBox queryBox = box( rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * 200 , rnd.nextFloat() * 200 );
+                assertEquals( bruteForce( boxes , queryBox ) , visit( tree , queryBox ) );
+
+                final float x0 = rnd.nextFloat() * WORLD_SIZE;
+                final float y0 = rnd.nextFloat() * WORLD_SIZE;
+                final float x1 = rnd.nextFloat() * WORLD_SIZE;
+                final float y1 = rnd.nextFloat() * WORLD_SIZE;
+                assertEquals( bruteForce( boxes , x0 , y0 , x1 , y1 ) , visitSegment( tree , x0 , y0 , x1 , y1 ) );
+            }
+        }
+
+        // removing everything leaves all nodes on the free list
+        for ( Box b : boxes ) {
+            assertTrue( tree.remove( b ) );
+        }
+        tree.validate();
+        assertEquals( 0 , tree.getHeight() );
+    }
+
+    public void testStaysShallowForSortedInsertions()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 0 );
+        final int count = 1024;
+        for ( int i = 0 ; i < count ; i++ ) {
+            tree.add( new Box( i * 10 , 0 , 5 , 5 ) );
+        }
+        tree.validate();
+        // a degenerated tree would be as high as there are objects
+        assertTrue( "Height "+tree.getHeight() , tree.getHeight() <= 4 * 10 );
+    }
+
+    public void testVisitorCanAbort()
+    {
+        final DynamicAABBTree tree = new DynamicAABBTree( 1 );
+        for ( int i = 0 ; i < 10 ; i++ ) {
+            tree.add( new Box( i * 10 , 0 , 5 , 5 ) );
+        }
+        final int[] visited = { 0 };
+        final IDrawableVisitor<Object> abortAfterFirst = new IDrawableVisitor<Object>() {
+
+            @Override
+            public boolean visit(IDrawable d,Object data)
+            {
+                visited[0]++;
+                return false;
+            }
+        };
+        assertFalse( tree.visit( box( 0 , 0 , 100 , 10 ) , abortAfterFirst , null ) );
+        assertEquals( 1 , visited[0] );
+        assertFalse( tree.visitSegment( 0 , 2 , 100 , 2 , abortAfterFirst , null ) );
+        assertEquals( 2 , visited[0] );
+    }
+
+    private static Box randomBox(Random rnd) {
+        return new Box( rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * WORLD_SIZE , 1 + rnd.nextFloat() * 50 , 1 + rnd.nextFloat() * 50 );
+    }
+
+    private static BoundingBox box(float x,float y,float width,float height)
+    {
+        final BoundingBox result = new BoundingBox();
+        result.min.set( x , y , 0 );
+        result.max.set( x + width , y + height , 0 );
+        return result;
+    }
+
+    private static Map<IDrawable,Integer> visit(DynamicAABBTree tree,BoundingBox box)
+    {
+        final Map<IDrawable,Integer> visited = new IdentityHashMap<>();
+        assertTrue( tree.visit( box , new Collector() , visited ) );
+        return visited;
+    }
+
+    private static Map<IDrawable,Integer> visitSegment(DynamicAABBTree tree,float x0,float y0,float x1,float y1)
+    {
+        final Map<IDrawable,Integer> visited = new IdentityHashMap<>();
+        assertTrue( tree.visitSegment( x0 , y0 , x1 , y1 , new Collector() , visited ) );
+        return visited;
+    }
+
+    private static Map<IDrawable,Integer> bruteForce(List<Box> boxes,BoundingBox box)
+    {
+        final Map<IDrawable,Integer> expected = new IdentityHashMap<>();
+        for ( Box b : boxes )
+        {
+            if ( b.intersects( box ) ) {
+                expected.put( b , 1 );
+            }
+        }
+        return expected;
+    }
+
+    private static Map<IDrawable,Integer> bruteForce(List<Box> boxes,float x0,float y0,float x1,float y1)
+    {
+        final Map<IDrawable,Integer> expected = new IdentityHashMap<>();
+        for ( Box b : boxes )
+        {
+            if ( Utils.intersectsSegment( b.getBounds() , x0 , y0 , x1 , y1 ) ) {
+                expected.put( b , 1 );
+            }
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,317 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+/**
+ * Compares moving many entities with their components kept in an {@link EntityStore} with
+ * ticking one object per entity, as {@link GameWorld} did before.
+ */
+public class EntityStoreBenchmark
+{
+    private static final int TICKS = 50;
+    private static final float DELTA_SECONDS = 1/60f;
+
+    private static final float WORLD_SIZE = 20000;
+
+    public static void main(String[] args)
+    {
+        // warm-up
+        for ( int i = 0 ; i < 5 ; i++ )
+        {
+            run( 1000 , 500 , false );
+            run( 10000 , 10 , false );
+        }
+
+        // few entities moving at the same time
+        run( 1000 , 500 , true );
+        run( 10000 , 500 , true );
+        run( 50000 , 500 , true );
+
+        // most entities moving
+        run( 10000 , 10 , true );
+        run( 50000 , 10 , true );
+    }
+
+    /**
+     * @param entityCount
+     * @param entitiesPerPush every that many entities one gets accelerated per tick
+     * @param print
+     */
+    private static void run(int entityCount,int entitiesPerPush,boolean print)
+    {
+        final LegacyWorld legacy = new LegacyWorld();
+        final GameWorld world = new GameWorld();
+        final List<LegacyEntity> legacyEntities = new ArrayList<>();
+        final List<Entity> entities = new ArrayList<>();
+
+        final Random rnd = new Random( 42 );
+        for ( int i = 0 ; i < entityCount ; i++ )
+        {
+            final Vector2 position = new Vector2( rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * WORLD_SIZE );
+            final LegacyEntity l = new LegacyEntity( position );
+            final Entity e = new Entity( "entity #"+i , position , new Vector2( 1 , 0 ) );
+            legacyEntities.add( l );
+            entities.add( e );
+            legacy.add( l );
+            world.addEntity( e );
+        }
+
+        long legacyTime = 0;
+        long time = 0;
+        for ( int tick = 0 ; tick < TICKS ; tick++ )
+        {
+            // some entities speed up, lots get hit
+            for ( int i = 0 ; i < entityCount / entitiesPerPush ; i++ )
+            {
+                final int index = rnd.nextInt( entityCount );
+                switch( rnd.nextInt( 4 ) )
+                {
+                    case 0:
+                        legacyEntities.get( index ).moveUp();
+                        entities.get( index ).moveUp();
+                        break;
+                    case 1:
+                        legacyEntities.get( index ).moveDown();
+                        entities.get( index ).moveDown();
+                        break;
+                    case 2:
+                        legacyEntities.get( index ).moveLeft();
+                        entities.get( index ).moveLeft();
+                        break;
+                    default:
+                        legacyEntities.get( index ).moveRight();
+                        entities.get( index ).moveRight();
+                }
+            }
+            for ( int i = 0 ; i < entityCount / 2 ; i++ )
+            {
+                final int index = rnd.nextInt( entityCount );
+                legacyEntities.get( index ).hit();
+                entities.get( index ).hitBy( (Entity) null );
+            }
+
+            long start = System.nanoTime();
+            legacy.tick( DELTA_SECONDS );
+            legacyTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            world.tick( DELTA_SECONDS );
+            time += System.nanoTime() - start;
+
+            final String expected = getLegacyState( legacyEntities );
+            final String actual = getState( entities );
+            if ( ! expected.equals( actual ) ) {
+                throw new AssertionError("Tick "+tick+": state differs, expected "+expected+" but got "+actual);
+            }
+        }
+        if ( print )
+        {
+            int moving = 0;
+            for ( Entity e : entities ) {
+                moving += e.isAlive() && e.isInMotion() ? 1 : 0;
+            }
+            System.out.println( entityCount+" entities, "+moving+" moving ("+getState( entities )+")" );
+            System.out.println( String.format("  object per entity : %10.3f ms/tick" , legacyTime / (double) TICKS / 1000000d ) );
+            System.out.println( String.format("  entity store      : %10.3f ms/tick" , time / (double) TICKS / 1000000d ) );
+            MicroBenchmark.printSpeedup( "  speed-up" , legacyTime , time );
+        }
+    }
+
+    private static String getLegacyState(List<LegacyEntity> entities)
+    {
+        double sum = 0;
+        int alive = 0;
+        for ( LegacyEntity e : entities )
+        {
+            sum += e.position.x + e.position.y;
+            alive += e.isAlive ? 1 : 0;
+        }
+        return alive+" alive, position sum "+sum;
+    }
+
+    private static String getState(List<Entity> entities)
+    {
+        double sum = 0;
+        int alive = 0;
+        for ( Entity e : entities )
+        {
+            sum += e.getX() + e.getY();
+            alive += e.isAlive() ? 1 : 0;
+        }
+        return alive+" alive, position sum "+sum;
+    }
+
+    /**
+     * The bookkeeping {@link GameWorld} did for entities before.
+     */
+    protected static final class LegacyWorld
+    {
+        private final SlotRegistry<ITickListener> tickListeners = new SlotRegistry<>();
+        private final SlotRegistry<IDrawable> drawables = new SlotRegistry<>();
+        private final SpatialHashGrid index = new SpatialHashGrid( 2 * Entity.OUTER_RADIUS_IN_PIXELS );
+
+        public void add(LegacyEntity e)
+        {
+            drawables.add( e );
+            index.add( e );
+            tickListeners.add( e );
+        }
+
+        public void tick(float deltaSeconds)
+        {
+            for ( int i = 0 ; i < tickListeners.size() ; )
+            {
+                final ITickListener t = tickListeners.get( i );
+                if ( ! t.tick( null , deltaSeconds ) )
+                {
+                    tickListeners.removeAt( i );
+                    if ( t instanceof IDrawable && drawables.remove( (IDrawable) t ) ) {
+                        index.remove( (IDrawable) t );
+                    }
+                    continue;
+                }
+                if ( t instanceof IDrawable ) {
+                    index.update( (IDrawable) t );
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * The parts of {@link Entity} involved in moving, as it was before.
+     */
+    protected static final class LegacyEntity implements ITickListener,IDrawable
+    {
+        private static final float PLAYER_SPEED = 20f;
+        private static final float PLAYER_MAX_VELOCITY = 25f;
+
+        public final BoundingBox aabb = new BoundingBox();
+
+        public final Vector2 velocity = new Vector2();
+        public final Vector2 gunTip = new Vector2();
+
+        public final Vector2 position;
+        public final Vector2 orientation = new Vector2( 1 , 0 );
+
+        public boolean isAlive = true;
+
+        public float maxShield = 25.0f;
+        public float shield = maxShield;
+
+        public LegacyEntity(Vector2 position)
+        {
+            this.position = new Vector2( position );
+            updateBounds();
+        }
+
+        public void hit()
+        {
+            if ( shield > 0 ) {
+                shield -= 1.0f;
+            } else {
+                isAlive = false;
+            }
+        }
+
+        private void updateBounds()
+        {
+            aabb.min.set( position.x - Entity.OUTER_RADIUS_IN_PIXELS , position.y - Entity.OUTER_RADIUS_IN_PIXELS , 0 );
+            aabb.max.set( position.x + Entity.OUTER_RADIUS_IN_PIXELS , position.y + Entity.OUTER_RADIUS_IN_PIXELS , 0 );
+        }
+
+        public void moveUp()
+        {
+            velocity.y += PLAYER_SPEED;
+            clampAcceleration();
+            positionChanged();
+        }
+
+        public void moveDown()
+        {
+            velocity.y -= PLAYER_SPEED;
+            clampAcceleration();
+            positionChanged();
+        }
+
+        public void moveLeft()
+        {
+            velocity.x -= PLAYER_SPEED;
+            clampAcceleration();
+            positionChanged();
+        }
+
+        public void moveRight()
+        {
+            velocity.x += PLAYER_SPEED;
+            clampAcceleration();
+            positionChanged();
+        }
+
+        private void clampAcceleration()
+        {
+            float len = velocity.len();
+            if ( len > PLAYER_MAX_VELOCITY) {
+                velocity.scl( PLAYER_MAX_VELOCITY / len );
+            }
+        }
+
+        private void positionChanged()
+        {
+            updateBounds();
+            gunTip.set( position.x + orientation.x*Entity.OUTER_RADIUS_IN_PIXELS*2 , position.y + orientation.y*Entity.OUTER_RADIUS_IN_PIXELS*2 );
+        }
+
+        @Override
+        public boolean tick(GameWorld world,float deltaSeconds)
+        {
+            if ( isInMotion() )
+            {
+                float deltaPosX = velocity.x * deltaSeconds*20;
+                float deltaPosY = velocity.y * deltaSeconds*20;
+
+                position.x += deltaPosX;
+                position.y += deltaPosY;
+
+                positionChanged();
+
+                velocity.x *= 0.95f;
+                velocity.y *= 0.95f;
+            } else {
+                velocity.x = velocity.y = 0;
+            }
+            return isAlive;
+        }
+
+        public boolean isInMotion()
+        {
+            return Math.abs( velocity.x ) > 0.70 || Math.abs( velocity.y ) > 0.70;
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return aabb;
+        }
+
+        @Override
+        public boolean isVisible(Camera camera) {
+            return false;
+        }
+
+        @Override
+        public boolean intersects(BoundingBox box) {
+            return Utils.intersect( box , aabb );
+        }
+
+        @Override
+        public void render(ShapeRenderer renderer) {
+        }
+    }
+}
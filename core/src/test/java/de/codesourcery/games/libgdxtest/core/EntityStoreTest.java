@@ -0,0 +1,312 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.EntityStore.Archetype;
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+import de.codesourcery.games.libgdxtest.core.ai.AgentController.IState;
+
+public class EntityStoreTest extends TestCase
+{
+    private static final IState STATE = new IState() {
+
+        @Override
+        public IState act(Entity agent,GameWorld world) {
+            return this;
+        }
+    };
+
+    private EntityStore store;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        store = new EntityStore();
+    }
+
+    private static Entity entity(int i)
+    {
+        final Entity e = new Entity( "entity #"+i , new Vector2( i , 2*i ) , new Vector2( 1 , 0 ) );
+        e.setAcceleration( 10*i , 20*i );
+        return e;
+    }
+
+    private static void assertComponents(Entity e,int i)
+    {
+        assertEquals( (float) i , e.getX() );
+        assertEquals( (float) 2*i , e.getY() );
+        assertEquals( (float) 10*i , e.getVelocityX() );
+        assertEquals( (float) 20*i , e.getVelocityY() );
+    }
+
+    private static void assertRows(Archetype table)
+    {
+        for ( int row = 0 ; row < table.size() ; row++ )
+        {
+            final Entity e = table.getEntity( row );
+            assertSame( table , e.table );
+            assertEquals( row , e.row );
+        }
+    }
+
+    public void testNewEntityIsNotPartOfAStore()
+    {
+        final Entity e = entity( 1 );
+        assertFalse( store.contains( e ) );
+        assertTrue( e.isAlive() );
+        assertEquals( e.getMaxShield() , e.getShield() );
+        assertNotNull( e.getGun() );
+        assertComponents( e , 1 );
+    }
+
+    public void testAddKeepsComponents()
+    {
+        final Entity e = entity( 1 );
+        e.hitBy( (Entity) null );
+        final Gun gun = e.getGun();
+
+        store.add( e , EntityStore.ENTITY );
+        assertTrue( store.contains( e ) );
+        assertEquals( 1 , store.size() );
+        assertEquals( 1 , store.getArchetypeCount() );
+        assertComponents( e , 1 );
+        assertEquals( e.getMaxShield() - 1 , e.getShield() );
+        assertSame( gun , e.getGun() );
+    }
+
+    public void testAddTwiceFails()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.ENTITY );
+        try {
+            store.add( e , EntityStore.ENTITY );
+            fail("Should have failed");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+        try {
+            new EntityStore().add( e , EntityStore.ENTITY );
+            fail("Should have failed");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    public void testAddWithoutEntityComponentsFails()
+    {
+        try {
+            store.add( entity( 1 ) , EntityStore.POSITION | EntityStore.AI );
+            fail("Should have failed");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    public void testArchetypesByComponents()
+    {
+        final Entity e1 = entity( 1 );
+        final Entity e2 = entity( 2 );
+        final Entity e3 = entity( 3 );
+        store.add( e1 , EntityStore.ENTITY );
+        store.add( e2 , EntityStore.AGENT );
+        store.add( e3 , EntityStore.ENTITY );
+
+        assertEquals( 3 , store.size() );
+        assertEquals( 2 , store.getArchetypeCount() );
+        assertSame( e1.table , e3.table );
+        assertNotSame( e1.table , e2.table );
+        assertTrue( e2.table.has( EntityStore.AI ) );
+        assertFalse( e1.table.has( EntityStore.AI ) );
+        assertTrue( e2.table.has( EntityStore.ENTITY ) );
+    }
+
+    public void testStateOfNewAgentIsNull()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.AGENT );
+        assertNull( e.table.getState( e.row ) );
+        store.setState( e , STATE );
+        assertSame( STATE , e.table.getState( e.row ) );
+    }
+
+    public void testSetStateRequiresAIComponent()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.ENTITY );
+        try {
+            store.setState( e , STATE );
+            fail("Should have failed");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+        try {
+            new EntityStore().setState( entity( 2 ) , STATE );
+            fail("Should have failed");
+        } catch(IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    public void testRemoveMiddleRowMovesLastRow()
+    {
+        final Entity e1 = entity( 1 );
+        final Entity e2 = entity( 2 );
+        final Entity e3 = entity( 3 );
+        store.add( e1 , EntityStore.AGENT );
+        store.add( e2 , EntityStore.AGENT );
+        store.add( e3 , EntityStore.AGENT );
+        store.setState( e3 , STATE );
+        final Archetype table = e1.table;
+
+        assertTrue( store.remove( e2 ) );
+        assertEquals( 2 , store.size() );
+        assertEquals( 2 , table.size() );
+        assertSame( e1 , table.getEntity( 0 ) );
+        assertSame( e3 , table.getEntity( 1 ) );
+        assertRows( table );
+
+        assertComponents( e1 , 1 );
+        assertComponents( e3 , 3 );
+        assertSame( STATE , table.getState( 1 ) );
+    }
+
+    public void testRemoveLastRow()
+    {
+        final Entity e1 = entity( 1 );
+        final Entity e2 = entity( 2 );
+        store.add( e1 , EntityStore.ENTITY );
+        store.add( e2 , EntityStore.ENTITY );
+        final Archetype table = e1.table;
+
+        assertTrue( store.remove( e2 ) );
+        assertEquals( 1 , table.size() );
+        assertSame( e1 , table.getEntity( 0 ) );
+        assertRows( table );
+        assertComponents( e1 , 1 );
+
+        assertTrue( store.remove( e1 ) );
+        assertEquals( 0 , table.size() );
+        assertEquals( 0 , store.size() );
+    }
+
+    public void testRemovedEntityKeepsComponents()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.AGENT );
+        e.hitBy( (Entity) null );
+        final Gun gun = new ProjectileGun();
+        e.setGun( gun );
+
+        assertTrue( store.remove( e ) );
+        assertFalse( store.remove( e ) );
+        assertFalse( store.contains( e ) );
+        assertNull( e.table.store );
+        assertEquals( 0 , e.row );
+
+        assertComponents( e , 1 );
+        assertEquals( e.getMaxShield() - 1 , e.getShield() );
+        assertSame( gun , e.getGun() );
+
+        // still usable
+        e.moveUp();
+        e.setPosition( 5 , 6 );
+        assertEquals( 5f , e.getX() );
+        assertEquals( 6f , e.getY() );
+    }
+
+    public void testReAddIntoOtherArchetype()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.AGENT );
+        store.setState( e , STATE );
+        store.remove( e );
+
+        // components the new archetype lacks are dropped, the rest survives
+        store.add( e , EntityStore.ENTITY );
+        assertComponents( e , 1 );
+        assertFalse( e.table.has( EntityStore.AI ) );
+
+        store.remove( e );
+        store.add( e , EntityStore.AGENT );
+        assertComponents( e , 1 );
+        assertNull( "State should start out empty again" , e.table.getState( e.row ) );
+        assertEquals( 1 , store.size() );
+        assertEquals( 2 , store.getArchetypeCount() );
+    }
+
+    public void testDeadEntityStaysDeadWhenRemoved()
+    {
+        final Entity e = entity( 1 );
+        store.add( e , EntityStore.ENTITY );
+        while ( e.isAlive() ) {
+            e.hitBy( (Entity) null );
+        }
+        store.remove( e );
+        assertFalse( e.isAlive() );
+    }
+
+    public void testManyEntitiesGrowTables()
+    {
+        final int count = 100;
+        final Entity[] entities = new Entity[ count ];
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            entities[i] = entity( i );
+            store.add( entities[i] , i % 2 == 0 ? EntityStore.ENTITY : EntityStore.AGENT );
+        }
+        // remove every third one, from the front
+        for ( int i = 0 ; i < count ; i += 3 ) {
+            assertTrue( store.remove( entities[i] ) );
+        }
+        for ( int a = 0 ; a < store.getArchetypeCount() ; a++ ) {
+            assertRows( store.getArchetype( a ) );
+        }
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            assertEquals( i % 3 != 0 , store.contains( entities[i] ) );
+            assertComponents( entities[i] , i );
+        }
+    }
+
+    public void testSetPositionOfEntityInWorldFails()
+    {
+        final GameWorld world = new GameWorld();
+        world.setPlayer( new Entity( "player" , new Vector2( -10000 , -10000 ) , new Vector2( 1 , 0 ) ) );
+        final Entity e = entity( 1 );
+        world.addEntity( e );
+        try {
+            e.setPosition( 5 , 5 );
+            fail("Should have failed");
+        } catch(IllegalStateException ex) {
+            // ok
+        }
+        world.moveEntity( e , 5000 , 6000 );
+        assertEquals( 5000f , e.getX() );
+        assertEquals( 6000f , e.getY() );
+        assertEquals( 5000 - Entity.OUTER_RADIUS_IN_PIXELS , e.getBounds().min.x );
+
+        // the spatial index knows about the move
+        final BoundingBox box = new BoundingBox();
+        box.min.set( 4990 , 5990 , 0 );
+        box.max.set( 5010 , 6010 , 0 );
+        final List<IDrawable> found = new ArrayList<>();
+        world.visitEntities( box , new IDrawableVisitor<List<IDrawable>>() {
+
+            @Override
+            public boolean visit(IDrawable d,List<IDrawable> data)
+            {
+                data.add( d );
+                return true;
+            }
+        } , found );
+        assertEquals( 1 , found.size() );
+        assertSame( e , found.get( 0 ) );
+    }
+}
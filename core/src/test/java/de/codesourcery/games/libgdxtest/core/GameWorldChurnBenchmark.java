@@ -0,0 +1,292 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+/**
+ * Compares adding and removing many short-lived objects with {@link GameWorld} and the
+ * list-based bookkeeping it used before.
+ */
+public class GameWorldChurnBenchmark
+{
+    private static final int MAX_TEMPORARY_OBJECTS = 150;
+
+    public static void main(String[] args)
+    {
+        // warm-up
+        for ( int i = 0 ; i < 5 ; i++ ) {
+            burst( 5000 , false );
+            churn( 2000 , 1000 , 10 , false );
+        }
+
+        burst( 10000 , true );
+        burst( 50000 , true );
+        churn( 10000 , 1000 , 50 , true );
+    }
+
+    /*
+     * Lots of objects dying in the same tick.
+     */
+    private static void burst(int count,boolean print)
+    {
+        final Counter legacyCounter = new Counter();
+        final Counter counter = new Counter();
+        final LegacyWorld legacy = new LegacyWorld();
+        final GameWorld world = new GameWorld();
+        final Random rnd1 = new Random( 1 );
+        final Random rnd2 = new Random( 1 );
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            legacy.addDrawable( new Dummy( legacyCounter , 2 , rnd1 ) );
+            world.addDrawable( new Dummy( counter , 2 , rnd2 ) );
+        }
+        legacy.tick( 0.1f );
+        world.tick( 0.1f );
+
+        long start = System.nanoTime();
+        legacy.tick( 0.1f );
+        final long legacyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        world.tick( 0.1f );
+        final long time = System.nanoTime() - start;
+
+        check( legacyCounter , counter );
+        legacy.tick( 0.1f );
+        world.tick( 0.1f );
+        if ( legacyCounter.ticks != 2*count || counter.ticks != 2*count ) {
+            throw new AssertionError("Dead objects still ticked");
+        }
+        if ( print )
+        {
+            System.out.println( count+" objects dying in the same tick:" );
+            System.out.println( String.format("  lists          : %10.3f ms" , legacyTime / 1000000d ) );
+            System.out.println( String.format("  slots and ring : %10.3f ms" , time / 1000000d ) );
+            MicroBenchmark.printSpeedup( "  speed-up" , legacyTime , time );
+        }
+    }
+
+    /*
+     * Long-lived objects plus temporary objects added faster than they expire, forcing evictions.
+     */
+    private static void churn(int longLived,int temporaryPerTick,int ticks,boolean print)
+    {
+        final Counter legacyCounter = new Counter();
+        final Counter counter = new Counter();
+        final LegacyWorld legacy = new LegacyWorld();
+        final GameWorld world = new GameWorld();
+        final Random rnd1 = new Random( 1 );
+        final Random rnd2 = new Random( 1 );
+        for ( int i = 0 ; i < longLived ; i++ )
+        {
+            legacy.addDrawable( new Dummy( legacyCounter , Integer.MAX_VALUE , rnd1 ) );
+            world.addDrawable( new Dummy( counter , Integer.MAX_VALUE , rnd2 ) );
+        }
+
+        // both print a message for every evicted object
+        final PrintStream out = System.out;
+        System.setOut( new PrintStream( new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        long legacyTime = 0;
+        long time = 0;
+        for ( int tick = 0 ; tick < ticks ; tick++ )
+        {
+            long start = System.nanoTime();
+            for ( int i = 0 ; i < temporaryPerTick ; i++ ) {
+                legacy.addTemporaryObject( new Dummy( legacyCounter , 30 , rnd1 ) );
+            }
+            legacy.tick( 0.1f );
+            legacyTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for ( int i = 0 ; i < temporaryPerTick ; i++ ) {
+                world.addTemporaryObject( new Dummy( counter , 30 , rnd2 ) );
+            }
+            world.tick( 0.1f );
+            time += System.nanoTime() - start;
+
+            check( legacyCounter , counter );
+        }
+        System.setOut( out );
+        if ( print )
+        {
+            System.out.println( longLived+" objects, "+temporaryPerTick+" temporary objects added per tick (max. "+MAX_TEMPORARY_OBJECTS+"):" );
+            System.out.println( String.format("  lists          : %10.3f ms/tick" , legacyTime / (double) ticks / 1000000d ) );
+            System.out.println( String.format("  slots and ring : %10.3f ms/tick" , time / (double) ticks / 1000000d ) );
+            MicroBenchmark.printSpeedup( "  speed-up" , legacyTime , time );
+        }
+    }
+
+    private static void check(Counter expected,Counter actual)
+    {
+        if ( expected.ticks != actual.ticks ) {
+            throw new AssertionError("Expected "+expected.ticks+" ticks, got "+actual.ticks);
+        }
+    }
+
+    protected static final class Counter
+    {
+        public long ticks;
+    }
+
+    protected static final class Dummy implements IDrawable,ITickListener
+    {
+        private final Counter counter;
+        private final BoundingBox bounds = new BoundingBox();
+        private int ticksToLive;
+
+        public Dummy(Counter counter,int ticksToLive,Random rnd)
+        {
+            this.counter = counter;
+            this.ticksToLive = ticksToLive;
+            final float x = rnd.nextFloat() * 5000;
+            final float y = rnd.nextFloat() * 5000;
+            bounds.min.set( x - 1 , y - 1 , 0 );
+            bounds.max.set( x + 1 , y + 1 , 0 );
+        }
+
+        @Override
+        public boolean tick(GameWorld world,float deltaSeconds)
+        {
+            counter.ticks++;
+            return --ticksToLive > 0;
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return bounds;
+        }
+
+        @Override
+        public boolean isVisible(Camera camera) {
+            return false;
+        }
+
+        @Override
+        public boolean intersects(BoundingBox box) {
+            return Utils.intersect( bounds , box );
+        }
+
+        @Override
+        public void render(ShapeRenderer renderer) {
+        }
+    }
+
+    /**
+     * The bookkeeping {@link GameWorld} did before, with the same spatial index.
+     */
+    protected static final class LegacyWorld
+    {
+        private final List<ITickListener> tickListeners = new ArrayList<>();
+        private final List<IDrawable> drawables = new ArrayList<>();
+        private final List<IDrawable> temporaryObjects = new ArrayList<>(MAX_TEMPORARY_OBJECTS);
+        private final SpatialHashGrid spatialIndex = new SpatialHashGrid( 2 * Entity.OUTER_RADIUS_IN_PIXELS );
+
+        private final List<ITickListener> temporaryObjectsAddedDuringTick = new ArrayList<>(MAX_TEMPORARY_OBJECTS);
+        private final List<ITickListener> temporaryObjectsRemovedDuringTick = new ArrayList<>(MAX_TEMPORARY_OBJECTS);
+
+        private boolean inTick = false;
+
+        public void addTemporaryObject(IDrawable b)
+        {
+            if ( temporaryObjects.size() == MAX_TEMPORARY_OBJECTS )
+            {
+                System.out.println("Max. temp objects exceeded");
+                System.out.flush();
+                final IDrawable removed = temporaryObjects.remove(0);
+                if ( removed instanceof ITickListener)
+                {
+                    removeTickListener( (ITickListener) removed);
+                }
+                drawables.remove( removed );
+                spatialIndex.remove( removed );
+            }
+            temporaryObjects.add( b );
+            addDrawable( b );
+        }
+
+        public void addDrawable(IDrawable d)
+        {
+            this.drawables.add( d );
+            spatialIndex.add( d );
+            if ( d instanceof ITickListener)
+            {
+                addTickListener( (ITickListener) d);
+            }
+        }
+
+        public boolean tick(float deltaSeconds)
+        {
+            inTick = true;
+            try
+            {
+                for (Iterator<ITickListener> it = tickListeners.iterator(); it.hasNext();)
+                {
+                    final ITickListener t = it.next();
+                    if ( ! t.tick( null , deltaSeconds ) )
+                    {
+                        it.remove();
+                        if ( drawables.remove( t ) ) {
+                            spatialIndex.remove( (IDrawable) t );
+                        }
+                        temporaryObjects.remove( t );
+                    }
+                    else if ( t instanceof IDrawable )
+                    {
+                        spatialIndex.update( (IDrawable) t );
+                    }
+                }
+                return true;
+            }
+            finally
+            {
+                try
+                {
+                    if ( ! temporaryObjectsRemovedDuringTick.isEmpty() )
+                    {
+                        tickListeners.removeAll( temporaryObjectsRemovedDuringTick );
+                        temporaryObjectsAddedDuringTick.removeAll(temporaryObjectsRemovedDuringTick);
+                        temporaryObjectsRemovedDuringTick.clear();
+                    }
+                    if ( ! temporaryObjectsAddedDuringTick.isEmpty() ) {
+                        tickListeners.addAll( temporaryObjectsAddedDuringTick );
+                        temporaryObjectsAddedDuringTick.clear();
+                    }
+                } finally {
+                    inTick = false;
+                }
+            }
+        }
+
+        private void addTickListener(ITickListener l)
+        {
+            if ( inTick ) {
+                temporaryObjectsAddedDuringTick.add(l);
+            } else {
+                tickListeners.add( l );
+            }
+        }
+
+        private void removeTickListener(ITickListener l)
+        {
+            if ( inTick ) {
+                temporaryObjectsRemovedDuringTick.add(l);
+            } else {
+                tickListeners.remove( l );
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.codesourcery.games.libgdxtest.core;
+
+/**
+ * Minimal harness for micro-benchmarks that are run manually through a <code>main()</code> method.
+ *
+ * Runs a task for a number of warm-up iterations (so the JIT gets a chance to compile it)
+ * before timing it.
+ */
+public final class MicroBenchmark
+{
+    // results are stored here so the JIT cannot eliminate benchmarked code
+    private static volatile Object sink;
+
+    private MicroBenchmark() {
+    }
+
+    public interface Task
+    {
+        public Object run();
+    }
+
+    /**
+     * Runs a task and prints the average time per invocation.
+     *
+     * @param name
+     * @param warmupIterations
+     * @param iterations
+     * @param task
+     * @return average time per invocation in nanoseconds
+     */
+    public static double measure(String name,int warmupIterations,int iterations,Task task)
+    {
+        for ( int i = 0 ; i < warmupIterations ; i++ ) {
+            sink = task.run();
+        }
+
+        final long start = System.nanoTime();
+        for ( int i = 0 ; i < iterations ; i++ ) {
+            sink = task.run();
+        }
+        final double nanosPerOp = (System.nanoTime() - start) / (double) iterations;
+        System.out.println( String.format("%-40s %12.3f ms/op" , name , nanosPerOp / 1000000.0 ) );
+        return nanosPerOp;
+    }
+
+    public static void printSpeedup(String name,double baselineNanos,double nanos)
+    {
+        System.out.println( String.format("%-40s %12.2fx" , name , baselineNanos / nanos ) );
+    }
+}
@@ -0,0 +1,226 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+
+/**
+ * Compares ticking a world with projectiles kept in a {@link ProjectileSystem} with one object per projectile,
+ * as they were before.
+ */
+public class ProjectileSystemBenchmark
+{
+    private static final int TICKS = 20;
+    private static final float DELTA_SECONDS = 1/60f;
+
+    private static final int AGENTS = 1000;
+    private static final float AGENT_SPACING = 100;
+    private static final float PROJECTILE_SPEED = 200;
+    private static final float PROJECTILE_RANGE = 2000;
+
+    public static void main(String[] args)
+    {
+        // warm-up
+        run( 1000 , false );
+
+        run( 1000 , true );
+        run( 10000 , true );
+        run( 50000 , true );
+    }
+
+    private static void run(int projectileCount,boolean print)
+    {
+        final Scenario objects = new Scenario( projectileCount , false );
+        final Scenario system = new Scenario( projectileCount , true );
+
+        long objectsTime = 0;
+        long systemTime = 0;
+        for ( int tick = 0 ; tick < TICKS ; tick++ )
+        {
+            objectsTime += objects.tick();
+            systemTime += system.tick();
+            if ( ! objects.getState().equals( system.getState() ) ) {
+                throw new AssertionError("Tick "+tick+": state differs, expected "+objects.getState()+" but got "+system.getState() );
+            }
+        }
+        if ( print )
+        {
+            System.out.println( projectileCount+" projectiles, "+AGENTS+" agents ("+system.getState()+")" );
+            System.out.println(String.format("  object per projectile : %10.3f ms/tick" , objectsTime / (double) TICKS / 1000000 ) );
+            System.out.println(String.format("  projectile system     : %10.3f ms/tick" , systemTime / (double) TICKS / 1000000 ) );
+            MicroBenchmark.printSpeedup( "  speed-up" , objectsTime , systemTime );
+        }
+    }
+
+    protected static final class Scenario
+    {
+        private final GameWorld world = new GameWorld();
+        private final List<Entity> agents = new ArrayList<>();
+        private final List<LegacyProjectile> projectiles = new ArrayList<>();
+
+        public Scenario(int projectileCount,boolean useSystem)
+        {
+            world.setPlayer( new Entity( "player" , new Vector2( -100000 , -100000 ) , new Vector2( 1 , 0 ) ) );
+
+            final int agentsPerRow = (int) Math.ceil( Math.sqrt( AGENTS ) );
+            for ( int i = 0 ; i < AGENTS ; i++ )
+            {
+                final Vector2 position = new Vector2( ( i % agentsPerRow ) * AGENT_SPACING , ( i / agentsPerRow ) * AGENT_SPACING );
+                final Entity agent = new Entity( "agent #"+i , position , new Vector2( 1 , 0 ) );
+                agents.add( agent );
+                world.addEntity( agent );
+            }
+
+            final Random rnd = new Random( 42 );
+            final float size = agentsPerRow * AGENT_SPACING;
+            final Entity shooter = new Entity( "shooter" , new Vector2() , new Vector2( 1 , 0 ) );
+            for ( int i = 0 ; i < projectileCount ; i++ )
+            {
+                shooter.setPosition( rnd.nextFloat() * size , rnd.nextFloat() * size );
+                final float angle = rnd.nextFloat() * 360;
+                shooter.setOrientation( (float) Math.cos( Math.toRadians( angle ) ) , (float) Math.sin( Math.toRadians( angle ) ) );
+                if ( useSystem ) {
+                    world.getProjectiles().add( shooter , shooter.orientation.x , shooter.orientation.y , PROJECTILE_SPEED , PROJECTILE_RANGE*PROJECTILE_RANGE );
+                }
+                else
+                {
+                    final LegacyProjectile p = new LegacyProjectile( shooter , shooter.orientation , PROJECTILE_SPEED , PROJECTILE_RANGE*PROJECTILE_RANGE );
+                    projectiles.add( p );
+                    world.addDrawable( p );
+                }
+            }
+        }
+
+        public long tick()
+        {
+            final long start = System.nanoTime();
+            world.tick( DELTA_SECONDS );
+            return System.nanoTime() - start;
+        }
+
+        public String getState()
+        {
+            int projectilesAlive = world.getProjectiles().size();
+            for ( LegacyProjectile p : projectiles ) {
+                projectilesAlive += p.isAlive ? 1 : 0;
+            }
+            float shields = 0;
+            int agentsAlive = 0;
+            for ( Entity agent : agents )
+            {
+                shields += agent.getShield();
+                agentsAlive += agent.isAlive() ? 1 : 0;
+            }
+            return projectilesAlive+" projectiles / "+agentsAlive+" agents alive, shields "+shields;
+        }
+    }
+
+    /**
+     * Projectile as it was before {@link ProjectileSystem}.
+     */
+    protected static final class LegacyProjectile extends Bullet
+    {
+        private final Vector2 initialPosition;
+        private final float maxRangeSquared;
+
+        public Vector2 position;
+        public Vector2 velocity;
+        public boolean isAlive = true;
+
+        private static final IDrawableVisitor<LegacyProjectile> tickVisitor = new IDrawableVisitor<LegacyProjectile>() {
+
+            @Override
+            public boolean visit(IDrawable hit,LegacyProjectile data)
+            {
+                if ( hit instanceof Entity  && hit != data.shooter)
+                {
+                    data.isAlive = false;
+                    ((Entity) hit).hitBy(data);
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        public LegacyProjectile(Entity shooter,Vector2 direction,float velocity,float maxRangeSquared)
+        {
+            super(shooter);
+            this.initialPosition = new Vector2(shooter.gunTip);
+            this.position = new Vector2(shooter.gunTip);
+
+            this.velocity = new Vector2(direction);
+            this.velocity.nor().scl(velocity);
+            this.maxRangeSquared = maxRangeSquared;
+            updateBoundingBox();
+        }
+
+        private void updateBoundingBox()
+        {
+            aabb.min.set( position.x-1, position.y-1 ,0 );
+            aabb.max.set( position.x+1 , position.y +1 , 0);
+        }
+
+        @Override
+        public BoundingBox getBounds()
+        {
+            return aabb;
+        }
+
+        @Override
+        public boolean isVisible(Camera camera)
+        {
+            Utils.TMP_3.set( position.x,position.y , 0 );
+            return camera.frustum.pointInFrustum( Utils.TMP_3 );
+        }
+
+        @Override
+        public boolean intersects(BoundingBox box)
+        {
+            return Utils.intersect( getBounds() , box );
+        }
+
+        @Override
+        public void render(ShapeRenderer renderer)
+        {
+        }
+
+        @Override
+        public boolean tick(GameWorld world,float deltaSeconds)
+        {
+            if ( ! isAlive ) {
+                return false;
+            }
+
+            world.visitEntities( getBounds() , tickVisitor , this );
+            if ( ! isAlive ) {
+                return false;
+            }
+
+            float dx = position.x - initialPosition.x;
+            float dy = position.y - initialPosition.y;
+            if ( (dx*dx+dy*dy) > maxRangeSquared )
+            {
+                isAlive=false;
+                return false;
+            }
+
+            position.x += (velocity.x * deltaSeconds);
+            position.y += (velocity.y * deltaSeconds);
+            updateBoundingBox();
+            return true;
+        }
+
+        @Override
+        public boolean isAlive()
+        {
+            return isAlive;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SlotRegistryTest extends TestCase
+{
+    private SlotRegistry<String> registry;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        registry = new SlotRegistry<>( 2 );
+    }
+
+    public void testAddAssignsSlotsInOrder()
+    {
+        assertTrue( registry.isEmpty() );
+        for ( int i = 0 ; i < 10 ; i++ ) {
+            assertTrue( registry.add( "item"+i ) );
+        }
+        assertEquals( 10 , registry.size() );
+        for ( int i = 0 ; i < 10 ; i++ )
+        {
+            assertEquals( "item"+i , registry.get( i ) );
+            assertEquals( i , registry.slotOf( registry.get( i ) ) );
+        }
+    }
+
+    public void testAddTwiceIsIgnored()
+    {
+        final String item = "item";
+        assertTrue( registry.add( item ) );
+        assertFalse( registry.add( item ) );
+        assertEquals( 1 , registry.size() );
+    }
+
+    public void testItemsAreComparedByIdentity()
+    {
+        final String item1 = new String("item");
+        final String item2 = new String("item");
+        assertTrue( registry.add( item1 ) );
+        assertTrue( registry.add( item2 ) );
+        assertEquals( 2 , registry.size() );
+        assertTrue( registry.remove( item2 ) );
+        assertSame( item1 , registry.get( 0 ) );
+    }
+
+    public void testAddNullFails()
+    {
+        try {
+            registry.add( null );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testRemoveMiddleMovesLastIntoSlot()
+    {
+        final String a = "a", b = "b", c = "c", d = "d";
+        registry.add( a );
+        registry.add( b );
+        registry.add( c );
+        registry.add( d );
+
+        assertTrue( registry.remove( b ) );
+        assertEquals( 3 , registry.size() );
+        assertSame( a , registry.get( 0 ) );
+        assertSame( d , registry.get( 1 ) );
+        assertSame( c , registry.get( 2 ) );
+        assertEquals( 1 , registry.slotOf( d ) );
+        assertEquals( -1 , registry.slotOf( b ) );
+        assertFalse( registry.contains( b ) );
+    }
+
+    public void testRemoveLast()
+    {
+        final String a = "a", b = "b";
+        registry.add( a );
+        registry.add( b );
+
+        assertSame( b , registry.removeAt( 1 ) );
+        assertEquals( 1 , registry.size() );
+        assertSame( a , registry.get( 0 ) );
+        assertEquals( 0 , registry.slotOf( a ) );
+    }
+
+    public void testRemoveUnknown()
+    {
+        registry.add( "a" );
+        assertFalse( registry.remove( "b" ) );
+        assertEquals( 1 , registry.size() );
+    }
+
+    public void testGetBeyondSizeFails()
+    {
+        registry.add( "a" );
+        registry.add( "b" );
+        registry.removeAt( 1 );
+        try {
+            registry.get( 1 );
+            fail("Should have failed");
+        } catch(IndexOutOfBoundsException e) {
+            // ok
+        }
+    }
+
+    public void testClear()
+    {
+        registry.add( "a" );
+        registry.add( "b" );
+        registry.clear();
+        assertTrue( registry.isEmpty() );
+        assertFalse( registry.contains( "a" ) );
+        assertTrue( registry.add( "a" ) );
+        assertEquals( 0 , registry.slotOf( "a" ) );
+    }
+
+    /*
+     * The pattern GameWorld#tick() uses: the slot just visited gets visited again after removing its object.
+     */
+    public void testRemoveWhileIterating()
+    {
+        final Random rnd = new Random( 42 );
+        for ( int round = 0 ; round < 100 ; round++ )
+        {
+            registry.clear();
+            final List<String> all = new ArrayList<>();
+            for ( int i = 0 , count = rnd.nextInt( 50 ) ; i < count ; i++ )
+            {
+                final String item = "item"+i;
+                all.add( item );
+                registry.add( item );
+            }
+
+            final Set<String> toRemove = new HashSet<>();
+            for ( String item : all )
+            {
+                if ( rnd.nextBoolean() ) {
+                    toRemove.add( item );
+                }
+            }
+
+            final Set<String> visited = new HashSet<>();
+            for ( int i = 0 ; i < registry.size() ; )
+            {
+                final String item = registry.get( i );
+                assertTrue( "Visited twice: "+item , visited.add( item ) );
+                if ( toRemove.contains( item ) ) {
+                    registry.removeAt( i );
+                } else {
+                    i++;
+                }
+            }
+
+            assertEquals( new HashSet<>( all ) , visited );
+            assertEquals( all.size() - toRemove.size() , registry.size() );
+            for ( String item : all )
+            {
+                assertEquals( ! toRemove.contains( item ) , registry.contains( item ) );
+                final int slot = registry.slotOf( item );
+                if ( slot != -1 ) {
+                    assertSame( item , registry.get( slot ) );
+                }
+            }
+        }
+    }
+}
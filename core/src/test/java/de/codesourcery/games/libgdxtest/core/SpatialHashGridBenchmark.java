@@ -0,0 +1,193 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.ai.AgentController;
+
+/**
+ * Runs {@link GameWorld#tick(float)} with many projectiles flying through a crowd of agents,
+ * each agent looking for the nearest other entity every tick, and compares the time spent with
+ * the linear scan {@link GameWorld#visitEntities(BoundingBox, GameWorld.IDrawableVisitor, Object)} used before.
+ */
+public class SpatialHashGridBenchmark
+{
+    private static final int TICKS = 20;
+    private static final float DELTA_SECONDS = 1/60f;
+
+    private static final float AGENT_SPACING = 100;
+    private static final float PROJECTILE_SPEED = 200;
+    private static final float PROJECTILE_RANGE = 2000;
+
+    public static void main(String[] args)
+    {
+        // warm-up
+        run( 1000 , 100 , false );
+
+        run( 1000 , 100 , true );
+        run( 5000 , 500 , true );
+        run( 10000 , 1000 , true );
+    }
+
+    private static void run(int projectileCount,int agentCount,boolean print)
+    {
+        final Scenario indexed = new Scenario( new GameWorld() , projectileCount , agentCount );
+        final Scenario linear = new Scenario( new LinearScanGameWorld() , projectileCount , agentCount );
+
+        long indexedTime = 0;
+        long linearTime = 0;
+        for ( int tick = 0 ; tick < TICKS ; tick++ )
+        {
+            indexedTime += indexed.tick();
+            linearTime += linear.tick();
+            if ( ! indexed.getState().equals( linear.getState() ) ) {
+                throw new AssertionError("Tick "+tick+": state differs, expected "+linear.getState()+" but got "+indexed.getState() );
+            }
+        }
+        if ( print )
+        {
+            final String name = projectileCount+" projectiles, "+agentCount+" agents";
+            System.out.println(name+" ("+indexed.getState()+")");
+            System.out.println(String.format("  linear scan     : %10.3f ms/tick" , linearTime / (double) TICKS / 1000000 ) );
+            System.out.println(String.format("  spatial hashing : %10.3f ms/tick" , indexedTime / (double) TICKS / 1000000 ) );
+            MicroBenchmark.printSpeedup( "  speed-up" , linearTime , indexedTime );
+        }
+    }
+
+    protected static final class Scenario
+    {
+        private final GameWorld world;
+        private final List<Entity> agents = new ArrayList<>();
+
+        private final BoundingBox queryBounds = new BoundingBox();
+        private final Nearest nearest = new Nearest();
+        private double nearestDistanceSum;
+
+        public Scenario(GameWorld world,int projectileCount,int agentCount)
+        {
+            this.world = world;
+            world.setPlayer( new Entity( "player" , new Vector2( -100000 , -100000 ) , new Vector2( 1 , 0 ) ) );
+
+            final int agentsPerRow = (int) Math.ceil( Math.sqrt( agentCount ) );
+            for ( int i = 0 ; i < agentCount ; i++ )
+            {
+                final Vector2 position = new Vector2( ( i % agentsPerRow ) * AGENT_SPACING , ( i / agentsPerRow ) * AGENT_SPACING );
+                final Entity agent = new Entity( "agent #"+i , position , new Vector2( 1 , 0 ) );
+                agents.add( agent );
+                world.addEntity( agent );
+            }
+
+            final Random rnd = new Random( 42 );
+            final float size = agentsPerRow * AGENT_SPACING;
+            final Entity shooter = new Entity( "shooter" , new Vector2() , new Vector2( 1 , 0 ) );
+            for ( int i = 0 ; i < projectileCount ; i++ )
+            {
+                shooter.setPosition( rnd.nextFloat() * size , rnd.nextFloat() * size );
+                final float angle = rnd.nextFloat() * 360;
+                shooter.setOrientation( (float) Math.cos( Math.toRadians( angle ) ) , (float) Math.sin( Math.toRadians( angle ) ) );
+                world.getProjectiles().add( shooter , shooter.orientation.x , shooter.orientation.y , PROJECTILE_SPEED , PROJECTILE_RANGE*PROJECTILE_RANGE );
+            }
+        }
+
+        public long tick()
+        {
+            final long start = System.nanoTime();
+            world.tick( DELTA_SECONDS );
+
+            // same query as the agent controller uses to look for targets
+            for ( Entity agent : agents )
+            {
+                if ( agent.isAlive() )
+                {
+                    queryBounds.min.set( agent.getX() - AgentController.VIEW_RANGE , agent.getY() - AgentController.VIEW_RANGE , 0 );
+                    queryBounds.max.set( agent.getX() + AgentController.VIEW_RANGE , agent.getY() + AgentController.VIEW_RANGE , 0 );
+                    nearest.agent = agent;
+                    nearest.distanceSquared = Float.MAX_VALUE;
+                    world.visitEntities( queryBounds , nearest , nearest );
+                    nearestDistanceSum += nearest.distanceSquared;
+                }
+            }
+            return System.nanoTime() - start;
+        }
+
+        public String getState()
+        {
+            final int projectilesAlive = world.getProjectiles().size();
+            float shields = 0;
+            int agentsAlive = 0;
+            for ( Entity agent : agents )
+            {
+                shields += agent.getShield();
+                agentsAlive += agent.isAlive() ? 1 : 0;
+            }
+            return projectilesAlive+" projectiles / "+agentsAlive+" agents alive, shields "+shields+", nearest "+nearestDistanceSum;
+        }
+    }
+
+    protected static final class Nearest implements GameWorld.IDrawableVisitor<Nearest>
+    {
+        public Entity agent;
+        public float distanceSquared;
+
+        @Override
+        public boolean visit(IDrawable d,Nearest data)
+        {
+            if ( d != agent && d instanceof Entity ) {
+                distanceSquared = Math.min( distanceSquared , Utils.squaredDistance( agent , (Entity) d ) );
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The world as it was before, visiting entities by testing all of them.
+     */
+    protected static final class LinearScanGameWorld extends GameWorld
+    {
+        private final List<Entity> entities = new ArrayList<>();
+
+        @Override
+        public void addEntity(Entity e)
+        {
+            super.addEntity( e );
+            entities.add( e );
+        }
+
+        @Override
+        public synchronized boolean tick(float deltaSeconds)
+        {
+            final boolean result = super.tick( deltaSeconds );
+            // dead entities just got removed from the world
+            for ( Iterator<Entity> it = entities.iterator() ; it.hasNext() ; )
+            {
+                if ( ! it.next().isAlive() ) {
+                    it.remove();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public <T> void visitEntities(BoundingBox box,IDrawableVisitor<T> visitor,T data)
+        {
+            for ( int i = 0 ; i < entities.size() ; i++ )
+            {
+                final Entity e = entities.get( i );
+                if ( e.intersects( box ) )
+                {
+                    if ( ! visitor.visit( e , data ) ) {
+                        return;
+                    }
+                }
+            }
+            if ( getPlayer().intersects( box ) ) {
+                visitor.visit( getPlayer() , data );
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package de.codesourcery.games.libgdxtest.core;
+
+import java.util.Random;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import de.codesourcery.games.libgdxtest.core.GameWorld.IDrawableVisitor;
+import de.codesourcery.games.libgdxtest.core.ai.AgentController;
+
+/**
+ * Compares {@link SpatialHashGrid} and {@link DynamicAABBTree} with objects of very different sizes:
+ * tiny projectiles, entity-sized agents and beams spanning the range of a gun.
+ */
+public class SpatialIndexBenchmark
+{
+    private static final float WORLD_SIZE = 3200;
+
+    private static final int PROJECTILES = 10000;
+    private static final int AGENTS = 1000;
+    private static final int BEAMS = 200;
+
+    private static final float PROJECTILE_SPEED = 200;
+    private static final float AGENT_SPEED = 25;
+    private static final float BEAM_LENGTH = 300;
+    private static final int BEAM_TICKS = 10;
+
+    private static final int TICKS = 50;
+    private static final float DELTA_SECONDS = 1/60f;
+
+    public static void main(String[] args)
+    {
+        final float cellSize = 2 * Entity.OUTER_RADIUS_IN_PIXELS;
+
+        // warm-up
+        run( "grid" , new SpatialHashGrid( cellSize ) , false );
+        run( "tree" , new DynamicAABBTree( 10 ) , false );
+
+        run( "grid" , new SpatialHashGrid( cellSize ) , true );
+        run( "tree" , new DynamicAABBTree( 10 ) , true );
+    }
+
+    private static void run(String name,ISpatialIndex index,boolean print)
+    {
+        final Scene scene = new Scene( 42 );
+        for ( Box b : scene.objects ) {
+            index.add( b );
+        }
+        scene.verify( index );
+
+        long updateTime = 0;
+        long boxQueryTime = 0;
+        long segmentQueryTime = 0;
+        long beamBoxQueryTime = 0;
+        long beamBoxHits = 0;
+        long beamSegmentHits = 0;
+        final Counter counter = new Counter();
+        for ( int tick = 0 ; tick < TICKS ; tick++ )
+        {
+            scene.move( tick );
+
+            long start = System.nanoTime();
+            for ( Box b : scene.objects ) {
+                index.update( b );
+            }
+            updateTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for ( int i = 0 ; i < PROJECTILES + AGENTS ; i++ ) {
+                index.visit( scene.queryBounds( i ) , counter , null );
+            }
+            boxQueryTime += System.nanoTime() - start;
+
+            counter.count = 0;
+            start = System.nanoTime();
+            for ( int i = PROJECTILES + AGENTS ; i < scene.objects.length ; i++ ) {
+                index.visit( scene.objects[i].bounds , counter , null );
+            }
+            beamBoxQueryTime += System.nanoTime() - start;
+            beamBoxHits += counter.count;
+
+            counter.count = 0;
+            start = System.nanoTime();
+            for ( int i = PROJECTILES + AGENTS ; i < scene.objects.length ; i++ )
+            {
+                final Box beam = scene.objects[i];
+                index.visitSegment( beam.x0 , beam.y0 , beam.x1 , beam.y1 , counter , null );
+            }
+            segmentQueryTime += System.nanoTime() - start;
+            beamSegmentHits += counter.count;
+        }
+        scene.verify( index );
+
+        if ( print )
+        {
+            System.out.println( name + ( index instanceof DynamicAABBTree ? " (height "+((DynamicAABBTree) index).getHeight()+")" : "" ) );
+            System.out.println( String.format("  updates                  : %8.3f ms/tick" , updateTime / (double) TICKS / 1000000 ) );
+            System.out.println( String.format("  %5d box queries        : %8.3f ms/tick" , PROJECTILES + AGENTS , boxQueryTime / (double) TICKS / 1000000 ) );
+            System.out.println( String.format("  %5d beam box queries   : %8.3f ms/tick, %.1f hits/beam" , BEAMS ,
+                    beamBoxQueryTime / (double) TICKS / 1000000 , beamBoxHits / (double) TICKS / BEAMS ) );
+            System.out.println( String.format("  %5d beam segm. queries : %8.3f ms/tick, %.1f hits/beam" , BEAMS ,
+                    segmentQueryTime / (double) TICKS / 1000000 , beamSegmentHits / (double) TICKS / BEAMS ) );
+            System.out.println( String.format("  total                    : %8.3f ms/tick" ,
+                    ( updateTime + boxQueryTime + segmentQueryTime ) / (double) TICKS / 1000000 ) );
+        }
+    }
+
+    protected static final class Counter implements IDrawableVisitor<Object>
+    {
+        public long count;
+        public long idSum;
+
+        @Override
+        public boolean visit(IDrawable d,Object data)
+        {
+            count++;
+            idSum += ((Box) d).id;
+            return true;
+        }
+    }
+
+    protected static final class Scene
+    {
+        // projectiles, agents, beams
+        public final Box[] objects = new Box[ PROJECTILES + AGENTS + BEAMS ];
+        private final float[] velocityX = new float[ PROJECTILES + AGENTS ];
+        private final float[] velocityY = new float[ PROJECTILES + AGENTS ];
+        private final BoundingBox query = new BoundingBox();
+        private final Random rnd;
+
+        public Scene(long seed)
+        {
+            rnd = new Random( seed );
+            for ( int i = 0 ; i < objects.length ; i++ )
+            {
+                objects[i] = new Box( i );
+                if ( i < PROJECTILES + AGENTS )
+                {
+                    final float speed = i < PROJECTILES ? PROJECTILE_SPEED : AGENT_SPEED;
+                    final double angle = rnd.nextDouble() * 2 * Math.PI;
+                    velocityX[i] = (float) Math.cos( angle ) * speed;
+                    velocityY[i] = (float) Math.sin( angle ) * speed;
+                    final float radius = i < PROJECTILES ? 1 : Entity.OUTER_RADIUS_IN_PIXELS;
+                    objects[i].setCenter( rnd.nextFloat() * WORLD_SIZE , rnd.nextFloat() * WORLD_SIZE , radius );
+                } else {
+                    aim( objects[i] );
+                }
+            }
+        }
+
+        private void aim(Box beam)
+        {
+            final double angle = rnd.nextDouble() * 2 * Math.PI;
+            final float x = rnd.nextFloat() * WORLD_SIZE;
+            final float y = rnd.nextFloat() * WORLD_SIZE;
+            beam.setSegment( x , y , x + (float) Math.cos( angle ) * BEAM_LENGTH , y + (float) Math.sin( angle ) * BEAM_LENGTH );
+        }
+
+        public void move(int tick)
+        {
+            for ( int i = 0 ; i < PROJECTILES + AGENTS ; i++ )
+            {
+                final Box b = objects[i];
+                final float radius = i < PROJECTILES ? 1 : Entity.OUTER_RADIUS_IN_PIXELS;
+                float x = b.x0 + velocityX[i] * DELTA_SECONDS;
+                float y = b.y0 + velocityY[i] * DELTA_SECONDS;
+                if ( x < 0 || x > WORLD_SIZE ) {
+                    velocityX[i] = -velocityX[i];
+                    x = Math.max( 0 , Math.min( WORLD_SIZE , x ) );
+                }
+                if ( y < 0 || y > WORLD_SIZE ) {
+                    velocityY[i] = -velocityY[i];
+                    y = Math.max( 0 , Math.min( WORLD_SIZE , y ) );
+                }
+                b.setCenter( x , y , radius );
+            }
+            // beams expire and get fired again
+            for ( int i = PROJECTILES + AGENTS ; i < objects.length ; i++ )
+            {
+                if ( ( i + tick ) % BEAM_TICKS == 0 ) {
+                    aim( objects[i] );
+                }
+            }
+        }
+
+        /*
+         * Projectiles look for what they hit, agents for targets in view range.
+         */
+        public BoundingBox queryBounds(int i)
+        {
+            final Box b = objects[i];
+            if ( i < PROJECTILES ) {
+                return b.bounds;
+            }
+            query.min.set( b.x0 - AgentController.VIEW_RANGE , b.y0 - AgentController.VIEW_RANGE , 0 );
+            query.max.set( b.x0 + AgentController.VIEW_RANGE , b.y0 + AgentController.VIEW_RANGE , 0 );
+            return query;
+        }
+
+        /*
+         * Checks all queries against testing every object.
+         */
+        public void verify(ISpatialIndex index)
+        {
+            final Counter actual = new Counter();
+            for ( int i = 0 ; i < objects.length ; i++ )
+            {
+                final Box b = objects[i];
+                long count = 0;
+                long idSum = 0;
+                if ( i < PROJECTILES + AGENTS )
+                {
+                    final BoundingBox box = queryBounds( i );
+                    for ( Box other : objects )
+                    {
+                        if ( other.intersects( box ) ) {
+                            count++;
+                            idSum += other.id;
+                        }
+                    }
+                    actual.count = actual.idSum = 0;
+                    index.visit( box , actual , null );
+                }
+                else
+                {
+                    for ( Box other : objects )
+                    {
+                        if ( Utils.intersectsSegment( other.bounds , b.x0 , b.y0 , b.x1 , b.y1 ) ) {
+                            count++;
+                            idSum += other.id;
+                        }
+                    }
+                    actual.count = actual.idSum = 0;
+                    index.visitSegment( b.x0 , b.y0 , b.x1 , b.y1 , actual , null );
+                }
+                if ( actual.count != count || actual.idSum != idSum ) {
+                    throw new AssertionError("Query #"+i+" visited "+actual.count+" objects, expected "+count);
+                }
+            }
+        }
+    }
+
+    protected static final class Box implements IDrawable
+    {
+        public final int id;
+        public final BoundingBox bounds = new BoundingBox();
+
+        // center of projectiles and agents, start and end of beams
+        public float x0;
+        public float y0;
+        public float x1;
+        public float y1;
+
+        public Box(int id) {
+            this.id = id;
+        }
+
+        public void setCenter(float x,float y,float radius)
+        {
+            x0 = x1 = x;
+            y0 = y1 = y;
+            bounds.min.set( x - radius , y - radius , 0 );
+            bounds.max.set( x + radius , y + radius , 0 );
+        }
+
+        public void setSegment(float x0,float y0,float x1,float y1)
+        {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            bounds.min.set( Math.min( x0 , x1 ) , Math.min( y0 , y1 ) , 0 );
+            bounds.max.set( Math.max( x0 , x1 ) , Math.max( y0 , y1 ) , 0 );
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return bounds;
+        }
+
+        @Override
+        public boolean isVisible(Camera camera) {
+            return false;
+        }
+
+        @Override
+        public boolean intersects(BoundingBox box) {
+            return Utils.intersect( bounds , box );
+        }
+
+        @Override
+        public void render(ShapeRenderer renderer) {
+        }
+    }
+}
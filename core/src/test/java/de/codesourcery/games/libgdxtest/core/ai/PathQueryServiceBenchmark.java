@@ -0,0 +1,163 @@
+package de.codesourcery.games.libgdxtest.core.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.games.libgdxtest.core.ai.PathQueryService.PathRequest;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.NoiseWorldGenerator;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
+import de.codesourcery.games.libgdxtest.core.world.WorldRegion;
+
+/**
+ * Simulates agents requesting paths every frame and compares the time spent on the
+ * game loop thread with searching paths synchronously.
+ */
+public class PathQueryServiceBenchmark
+{
+    private static final int MESH_SIZE = 512;
+    private static final float WALKABLE_GROUND_LEVEL = 0.6f;
+
+    private static final int FRAMES = 300;
+    private static final int REQUESTS_PER_FRAME = 8;
+    private static final long FRAME_NANOS = 16666666;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        final float[] heights = new float[ MESH_SIZE*MESH_SIZE ];
+        new NoiseWorldGenerator( 0xdeadbeef , 1/1024.0 , 8 , 1.23f , null ).generate( new WorldRegion( 2 , 0 , 0 , MESH_SIZE , MESH_SIZE ) , heights );
+        final NavMesh mesh = new NavMesh( MESH_SIZE , heights );
+
+        final int[][] queries = createQueries( mesh , FRAMES*REQUESTS_PER_FRAME , 128 );
+        final PathFinder finder = new PathFinder( mesh );
+
+        // synchronous searches on the game loop
+        long syncMax = 0;
+        long syncTotal = 0;
+        for ( int frame = 0 ; frame < FRAMES ; frame++ )
+        {
+            final long start = System.nanoTime();
+            for ( int i = 0 ; i < REQUESTS_PER_FRAME ; i++ )
+            {
+                final int[] q = queries[ frame*REQUESTS_PER_FRAME + i ];
+                finder.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            }
+            final long time = System.nanoTime() - start;
+            syncMax = Math.max( syncMax , time );
+            syncTotal += time;
+        }
+
+        final PathQueryService service = PathQueryService.createDefaultService( mesh , WALKABLE_GROUND_LEVEL );
+        try
+        {
+            final List<PathRequest> requests = new ArrayList<>();
+            final List<PathRequest> cancelled = new ArrayList<>();
+            long asyncMax = 0;
+            long asyncTotal = 0;
+            float maxLatency = 0;
+            for ( int frame = 0 ; frame < FRAMES || service.getPendingCount() > 0 ; frame++ )
+            {
+                final long start = System.nanoTime();
+                service.deliverResults();
+                maxLatency = Math.max( maxLatency , service.getLastFrameMaxLatencyMillis() );
+                if ( frame < FRAMES )
+                {
+                    for ( int i = 0 ; i < REQUESTS_PER_FRAME ; i++ )
+                    {
+                        final int[] q = queries[ frame*REQUESTS_PER_FRAME + i ];
+                        final PathRequest request = service.submit( q[0] , q[1] , q[2] , q[3] );
+                        // agents losing interest in their target
+                        if ( i == 0 ) {
+                            request.cancel();
+                            cancelled.add( request );
+                        } else {
+                            requests.add( request );
+                        }
+                    }
+                }
+                final long time = System.nanoTime() - start;
+                asyncMax = Math.max( asyncMax , time );
+                asyncTotal += time;
+
+                // rest of the frame
+                final long sleep = FRAME_NANOS - time;
+                if ( sleep > 0 ) {
+                    Thread.sleep( sleep / 1000000 , (int) ( sleep % 1000000 ) );
+                }
+            }
+
+            // results must be the same as searching synchronously
+            for ( PathRequest request : requests )
+            {
+                if ( ! request.isDone() ) {
+                    throw new AssertionError("Request not done: "+request);
+                }
+                final Path expected = finder.findPath( request.startX , request.startY , request.dstX , request.dstY , WALKABLE_GROUND_LEVEL );
+                if ( ! samePath( expected , request.getPath() ) ) {
+                    throw new AssertionError("Path differs for "+request);
+                }
+            }
+            for ( PathRequest request : cancelled )
+            {
+                if ( request.isDone() || request.getPath() != null ) {
+                    throw new AssertionError("Cancelled request got delivered: "+request);
+                }
+            }
+            System.out.println("Results are identical to synchronous searches, cancelled requests were not delivered.");
+            System.out.println(service);
+
+            System.out.println(String.format("Game loop time per frame (synchronous) : avg %.3f ms , max %.3f ms" , syncTotal / (double) FRAMES / 1000000 , syncMax / 1000000.0 ) );
+            System.out.println(String.format("Game loop time per frame (service)     : avg %.3f ms , max %.3f ms" , asyncTotal / (double) FRAMES / 1000000 , asyncMax / 1000000.0 ) );
+            System.out.println(String.format("Max. request latency (service)         : %.3f ms" , maxLatency ) );
+        } finally {
+            service.dispose();
+        }
+    }
+
+    private static boolean samePath(Path p1,Path p2)
+    {
+        if ( p1 == null || p2 == null ) {
+            return p1 == p2;
+        }
+        if ( p1.path.size() != p2.path.size() ) {
+            return false;
+        }
+        for ( int i = 0 ; i < p1.path.size() ; i++ )
+        {
+            final PathNode n1 = p1.path.get(i);
+            final PathNode n2 = p2.path.get(i);
+            if ( n1.x != n2.x || n1.y != n2.y ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // agents chasing a handful of targets, so many requests share their destination and some their start as well
+    private static int[][] createQueries(NavMesh mesh,int count,int maxDistance)
+    {
+        final Random rnd = new Random( 1 );
+        final int[][] targets = new int[ 16 ][];
+        for ( int i = 0 ; i < targets.length ; ) {
+            final int x = rnd.nextInt( MESH_SIZE );
+            final int y = rnd.nextInt( MESH_SIZE );
+            if ( mesh.get( x , y ) <= WALKABLE_GROUND_LEVEL ) {
+                targets[i++] = new int[] { x , y };
+            }
+        }
+        final int[][] result = new int[ count ][];
+        for ( int i = 0 ; i < count ; )
+        {
+            final int[] target = targets[ rnd.nextInt( targets.length ) ];
+            final int x0 = Math.min( MESH_SIZE - 1 , Math.max( 0 , target[0] + ( rnd.nextInt( 2*maxDistance ) - maxDistance ) / 16 * 16 ) );
+            final int y0 = Math.min( MESH_SIZE - 1 , Math.max( 0 , target[1] + ( rnd.nextInt( 2*maxDistance ) - maxDistance ) / 16 * 16 ) );
+            if ( mesh.get( x0 , y0 ) <= WALKABLE_GROUND_LEVEL ) {
+                result[i++] = new int[] { x0 , y0 , target[0] , target[1] };
+            }
+        }
+        return result;
+    }
+}
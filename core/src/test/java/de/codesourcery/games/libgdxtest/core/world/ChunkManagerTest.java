@@ -362,4 +362,76 @@ public class ChunkManagerTest extends TestCase {
 		tileManager.assertUnloaded( Location.NW , Location.N , Location.NE );
 		tileManager.assertLoaded( Location.valueOf( -1,-2) , Location.valueOf( 0,-2) ,Location.valueOf( 1,-2) );
 	}	
-}
\ No newline at end of file
+	
+	public void testTeleport() 
+	{
+		ChunkManager chunkManager= new ChunkManager();
+		MockTileManager tileManager = new MockTileManager();
+		chunkManager.setTileManager( tileManager );		
+		
+		chunkManager.getCurrentChunk();
+		
+		tileManager.loaded.clear();
+		tileManager.unloaded.clear();
+		
+		// test
+		chunkManager.moveCameraToTile( 10 , -5 );
+		
+		// verify
+		chunkManager.printChunk();	
+		
+		tileManager.assertUnloaded( Location.valid() );
+		tileManager.assertLoaded( Location.valueOf( 9,-4) , Location.valueOf( 10,-4) ,Location.valueOf( 11,-4) ,
+				Location.valueOf( 9,-5) , Location.valueOf( 10,-5) ,Location.valueOf( 11,-5) ,
+				Location.valueOf( 9,-6) , Location.valueOf( 10,-6) ,Location.valueOf( 11,-6) );
+	}	
+	
+	public void testRenderWithoutTextureAtlasFails() 
+	{
+		ChunkManager chunkManager= new ChunkManager();
+		chunkManager.setTileManager( new MockTileManager() );
+		try {
+			chunkManager.renderCurrentChunk( null );
+			fail("Should have failed");
+		} catch(IllegalStateException e) {
+			// ok
+		}
+		try {
+			chunkManager.selectDetailLevel();
+			fail("Should have failed");
+		} catch(IllegalStateException e) {
+			// ok
+		}
+	}
+	
+	public void testMoveCameraRightTwoTilesWithLargeView() 
+	{
+		ChunkManager chunkManager= new ChunkManager(5);
+		MockTileManager tileManager = new MockTileManager();
+		chunkManager.setTileManager( tileManager );		
+		
+		chunkManager.getCurrentChunk();
+		assertEquals( 25 , tileManager.loaded.size() );
+		
+		tileManager.loaded.clear();
+		tileManager.unloaded.clear();
+		
+		// test
+		chunkManager.moveCameraToTile( 2 , 0 );
+		
+		// verify
+		chunkManager.printChunk();	
+		
+		final List<Location> unloaded = new ArrayList<>();
+		final List<Location> loaded = new ArrayList<>();
+		for ( int y = -2 ; y <= 2 ; y++ ) 
+		{
+			unloaded.add( Location.valueOf( -2 , y ) );
+			unloaded.add( Location.valueOf( -1 , y ) );
+			loaded.add( Location.valueOf( 3 , y ) );
+			loaded.add( Location.valueOf( 4 , y ) );
+		}
+		tileManager.assertUnloaded( unloaded.toArray( new Location[0] ) );
+		tileManager.assertLoaded( loaded.toArray( new Location[0] ) );
+	}	
+}
@@ -0,0 +1,123 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+
+/**
+ * Compares colorizing height maps through {@link ColorLookupTable} with
+ * computing the gradient index for every pixel.
+ */
+public class ColorLookupTableBenchmark
+{
+    private static final int MAP_SIZE = 512;
+
+    public static void main(String[] args)
+    {
+        final float groundLevel = 0.0f;
+        final int[] gradient = TextureUtils.createLandscapeGradient();
+        final ColorLookupTable lut = new ColorLookupTable( gradient , groundLevel );
+        final float[] heightMap = new SimplexNoise( 0xdeadbeef ).createHeightMap( 0 , 0 , MAP_SIZE , 0.5f , 8 , 1.23f );
+
+        // exact gradient boundaries and extreme values
+        for ( int i = 0 ; i <= 255 ; i++ ) {
+            heightMap[i] = i / 255f;
+        }
+        heightMap[256] = 1.0f;
+        heightMap[257] = groundLevel;
+
+        final int pixelCount = MAP_SIZE*MAP_SIZE;
+        final ByteBuffer expected = ByteBuffer.allocateDirect( pixelCount*4 );
+        final ByteBuffer actual = ByteBuffer.allocateDirect( pixelCount*4 );
+        colorizeBranching( heightMap , pixelCount , gradient , groundLevel , expected );
+        lut.toRGBA( heightMap , pixelCount , actual );
+        if ( ! expected.equals( actual ) ) {
+            throw new AssertionError("RGBA pixels differ");
+        }
+
+        final int[] expectedARGB = imageBranching( heightMap , MAP_SIZE , gradient , groundLevel ).getRGB( 0 , 0 , MAP_SIZE , MAP_SIZE , null , 0 , MAP_SIZE );
+        final int[] actualARGB = TextureUtils.heightMapToImage( heightMap , MAP_SIZE , lut ).getRGB( 0 , 0 , MAP_SIZE , MAP_SIZE , null , 0 , MAP_SIZE );
+        if ( ! Arrays.equals( expectedARGB , actualARGB ) ) {
+            throw new AssertionError("ARGB pixels differ");
+        }
+        System.out.println("Results are identical.");
+
+        final double branching = MicroBenchmark.measure( "RGBA, branching" , 50 , 200 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                colorizeBranching( heightMap , pixelCount , gradient , groundLevel , expected );
+                return expected;
+            }
+        });
+        final double table = MicroBenchmark.measure( "RGBA, lookup table" , 50 , 200 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                lut.toRGBA( heightMap , pixelCount , actual );
+                return actual;
+            }
+        });
+        MicroBenchmark.printSpeedup( "RGBA, lookup table vs. branching" , branching , table );
+
+        final double imageBranching = MicroBenchmark.measure( "AWT, branching" , 10 , 50 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return imageBranching( heightMap , MAP_SIZE , gradient , groundLevel );
+            }
+        });
+        final double imageTable = MicroBenchmark.measure( "AWT, lookup table" , 10 , 50 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return TextureUtils.heightMapToImage( heightMap , MAP_SIZE , lut );
+            }
+        });
+        MicroBenchmark.printSpeedup( "AWT, lookup table vs. branching" , imageBranching , imageTable );
+    }
+
+    // colorizing as TextureUtils did it before ColorLookupTable existed
+    private static void colorizeBranching(float[] heightMap,int count,int[] colorGradient,float groundLevel,ByteBuffer pixels)
+    {
+        final IntBuffer intBuffer = pixels.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        float scale = 1.0f/(1.0f - groundLevel);
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            float height = heightMap[ i ];
+            int index;
+            if ( height >= groundLevel ) {
+                index = (int) ((height-groundLevel)*scale*255.0f);
+            } else {
+                index =0;
+            }
+            intBuffer.put( colorGradient[index] << 8 | 0xff );
+        }
+    }
+
+    private static BufferedImage imageBranching(float[] heightMap, int heightMapSize,int[] colorGradient,float groundLevel)
+    {
+        final BufferedImage img = new BufferedImage(heightMapSize,heightMapSize,BufferedImage.TYPE_INT_ARGB);
+        int ptr = 0;
+        float scale = 1.0f/(1.0f - groundLevel);
+        for ( int z1 = 0 ; z1 < heightMapSize ; z1++ )
+        {
+            for ( int x1 = 0 ; x1 < heightMapSize ; x1++ )
+            {
+                float height = heightMap[ ptr++ ];
+                int index;
+                if ( height >= groundLevel ) {
+                    index = (int) ((height-groundLevel)*scale*255.0f);
+                } else {
+                    index =0;
+                }
+                img.setRGB( x1 , z1 , colorGradient[ index & 0xff] | (255 << 24));
+            }
+        }
+        return img;
+    }
+}
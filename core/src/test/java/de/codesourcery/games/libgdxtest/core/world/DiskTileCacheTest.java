@@ -0,0 +1,134 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import de.codesourcery.games.libgdxtest.core.world.DiskTileCache.TileData;
+
+public class DiskTileCacheTest extends TestCase
+{
+    private static final int SIZE = 4;
+
+    private File baseDirectory;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        baseDirectory = Files.createTempDirectory( "tilecache" ).toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        delete( baseDirectory );
+        super.tearDown();
+    }
+
+    private static void delete(File file)
+    {
+        final File[] children = file.listFiles();
+        if ( children != null )
+        {
+            for ( File child : children ) {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+    private static float[] createHeightMap(float value)
+    {
+        final float[] result = new float[ SIZE*SIZE ];
+        for ( int i = 0 ; i < result.length ; i++ ) {
+            result[i] = value + i;
+        }
+        return result;
+    }
+
+    private static ByteBuffer createPixels(byte value)
+    {
+        final ByteBuffer result = ByteBuffer.allocate( SIZE*SIZE*4 );
+        while ( result.hasRemaining() ) {
+            result.put( value );
+        }
+        result.flip();
+        return result;
+    }
+
+    public void testMissingTile()
+    {
+        final DiskTileCache cache = new DiskTileCache( baseDirectory , 42 , 1 );
+        assertNull( cache.load( 1 , 2 , SIZE ) );
+        assertEquals( 1 , cache.getMissCount() );
+    }
+
+    public void testStoreAndLoad()
+    {
+        final DiskTileCache cache = new DiskTileCache( baseDirectory , 42 , 1 );
+        final float[] heightMap = createHeightMap( 0.5f );
+        cache.store( 1 , -2 , heightMap , SIZE , createPixels( (byte) 7 ) );
+
+        final TileData data = cache.load( 1 , -2 , SIZE );
+        assertNotNull( data );
+        assertEquals( 1 , cache.getHitCount() );
+        assertEquals( SIZE , data.heightMapSize );
+        final float[] loaded = data.readHeightMap();
+        for ( int i = 0 ; i < heightMap.length ; i++ ) {
+            assertEquals( heightMap[i] , loaded[i] , 0 );
+        }
+        final ByteBuffer pixels = data.getPixels();
+        assertEquals( SIZE*SIZE*4 , pixels.remaining() );
+        while ( pixels.hasRemaining() ) {
+            assertEquals( 7 , pixels.get() );
+        }
+
+        // other tiles and sizes are cached separately
+        assertNull( cache.load( -2 , 1 , SIZE ) );
+        assertNull( cache.load( 1 , -2 , SIZE*2 ) );
+    }
+
+    public void testExistingFileIsNotReplaced()
+    {
+        final DiskTileCache cache = new DiskTileCache( baseDirectory , 42 , 1 );
+        cache.store( 0 , 0 , createHeightMap( 1 ) , SIZE , createPixels( (byte) 1 ) );
+        final TileData data = cache.load( 0 , 0 , SIZE );
+
+        cache.store( 0 , 0 , createHeightMap( 2 ) , SIZE , createPixels( (byte) 2 ) );
+        assertEquals( 1 , data.readHeightMap()[0] , 0 );
+        assertEquals( 1 , cache.load( 0 , 0 , SIZE ).readHeightMap()[0] , 0 );
+
+        // no temporary files left behind
+        final File[] files = new File( baseDirectory , "seed_2a" ).listFiles();
+        assertEquals( 1 , files.length );
+    }
+
+    public void testStaleFileIsDeleted()
+    {
+        new DiskTileCache( baseDirectory , 42 , 1 ).store( 0 , 0 , createHeightMap( 1 ) , SIZE , createPixels( (byte) 1 ) );
+
+        final DiskTileCache cache = new DiskTileCache( baseDirectory , 42 , 2 );
+        assertNull( cache.load( 0 , 0 , SIZE ) );
+        assertEquals( 1 , cache.getStaleCount() );
+        assertEquals( 0 , new File( baseDirectory , "seed_2a" ).listFiles().length );
+
+        // can be stored again with the current parameters
+        cache.store( 0 , 0 , createHeightMap( 3 ) , SIZE , createPixels( (byte) 3 ) );
+        assertEquals( 3 , cache.load( 0 , 0 , SIZE ).readHeightMap()[0] , 0 );
+    }
+
+    public void testTruncatedFileIsStale() throws IOException
+    {
+        final DiskTileCache cache = new DiskTileCache( baseDirectory , 42 , 1 );
+        final File directory = new File( baseDirectory , "seed_2a" );
+        assertTrue( directory.mkdirs() );
+        Files.write( new File( directory , "tile_0_0_"+SIZE+".bin" ).toPath() , new byte[10] );
+
+        assertNull( cache.load( 0 , 0 , SIZE ) );
+        assertEquals( 1 , cache.getStaleCount() );
+        assertEquals( 0 , directory.listFiles().length );
+    }
+}
@@ -0,0 +1,162 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.Random;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+
+/**
+ * Compares steering many agents towards one target using a {@link FlowField}
+ * with searching a path for every agent.
+ */
+public class FlowFieldBenchmark
+{
+    private static final int MESH_SIZE = 512;
+    private static final float WALKABLE_GROUND_LEVEL = 0.6f;
+    private static final int AGENTS = 1000;
+    private static final int NODES_PER_FRAME = 20000;
+    private static final int FRAMES = 200;
+
+    public static void main(String[] args)
+    {
+        final float[] heights = new float[ MESH_SIZE*MESH_SIZE ];
+        new NoiseWorldGenerator( 0xdeadbeef , 1/1024.0 , 8 , 1.23f , null ).generate( new WorldRegion( 2 , 0 , 0 , MESH_SIZE , MESH_SIZE ) , heights );
+        final NavMesh mesh = new NavMesh( MESH_SIZE , heights );
+
+        final Random rnd = new Random( 1 );
+        final int[] target = randomWalkableNode( mesh , rnd );
+        final int[][] agents = new int[ AGENTS ][];
+        for ( int i = 0 ; i < AGENTS ; i++ ) {
+            agents[i] = randomWalkableNode( mesh , rnd );
+        }
+
+        final FlowField field = new FlowField( mesh , WALKABLE_GROUND_LEVEL );
+        field.calculate( target[0] , target[1] );
+
+        // costs must match a Dijkstra search over the whole mesh
+        final PathFinder finder = new PathFinder( mesh );
+        finder.computeCosts( target[0] , target[1] , WALKABLE_GROUND_LEVEL , 0 , 0 , MESH_SIZE , MESH_SIZE );
+        int reachable = 0;
+        for ( int y = 0 ; y < MESH_SIZE ; y++ )
+        {
+            for ( int x = 0 ; x < MESH_SIZE ; x++ )
+            {
+                final float expected = finder.getCost( x , y );
+                final float actual = field.getCost( x , y );
+                if ( expected == Float.POSITIVE_INFINITY || actual == Float.POSITIVE_INFINITY ) {
+                    if ( expected != actual && mesh.get( x , y ) <= WALKABLE_GROUND_LEVEL ) {
+                        throw new AssertionError("Reachability differs at "+x+","+y);
+                    }
+                    continue;
+                }
+                if ( Math.abs( expected - actual ) > 1e-4f * expected ) {
+                    throw new AssertionError("Cost differs at "+x+","+y+": expected "+expected+", got "+actual);
+                }
+                reachable++;
+            }
+        }
+
+        // following the field must lead to the target at the cost it claims
+        for ( int[] agent : agents )
+        {
+            if ( field.isReachable( agent[0] , agent[1] ) )
+            {
+                final float walked = walk( mesh , field , agent[0] , agent[1] );
+                final float expected = field.getCost( agent[0] , agent[1] );
+                if ( Math.abs( walked - expected ) > 1e-3f * expected ) {
+                    throw new AssertionError("Walking from "+agent[0]+","+agent[1]+" costs "+walked+" instead of "+expected);
+                }
+            }
+        }
+        System.out.println("Costs match Dijkstra for "+reachable+" reachable nodes, agents arrive at the target.");
+
+        final double searches = MicroBenchmark.measure( AGENTS+" A* searches" , 3 , 10 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int length = 0;
+                for ( int[] agent : agents )
+                {
+                    final PathFinder.Path path = finder.findPath( agent[0] , agent[1] , target[0] , target[1] , WALKABLE_GROUND_LEVEL );
+                    length += path != null ? path.path.size() : 0;
+                }
+                return length;
+            }
+        });
+        final double full = MicroBenchmark.measure( "flow field, full update" , 3 , 10 , new MicroBenchmark.Task() {
+
+            private int offset;
+
+            @Override
+            public Object run()
+            {
+                // move the target back and forth so that every run calculates the field
+                field.calculate( target[0] + ( ++offset & 1 ) , target[1] );
+                return field;
+            }
+        });
+        MicroBenchmark.printSpeedup( "flow field vs. "+AGENTS+" A* searches" , searches , full );
+
+        final double lookups = MicroBenchmark.measure( AGENTS+" flow field lookups" , 1000 , 10000 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int sum = 0;
+                for ( int[] agent : agents ) {
+                    sum += field.getDirectionX( agent[0] , agent[1] ) + field.getDirectionY( agent[0] , agent[1] );
+                }
+                return sum;
+            }
+        });
+
+        // target moving every frame, field updated with a fixed budget per frame
+        long maxFrame = 0;
+        long totalFrames = 0;
+        int updates = 0;
+        for ( int frame = 0 ; frame < FRAMES ; frame++ )
+        {
+            final long start = System.nanoTime();
+            field.setTarget( target[0] + ( frame / 10 & 1 ) , target[1] );
+            if ( field.update( NODES_PER_FRAME ) ) {
+                updates++;
+            }
+            final long time = System.nanoTime() - start;
+            maxFrame = Math.max( maxFrame , time );
+            totalFrames += time;
+        }
+        System.out.println(String.format("Per frame with %d nodes budget: avg %.3f ms, max %.3f ms, field up-to-date in %d of %d frames" ,
+                NODES_PER_FRAME , totalFrames / (double) FRAMES / 1000000 , maxFrame / 1000000.0 , updates , FRAMES ) );
+        System.out.println(String.format("Lookups for all agents: %.3f us" , lookups / 1000 ) );
+    }
+
+    private static float walk(NavMesh mesh,FlowField field,int x,int y)
+    {
+        float cost = 0;
+        for ( int steps = 0 ; ! ( x == field.getTargetX() && y == field.getTargetY() ) ; steps++ )
+        {
+            if ( steps > MESH_SIZE*MESH_SIZE ) {
+                throw new AssertionError("Flow field contains a cycle");
+            }
+            final int nextX = x + field.getDirectionX( x , y );
+            final int nextY = y + field.getDirectionY( x , y );
+            cost += PathFinder.getStepCost( mesh.get( x , y ) , mesh.get( nextX , nextY ) );
+            x = nextX;
+            y = nextY;
+        }
+        return cost;
+    }
+
+    private static int[] randomWalkableNode(NavMesh mesh,Random rnd)
+    {
+        while ( true )
+        {
+            final int x = rnd.nextInt( MESH_SIZE );
+            final int y = rnd.nextInt( MESH_SIZE );
+            if ( mesh.get( x , y ) <= WALKABLE_GROUND_LEVEL ) {
+                return new int[] { x , y };
+            }
+        }
+    }
+}
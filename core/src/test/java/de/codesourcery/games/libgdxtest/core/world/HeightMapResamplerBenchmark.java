@@ -0,0 +1,112 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.ForkJoinPool;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+import de.codesourcery.games.libgdxtest.core.world.HeightMapResampler.Filter;
+
+/**
+ * Compares {@link HeightMapResampler} with the Java2D-based resampling
+ * <code>NavMeshGenerator</code> used to do.
+ */
+public class HeightMapResamplerBenchmark
+{
+    private static final int INPUT_SIZE = 512;
+
+    public static void main(String[] args)
+    {
+        final float[] heightMap = new SimplexNoise( 0xdeadbeef ).createHeightMap( 0 , 0 , INPUT_SIZE , 0.5f , 8 , 1.23f );
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool( threads );
+        try
+        {
+            for ( int outputSize : new int[] { INPUT_SIZE / 2 , INPUT_SIZE / 4 } )
+            {
+                System.out.println("=== "+INPUT_SIZE+"x"+INPUT_SIZE+" -> "+outputSize+"x"+outputSize+" ===");
+                run( heightMap , outputSize , pool );
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(final float[] heightMap,final int outputSize,final ForkJoinPool pool)
+    {
+        final double java2d = MicroBenchmark.measure( "java2d (8-bit)" , 20 , 50 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return resampleJava2D( heightMap , INPUT_SIZE , outputSize );
+            }
+        });
+
+        final float[] reference = resampleJava2D( heightMap , INPUT_SIZE , outputSize );
+        final float[] result = new float[ outputSize*outputSize ];
+        for ( final Filter filter : Filter.values() )
+        {
+            final HeightMapResampler resampler = new HeightMapResampler( INPUT_SIZE , outputSize , filter );
+
+            resampler.resample( heightMap , result , null );
+            System.out.println("Max. difference to java2d: "+maxDifference( reference , result ));
+
+            final double serial = MicroBenchmark.measure( filter.toString() , 20 , 50 , new MicroBenchmark.Task() {
+
+                @Override
+                public Object run() {
+                    resampler.resample( heightMap , result , null );
+                    return result;
+                }
+            });
+            MicroBenchmark.printSpeedup( filter+" vs. java2d" , java2d , serial );
+
+            final double parallel = MicroBenchmark.measure( filter+" ("+pool.getParallelism()+" threads)" , 20 , 50 , new MicroBenchmark.Task() {
+
+                @Override
+                public Object run() {
+                    resampler.resample( heightMap , result , pool );
+                    return result;
+                }
+            });
+            MicroBenchmark.printSpeedup( filter+" parallel vs. serial" , serial , parallel );
+        }
+    }
+
+    private static float maxDifference(float[] expected,float[] actual)
+    {
+        float result = 0;
+        for ( int i = 0 ; i < expected.length ; i++ ) {
+            result = Math.max( result , Math.abs( expected[i] - actual[i] ) );
+        }
+        return result;
+    }
+
+    // resampling as NavMeshGenerator did it before HeightMapResampler existed
+    private static float[] resampleJava2D(float[] heightmap,int inputSize,int newSize)
+    {
+        final BufferedImage srcImage = new BufferedImage(inputSize,inputSize,BufferedImage.TYPE_BYTE_GRAY );
+        final byte[] srcPixels = ((DataBufferByte) srcImage.getRaster().getDataBuffer()).getData();
+        final int srcLen=inputSize*inputSize;
+        for ( int i = 0 ; i < srcLen; i++) {
+            srcPixels[i] = (byte) (heightmap[i]*255f);
+        }
+
+        final BufferedImage dstImage = new BufferedImage(newSize,newSize,BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = dstImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.drawImage( srcImage, 0 , 0 , newSize, newSize , null );
+        graphics.dispose();
+
+        final byte[] dstPixels = ((DataBufferByte) dstImage.getRaster().getDataBuffer()).getData();
+        final int dstLen = newSize*newSize;
+        final float[] result = new float[ dstLen ];
+        for ( int i = 0 ; i < dstLen; i++) {
+            result[i] = (dstPixels[i] & 0xff)/255.0f;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,202 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.List;
+import java.util.Random;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+import de.codesourcery.games.libgdxtest.core.world.HierarchicalPathFinder.HierarchicalPath;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
+
+/**
+ * Compares long-distance queries of {@link HierarchicalPathFinder} with
+ * searching the whole nav mesh using {@link PathFinder}.
+ */
+public class HierarchicalPathFinderBenchmark
+{
+    private static final int MESH_SIZE = 1024;
+    private static final int TILE_SIZE = 64;
+
+    public static void main(String[] args)
+    {
+        final float[] heights = new float[ MESH_SIZE*MESH_SIZE ];
+        new NoiseWorldGenerator( 0xdeadbeef , 1/1024.0 , 8 , 1.23f , null ).generate( new WorldRegion( 2 , 0 , 0 , MESH_SIZE , MESH_SIZE ) , heights );
+        final NavMesh mesh = new NavMesh( MESH_SIZE , heights );
+
+        // mostly open terrain and terrain where most long paths need to find their way around obstacles
+        run( mesh , 0.6f );
+        run( mesh , 0.5f );
+    }
+
+    private static void run(NavMesh mesh,final float walkableGroundLevel)
+    {
+        System.out.println("=== Walkable ground level: "+walkableGroundLevel);
+        final PathFinder finder = new PathFinder( mesh );
+
+        // the mesh gets added as tiles, global coordinates match mesh coordinates
+        final int tilesPerSide = MESH_SIZE / TILE_SIZE;
+        final NavMesh[] tiles = new NavMesh[ tilesPerSide*tilesPerSide ];
+        for ( int tileY = 0 ; tileY < tilesPerSide ; tileY++ )
+        {
+            for ( int tileX = 0 ; tileX < tilesPerSide ; tileX++ )
+            {
+                final NavMesh tile = new NavMesh( TILE_SIZE , new float[ TILE_SIZE*TILE_SIZE ] );
+                for ( int y = 0 ; y < TILE_SIZE ; y++ )
+                {
+                    for ( int x = 0 ; x < TILE_SIZE ; x++ ) {
+                        tile.set( x , y , mesh.get( tileX*TILE_SIZE + x , tileY*TILE_SIZE + y ) );
+                    }
+                }
+                tiles[ tileX + tileY*tilesPerSide ] = tile;
+            }
+        }
+
+        final HierarchicalPathFinder hierarchical = new HierarchicalPathFinder( TILE_SIZE , walkableGroundLevel );
+        long time = System.nanoTime();
+        for ( int i = 0 ; i < tiles.length ; i++ ) {
+            hierarchical.addTile( i % tilesPerSide , i / tilesPerSide , tiles[i] );
+        }
+        time = System.nanoTime() - time;
+        System.out.println("Built abstract graph with "+hierarchical.getTransitionNodeCount()+" nodes and "+hierarchical.getEdgeCount()+
+                " edges in "+(time/1000000)+" ms ("+String.format("%.3f" , time / 1000000.0 / tiles.length )+" ms per tile)");
+
+        final int[][] queries = createQueries( mesh , walkableGroundLevel , 50 );
+
+        int found = 0;
+        double flatCost = 0;
+        double hierarchicalCost = 0;
+        for ( int[] q : queries )
+        {
+            final Path expected = finder.findPath( q[0] , q[1] , q[2] , q[3] , walkableGroundLevel );
+            final HierarchicalPath actual = hierarchical.findPath( q[0] , q[1] , q[2] , q[3] );
+            if ( ( expected == null ) != ( actual == null ) ) {
+                throw new AssertionError("Reachability differs for "+q[0]+","+q[1]+" -> "+q[2]+","+q[3]);
+            }
+            if ( actual != null )
+            {
+                final Path refined = hierarchical.refine( actual );
+                checkPath( mesh , walkableGroundLevel , refined , q );
+                flatCost += getCost( mesh , expected );
+                hierarchicalCost += getCost( mesh , refined );
+                found++;
+            }
+        }
+        System.out.println("Paths are valid, "+found+" of "+queries.length+" queries reachable.");
+        System.out.println(String.format("Refined path cost relative to flat A*: %.3f" , hierarchicalCost / flatCost ) );
+
+        final double flat = MicroBenchmark.measure( "flat A*" , 2 , 5 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int length = 0;
+                for ( int[] q : queries )
+                {
+                    final Path path = finder.findPath( q[0] , q[1] , q[2] , q[3] , walkableGroundLevel );
+                    length += path != null ? path.path.size() : 0;
+                }
+                return length;
+            }
+        }) / queries.length;
+        final double abstractOnly = MicroBenchmark.measure( "HPA*, abstract path" , 10 , 50 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int length = 0;
+                for ( int[] q : queries )
+                {
+                    final HierarchicalPath path = hierarchical.findPath( q[0] , q[1] , q[2] , q[3] );
+                    length += path != null ? path.getWaypointCount() : 0;
+                }
+                return length;
+            }
+        }) / queries.length;
+        final double firstSegment = MicroBenchmark.measure( "HPA*, abstract path + first segment" , 10 , 50 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int length = 0;
+                for ( int[] q : queries )
+                {
+                    final HierarchicalPath path = hierarchical.findPath( q[0] , q[1] , q[2] , q[3] );
+                    length += path != null ? hierarchical.refine( path , 0 ).path.size() : 0;
+                }
+                return length;
+            }
+        }) / queries.length;
+        final double refined = MicroBenchmark.measure( "HPA*, fully refined" , 5 , 20 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run()
+            {
+                int length = 0;
+                for ( int[] q : queries )
+                {
+                    final HierarchicalPath path = hierarchical.findPath( q[0] , q[1] , q[2] , q[3] );
+                    length += path != null ? hierarchical.refine( path ).path.size() : 0;
+                }
+                return length;
+            }
+        }) / queries.length;
+
+        System.out.println(String.format("Per query: flat %.3f ms, abstract %.3f ms, first segment %.3f ms, fully refined %.3f ms",
+                flat / 1000000 , abstractOnly / 1000000 , firstSegment / 1000000 , refined / 1000000 ) );
+        MicroBenchmark.printSpeedup( "HPA* (abstract path + first segment) vs. flat A*" , flat , firstSegment );
+    }
+
+    // queries between walkable nodes at least half the mesh apart
+    private static int[][] createQueries(NavMesh mesh,float walkableGroundLevel,int count)
+    {
+        final Random rnd = new Random( 1 );
+        final int[][] result = new int[ count ][];
+        for ( int i = 0 ; i < count ; )
+        {
+            final int x0 = rnd.nextInt( MESH_SIZE );
+            final int y0 = rnd.nextInt( MESH_SIZE );
+            final int x1 = rnd.nextInt( MESH_SIZE );
+            final int y1 = rnd.nextInt( MESH_SIZE );
+            if ( Math.max( Math.abs( x1 - x0 ) , Math.abs( y1 - y0 ) ) >= MESH_SIZE / 2 &&
+                 mesh.get( x0 , y0 ) <= walkableGroundLevel && mesh.get( x1 , y1 ) <= walkableGroundLevel )
+            {
+                result[i++] = new int[] { x0 , y0 , x1 , y1 };
+            }
+        }
+        return result;
+    }
+
+    private static float getCost(NavMesh mesh,Path path)
+    {
+        float cost = 0;
+        for ( int i = 1 ; i < path.path.size() ; i++ )
+        {
+            final PathNode n = path.path.get(i);
+            final PathNode prev = path.path.get(i-1);
+            cost += PathFinder.getStepCost( mesh.get( prev.x , prev.y ) , mesh.get( n.x , n.y ) );
+        }
+        return cost;
+    }
+
+    private static void checkPath(NavMesh mesh,float walkableGroundLevel,Path path,int[] query)
+    {
+        final List<PathNode> nodes = path.path;
+        final PathNode first = nodes.get(0);
+        final PathNode last = nodes.get( nodes.size() - 1 );
+        if ( first.x != query[0] || first.y != query[1] || last.x != query[2] || last.y != query[3] ) {
+            throw new AssertionError("Path does not connect start and destination");
+        }
+        for ( int i = 1 ; i < nodes.size() ; i++ )
+        {
+            final PathNode n = nodes.get(i);
+            final PathNode prev = nodes.get(i-1);
+            if ( Math.abs( n.x - prev.x ) > 1 || Math.abs( n.y - prev.y ) > 1 || ( n.x == prev.x && n.y == prev.y ) || n.predecessor != prev ) {
+                throw new AssertionError("Path is not contiguous at "+n);
+            }
+            if ( mesh.get( n.x , n.y ) > walkableGroundLevel ) {
+                throw new AssertionError("Path crosses unwalkable node "+n);
+            }
+        }
+    }
+}
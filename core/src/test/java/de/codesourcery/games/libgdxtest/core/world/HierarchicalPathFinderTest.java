@@ -0,0 +1,257 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import de.codesourcery.games.libgdxtest.core.world.HierarchicalPathFinder.HierarchicalPath;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
+
+public class HierarchicalPathFinderTest extends TestCase
+{
+    private static final int TILE_SIZE = 16;
+    private static final int CLUSTER_SIZE = 4;
+    private static final float WALKABLE = 0.6f;
+
+    // tiles -2...1 along both axes
+    private static final int FIRST_TILE = -2;
+    private static final int TILES_PER_SIDE = 4;
+    private static final int WORLD_SIZE = TILES_PER_SIDE * TILE_SIZE;
+    private static final int OFFSET = FIRST_TILE * TILE_SIZE;
+
+    private final NoiseWorldGenerator generator = new NoiseWorldGenerator( 0xdeadbeef , 1/64.0 , 4 , 1.23f , null );
+
+    private HierarchicalPathFinder finder;
+
+    // tiles present in the path finder
+    private boolean[][] present;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        finder = new HierarchicalPathFinder( TILE_SIZE , WALKABLE , CLUSTER_SIZE );
+        present = new boolean[ TILES_PER_SIDE ][ TILES_PER_SIDE ];
+    }
+
+    private NavMesh createMesh(int tileX,int tileY,long seedOffset)
+    {
+        final float[] heights = new float[ TILE_SIZE*TILE_SIZE ];
+        generator.generate( new WorldRegion( 0 , tileX*(long) TILE_SIZE + seedOffset , tileY*(long) TILE_SIZE , TILE_SIZE , TILE_SIZE ) , heights );
+        return new NavMesh( TILE_SIZE , heights );
+    }
+
+    private void addTile(int tileX,int tileY)
+    {
+        finder.addTile( tileX , tileY , createMesh( tileX , tileY , 0 ) );
+        present[ tileX - FIRST_TILE ][ tileY - FIRST_TILE ] = true;
+    }
+
+    private void removeTile(int tileX,int tileY)
+    {
+        assertTrue( finder.removeTile( tileX , tileY ) );
+        present[ tileX - FIRST_TILE ][ tileY - FIRST_TILE ] = false;
+    }
+
+    private void addAllTiles(Random rnd)
+    {
+        final List<int[]> order = new ArrayList<>();
+        for ( int y = 0 ; y < TILES_PER_SIDE ; y++ )
+        {
+            for ( int x = 0 ; x < TILES_PER_SIDE ; x++ ) {
+                order.add( new int[] { FIRST_TILE + x , FIRST_TILE + y } );
+            }
+        }
+        Collections.shuffle( order , rnd );
+        for ( int[] tile : order ) {
+            addTile( tile[0] , tile[1] );
+        }
+    }
+
+    // whole world as a single mesh, nodes of missing tiles are not walkable
+    private NavMesh createFlatMesh()
+    {
+        final NavMesh result = new NavMesh( WORLD_SIZE , new float[ WORLD_SIZE*WORLD_SIZE ] );
+        for ( int ty = 0 ; ty < TILES_PER_SIDE ; ty++ )
+        {
+            for ( int tx = 0 ; tx < TILES_PER_SIDE ; tx++ )
+            {
+                final NavMesh tile = createMesh( FIRST_TILE + tx , FIRST_TILE + ty , 0 );
+                for ( int y = 0 ; y < TILE_SIZE ; y++ )
+                {
+                    for ( int x = 0 ; x < TILE_SIZE ; x++ ) {
+                        result.set( tx*TILE_SIZE + x , ty*TILE_SIZE + y , present[tx][ty] ? tile.get( x , y ) : 1f );
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // returns the number of paths found
+    private int assertMatchesFlatSearch(Random rnd,int queries)
+    {
+        final NavMesh flatMesh = createFlatMesh();
+        final PathFinder flat = new PathFinder( flatMesh );
+        int reachable = 0;
+        for ( int i = 0 ; i < queries ; i++ )
+        {
+            final int x0 = rnd.nextInt( WORLD_SIZE );
+            final int y0 = rnd.nextInt( WORLD_SIZE );
+            final int x1 = rnd.nextInt( WORLD_SIZE );
+            final int y1 = rnd.nextInt( WORLD_SIZE );
+            if ( flatMesh.get( x0 , y0 ) > WALKABLE ) {
+                continue;
+            }
+            final Path expected = flat.findPath( x0 , y0 , x1 , y1 , WALKABLE );
+            final HierarchicalPath actual = finder.findPath( x0 + OFFSET , y0 + OFFSET , x1 + OFFSET , y1 + OFFSET );
+            assertEquals( "Reachability differs for "+x0+","+y0+" -> "+x1+","+y1 , expected != null , actual != null );
+            if ( actual != null )
+            {
+                assertPath( flatMesh , finder.refine( actual ) , x0 , y0 , x1 , y1 );
+                reachable++;
+            }
+        }
+        return reachable;
+    }
+
+    private static void assertPath(NavMesh flatMesh,Path path,int x0,int y0,int x1,int y1)
+    {
+        assertNotNull( path );
+        final List<PathNode> nodes = path.path;
+        assertEquals( x0 + OFFSET , nodes.get(0).x );
+        assertEquals( y0 + OFFSET , nodes.get(0).y );
+        assertEquals( x1 + OFFSET , nodes.get( nodes.size() - 1 ).x );
+        assertEquals( y1 + OFFSET , nodes.get( nodes.size() - 1 ).y );
+        for ( int i = 1 ; i < nodes.size() ; i++ )
+        {
+            final PathNode n = nodes.get(i);
+            final PathNode prev = nodes.get(i-1);
+            assertSame( prev , n.predecessor );
+            assertTrue( "Not contiguous at "+n , Math.max( Math.abs( n.x - prev.x ) , Math.abs( n.y - prev.y ) ) == 1 );
+            assertTrue( "Not walkable: "+n , flatMesh.get( n.x - OFFSET , n.y - OFFSET ) <= WALKABLE );
+        }
+    }
+
+    public void testInvalidClusterSize()
+    {
+        try {
+            new HierarchicalPathFinder( 16 , WALKABLE , 5 );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testMeshSizeMustMatch()
+    {
+        try {
+            finder.addTile( 0 , 0 , new NavMesh( TILE_SIZE*2 , new float[ TILE_SIZE*TILE_SIZE*4 ] ) );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testNoPathIntoMissingTile()
+    {
+        addTile( 0 , 0 );
+        assertNull( finder.findPath( 0 , 0 , TILE_SIZE + 1 , 1 ) );
+        assertNull( finder.findPath( TILE_SIZE + 1 , 1 , 0 , 0 ) );
+        assertFalse( finder.isWalkable( -1 , 0 ) );
+    }
+
+    public void testPathAcrossTileBorders()
+    {
+        final Random rnd = new Random( 42 );
+        addAllTiles( rnd );
+        assertEquals( TILES_PER_SIDE*TILES_PER_SIDE , finder.getTileCount() );
+        final int reachable = assertMatchesFlatSearch( rnd , 300 );
+        assertTrue( "Only "+reachable+" paths found" , reachable > 30 );
+    }
+
+    public void testGraphDoesNotDependOnInsertionOrder()
+    {
+        addAllTiles( new Random( 1 ) );
+        final int nodes = finder.getTransitionNodeCount();
+        final int edges = finder.getEdgeCount();
+        assertTrue( nodes > 0 );
+
+        finder = new HierarchicalPathFinder( TILE_SIZE , WALKABLE , CLUSTER_SIZE );
+        addAllTiles( new Random( 2 ) );
+        assertEquals( nodes , finder.getTransitionNodeCount() );
+        assertEquals( edges , finder.getEdgeCount() );
+    }
+
+    public void testRemoveTiles()
+    {
+        final Random rnd = new Random( 7 );
+        addAllTiles( rnd );
+        int reachable = 0;
+        for ( int round = 0 ; round < 10 ; round++ )
+        {
+            final int tileX = FIRST_TILE + rnd.nextInt( TILES_PER_SIDE );
+            final int tileY = FIRST_TILE + rnd.nextInt( TILES_PER_SIDE );
+            if ( finder.containsTile( tileX , tileY ) ) {
+                removeTile( tileX , tileY );
+            } else {
+                addTile( tileX , tileY );
+            }
+            reachable += assertMatchesFlatSearch( rnd , 50 );
+        }
+        assertTrue( "Only "+reachable+" paths found" , reachable > 50 );
+
+        // removing everything leaves no trace
+        for ( int y = 0 ; y < TILES_PER_SIDE ; y++ )
+        {
+            for ( int x = 0 ; x < TILES_PER_SIDE ; x++ ) {
+                finder.removeTile( FIRST_TILE + x , FIRST_TILE + y );
+            }
+        }
+        assertEquals( 0 , finder.getTileCount() );
+        assertEquals( 0 , finder.getTransitionNodeCount() );
+        assertEquals( 0 , finder.getEdgeCount() );
+    }
+
+    public void testReplaceTile()
+    {
+        addAllTiles( new Random( 3 ) );
+        final int nodes = finder.getTransitionNodeCount();
+        final int edges = finder.getEdgeCount();
+
+        finder.addTile( 0 , 0 , createMesh( 0 , 0 , 12345 ) );
+        assertEquals( TILES_PER_SIDE*TILES_PER_SIDE , finder.getTileCount() );
+
+        // back to the original mesh
+        addTile( 0 , 0 );
+        assertEquals( nodes , finder.getTransitionNodeCount() );
+        assertEquals( edges , finder.getEdgeCount() );
+    }
+
+    public void testRefineFailsAfterTileGotRemoved()
+    {
+        final Random rnd = new Random( 5 );
+        addAllTiles( rnd );
+        final NavMesh flatMesh = createFlatMesh();
+        HierarchicalPath path = null;
+        while ( path == null )
+        {
+            // from the leftmost to the rightmost column of tiles
+            final int y0 = rnd.nextInt( WORLD_SIZE );
+            final int y1 = rnd.nextInt( WORLD_SIZE );
+            if ( flatMesh.get( 0 , y0 ) <= WALKABLE ) {
+                path = finder.findPath( OFFSET , y0 + OFFSET , OFFSET + WORLD_SIZE - 1 , y1 + OFFSET );
+            }
+        }
+        assertNotNull( finder.refine( path ) );
+
+        for ( int y = 0 ; y < TILES_PER_SIDE ; y++ ) {
+            removeTile( FIRST_TILE + TILES_PER_SIDE - 1 , FIRST_TILE + y );
+        }
+        assertNull( finder.refine( path ) );
+    }
+}
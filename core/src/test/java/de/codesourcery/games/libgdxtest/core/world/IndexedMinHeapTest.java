@@ -0,0 +1,180 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IndexedMinHeapTest extends TestCase
+{
+    public void testEmptyHeap()
+    {
+        final IndexedMinHeap heap = new IndexedMinHeap( 10 );
+        assertTrue( heap.isEmpty() );
+        assertEquals( 0 , heap.size() );
+        assertEquals( 10 , heap.capacity() );
+        try {
+            heap.poll();
+            fail("Should have failed");
+        } catch(NoSuchElementException e) {
+            // ok
+        }
+        try {
+            heap.getKey( 3 );
+            fail("Should have failed");
+        } catch(NoSuchElementException e) {
+            // ok
+        }
+    }
+
+    public void testPollReturnsSmallestKeyFirst()
+    {
+        final IndexedMinHeap heap = new IndexedMinHeap( 5 );
+        heap.insert( 0 , 5 );
+        heap.insert( 1 , 3 );
+        heap.insert( 2 , 4 );
+        heap.insert( 3 , 1 );
+        heap.insert( 4 , 2 );
+        assertEquals( 3 , heap.peek() );
+        assertEquals( 3 , heap.poll() );
+        assertEquals( 4 , heap.poll() );
+        assertEquals( 1 , heap.poll() );
+        assertEquals( 2 , heap.poll() );
+        assertEquals( 0 , heap.poll() );
+        assertTrue( heap.isEmpty() );
+    }
+
+    public void testInsertTwiceFails()
+    {
+        final IndexedMinHeap heap = new IndexedMinHeap( 5 );
+        heap.insert( 1 , 3 );
+        try {
+            heap.insert( 1 , 2 );
+            fail("Should have failed");
+        } catch(IllegalStateException e) {
+            // ok
+        }
+    }
+
+    public void testDecreaseKey()
+    {
+        final IndexedMinHeap heap = new IndexedMinHeap( 3 );
+        heap.insert( 0 , 1 );
+        heap.insert( 1 , 2 );
+        heap.insert( 2 , 3 );
+        heap.decreaseKey( 2 , 0.5f );
+        assertEquals( 0.5f , heap.getKey( 2 ) , 0 );
+        assertEquals( 2 , heap.poll() );
+
+        // same key is fine
+        heap.decreaseKey( 1 , 2 );
+        try {
+            heap.decreaseKey( 1 , 2.5f );
+            fail("Should have failed");
+        } catch(IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            heap.decreaseKey( 2 , 0 );
+            fail("Should have failed");
+        } catch(NoSuchElementException e) {
+            // ok
+        }
+    }
+
+    public void testClearAllowsReuse()
+    {
+        final IndexedMinHeap heap = new IndexedMinHeap( 4 );
+        heap.insert( 0 , 1 );
+        heap.insert( 3 , 2 );
+        heap.clear();
+        assertTrue( heap.isEmpty() );
+        assertFalse( heap.contains( 0 ) );
+        assertFalse( heap.contains( 3 ) );
+        heap.insert( 3 , 7 );
+        heap.insert( 0 , 8 );
+        assertEquals( 3 , heap.poll() );
+        assertEquals( 0 , heap.poll() );
+    }
+
+    public void testRandomOperationsMatchPriorityQueue()
+    {
+        final Random rnd = new Random( 42 );
+        final int capacity = 200;
+        final IndexedMinHeap heap = new IndexedMinHeap( capacity );
+
+        final float[] keys = new float[ capacity ];
+        final PriorityQueue<Integer> expected = new PriorityQueue<>( capacity , new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1,Integer o2) {
+                return Float.compare( keys[o1] , keys[o2] );
+            }
+        });
+
+        for ( int round = 0 ; round < 50 ; round++ )
+        {
+            for ( int i = 0 ; i < 5000 ; i++ )
+            {
+                final int element = rnd.nextInt( capacity );
+                final int op = rnd.nextInt( 3 );
+                if ( ! heap.contains( element ) )
+                {
+                    // few distinct keys, so there are lots of ties
+                    keys[element] = rnd.nextInt( 100 );
+                    heap.insert( element , keys[element] );
+                    expected.add( element );
+                }
+                else if ( op == 0 )
+                {
+                    expected.remove( element );
+                    keys[element] -= rnd.nextInt( 20 );
+                    heap.decreaseKey( element , keys[element] );
+                    expected.add( element );
+                }
+                else if ( op == 1 )
+                {
+                    // ties may be broken differently, the keys need to match
+                    final int polled = heap.poll();
+                    final Integer expectedElement = expected.poll();
+                    assertEquals( keys[expectedElement] , keys[polled] , 0 );
+                    if ( polled != expectedElement )
+                    {
+                        // keep both in sync
+                        assertTrue( expected.remove( polled ) );
+                        expected.add( expectedElement );
+                    }
+                    assertFalse( heap.contains( polled ) );
+                }
+                assertEquals( expected.size() , heap.size() );
+                if ( ! expected.isEmpty() ) {
+                    assertEquals( keys[ expected.peek() ] , heap.getKey( heap.peek() ) , 0 );
+                }
+            }
+            if ( rnd.nextBoolean() )
+            {
+                heap.clear();
+                expected.clear();
+                for ( int i = 0 ; i < capacity ; i++ ) {
+                    assertFalse( heap.contains( i ) );
+                }
+            }
+            else
+            {
+                // drain, keys in ascending order
+                float previous = Float.NEGATIVE_INFINITY;
+                while ( ! heap.isEmpty() )
+                {
+                    final float key = heap.getKey( heap.peek() );
+                    assertTrue( key >= previous );
+                    assertEquals( keys[ expected.poll() ] , key , 0 );
+                    heap.poll();
+                    previous = key;
+                }
+                assertTrue( expected.isEmpty() );
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+import de.codesourcery.games.libgdxtest.core.world.NavMeshGenerator.NavMesh;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.Path;
+import de.codesourcery.games.libgdxtest.core.world.PathFinder.PathNode;
+
+/**
+ * Compares {@link PathFinder} with the previous implementation that used
+ * a <code>PriorityQueue</code> of nodes and searched it linearly, on a 512x512 nav mesh.
+ */
+public class PathFinderBenchmark
+{
+    private static final int MESH_SIZE = 512;
+    private static final float WALKABLE_GROUND_LEVEL = 0.6f;
+
+    public static void main(String[] args)
+    {
+        final float[] heights = new float[ MESH_SIZE*MESH_SIZE ];
+        new NoiseWorldGenerator( 0xdeadbeef , 1/1024.0 , 8 , 1.23f , null ).generate( new WorldRegion( 2 , 0 , 0 , MESH_SIZE , MESH_SIZE ) , heights );
+        final NavMesh mesh = new NavMesh( MESH_SIZE , heights );
+
+        final PathFinder finder = new PathFinder( mesh );
+        final LegacyPathFinder legacy = new LegacyPathFinder( mesh );
+
+        // the previous implementation takes seconds for paths across the whole mesh, use short ones for comparing
+        final int[][] shortQueries = createQueries( mesh , 64 , 20 , 1 );
+        final int[][] longQueries = createQueries( mesh , MESH_SIZE , 20 , 2 );
+
+        int found = 0;
+        for ( int[] q : shortQueries )
+        {
+            final Path expected = legacy.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            final Path actual = finder.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            if ( ( expected == null ) != ( actual == null ) ) {
+                throw new AssertionError("Reachability differs for "+q[0]+","+q[1]+" -> "+q[2]+","+q[3]);
+            }
+            if ( actual != null ) {
+                checkPath( mesh , actual , q );
+                found++;
+            }
+        }
+        for ( int[] q : longQueries )
+        {
+            final Path actual = finder.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            if ( actual != null ) {
+                checkPath( mesh , actual , q );
+            }
+        }
+        System.out.println("Paths are valid, "+found+" of "+shortQueries.length+" short queries reachable.");
+
+        final double before = MicroBenchmark.measure( "short paths, PriorityQueue + linear search" , 1 , 3 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return runQueries( legacy , shortQueries );
+            }
+        });
+        final MicroBenchmark.Task shortTask = new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return runQueries( finder , shortQueries );
+            }
+        };
+        final double after = MicroBenchmark.measure( "short paths, indexed heap" , 10 , 50 , shortTask );
+        MicroBenchmark.printSpeedup( "short paths, indexed heap vs. PriorityQueue" , before , after );
+
+        MicroBenchmark.measure( "long paths, indexed heap" , 3 , 10 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return runQueries( finder , longQueries );
+            }
+        });
+
+        System.out.println("Allocated per search (indexed heap, short paths): "+( allocatedBytes( shortTask ) / shortQueries.length / 1024 )+" KB");
+    }
+
+    private static int[][] createQueries(NavMesh mesh,int maxDistance,int count,long seed)
+    {
+        final Random rnd = new Random( seed );
+        final int[][] result = new int[ count ][];
+        for ( int i = 0 ; i < count ; )
+        {
+            final int x0 = rnd.nextInt( MESH_SIZE );
+            final int y0 = rnd.nextInt( MESH_SIZE );
+            final int x1 = Math.min( MESH_SIZE - 1 , Math.max( 0 , x0 + rnd.nextInt( 2*maxDistance ) - maxDistance ) );
+            final int y1 = Math.min( MESH_SIZE - 1 , Math.max( 0 , y0 + rnd.nextInt( 2*maxDistance ) - maxDistance ) );
+            if ( mesh.get( x0 , y0 ) <= WALKABLE_GROUND_LEVEL && mesh.get( x1 , y1 ) <= WALKABLE_GROUND_LEVEL ) {
+                result[i++] = new int[] { x0 , y0 , x1 , y1 };
+            }
+        }
+        return result;
+    }
+
+    private static void checkPath(NavMesh mesh,Path path,int[] query)
+    {
+        final List<PathNode> nodes = path.path;
+        final PathNode first = nodes.get(0);
+        final PathNode last = nodes.get( nodes.size() - 1 );
+        if ( first.x != query[0] || first.y != query[1] || last.x != query[2] || last.y != query[3] ) {
+            throw new AssertionError("Path does not connect start and destination");
+        }
+        for ( int i = 1 ; i < nodes.size() ; i++ )
+        {
+            final PathNode n = nodes.get(i);
+            final PathNode prev = nodes.get(i-1);
+            if ( Math.abs( n.x - prev.x ) > 1 || Math.abs( n.y - prev.y ) > 1 || n.predecessor != prev ) {
+                throw new AssertionError("Path is not contiguous at "+n);
+            }
+            if ( mesh.get( n.x , n.y ) > WALKABLE_GROUND_LEVEL ) {
+                throw new AssertionError("Path crosses unwalkable node "+n);
+            }
+        }
+    }
+
+    private static int runQueries(PathFinder finder,int[][] queries)
+    {
+        int length = 0;
+        for ( int[] q : queries )
+        {
+            final Path path = finder.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            length += path != null ? path.path.size() : 0;
+        }
+        return length;
+    }
+
+    private static int runQueries(LegacyPathFinder finder,int[][] queries)
+    {
+        int length = 0;
+        for ( int[] q : queries )
+        {
+            final Path path = finder.findPath( q[0] , q[1] , q[2] , q[3] , WALKABLE_GROUND_LEVEL );
+            length += path != null ? path.path.size() : 0;
+        }
+        return length;
+    }
+
+    private static long allocatedBytes(MicroBenchmark.Task task)
+    {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( ! ( bean instanceof com.sun.management.ThreadMXBean ) ) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        final long threadId = Thread.currentThread().getId();
+        final long before = sunBean.getThreadAllocatedBytes( threadId );
+        task.run();
+        return sunBean.getThreadAllocatedBytes( threadId ) - before;
+    }
+
+    // path finding as it was done before PathFinder used an indexed heap (minus printing unwalkable nodes)
+    private static final class LegacyPathFinder
+    {
+        private final PriorityQueue<LegacyNode> openList = new PriorityQueue<>();
+        private final byte[] visited;
+        private final int meshWidth;
+        private final NavMesh mesh;
+
+        private float walkableGroundLevel;
+        private int dstX;
+        private int dstY;
+
+        public LegacyPathFinder(NavMesh mesh) {
+            this.mesh=mesh;
+            this.meshWidth = mesh.width;
+            this.visited=new byte[meshWidth*meshWidth];
+        }
+
+        public Path findPath(int startX,int startY, int dstX,int dstY,float walkableGroundLevel)
+        {
+            openList.clear();
+            for ( int i = 0 ; i < meshWidth*meshWidth;i++) {
+                visited[i]=0;
+            }
+            this.walkableGroundLevel = walkableGroundLevel;
+            this.dstX = dstX;
+            this.dstY = dstY;
+
+            openList.add( new LegacyNode( startX,startY,0,0 ) );
+            do
+            {
+                LegacyNode current = openList.poll();
+                if ( current.x == dstX && current.y == dstY )
+                {
+                    final List<PathNode> nodes = new ArrayList<>();
+                    do
+                    {
+                        nodes.add( new PathNode( current.x , current.y , current.f , current.g ) );
+                        current = current.predecessor;
+                    } while ( current != null );
+                    Collections.reverse( nodes );
+                    final Path result = new Path();
+                    result.path.addAll( nodes );
+                    return result;
+                }
+                visited[current.x+current.y*meshWidth]=1;
+                for ( int y = current.y - 1 ; y <= current.y + 1 ; y++ )
+                {
+                    if ( y >= 0 && y < meshWidth )
+                    {
+                        for ( int x = current.x - 1 ; x <= current.x + 1 ; x++ )
+                        {
+                            if ( x >= 0 && x < meshWidth && ! (current.x == x && current.y == y) ) {
+                                processNode(current,x,y);
+                            }
+                        }
+                    }
+                }
+            } while ( ! openList.isEmpty() );
+            return null;
+        }
+
+        private void processNode(LegacyNode current,int succX,int succY)
+        {
+            if ( visited[succX+succY*meshWidth] != 0 ) {
+                return;
+            }
+            final float succHeight = mesh.get( succX ,  succY );
+            float heightDelta = Math.abs( succHeight - mesh.get( current.x , current.y ) );
+            if ( succHeight > walkableGroundLevel ) {
+                return;
+            }
+            float tentative_g = current.g + 1 + 10*heightDelta;
+
+            LegacyNode successor = null;
+            for ( LegacyNode node : openList )
+            {
+                if ( node.x == succX && node.y == succY )
+                {
+                    successor = node;
+                    if ( tentative_g >= successor.g ) {
+                        return;
+                    }
+                    break;
+                }
+            }
+            final int dx = dstX - succX;
+            final int dy = dstY - succY;
+            float f = tentative_g + dx*dx+dy*dy;
+            if ( successor != null )
+            {
+                successor.predecessor = current;
+                successor.g = tentative_g;
+                successor.f = f;
+                openList.remove( successor );
+                openList.add( successor );
+            } else {
+                successor = new LegacyNode(succX,succY , f , tentative_g );
+                successor.predecessor = current;
+                openList.add( successor );
+            }
+        }
+    }
+
+    private static final class LegacyNode implements Comparable<LegacyNode>
+    {
+        public final int x;
+        public final int y;
+        public LegacyNode predecessor;
+        public float f;
+        public float g;
+
+        public LegacyNode(int x, int y,float f,float g)
+        {
+            this.x = x;
+            this.y = y;
+            this.f = f;
+            this.g = g;
+        }
+
+        @Override
+        public int compareTo(LegacyNode o) {
+            return Float.compare( f , o.f );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+
+/**
+ * Compares the per-point (double precision) noise evaluation
+ * with the batched row evaluation used by {@link SimplexNoise#createHeightMap(float, float, int, float, int, float)}.
+ */
+public class SimplexNoiseBenchmark
+{
+    private static final int MAP_SIZE = 512;
+    private static final float TILE_SIZE = 0.5f;
+    private static final int OCTAVES = 8;
+    private static final float PERSISTANCE = 1.23f;
+
+    public static void main(String[] args)
+    {
+        final SimplexNoise noise = new SimplexNoise( 0xdeadbeef );
+
+        // tile far away from the origin to make sure precision does not suffer
+        final float xOffset = 1234 * TILE_SIZE;
+        final float yOffset = -567 * TILE_SIZE;
+
+        final float[] expected = createHeightMapScalar( noise , xOffset , yOffset , MAP_SIZE , TILE_SIZE , OCTAVES , PERSISTANCE );
+        final float[] actual = noise.createHeightMap( xOffset , yOffset , MAP_SIZE , TILE_SIZE , OCTAVES , PERSISTANCE );
+
+        float maxError = 0;
+        for ( int i = 0 ; i < expected.length ; i++ ) {
+            maxError = Math.max( maxError , Math.abs( expected[i] - actual[i] ) );
+        }
+        System.out.println("Max. difference: "+maxError);
+        if ( maxError > 1e-4f ) {
+            throw new AssertionError("Batched noise differs from scalar noise by "+maxError);
+        }
+
+        final double scalar = MicroBenchmark.measure( "scalar" , 20 , 20 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return createHeightMapScalar( noise , xOffset , yOffset , MAP_SIZE , TILE_SIZE , OCTAVES , PERSISTANCE );
+            }
+        });
+
+        final double batched = MicroBenchmark.measure( "batched" , 20 , 20 , new MicroBenchmark.Task() {
+
+            @Override
+            public Object run() {
+                return noise.createHeightMap( xOffset , yOffset , MAP_SIZE , TILE_SIZE , OCTAVES , PERSISTANCE );
+            }
+        });
+        MicroBenchmark.printSpeedup( "batched vs. scalar" , scalar , batched );
+    }
+
+    // height map generation as it was done before the batch API existed
+    private static float[] createHeightMapScalar(SimplexNoise noise,float xOffset,float yOffset,int mapSize,float tileSize,int octaveCount,float persistance)
+    {
+        float amplitude = 1.0f;
+        double totalAmplitude = 0.0f;
+        for (int octave = octaveCount - 1; octave >= 0; octave--)
+        {
+            amplitude *= persistance;
+            totalAmplitude += amplitude;
+        }
+
+        final float scalingFactor = tileSize/(float) mapSize;
+
+        final float[] result = new float[mapSize*mapSize];
+        int ptr = 0;
+        for ( int y = 0 ; y < mapSize ; y++ )
+        {
+            for ( int x =0 ; x < mapSize ; x++ )
+            {
+                float nx = xOffset + x*scalingFactor;
+                float ny = yOffset + y*scalingFactor;
+
+                double sum = 0.0f;
+                amplitude = 1.0f;
+                int frequency = 1 << octaveCount;
+                for (int octave = octaveCount - 1; octave >= 0; octave--)
+                {
+                    amplitude *= persistance;
+                    double value = noise.noise2(nx*frequency,ny*frequency);
+                    value = (value + 1)/2.0f;
+                    sum += value*amplitude;
+                    frequency = frequency >> 1;
+                }
+                result[ptr++]= (float) (sum / totalAmplitude);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,169 @@
+package de.codesourcery.games.libgdxtest.core.world;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+
+import de.codesourcery.games.libgdxtest.core.MicroBenchmark;
+import de.codesourcery.games.libgdxtest.core.world.HeightMapResampler.Filter;
+
+/**
+ * Checks that {@link NoiseWorldGenerator} produces the same samples no matter how the world is cut
+ * into regions, and compares its speed with generating tiles as separately resampled layers.
+ */
+public class WorldGeneratorBenchmark
+{
+    private static final int MAP_SIZE = 512;
+    private static final float TILE_SIZE = 0.5f;
+    private static final int OCTAVES = 8;
+    private static final float PERSISTANCE = 1.23f;
+
+    public static void main(String[] args)
+    {
+        final long seed = 0xdeadbeef;
+        final NoiseWorldGenerator generator = new NoiseWorldGenerator( seed , TILE_SIZE / MAP_SIZE , OCTAVES , PERSISTANCE , null );
+
+        final int tileX = 1234;
+        final int tileY = 567;
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool pool = new ForkJoinPool( threads );
+        try
+        {
+            final NoiseWorldGenerator parallelGenerator = new NoiseWorldGenerator( seed , TILE_SIZE / MAP_SIZE , OCTAVES , PERSISTANCE , pool );
+            for ( int level = 0 ; level <= Tile.MAX_DETAIL_LEVEL ; level++ )
+            {
+                // 2x2 tiles generated as a single region
+                final WorldRegion tile = TileFactory.getRegion( tileX , tileY , level );
+                final WorldRegion block = new WorldRegion( tile.scale , tile.x , tile.y , tile.width*2 , tile.height*2 );
+                final float[] expected = generate( generator , block );
+
+                assertSame( expected , block , generate( parallelGenerator , block ) , block , "parallel, level "+level );
+                assertSame( expected , block , generate( generator , tile ) , tile , "tile, level "+level );
+                final WorldRegion right = TileFactory.getRegion( tileX+1 , tileY , level );
+                assertSame( expected , block , generate( generator , right ) , right , "right neighbour, level "+level );
+                final WorldRegion below = TileFactory.getRegion( tileX , tileY-1 , level );
+                assertSame( expected , block , generate( generator , below ) , below , "lower neighbour, level "+level );
+
+                // regions not aligned to anything
+                final WorldRegion odd = block.subRegion( 3 , 1 , block.width - 8 , block.height - 3 );
+                assertSame( expected , block , generate( generator , odd ) , odd , "unaligned region, level "+level );
+                final WorldRegion single = block.subRegion( block.width/2 - 1 , block.height/2 + 1 , 1 , 1 );
+                assertSame( expected , block , generate( generator , single ) , single , "single sample, level "+level );
+            }
+            System.out.println("Regions match on all detail levels.");
+
+            final float[] result = new float[ MAP_SIZE*MAP_SIZE ];
+            final WorldRegion region = TileFactory.getRegion( tileX , tileY , 0 );
+            final DefaultNoiseGenerator noise = new DefaultNoiseGenerator( MAP_SIZE , seed );
+            final MicroBenchmark.Task separateTask = new MicroBenchmark.Task() {
+
+                @Override
+                public Object run() {
+                    return createHeightMapSeparate( noise , tileX * TILE_SIZE , -tileY * TILE_SIZE , MAP_SIZE );
+                }
+            };
+            final MicroBenchmark.Task generatorTask = new MicroBenchmark.Task() {
+
+                @Override
+                public Object run() {
+                    generator.generate( region , result );
+                    return result;
+                }
+            };
+
+            final double separate = MicroBenchmark.measure( "separate layers" , 20 , 20 , separateTask );
+            final double single = MicroBenchmark.measure( "world generator" , 20 , 20 , generatorTask );
+            MicroBenchmark.printSpeedup( "world generator vs. separate" , separate , single );
+
+            final double parallel = MicroBenchmark.measure( "world generator ("+threads+" threads)" , 20 , 20 , new MicroBenchmark.Task() {
+
+                @Override
+                public Object run() {
+                    parallelGenerator.generate( region , result );
+                    return result;
+                }
+            });
+            MicroBenchmark.printSpeedup( "world generator parallel vs. separate" , separate , parallel );
+
+            final long separateBytes = allocatedBytes( separateTask );
+            final long generatorBytes = allocatedBytes( generatorTask );
+            System.out.println("Allocated per tile (separate): "+(separateBytes/1024)+" KB");
+            System.out.println("Allocated per tile (world generator, caller-supplied result): "+(generatorBytes/1024)+" KB");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static float[] generate(WorldGenerator generator,WorldRegion region)
+    {
+        final float[] result = new float[ region.getSampleCount() ];
+        generator.generate( region , result );
+        return result;
+    }
+
+    // checks that samples of a region are identical to the same samples of an enclosing region
+    private static void assertSame(float[] expected,WorldRegion expectedRegion,float[] actual,WorldRegion actualRegion,String message)
+    {
+        for ( int y = 0 ; y < actualRegion.height ; y++ )
+        {
+            for ( int x = 0 ; x < actualRegion.width ; x++ )
+            {
+                final int ex = (int) ( actualRegion.x - expectedRegion.x ) + x;
+                final int ey = (int) ( actualRegion.y - expectedRegion.y ) + y;
+                final float e = expected[ ey*expectedRegion.width + ex ];
+                final float a = actual[ y*actualRegion.width + x ];
+                if ( Float.floatToIntBits( e ) != Float.floatToIntBits( a ) ) {
+                    throw new AssertionError("Sample "+x+","+y+" differs ("+message+"): expected "+e+" , got "+a);
+                }
+            }
+        }
+    }
+
+    private static long allocatedBytes(MicroBenchmark.Task task)
+    {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( ! ( bean instanceof com.sun.management.ThreadMXBean ) ) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        final long threadId = Thread.currentThread().getId();
+        final int iterations = 10;
+        final long before = sunBean.getThreadAllocatedBytes( threadId );
+        for ( int i = 0 ; i < iterations ; i++ ) {
+            task.run();
+        }
+        return ( sunBean.getThreadAllocatedBytes( threadId ) - before ) / iterations;
+    }
+
+    // tile height map generation as it was done before tiles were blended in a single pass
+    private static float[] createHeightMapSeparate(DefaultNoiseGenerator noise,float x,float y,int heightMapSize)
+    {
+        final float[] high = noise.createNoise2D( x , y , heightMapSize , TILE_SIZE , OCTAVES , PERSISTANCE );
+
+        final int middleSize = heightMapSize / 2;
+        final float middleScale = middleSize / (float) heightMapSize;
+        final float[] middle = new HeightMapResampler( heightMapSize , middleSize , Filter.BICUBIC ).resample( high );
+
+        final int lowSize = heightMapSize / 4;
+        final float lowScale = lowSize / (float) heightMapSize;
+        final float[] low = new HeightMapResampler( heightMapSize , lowSize , Filter.BICUBIC ).resample( high );
+
+        final float[] result = new float[heightMapSize*heightMapSize];
+        for ( int iy = 0 ; iy < heightMapSize ; iy++)
+        {
+            for ( int ix = 0 ; ix < heightMapSize ; ix++)
+            {
+                final int lix = (int) (ix*lowScale);
+                final int liy = (int) (iy*lowScale);
+
+                final int mix = (int) (ix*middleScale);
+                final int miy = (int) (iy*middleScale);
+
+                result[ix+iy*heightMapSize] = low[lix+liy*lowSize] * 0.5f +
+                        middle[mix+miy*middleSize] * 0.25f +
+                        high[ix+iy*heightMapSize]*0.25f;
+            }
+        }
+        return result;
+    }
+}